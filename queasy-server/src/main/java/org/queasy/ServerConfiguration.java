@@ -5,6 +5,10 @@ import io.dropwizard.db.DataSourceFactory;
 import io.dropwizard.util.Duration;
 import org.queasy.core.config.CacheConfiguration;
 import org.queasy.core.config.ConsumerGroupConfiguration;
+import org.queasy.core.config.H2Configuration;
+import org.queasy.core.config.LogConfiguration;
+import org.queasy.core.config.QueueConfiguration;
+import org.queasy.core.config.SqliteConfiguration;
 import org.queasy.core.config.TopicConfiguration;
 import org.queasy.core.config.WriterConfiguration;
 import org.queasy.core.config.WebSocketConfiguration;
@@ -15,6 +19,28 @@ import java.util.Map;
 
 public class ServerConfiguration extends Configuration {
 
+    /**
+     * Where messages are stored
+     */
+    public enum StorageEngine {
+        /**
+         * A table of every shard's SQLite database
+         */
+        SQLITE,
+        /**
+         * A table of every shard's embedded H2 database, see {@link H2Configuration}
+         */
+        H2,
+        /**
+         * On the heap, lost on restart. Compression is not applied
+         */
+        MEMORY,
+        /**
+         * Append-only segment files, see {@link LogConfiguration}. Checkpoints and dictionaries stay in SQLite
+         */
+        LOG
+    }
+
     /**
      * id of this message writerConfiguration server. Every message writerConfiguration server in the writerConfiguration cluster must have an unique id.
      * It's used in Snowflake unique id generation algorithm.
@@ -23,6 +49,14 @@ public class ServerConfiguration extends Configuration {
     @Min(0)
     @Max(1023)
     private Integer hostId;
+
+    /**
+     * Number of write shards. Every shard has a writer thread, a Snowflake node id (hostId * shards + shard, so it must
+     * stay under 1024) and a SQLite file of its own. Queues are assigned to shards by hash of their name
+     */
+    @Min(1)
+    @Max(64)
+    private int shards = 1;
     /**
      * Maximum number of producer or writer connections allowed
      */
@@ -38,10 +72,10 @@ public class ServerConfiguration extends Configuration {
     private int messageDispatcherThreadPoolSize = 8;
 
     /**
-     * Poll interval to check for new messages. It's a very inexpensive operation,
-     * so 100s or even 10s of millisecond interval is OK
+     * Consumer groups and topics are run as soon as new messages are committed or a client starts waiting for some.
+     * They are also polled at this interval, as a fallback, which is when waiting clients time out
      */
-    private Duration newMessagePollInterval = Duration.milliseconds(250);
+    private Duration newMessagePollInterval = Duration.seconds(5);
 
     /**
      * Maximum time period to wait for graceful shutdown of application
@@ -55,6 +89,33 @@ public class ServerConfiguration extends Configuration {
     @NotNull
     private DataSourceFactory database = new DataSourceFactory();
 
+    /**
+     * Engine storing the messages of every shard
+     */
+    @NotNull
+    private StorageEngine storageEngine = StorageEngine.SQLITE;
+
+    /**
+     * H2 storage engine settings
+     */
+    @Valid
+    @NotNull
+    private H2Configuration h2 = new H2Configuration();
+
+    /**
+     * LOG storage engine settings
+     */
+    @Valid
+    @NotNull
+    private LogConfiguration segmentedLog = new LogConfiguration();
+
+    /**
+     * SQLite storage profile
+     */
+    @Valid
+    @NotNull
+    private SqliteConfiguration sqlite = new SqliteConfiguration();
+
     /**
      * Websocket configuration
      */
@@ -81,6 +142,12 @@ public class ServerConfiguration extends Configuration {
     @Valid
     private Map<String, TopicConfiguration> topics;
 
+    /**
+     * Per queue settings, by queue name
+     */
+    @Valid
+    private Map<String, QueueConfiguration> queues;
+
     /**
      * System-wide message cache configuration
      * @return
@@ -98,6 +165,14 @@ public class ServerConfiguration extends Configuration {
         this.hostId = hostId;
     }
 
+    public int getShards() {
+        return shards;
+    }
+
+    public void setShards(int shards) {
+        this.shards = shards;
+    }
+
     public int getMaxConnections() {
         return maxConnections;
     }
@@ -134,6 +209,38 @@ public class ServerConfiguration extends Configuration {
         return database;
     }
 
+    public StorageEngine getStorageEngine() {
+        return storageEngine;
+    }
+
+    public void setStorageEngine(StorageEngine storageEngine) {
+        this.storageEngine = storageEngine;
+    }
+
+    public H2Configuration getH2() {
+        return h2;
+    }
+
+    public void setH2(H2Configuration h2) {
+        this.h2 = h2;
+    }
+
+    public LogConfiguration getSegmentedLog() {
+        return segmentedLog;
+    }
+
+    public void setSegmentedLog(LogConfiguration segmentedLog) {
+        this.segmentedLog = segmentedLog;
+    }
+
+    public SqliteConfiguration getSqlite() {
+        return sqlite;
+    }
+
+    public void setSqlite(SqliteConfiguration sqlite) {
+        this.sqlite = sqlite;
+    }
+
     public WebSocketConfiguration getWebSocketConfiguration() {
         return webSocketConfiguration;
     }
@@ -159,6 +266,14 @@ public class ServerConfiguration extends Configuration {
         this.topics = topics;
     }
 
+    public Map<String, QueueConfiguration> getQueues() {
+        return queues;
+    }
+
+    public void setQueues(Map<String, QueueConfiguration> queues) {
+        this.queues = queues;
+    }
+
     public CacheConfiguration getCacheConfiguration() {
         return cacheConfiguration;
     }
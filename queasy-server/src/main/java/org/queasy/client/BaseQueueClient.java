@@ -10,9 +10,10 @@ abstract class BaseQueueClient implements Consumer<String> {
 
     private final QueueConnection qConn;
     protected volatile String message;
+    protected volatile BinaryMessage binaryMessage;
 
     BaseQueueClient() {
-        this.qConn = new QueueConnection(this);
+        this.qConn = new QueueConnection(this, this::acceptBinary);
     }
 
     final QueueConnection getQueueConnection() {
@@ -24,9 +25,14 @@ abstract class BaseQueueClient implements Consumer<String> {
     }
 
     @Override
-    synchronized final public void accept(final String message) {
+    synchronized public void accept(final String message) {
         this.message = message;
         notifyAll();
     }
 
+    synchronized void acceptBinary(final BinaryMessage message) {
+        this.binaryMessage = message;
+        notifyAll();
+    }
+
 }
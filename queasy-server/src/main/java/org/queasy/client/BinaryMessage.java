@@ -0,0 +1,37 @@
+package org.queasy.client;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Binary message received from the server, in a binary frame holding the 8 byte big endian message id followed by the
+ * payload
+ *
+ * Created on: 2026-10-18
+ */
+public final class BinaryMessage {
+
+    private final long id;
+    private final byte[] payload;
+
+    public BinaryMessage(final long id, final byte[] payload) {
+        this.id = id;
+        this.payload = payload;
+    }
+
+    static BinaryMessage parse(final byte[] frame, final int offset, final int len) {
+        final ByteBuffer buf = ByteBuffer.wrap(frame, offset, len);
+        final long id = buf.getLong();
+        final byte[] payload = new byte[buf.remaining()];
+        buf.get(payload);
+        return new BinaryMessage(id, payload);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+}
@@ -27,37 +27,86 @@ public final class ConsumerGroupMember extends BaseQueueClient {
      * @return
      * @throws TimeoutException
      * @throws IOException
+     * @throws IllegalStateException if a binary message is received instead, it is then returned by the next call to
+     *                               {@link #readBinaryMessage(long)}
      */
     synchronized public String readMessage(final long timeout) throws TimeoutException, IOException {
+        awaitMessage(timeout);
+        if (binaryMessage != null) {
+            throw new IllegalStateException("Binary message received, read it with readBinaryMessage()");
+        }
+        final String mesg = message;
+        message = null;
+        return mesg;
+    }
+
+    public String readMessage() throws TimeoutException, IOException {
+        return readMessage(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Blocks till this client receives a binary message from the server
+     *
+     * @param timeout in milliseconds
+     * @return
+     * @throws TimeoutException
+     * @throws IOException
+     * @throws IllegalStateException if a text message is received instead, it is then returned by the next call to
+     *                               {@link #readMessage(long)}
+     */
+    synchronized public BinaryMessage readBinaryMessage(final long timeout) throws TimeoutException, IOException {
+        awaitMessage(timeout);
+        if (binaryMessage == null) {
+            throw new IllegalStateException("Text message received, read it with readMessage()");
+        }
+        final BinaryMessage mesg = binaryMessage;
+        binaryMessage = null;
+        return mesg;
+    }
+
+    public BinaryMessage readBinaryMessage() throws TimeoutException, IOException {
+        return readBinaryMessage(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Asks the server for a message, unless one received earlier is yet to be read, and waits for it
+     */
+    private void awaitMessage(final long timeout) throws TimeoutException, IOException {
         try {
-            if (message == null) {
+            if ((message == null) && (binaryMessage == null)) {
                 getQueueConnection().getRemote().sendString(Command.DEQUEUE.toString());
                 wait(timeout);
             }
-
-            if (message == null) {
-                throw new TimeoutException("Client side timeout");
-            }
-            if (Status.TIMEOUT.toString().equals(message)) {
-                throw new TimeoutException("Server side timeout");
-            }
-            if (Status.CLOSE.toString().equals(message)) {
-                throw new EOFException("Server closed connection");
-            }
-            if (Status.ERROR.toString().equals(message)) {
-                throw new IOException("Server I/O error");
-            }
-            return message;
         } catch (InterruptedException ex) {
+            message = null;
             logger.info("Client side interruption");
             throw new TimeoutException("Client side interruption");
-        } finally {
+        }
+
+        if (binaryMessage != null) {
+            return;
+        }
+        try {
+            checkStatus(message);
+        } catch (TimeoutException | IOException ex) {
             message = null;
+            throw ex;
         }
     }
 
-    public String readMessage() throws TimeoutException, IOException {
-        return readMessage(Integer.MAX_VALUE);
+    private static void checkStatus(final String message) throws TimeoutException, IOException {
+        if (message == null) {
+            throw new TimeoutException("Client side timeout");
+        }
+        if (Status.TIMEOUT.toString().equals(message)) {
+            throw new TimeoutException("Server side timeout");
+        }
+        if (Status.CLOSE.toString().equals(message)) {
+            throw new EOFException("Server closed connection");
+        }
+        if (Status.ERROR.toString().equals(message)) {
+            throw new IOException("Server I/O error");
+        }
     }
 
 }
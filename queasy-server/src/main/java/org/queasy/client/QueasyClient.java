@@ -60,9 +60,19 @@ public final class QueasyClient implements Managed {
 
     public QueueProducer connectProducer(final String baseURI,
                                          final String queueName) throws Exception {
-        final QueueProducer queueProducer = new QueueProducer();
+        return connectProducer(baseURI, queueName, QueueProducer.DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param windowSize maximum number of messages the producer keeps in flight before it waits for
+     *                   acknowledgements. Should not exceed producerWindowSize configured on the server.
+     */
+    public QueueProducer connectProducer(final String baseURI, final String queueName,
+                                         final int windowSize) throws Exception {
+        final QueueProducer queueProducer = new QueueProducer(windowSize);
         final Future<Session> f = connect(baseURI, PUBLISH_PATH, queueName, queueProducer.getQueueConnection());
         f.get();
+        queueProducer.requestCredits();
         return queueProducer;
     }
 
@@ -14,12 +14,14 @@ import java.util.function.Consumer;
 final class QueueConnection extends WebSocketAdapter {
 
     private final Consumer<String> mesgConsumer;
+    private final Consumer<BinaryMessage> binaryMesgConsumer;
 
     private static final Logger logger = LoggerFactory.getLogger(QueueConnection.class);
 
 
-    QueueConnection(final Consumer<String> mesgConsumer) {
+    QueueConnection(final Consumer<String> mesgConsumer, final Consumer<BinaryMessage> binaryMesgConsumer) {
         this.mesgConsumer = mesgConsumer;
+        this.binaryMesgConsumer = binaryMesgConsumer;
     }
 
     @Override
@@ -33,6 +35,11 @@ final class QueueConnection extends WebSocketAdapter {
         mesgConsumer.accept(message);
     }
 
+    @Override
+    public void onWebSocketBinary(final byte[] payload, final int offset, final int len) {
+        binaryMesgConsumer.accept(BinaryMessage.parse(payload, offset, len));
+    }
+
     @Override
     public void onWebSocketClose(int statusCode, String reason) {
         mesgConsumer.accept(Status.CLOSE.toString());
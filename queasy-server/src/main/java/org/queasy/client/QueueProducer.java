@@ -1,58 +1,287 @@
 package org.queasy.client;
 
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.queasy.core.network.BatchFrame;
+import org.queasy.core.network.Command;
 import org.queasy.core.network.Status;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 /**
+ * Pipelining queue producer. Every message is tagged with a sequence number, and up to windowSize messages can be in
+ * flight before the producer waits for the server to acknowledge the older ones. An acknowledgement of a sequence
+ * number acknowledges all the older messages still in flight as well.
+ * <p>
+ * Once it has asked the server for credits, the producer also waits for a credit per message before sending it, so
+ * that it never sends a message the server has no room for. A batch bigger than the credits the server ever grants at
+ * a time waits for as many as it does.
+ *
  * @author saroskar
  * Created on: 2021-04-06
  */
 public final class QueueProducer extends BaseQueueClient {
 
+    public static final int DEFAULT_WINDOW_SIZE = 64;
+
+    private final int windowSize;
+    private final TreeMap<Long, CompletableFuture<Void>> inFlight;
+    private long nextSeq;
+    private boolean creditMode;
+    private int credits;
+    private int maxCredits;
+
     private static final Logger logger = LoggerFactory.getLogger(QueueProducer.class);
 
 
-    synchronized public void writeMessage(final String mesgToEnqueue, long timeout) throws IOException, TimeoutException, IllegalStateException {
+    QueueProducer(final int windowSize) {
+        this.windowSize = windowSize;
+        this.inFlight = new TreeMap<>();
+    }
+
+    public QueueProducer() {
+        this(DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Sends the message without waiting for its acknowledgement. Blocks only if the window of in flight messages is
+     * full.
+     *
+     * @param mesgToEnqueue message to publish
+     * @param timeout max milliseconds to wait for room in the window
+     * @return future completed when the server acknowledges the message
+     * @throws IOException
+     * @throws TimeoutException if there was no room in the window within timeout
+     */
+    public CompletableFuture<Void> publish(final String mesgToEnqueue, final long timeout)
+            throws IOException, TimeoutException {
+        return send((remote, seq) -> remote.sendString(Command.PUBLISH.format(seq, mesgToEnqueue)), 1, timeout);
+    }
+
+    /**
+     * Sends the binary message, in a binary frame, without waiting for its acknowledgement. Blocks only if the window
+     * of in flight messages is full.
+     *
+     * @param mesgToEnqueue message to publish
+     * @param timeout max milliseconds to wait for room in the window
+     * @return future completed when the server acknowledges the message
+     * @throws IOException
+     * @throws TimeoutException if there was no room in the window within timeout
+     */
+    public CompletableFuture<Void> publish(final byte[] mesgToEnqueue, final long timeout)
+            throws IOException, TimeoutException {
+        return send((remote, seq) -> {
+            final ByteBuffer frame = ByteBuffer.allocate(Long.BYTES + mesgToEnqueue.length);
+            frame.putLong(seq).put(mesgToEnqueue).flip();
+            remote.sendBytes(frame);
+        }, 1, timeout);
+    }
+
+    public CompletableFuture<Void> publish(final byte[] mesgToEnqueue) throws IOException, TimeoutException {
+        return publish(mesgToEnqueue, Long.MAX_VALUE);
+    }
+
+    /**
+     * Sends all the messages in the batch in a single frame. They are written to the queue(s) in one transaction and
+     * acknowledged together. A batch takes up one slot in the window of in flight messages.
+     *
+     * @param batch messages to publish
+     * @param timeout max milliseconds to wait for room in the window
+     * @return future completed when the server acknowledges the whole batch
+     * @throws IOException
+     * @throws TimeoutException if there was no room in the window within timeout
+     */
+    public CompletableFuture<Void> publish(final BatchFrame batch, final long timeout)
+            throws IOException, TimeoutException {
+        return send((remote, seq) -> remote.sendString(batch.format(seq)), batch.size(), timeout);
+    }
+
+    public CompletableFuture<Void> publish(final BatchFrame batch) throws IOException, TimeoutException {
+        return publish(batch, Long.MAX_VALUE);
+    }
+
+    /**
+     * Asks the server for credits. Messages are sent only against credits from then on.
+     */
+    synchronized void requestCredits() throws IOException {
+        creditMode = true;
+        getQueueConnection().getRemote().sendString(Command.CREDIT.toString());
+    }
+
+    synchronized private CompletableFuture<Void> send(final FrameWriter frame, final int count, final long timeout)
+            throws IOException, TimeoutException {
         try {
-            if (this.message == null) {
-                getQueueConnection().getRemote().sendString(mesgToEnqueue);
-                wait(timeout);
+            final long deadline = (timeout == Long.MAX_VALUE) ? Long.MAX_VALUE : System.currentTimeMillis() + timeout;
+            while ((inFlight.size() >= windowSize) || !hasCredits(count)) {
+                final long waitFor = (deadline == Long.MAX_VALUE) ? 0 : deadline - System.currentTimeMillis();
+                if (deadline != Long.MAX_VALUE && waitFor <= 0) {
+                    throw new TimeoutException((inFlight.size() >= windowSize) ?
+                            "Client side timeout. Too many messages awaiting acknowledgement from the server!" :
+                            "Client side timeout. Server has not granted credits to send the message!");
+                }
+                wait(waitFor);
             }
+        } catch (InterruptedException ex) {
+            logger.info("Client side interruption");
+            throw new TimeoutException("Client side interruption");
+        }
+
+        final long seq = ++nextSeq;
+        final CompletableFuture<Void> ack = new CompletableFuture<>();
+        inFlight.put(seq, ack);
+        // Server uses up as many credits as there are, same as here
+        credits = Math.max(0, credits - count);
+        try {
+            // Sent while holding the lock so that frames leave in the order of their sequence numbers
+            frame.write(getQueueConnection().getRemote(), seq);
+        } catch (IOException ex) {
+            inFlight.remove(seq);
+            throw ex;
+        }
+        return ack;
+    }
+
+    public CompletableFuture<Void> publish(final String mesgToEnqueue) throws IOException, TimeoutException {
+        return publish(mesgToEnqueue, Long.MAX_VALUE);
+    }
+
+    public void writeMessage(final String mesgToEnqueue, long timeout) throws IOException, TimeoutException, IllegalStateException {
+        await(publish(mesgToEnqueue, timeout), timeout);
+    }
+
+    public void writeMessage(final String message) throws IOException, TimeoutException {
+        writeMessage(message, Long.MAX_VALUE);
+    }
+
+    public void writeMessage(final byte[] mesgToEnqueue, long timeout) throws IOException, TimeoutException, IllegalStateException {
+        await(publish(mesgToEnqueue, timeout), timeout);
+    }
 
-            if (this.message == null) {
-                throw new TimeoutException("Client side timeout. Server may still be busy writing this message " +
-                        "and may not accept new messages till it is done!");
+    public void writeMessage(final byte[] message) throws IOException, TimeoutException {
+        writeMessage(message, Long.MAX_VALUE);
+    }
+
+    /**
+     * Publishes the batch and blocks till the server acknowledges it
+     */
+    public void writeBatch(final BatchFrame batch, long timeout) throws IOException, TimeoutException, IllegalStateException {
+        await(publish(batch, timeout), timeout);
+    }
+
+    public void writeBatch(final BatchFrame batch) throws IOException, TimeoutException {
+        writeBatch(batch, Long.MAX_VALUE);
+    }
+
+    private void await(final CompletableFuture<Void> ack, final long timeout) throws IOException, TimeoutException {
+        try {
+            ack.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            throw new TimeoutException("Client side timeout. Server may still be busy writing this message!");
+        } catch (InterruptedException ex) {
+            logger.info("Client side interruption");
+            throw new TimeoutException("Client side interruption");
+        } catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
             }
-            if (Status.OK.toString().equals(this.message)) {
-                return; // write successful, OK to write new message
+            if (cause instanceof TimeoutException) {
+                throw (TimeoutException) cause;
             }
-            if (Status.BUSY.toString().equals(this.message)) {
-                throw new IllegalStateException("Attempt to write a new message before ACK for the previous message was received.");
+            if (cause instanceof IllegalStateException) {
+                throw (IllegalStateException) cause;
             }
-            if (Status.TIMEOUT.toString().equals(message)) {
-                throw new TimeoutException("Server side timeout");
+            throw new IOException(cause);
+        }
+    }
+
+    private boolean hasCredits(final int count) {
+        return !creditMode || ((credits > 0) && (credits >= Math.min(count, maxCredits)));
+    }
+
+    /**
+     * @return number of credits left, meaningful only once credits are requested
+     */
+    synchronized public int getCredits() {
+        return credits;
+    }
+
+    /**
+     * @return number of messages sent but not yet acknowledged by the server
+     */
+    synchronized public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    @Override
+    synchronized public void accept(final String status) {
+        final Long seq = parseSeq(status);
+        if (Status.CREDIT.matches(status)) {
+            if (seq != null) {
+                credits += seq.intValue();
+                maxCredits = Math.max(maxCredits, credits);
             }
-            if (Status.CLOSE.toString().equals(message)) {
-                throw new EOFException("Server closed connection");
+        } else if (Status.OK.matches(status)) {
+            if (seq != null) {
+                // Cumulative acknowledgement
+                final Map<Long, CompletableFuture<Void>> acked = inFlight.headMap(seq, true);
+                acked.values().forEach(ack -> ack.complete(null));
+                acked.clear();
+            } else if (!inFlight.isEmpty()) {
+                inFlight.pollFirstEntry().getValue().complete(null);
             }
-            if (Status.ERROR.toString().equals(message)) {
-                throw new IOException("Server I/O error");
+        } else if (seq != null) {
+            final CompletableFuture<Void> ack = inFlight.remove(seq);
+            if (ack != null) {
+                ack.completeExceptionally(toException(status));
             }
-        } catch (InterruptedException ex) {
-            logger.info("Client side interruption");
-            throw new TimeoutException("Client side interruption");
-        } finally {
-            this.message = null;
+        } else {
+            // Connection level failure, fail everything in flight
+            final Exception ex = toException(status);
+            inFlight.values().forEach(ack -> ack.completeExceptionally(ex));
+            inFlight.clear();
         }
+        notifyAll();
     }
 
-    public void writeMessage(final String message) throws IOException, TimeoutException {
-        writeMessage(message, Long.MAX_VALUE);
+    private static Long parseSeq(final String status) {
+        try {
+            return Status.parseSeq(status);
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    private static Exception toException(final String status) {
+        if (Status.BUSY.matches(status)) {
+            return new IllegalStateException("Attempt to write a new message beyond the window of messages " +
+                    "the server allows in flight.");
+        }
+        if (Status.TIMEOUT.matches(status)) {
+            return new TimeoutException("Server side timeout");
+        }
+        if (Status.CLOSE.matches(status)) {
+            return new EOFException("Server closed connection");
+        }
+        return new IOException("Server I/O error");
+    }
+
+
+    /**
+     * Writes the frame tagged with the given sequence number
+     */
+    @FunctionalInterface
+    private interface FrameWriter {
+        void write(RemoteEndpoint remote, long seq) throws IOException;
     }
 
 }
@@ -16,6 +16,14 @@ public interface TopicSubscriber {
     }
 
     void onMessage(String message);
+
+    /**
+     * Called for a binary message. Subscribers of topics carrying binary messages must override it
+     */
+    default void onMessage(BinaryMessage message) {
+        s_logger.warn("Binary message {} ignored by subscriber", message.getId());
+    }
+
     void onError(Throwable t);
     void onClose();
 }
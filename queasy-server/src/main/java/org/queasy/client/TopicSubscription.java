@@ -38,6 +38,11 @@ public final class TopicSubscription extends WebSocketAdapter {
         }
     }
 
+    @Override
+    public void onWebSocketBinary(final byte[] payload, final int offset, final int len) {
+        topicSubscriber.onMessage(BinaryMessage.parse(payload, offset, len));
+    }
+
     @Override
     public void onWebSocketClose(final int statusCode, final String reason) {
         topicSubscriber.onClose();
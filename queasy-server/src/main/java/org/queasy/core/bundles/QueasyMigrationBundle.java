@@ -2,21 +2,49 @@ package org.queasy.core.bundles;
 
 import io.dropwizard.db.PooledDataSourceFactory;
 import io.dropwizard.migrations.MigrationsBundle;
+import liquibase.Contexts;
+import liquibase.Liquibase;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.resource.ClassLoaderResourceAccessor;
 import org.queasy.ServerConfiguration;
 
+import java.sql.Connection;
+
 /**
  * @author saroskar
  * Created on: 2021-03-22
  */
 public class QueasyMigrationBundle extends MigrationsBundle<ServerConfiguration> {
 
+    public static final String MIGRATIONS_FILE = "queue_schema.yml";
+
     @Override
     public PooledDataSourceFactory getDataSourceFactory(ServerConfiguration serverConfiguration) {
         return serverConfiguration.getDatabase();
     }
     @Override
     public String getMigrationsFileName() {
-        return "queue_schema.yml";
+        return MIGRATIONS_FILE;
+    }
+
+    /**
+     * Brings the schema of a database up to date. The "db migrate" command only knows about the configured database;
+     * the server migrates the file of every write shard, shard 0 included, itself at startup.
+     */
+    public static void migrate(final Connection conn) throws Exception {
+        final boolean autoCommit = conn.getAutoCommit();
+        try {
+            final Database database = DatabaseFactory.getInstance()
+                    .findCorrectDatabaseImplementation(new JdbcConnection(conn));
+            final Liquibase liquibase = new Liquibase(MIGRATIONS_FILE,
+                    new ClassLoaderResourceAccessor(QueasyMigrationBundle.class.getClassLoader()), database);
+            liquibase.update(new Contexts());
+        } finally {
+            // Liquibase leaves auto-commit off
+            conn.setAutoCommit(autoCommit);
+        }
     }
 
 }
@@ -1,8 +1,12 @@
 package org.queasy.core.bundles;
 
-import com.github.benmanes.caffeine.cache.Cache;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Sets;
 import io.dropwizard.ConfiguredBundle;
+import io.dropwizard.db.DataSourceFactory;
 import io.dropwizard.jdbi3.JdbiFactory;
 import io.dropwizard.setup.Bootstrap;
 import io.dropwizard.setup.Environment;
@@ -12,23 +16,60 @@ import org.eclipse.jetty.websocket.server.WebSocketUpgradeFilter;
 import org.jdbi.v3.core.Jdbi;
 import org.queasy.ServerConfiguration;
 import org.queasy.core.config.CacheConfiguration;
+import org.queasy.core.config.CompressionConfiguration;
 import org.queasy.core.config.ConsumerGroupConfiguration;
+import org.queasy.core.config.LogConfiguration;
 import org.queasy.core.config.TopicConfiguration;
 import org.queasy.core.config.WebSocketConfiguration;
 import org.queasy.core.config.WriterConfiguration;
+import org.queasy.core.managed.CommitSignals;
 import org.queasy.core.managed.ConsumerGroup;
+import org.queasy.core.managed.DispatchSignal;
+import org.queasy.core.managed.EphemeralQueue;
+import org.queasy.core.managed.EphemeralReader;
 import org.queasy.core.managed.QueueWriter;
+import org.queasy.core.managed.ShardRouter;
 import org.queasy.core.managed.Topic;
+import org.queasy.core.managed.WalCheckpointer;
 import org.queasy.core.network.ConsumerGroupWebSocketCreator;
 import org.queasy.core.network.ProducerWebSocketCreator;
+import org.queasy.core.network.QueryPlanServlet;
 import org.queasy.core.network.TopicSubscriptionWebSocketCreator;
 import org.queasy.core.util.Snowflake;
+import org.queasy.db.CompiledQuery;
+import org.queasy.db.MessageReader;
+import org.queasy.db.MessageStore;
+import org.queasy.db.PayloadCodec;
 import org.queasy.db.QDbReader;
 import org.queasy.db.QDbWriter;
+import org.queasy.db.QueryAnalyzer;
+import org.queasy.db.ScanningMessageStore;
+import org.queasy.db.Shard;
+import org.queasy.db.SharedScan;
+import org.queasy.db.SqliteProfile;
+import org.queasy.db.cache.HeapMessageCache;
+import org.queasy.db.cache.MessageCache;
+import org.queasy.db.cache.OffHeapMessageCache;
+import org.queasy.db.log.SegmentedLog;
+import org.queasy.db.store.H2MessageStore;
+import org.queasy.db.store.LogMessageStore;
+import org.queasy.db.store.MemoryMessageStore;
+import org.queasy.db.store.QueryPlanAnalyzer;
+import org.queasy.db.store.SqliteMessageStore;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * @author saroskar
@@ -39,6 +80,7 @@ public class QueasyServerBundle implements ConfiguredBundle<ServerConfiguration>
     public static final String PUBLISH_PATH = "publish";
     public static final String DEQUEUE_PATH = "dequeue";
     public static final String SUBSCRIBE_PATH = "subscribe";
+    public static final String QUERY_PLANS_PATH = "query-plans";
 
     @Override
     public void initialize(Bootstrap<?> bootstrap) {
@@ -48,15 +90,49 @@ public class QueasyServerBundle implements ConfiguredBundle<ServerConfiguration>
     public void run(ServerConfiguration config, Environment env) throws Exception {
         final WriterConfiguration writerConfig = config.getWriterConfiguration();
 
+        final SqliteProfile sqliteProfile = new SqliteProfile(config.getSqlite());
         final JdbiFactory jdbiFactory = new JdbiFactory();
-        final Jdbi jdbi = jdbiFactory.build(env, config.getDatabase(), writerConfig.getTableName());
 
-        final Snowflake idGenerator = new Snowflake(config.getHostId());
+        // WAL checkpoints run in the background rather than inline in commits
+        final ScheduledExecutorService checkpointPool = env.lifecycle()
+                .scheduledExecutorService("wal-checkpointer-%s")
+                .threads(1)
+                .build();
 
-        final QDbWriter qDbWriter = new QDbWriter(idGenerator, jdbi, writerConfig);
+        // Write shards, each with its own store, writer thread and Snowflake node id
+        final int shardCount = config.getShards();
+        final List<Shard> shards = new ArrayList<>(shardCount);
+        final QueueWriter[] queueWriters = new QueueWriter[shardCount];
+        final CommitSignals[] commitSignals = new CommitSignals[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            final Shard shard = openShard(config, env, i, sqliteProfile, jdbiFactory, checkpointPool);
+            queueWriters[i] = new QueueWriter(writerConfig, shard.getQDbWriter());
+            commitSignals[i] = new CommitSignals();
+            shard.getQDbWriter().addBatchListener(commitSignals[i]);
+            env.lifecycle().manage(queueWriters[i]);
+            shards.add(shard);
+        }
+        // Ephemeral queues share shard 0's id generator, so that their ids never clash with the ones written
+        final Map<String, EphemeralQueue> ephemeralQueues = new HashMap<>();
+        if (config.getQueues() != null) {
+            config.getQueues().forEach((qName, qConfig) -> {
+                if (qConfig.isEphemeral()) {
+                    ephemeralQueues.put(qName, new EphemeralQueue(qName, qConfig.getEphemeralCapacity(),
+                            shards.get(0).getQDbWriter().getIdGenerator()));
+                }
+            });
+        }
+        final ShardRouter router = new ShardRouter(ephemeralQueues, queueWriters);
+        final Set<String> compressedQueues = compressedQueues(config);
 
-        final QueueWriter queueWriter = new QueueWriter(writerConfig, qDbWriter);
-        env.lifecycle().manage(queueWriter);
+        // Query plans of the consumer groups and topics reading SQLite shards
+        final Map<Integer, QueryPlanAnalyzer> analyzers = new LinkedHashMap<>();
+        shards.forEach(shard -> {
+            if (shard.getStore() instanceof SqliteMessageStore) {
+                analyzers.put(shard.getId(), new QueryPlanAnalyzer((SqliteMessageStore) shard.getStore(),
+                        shard.getId()));
+            }
+        });
 
         //Thread pool to handle consumer groups
         final ScheduledExecutorService dispatchPool = env.lifecycle()
@@ -65,6 +141,7 @@ public class QueasyServerBundle implements ConfiguredBundle<ServerConfiguration>
                 .shutdownTime(config.getShutdownGracePeriod())
                 .build();
 
+        // Consumer groups and topics are run as soon as there is something for them to do, polled as a fallback
         final long pollInterval = config.getNewMessagePollInterval().toMilliseconds();
 
         final ServletContextHandler servletCtxHandler = env.getApplicationContext();
@@ -74,9 +151,11 @@ public class QueasyServerBundle implements ConfiguredBundle<ServerConfiguration>
         final WebSocketConfiguration wsConfig = config.getWebSocketConfiguration();
         wsConfig.configureWebSocketPolicy(nativeWebSocketConfiguration.getPolicy());
         nativeWebSocketConfiguration.addMapping(String.format("/%s/*", PUBLISH_PATH),
-                new ProducerWebSocketCreator(wsConfig.getOrigin(), config.getMaxConnections(), queueWriter));
+                new ProducerWebSocketCreator(wsConfig.getOrigin(), config.getMaxConnections(), router,
+                        writerConfig.getProducerWindowSize(), writerConfig.isDurableAcks(),
+                        writerConfig.getProducerCredits()));
 
-        final Cache<Long, String> messageCache = buildMessagesCache(config.getCacheConfiguration());
+        final MessageCache messageCache = buildMessagesCache(config.getCacheConfiguration(), env.metrics());
 
         // Set up consumer groups WebSocket handlers
         final Map<String, ConsumerGroupConfiguration> cgConfigs = config.getConsumerGroups();
@@ -84,8 +163,17 @@ public class QueasyServerBundle implements ConfiguredBundle<ServerConfiguration>
             for (Map.Entry<String, ConsumerGroupConfiguration> cg : cgConfigs.entrySet()) {
                 final String cgName = cg.getKey();
                 final ConsumerGroupConfiguration cgConfig = cg.getValue();
-                final QDbReader qDbReader = new QDbReader(qDbWriter, jdbi, writerConfig, cgName, cgConfig, messageCache);
-                final ConsumerGroup consumerGroup = new ConsumerGroup(qDbReader);
+                checkCompressedQueues(cgName, cgConfig, compressedQueues);
+                final List<EphemeralQueue> cgEphemeralQueues = ephemeralQueuesFor(cgName, cgConfig, ephemeralQueues);
+                final List<Shard> cgShards = shardsFor(cgConfig, shards);
+                final MessageReader reader = (cgEphemeralQueues != null) ?
+                        ephemeralReader(cgName, cgConfig, cgEphemeralQueues, env.metrics()) :
+                        new QDbReader(cgShards, writerConfig, cgName, cgConfig, messageCache);
+                final ConsumerGroup consumerGroup = new ConsumerGroup(reader);
+                final DispatchSignal signal = new DispatchSignal(consumerGroup, dispatchPool);
+                consumerGroup.setWaitListener(signal::signal);
+                signalOnNewMessages(cgConfig, signal, cgEphemeralQueues, cgShards, commitSignals);
+                addQuery(cgName, cgConfig, cgEphemeralQueues, cgShards, analyzers);
                 nativeWebSocketConfiguration.addMapping(String.format("/%s/%s", DEQUEUE_PATH, cgName),
                         new ConsumerGroupWebSocketCreator(wsConfig.getOrigin(), config.getMaxConnections(), consumerGroup));
                 env.lifecycle().manage(consumerGroup);
@@ -99,8 +187,18 @@ public class QueasyServerBundle implements ConfiguredBundle<ServerConfiguration>
             for (Map.Entry<String, TopicConfiguration> tpc : topicConfigs.entrySet()) {
                 final String topicName = tpc.getKey();
                 final TopicConfiguration tpcConfig = tpc.getValue();
-                final QDbReader qDbReader = new QDbReader(qDbWriter, jdbi, writerConfig, topicName, tpcConfig, messageCache);
-                final Topic topic = new Topic(tpcConfig, qDbReader);
+                checkCompressedQueues(topicName, tpcConfig, compressedQueues);
+                final List<EphemeralQueue> tpcEphemeralQueues = ephemeralQueuesFor(topicName, tpcConfig,
+                        ephemeralQueues);
+                final List<Shard> tpcShards = shardsFor(tpcConfig, shards);
+                final MessageReader reader = (tpcEphemeralQueues != null) ?
+                        ephemeralReader(topicName, tpcConfig, tpcEphemeralQueues, env.metrics()) :
+                        new QDbReader(tpcShards, writerConfig, topicName, tpcConfig, messageCache);
+                final Topic topic = new Topic(tpcConfig, reader);
+                final DispatchSignal signal = new DispatchSignal(topic, dispatchPool);
+                topic.setWaitListener(signal::signal);
+                signalOnNewMessages(tpcConfig, signal, tpcEphemeralQueues, tpcShards, commitSignals);
+                addQuery(topicName, tpcConfig, tpcEphemeralQueues, tpcShards, analyzers);
                 nativeWebSocketConfiguration.addMapping(String.format("/%s/%s", SUBSCRIBE_PATH, topicName),
                         new TopicSubscriptionWebSocketCreator(wsConfig.getOrigin(), config.getMaxConnections(), topic));
                 env.lifecycle().manage(topic);
@@ -108,15 +206,204 @@ public class QueasyServerBundle implements ConfiguredBundle<ServerConfiguration>
             }
         }
 
+        for (QueryPlanAnalyzer analyzer : analyzers.values()) {
+            if (config.getSqlite().isQueryIndexes()) {
+                analyzer.maintainIndexes();
+            }
+            analyzer.report();
+        }
+        if (!analyzers.isEmpty()) {
+            env.admin().addServlet("query-plans",
+                    new QueryPlanServlet(new ArrayList<>(analyzers.values()), env.getObjectMapper()))
+                    .addMapping("/" + QUERY_PLANS_PATH);
+        }
+    }
+
+    /**
+     * Opens the store of a write shard, with the storage engine configured, and sets up its writer
+     */
+    private Shard openShard(final ServerConfiguration config, final Environment env, final int i,
+                            final SqliteProfile sqliteProfile, final JdbiFactory jdbiFactory,
+                            final ScheduledExecutorService checkpointPool) throws Exception {
+        final WriterConfiguration writerConfig = config.getWriterConfiguration();
+        final int shardCount = config.getShards();
+        final MessageStore store;
+        final PayloadCodec codec;
+        switch (config.getStorageEngine()) {
+            case H2: {
+                final H2MessageStore h2Store = H2MessageStore.open(config.getH2(), i, writerConfig.getTableName());
+                store = h2Store;
+                codec = new PayloadCodec(config.getQueues(), h2Store.getJdbi());
+                break;
+            }
+            case MEMORY:
+                store = new MemoryMessageStore();
+                codec = new PayloadCodec(null, null);
+                break;
+            default: {
+                // A SQLite file per shard, which holds checkpoints and dictionaries alone with the LOG engine
+                final DataSourceFactory database = sqliteProfile.shardDataSource(config.getDatabase(), i);
+                sqliteProfile.initialize(database);
+                sqliteProfile.configure(database);
+                final String name = (shardCount > 1) ?
+                        writerConfig.getTableName() + "-" + i : writerConfig.getTableName();
+
+                final Jdbi jdbi = jdbiFactory.build(env, database, name);
+                // Shard 0 too, the store reads the layout of the latest schema as it opens
+                jdbi.useHandle(handle -> QueasyMigrationBundle.migrate(handle.getConnection()));
+                final Jdbi readJdbi = jdbiFactory.build(env, sqliteProfile.readerDataSource(database),
+                        name + "-reader");
+                codec = new PayloadCodec(config.getQueues(), readJdbi);
+                store = (config.getStorageEngine() == ServerConfiguration.StorageEngine.LOG) ?
+                        new LogMessageStore(SegmentedLog.open(logDirectory(config.getSegmentedLog(), i),
+                                config.getSegmentedLog()), jdbi) :
+                        new SqliteMessageStore(sqliteProfile.writerJdbi(database), jdbi, readJdbi,
+                                writerConfig.getTableName());
+
+                final long checkpointInterval = config.getSqlite().getCheckpointInterval().toMilliseconds();
+                final WalCheckpointer checkpointer = new WalCheckpointer(jdbi,
+                        config.getSqlite().getWalSizeLimit().toBytes());
+                checkpointPool.scheduleWithFixedDelay(checkpointer, checkpointInterval, checkpointInterval,
+                        TimeUnit.MILLISECONDS);
+            }
+        }
+
+        final Snowflake idGenerator = new Snowflake(Snowflake.nodeId(config.getHostId(), shardCount, i));
+        final QDbWriter qDbWriter = new QDbWriter(idGenerator, store, writerConfig, env.metrics(),
+                (shardCount > 1) ? "shard-" + i : null, codec);
+        // The MEMORY engine holds messages in memory already
+        final boolean scannable = (store instanceof ScanningMessageStore) &&
+                (config.getStorageEngine() != ServerConfiguration.StorageEngine.MEMORY);
+        final SharedScan sharedScan = (scannable && (writerConfig.getSharedScanSize() > 0)) ?
+                new SharedScan((ScanningMessageStore) store, writerConfig.getSharedScanSize()) : null;
+        return new Shard(i, qDbWriter, store, codec, sharedScan);
+    }
+
+    private static File logDirectory(final LogConfiguration logConfig, final int shard) {
+        final File directory = new File(logConfig.getDirectory());
+        return (shard == 0) ? directory : new File(directory, "shard-" + shard);
     }
 
-    private Cache<Long, String> buildMessagesCache(final CacheConfiguration cacheConfig) {
-        return (cacheConfig.isEnabled()) ?
-                Caffeine.newBuilder()
+    /**
+     * @return shards holding the queues the consumer group query can match
+     */
+    private List<Shard> shardsFor(final ConsumerGroupConfiguration cgConfig, final List<Shard> shards) {
+        final Set<String> qNames = CompiledQuery.of(cgConfig).getQueueNames();
+        if (qNames == null) {
+            return shards;
+        }
+        final Set<Integer> shardIds = qNames.stream()
+                .map(qName -> ShardRouter.shardFor(qName, shards.size()))
+                .collect(Collectors.toSet());
+        return shards.stream().filter(shard -> shardIds.contains(shard.getId())).collect(Collectors.toList());
+    }
+
+    /**
+     * @return ephemeral queues the consumer group query matches, null if it matches none of them
+     * @throws IllegalArgumentException if the query matches ephemeral queues along with others, or not by queue name
+     *                                  alone
+     */
+    private List<EphemeralQueue> ephemeralQueuesFor(final String cgName, final ConsumerGroupConfiguration cgConfig,
+                                                    final Map<String, EphemeralQueue> ephemeralQueues) {
+        final CompiledQuery query = CompiledQuery.of(cgConfig);
+        final Set<String> qNames = query.getQueueNames();
+        if ((qNames == null) || qNames.stream().noneMatch(ephemeralQueues::containsKey)) {
+            return null;
+        }
+        Preconditions.checkArgument(query.isExact() && ephemeralQueues.keySet().containsAll(qNames),
+                "%s must read ephemeral queues alone, by nothing but qname conditions: %s", cgName, query);
+        return qNames.stream().map(ephemeralQueues::get).collect(Collectors.toList());
+    }
+
+    /**
+     * @return names of the queues configured for compression
+     */
+    private static Set<String> compressedQueues(final ServerConfiguration config) {
+        final Set<String> qNames = new HashSet<>();
+        if (config.getQueues() != null) {
+            config.getQueues().forEach((qName, qConfig) -> {
+                final CompressionConfiguration compression = qConfig.getCompression();
+                if ((compression != null) && (compression.getCodec() != CompressionConfiguration.Codec.NONE)) {
+                    qNames.add(qName);
+                }
+            });
+        }
+        return qNames;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the query looks into the messages of a compressed queue, stored as BLOBs it
+     *                                  can't see into, or if it may match one without naming its queues
+     */
+    private static void checkCompressedQueues(final String cgName, final ConsumerGroupConfiguration cgConfig,
+                                              final Set<String> compressedQueues) {
+        final CompiledQuery query = CompiledQuery.of(cgConfig);
+        if (compressedQueues.isEmpty() || !QueryAnalyzer.readsMessage(query.getSql())) {
+            return;
+        }
+        final Set<String> qNames = query.getQueueNames();
+        Preconditions.checkArgument((qNames != null) && Collections.disjoint(qNames, compressedQueues),
+                "%s can not query mesg of the compressed queues %s: %s", cgName,
+                (qNames != null) ? Sets.intersection(qNames, compressedQueues) : compressedQueues, query);
+    }
+
+    private EphemeralReader ephemeralReader(final String cgName, final ConsumerGroupConfiguration cgConfig,
+                                            final List<EphemeralQueue> queues, final MetricRegistry metrics) {
+        final EphemeralReader reader = new EphemeralReader(queues, cgConfig);
+        metrics.gauge(MetricRegistry.name(EphemeralReader.class, cgName, "dropped"),
+                () -> (Gauge<Long>) reader::getDropped);
+        return reader;
+    }
+
+    /**
+     * Signals the consumer group or topic once messages are published to its ephemeral queues, or committed to a
+     * shard it reads from
+     */
+    private static void signalOnNewMessages(final ConsumerGroupConfiguration cgConfig, final DispatchSignal signal,
+                                            final List<EphemeralQueue> ephemeralQueues, final List<Shard> shards,
+                                            final CommitSignals[] commitSignals) {
+        if (ephemeralQueues != null) {
+            ephemeralQueues.forEach(queue -> queue.addListener(signal::signal));
+        } else {
+            final Set<String> qNames = CompiledQuery.of(cgConfig).getQueueNames();
+            shards.forEach(shard -> commitSignals[shard.getId()].add(qNames, signal));
+        }
+    }
+
+    /**
+     * Adds the query of a consumer group or topic to the analyzers of the SQLite shards it reads
+     */
+    private static void addQuery(final String name, final ConsumerGroupConfiguration cgConfig,
+                                 final List<EphemeralQueue> ephemeralQueues, final List<Shard> shards,
+                                 final Map<Integer, QueryPlanAnalyzer> analyzers) {
+        if (ephemeralQueues == null) {
+            shards.stream()
+                    .map(shard -> analyzers.get(shard.getId()))
+                    .filter(Objects::nonNull)
+                    .forEach(analyzer -> analyzer.add(name, CompiledQuery.of(cgConfig), cgConfig.getFetchBatchSize()));
+        }
+    }
+
+    private MessageCache buildMessagesCache(final CacheConfiguration cacheConfig, final MetricRegistry metrics) {
+        if (!cacheConfig.isEnabled()) {
+            return null;
+        }
+        final MessageCache cache = (cacheConfig.getType() == CacheConfiguration.Type.OFF_HEAP) ?
+                new OffHeapMessageCache(cacheConfig.getMaxBytes().toBytes(),
+                        Math.toIntExact(cacheConfig.getSlabSize().toBytes()), cacheConfig.getSegments()) :
+                new HeapMessageCache(Caffeine.newBuilder()
                         .initialCapacity(cacheConfig.getInitialCapacity())
                         .maximumSize(cacheConfig.getMaxSize())
                         .expireAfterWrite(cacheConfig.getExpireAfter().toMilliseconds(), TimeUnit.MILLISECONDS)
-                        .build() : null;
+                        .recordStats()
+                        .build());
+        metrics.register(MetricRegistry.name(MessageCache.class, "hit-rate"), (Gauge<Double>) cache::getHitRate);
+        metrics.register(MetricRegistry.name(MessageCache.class, "hits"), (Gauge<Long>) cache::getHitCount);
+        metrics.register(MetricRegistry.name(MessageCache.class, "misses"), (Gauge<Long>) cache::getMissCount);
+        metrics.register(MetricRegistry.name(MessageCache.class, "evictions"),
+                (Gauge<Long>) cache::getEvictionCount);
+        metrics.register(MetricRegistry.name(MessageCache.class, "bytes-used"), (Gauge<Long>) cache::getBytesUsed);
+        return cache;
     }
 
 }
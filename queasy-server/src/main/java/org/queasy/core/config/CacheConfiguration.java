@@ -1,20 +1,55 @@
 package org.queasy.core.config;
 
+import io.dropwizard.util.DataSize;
 import io.dropwizard.util.Duration;
 
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 
 /**
- * Configuration of the JVM-wide global Caffeine cache used to share message instances across different consumer
- * group in a manner similar to String.intern() but without permanent pinning them to PermGen like String.intern()
+ * Configuration of the JVM-wide global cache of messages read, shared across different consumer groups so that a
+ * message is decompressed and framed once. OFF_HEAP keeps encoded messages in direct buffers, bounded by maxBytes;
+ * HEAP keeps message instances in a Caffeine cache bounded by maxSize entries, shared in a manner similar to
+ * String.intern() but without permanent pinning them to PermGen like String.intern()
  *
  * @author saroskar
  * Created on: 2021-04-02
  */
 public class CacheConfiguration {
 
+    public enum Type {
+        OFF_HEAP,
+        HEAP
+    }
+
     private boolean enabled = true;
 
+    @NotNull
+    private Type type = Type.OFF_HEAP;
+
+    /**
+     * OFF_HEAP: direct memory taken by the cache, which -XX:MaxDirectMemorySize must allow for
+     */
+    @NotNull
+    private DataSize maxBytes = DataSize.mebibytes(64);
+
+    /**
+     * OFF_HEAP: direct memory allocated at a time, the largest message cached
+     */
+    @NotNull
+    private DataSize slabSize = DataSize.mebibytes(1);
+
+    /**
+     * OFF_HEAP: parts of the cache locked independently of one another, each with maxBytes / segments bytes
+     */
+    @Min(1)
+    @Max(1024)
+    private int segments = 8;
+
+    /**
+     * HEAP, as are maxSize and expireAfter
+     */
     @NotNull
     private int initialCapacity = 1024 * 4;
 
@@ -33,6 +68,38 @@ public class CacheConfiguration {
         this.enabled = enabled;
     }
 
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public DataSize getMaxBytes() {
+        return maxBytes;
+    }
+
+    public void setMaxBytes(DataSize maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public DataSize getSlabSize() {
+        return slabSize;
+    }
+
+    public void setSlabSize(DataSize slabSize) {
+        this.slabSize = slabSize;
+    }
+
+    public int getSegments() {
+        return segments;
+    }
+
+    public void setSegments(int segments) {
+        this.segments = segments;
+    }
+
     public int getInitialCapacity() {
         return initialCapacity;
     }
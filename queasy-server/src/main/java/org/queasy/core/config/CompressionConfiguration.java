@@ -0,0 +1,104 @@
+package org.queasy.core.config;
+
+import io.dropwizard.util.DataSize;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * How the messages of a queue are compressed in storage. Messages are decompressed as they are read, consumers always
+ * get them as they were published.
+ *
+ * Created on: 2026-10-18
+ */
+public class CompressionConfiguration {
+
+    public enum Codec {
+        NONE,
+        DEFLATE
+    }
+
+    @NotNull
+    private Codec codec = Codec.DEFLATE;
+
+    /**
+     * Messages smaller than this are stored as they are
+     */
+    @NotNull
+    private DataSize threshold = DataSize.bytes(256);
+
+    /**
+     * Deflate level, 1 (fastest) to 9 (smallest)
+     */
+    @Min(1)
+    @Max(9)
+    private int level = 6;
+
+    /**
+     * Train a preset dictionary from sampled messages of the queue. Small, similar messages, e.g. JSON documents of the
+     * same schema, compress several times better with one
+     */
+    private boolean dictionary = false;
+
+    /**
+     * Number of messages sampled to train the dictionary
+     */
+    @Min(1)
+    private int dictionarySamples = 1000;
+
+    /**
+     * Size of the dictionary, Deflate makes use of 32KiB at most
+     */
+    @NotNull
+    private DataSize dictionarySize = DataSize.kibibytes(32);
+
+
+    public Codec getCodec() {
+        return codec;
+    }
+
+    public void setCodec(Codec codec) {
+        this.codec = codec;
+    }
+
+    public DataSize getThreshold() {
+        return threshold;
+    }
+
+    public void setThreshold(DataSize threshold) {
+        this.threshold = threshold;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public void setLevel(int level) {
+        this.level = level;
+    }
+
+    public boolean isDictionary() {
+        return dictionary;
+    }
+
+    public void setDictionary(boolean dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    public int getDictionarySamples() {
+        return dictionarySamples;
+    }
+
+    public void setDictionarySamples(int dictionarySamples) {
+        this.dictionarySamples = dictionarySamples;
+    }
+
+    public DataSize getDictionarySize() {
+        return dictionarySize;
+    }
+
+    public void setDictionarySize(DataSize dictionarySize) {
+        this.dictionarySize = dictionarySize;
+    }
+}
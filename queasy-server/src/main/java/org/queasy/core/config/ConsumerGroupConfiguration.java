@@ -1,6 +1,9 @@
 package org.queasy.core.config;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import io.dropwizard.util.Duration;
+import io.dropwizard.validation.ValidationMethod;
+import org.queasy.db.MessageFilter;
 
 import javax.validation.constraints.NotNull;
 
@@ -12,11 +15,16 @@ public class ConsumerGroupConfiguration {
 
     /**
      * Query, in terms of the user defined message metadata fields (qname etc.), if any
-     * use standard SQL where clause syntax except the keyword "where"
+     * use standard SQL where clause syntax except the keyword "where". Either this or filter
      */
-    @NotNull
     private String query;
 
+    /**
+     * Structured filter on message metadata, which the in-memory stores and buffers can evaluate as well. Either this
+     * or query
+     */
+    private MessageFilter filter;
+
     /**
      * How many messages to select in a single batch or poll
      */
@@ -37,6 +45,20 @@ public class ConsumerGroupConfiguration {
         this.query = query;
     }
 
+    public MessageFilter getFilter() {
+        return filter;
+    }
+
+    public void setFilter(MessageFilter filter) {
+        this.filter = filter;
+    }
+
+    @JsonIgnore
+    @ValidationMethod(message = "must have either a query or a filter")
+    public boolean isQueryOrFilter() {
+        return (query == null) != (filter == null);
+    }
+
     public int getFetchBatchSize() {
         return fetchBatchSize;
     }
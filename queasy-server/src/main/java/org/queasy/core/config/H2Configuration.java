@@ -0,0 +1,43 @@
+package org.queasy.core.config;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * Embedded H2 storage engine. Every shard has a database of its own, in a file next to the first shard's.
+ *
+ * Created on: 2026-10-18
+ */
+public class H2Configuration {
+
+    /**
+     * Path of the database file of the first shard, without the ".mv.db" extension H2 adds. Every shard after the
+     * first has "-&lt;n&gt;" appended to it
+     */
+    @NotNull
+    private String path = "queasy-h2";
+
+    /**
+     * Maximum number of connections to every shard's database, shared by the writer, consumer groups and topics
+     */
+    @NotNull
+    @Min(2)
+    private int maxConnections = 32;
+
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+}
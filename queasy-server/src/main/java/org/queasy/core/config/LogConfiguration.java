@@ -0,0 +1,71 @@
+package org.queasy.core.config;
+
+import io.dropwizard.util.DataSize;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * Segmented log storage engine. Messages are appended to preallocated, memory mapped segment files; checkpoints and
+ * compression dictionaries stay in the shard's SQLite database.
+ *
+ * Created on: 2026-10-18
+ */
+public class LogConfiguration {
+
+    /**
+     * Directory of the segment files. Every shard after the first has a "shard-&lt;n&gt;" sub-directory of its own
+     */
+    @NotNull
+    private String directory = "queasy-log";
+
+    /**
+     * Size every segment file is preallocated to. A message must fit in one segment
+     */
+    @NotNull
+    private DataSize segmentSize = DataSize.mebibytes(128);
+
+    /**
+     * Bytes of a segment between two entries of its sparse id to offset index
+     */
+    @NotNull
+    private DataSize indexInterval = DataSize.kibibytes(4);
+
+    /**
+     * If true, the segment is forced to disk on every commit. Otherwise the OS writes it back in its own time, and an
+     * OS crash or power loss may lose the most recent commits
+     */
+    private boolean forceOnCommit;
+
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    public DataSize getSegmentSize() {
+        return segmentSize;
+    }
+
+    public void setSegmentSize(DataSize segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    public DataSize getIndexInterval() {
+        return indexInterval;
+    }
+
+    public void setIndexInterval(DataSize indexInterval) {
+        this.indexInterval = indexInterval;
+    }
+
+    public boolean isForceOnCommit() {
+        return forceOnCommit;
+    }
+
+    public void setForceOnCommit(boolean forceOnCommit) {
+        this.forceOnCommit = forceOnCommit;
+    }
+}
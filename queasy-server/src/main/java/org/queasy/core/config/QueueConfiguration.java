@@ -0,0 +1,56 @@
+package org.queasy.core.config;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+
+/**
+ * Settings of a single queue. Queues without settings of their own use the defaults.
+ *
+ * Created on: 2026-10-18
+ */
+public class QueueConfiguration {
+
+    /**
+     * Storage compression of the queue's messages, none if not set
+     */
+    @Valid
+    private CompressionConfiguration compression;
+
+    /**
+     * Messages of an ephemeral queue are never written to the DB. They are kept in a ring of the last
+     * ephemeralCapacity messages, in memory, which consumer groups and topics read from directly without ever saving
+     * a checkpoint. A consumer that falls further behind than that misses messages, and all of them are lost on
+     * restart.
+     */
+    private boolean ephemeral;
+
+    @Min(1)
+    @Max(1 << 30)
+    private int ephemeralCapacity = 4096;
+
+
+    public CompressionConfiguration getCompression() {
+        return compression;
+    }
+
+    public void setCompression(CompressionConfiguration compression) {
+        this.compression = compression;
+    }
+
+    public boolean isEphemeral() {
+        return ephemeral;
+    }
+
+    public void setEphemeral(boolean ephemeral) {
+        this.ephemeral = ephemeral;
+    }
+
+    public int getEphemeralCapacity() {
+        return ephemeralCapacity;
+    }
+
+    public void setEphemeralCapacity(int ephemeralCapacity) {
+        this.ephemeralCapacity = ephemeralCapacity;
+    }
+}
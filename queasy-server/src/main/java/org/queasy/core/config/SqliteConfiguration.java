@@ -0,0 +1,189 @@
+package org.queasy.core.config;
+
+import io.dropwizard.util.DataSize;
+import io.dropwizard.util.Duration;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * SQLite storage profile. The database is always in WAL mode, these settings are applied to every connection as it is
+ * opened.
+ *
+ * Created on: 2026-10-18
+ */
+public class SqliteConfiguration {
+
+    /**
+     * Named levels of SQLite's synchronous pragma, as they apply in WAL mode
+     */
+    public enum Durability {
+        /**
+         * Never fsync. Fastest, but an OS crash or power loss may corrupt the database
+         */
+        NONE("OFF"),
+        /**
+         * fsync only on WAL checkpoints. A power loss may roll back the most recent commits, but never corrupts the
+         * database
+         */
+        CHECKPOINT("NORMAL"),
+        /**
+         * fsync the WAL on every commit. Committed messages survive a power loss
+         */
+        COMMIT("FULL"),
+        /**
+         * Like COMMIT, and also fsync the directory when the WAL is reset
+         */
+        PARANOID("EXTRA");
+
+        private final String synchronous;
+
+        Durability(final String synchronous) {
+            this.synchronous = synchronous;
+        }
+
+        public String getSynchronous() {
+            return synchronous;
+        }
+    }
+
+    @NotNull
+    private Durability durability = Durability.COMMIT;
+
+    /**
+     * Maximum size of the memory mapped part of the database file, 0 to disable memory mapped I/O
+     */
+    @NotNull
+    private DataSize mmapSize = DataSize.mebibytes(256);
+
+    /**
+     * Page cache size of every connection
+     */
+    @NotNull
+    private DataSize cacheSize = DataSize.mebibytes(16);
+
+    /**
+     * Database page size. Only takes effect when the database file is created
+     */
+    @Min(512)
+    private int pageSize = 4096;
+
+    /**
+     * Number of WAL pages after which a committing connection checkpoints the WAL inline. 0, the default, leaves
+     * checkpoints to the background task alone
+     */
+    @Min(0)
+    private int walAutocheckpoint = 0;
+
+    /**
+     * Interval of the background WAL checkpoint task
+     */
+    @NotNull
+    private Duration checkpointInterval = Duration.seconds(5);
+
+    /**
+     * Size the WAL is kept to. The background task checkpoints a larger WAL in TRUNCATE mode, waiting for readers to
+     * move off it, rather than in PASSIVE mode, and a WAL reset by a writer is truncated to this size
+     */
+    @NotNull
+    private DataSize walSizeLimit = DataSize.mebibytes(64);
+
+    /**
+     * Time a connection waits for a lock held by another connection before failing with SQLITE_BUSY
+     */
+    @NotNull
+    private Duration busyTimeout = Duration.seconds(5);
+
+    /**
+     * Maximum number of connections in the read-only pool used to fetch messages for consumer groups and topics
+     */
+    @Min(1)
+    private int readerPoolSize = 32;
+
+    /**
+     * Keep partial indexes for the consumer group and topic queries that would otherwise scan every message after
+     * their checkpoint, created at startup. Indexing a large table takes a while
+     */
+    private boolean queryIndexes = false;
+
+
+    public Durability getDurability() {
+        return durability;
+    }
+
+    public void setDurability(Durability durability) {
+        this.durability = durability;
+    }
+
+    public DataSize getMmapSize() {
+        return mmapSize;
+    }
+
+    public void setMmapSize(DataSize mmapSize) {
+        this.mmapSize = mmapSize;
+    }
+
+    public DataSize getCacheSize() {
+        return cacheSize;
+    }
+
+    public void setCacheSize(DataSize cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    public int getWalAutocheckpoint() {
+        return walAutocheckpoint;
+    }
+
+    public void setWalAutocheckpoint(int walAutocheckpoint) {
+        this.walAutocheckpoint = walAutocheckpoint;
+    }
+
+    public Duration getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    public void setCheckpointInterval(Duration checkpointInterval) {
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    public DataSize getWalSizeLimit() {
+        return walSizeLimit;
+    }
+
+    public void setWalSizeLimit(DataSize walSizeLimit) {
+        this.walSizeLimit = walSizeLimit;
+    }
+
+    public Duration getBusyTimeout() {
+        return busyTimeout;
+    }
+
+    public void setBusyTimeout(Duration busyTimeout) {
+        this.busyTimeout = busyTimeout;
+    }
+
+    public int getReaderPoolSize() {
+        return readerPoolSize;
+    }
+
+    public void setReaderPoolSize(int readerPoolSize) {
+        this.readerPoolSize = readerPoolSize;
+    }
+
+    public boolean isQueryIndexes() {
+        return queryIndexes;
+    }
+
+    public void setQueryIndexes(boolean queryIndexes) {
+        this.queryIndexes = queryIndexes;
+    }
+}
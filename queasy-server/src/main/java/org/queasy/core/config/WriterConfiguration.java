@@ -2,6 +2,7 @@ package org.queasy.core.config;
 
 
 import io.dropwizard.util.Duration;
+import org.queasy.core.util.RingBuffer;
 
 import javax.validation.constraints.Max;
 import javax.validation.constraints.Min;
@@ -14,25 +15,50 @@ import javax.validation.constraints.NotNull;
 public class WriterConfiguration {
 
     /**
-     * Database table name where queue messages are persisted
+     * Database table name where queue messages are persisted. Must be queasy_q with SQLite, whose schema comes from
+     * the migrations
      */
     @NotNull
     private String tableName;
 
     /**
-     * Size of a ring buffer used to hold incoming messages
+     * Size of a ring buffer used to hold incoming messages. Rounded up to the next power of two
      */
     @NotNull
     @Min(64)
     private int ringBufferSize=1024;
 
     /**
-     * Insert batch size
+     * How the writer thread waits for new messages in the ring buffer: BLOCKING, YIELDING or BUSY_SPIN
+     */
+    @NotNull
+    private RingBuffer.WaitStrategy waitStrategy = RingBuffer.WaitStrategy.BLOCKING;
+
+    /**
+     * Insert batch size. Initial batch size if adaptiveBatchSize is on
      */
     @NotNull
     @Max(256)
     private int insertBatchSize=32;
 
+    /**
+     * If true, insert batch size is adjusted after every commit: grown while messages are piling up in the ring buffer
+     * and commits are fast, shrunk when commits take longer than targetCommitLatency
+     */
+    private boolean adaptiveBatchSize;
+
+    /**
+     * Upper limit on the insert batch size when adaptiveBatchSize is on
+     */
+    @Min(1)
+    private int maxAdaptiveBatchSize = 4096;
+
+    /**
+     * Commit latency adaptive batch sizing tries to stay under
+     */
+    @NotNull
+    private Duration targetCommitLatency = Duration.milliseconds(10);
+
     /**
      * Maximum number of messages to be retained in the DB for this queue.
      */
@@ -48,11 +74,55 @@ public class WriterConfiguration {
     private Duration maxRetention;
 
     /**
-     * Max time a write message operation will wait on the internal ring buffer, for space to become available in it,
-     * before returning TIMEOUT to the client
+     * How often the writer deletes messages past maxSize or maxRetention, between two batches
+     */
+    @NotNull
+    private Duration trimInterval = Duration.seconds(10);
+
+    /**
+     * Number of the last committed messages kept in memory, for readers caught up with the writer to read from rather
+     * than from the DB. 0 to turn it off, e.g. with the MEMORY storage engine
+     */
+    @Min(0)
+    @Max(1 << 30)
+    private int tailBufferSize = 8192;
+
+    /**
+     * Number of messages read from the DB at a time by the scan the consumer groups and topics of a shard share, when
+     * they read past the tail buffer. 0 for each to read on its own. Queries on queue names alone always read on their
+     * own, by queue. SQLITE and H2 storage engines alone
+     */
+    @Min(0)
+    @Max(1 << 20)
+    private int sharedScanSize = 4096;
+
+    /**
+     * Max time an embedded publish will wait on the internal ring buffer, for space to become available in it. Producer
+     * connections never wait, a message that does not fit is rejected with TIMEOUT right away
      */
     private Duration writeTimeout = Duration.seconds(1);
 
+    /**
+     * Maximum number of sequence number tagged messages a producer connection may have written but not yet
+     * acknowledged by the server. Messages beyond this window are rejected with BUSY
+     */
+    @NotNull
+    @Min(1)
+    private int producerWindowSize = 64;
+
+    /**
+     * Maximum number of credits a producer connection that asks for credits holds at a time, each one a slot reserved
+     * for it in the ring buffer
+     */
+    @NotNull
+    @Min(1)
+    private int producerCredits = 256;
+
+    /**
+     * If true, producers are acknowledged only after their messages are committed to the DB, all the producers with
+     * messages in a batch together. Otherwise they are acknowledged as soon as the messages are queued in memory
+     */
+    private boolean durableAcks;
 
 
     public String getTableName() {
@@ -72,6 +142,14 @@ public class WriterConfiguration {
         this.ringBufferSize = ringBufferSize;
     }
 
+    public RingBuffer.WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    public void setWaitStrategy(RingBuffer.WaitStrategy waitStrategy) {
+        this.waitStrategy = waitStrategy;
+    }
+
     public int getInsertBatchSize() {
         return insertBatchSize;
     }
@@ -88,6 +166,54 @@ public class WriterConfiguration {
         this.writeTimeout = writeTimeout;
     }
 
+    public int getProducerWindowSize() {
+        return producerWindowSize;
+    }
+
+    public void setProducerWindowSize(int producerWindowSize) {
+        this.producerWindowSize = producerWindowSize;
+    }
+
+    public int getProducerCredits() {
+        return producerCredits;
+    }
+
+    public void setProducerCredits(int producerCredits) {
+        this.producerCredits = producerCredits;
+    }
+
+    public boolean isDurableAcks() {
+        return durableAcks;
+    }
+
+    public void setDurableAcks(boolean durableAcks) {
+        this.durableAcks = durableAcks;
+    }
+
+    public boolean isAdaptiveBatchSize() {
+        return adaptiveBatchSize;
+    }
+
+    public void setAdaptiveBatchSize(boolean adaptiveBatchSize) {
+        this.adaptiveBatchSize = adaptiveBatchSize;
+    }
+
+    public int getMaxAdaptiveBatchSize() {
+        return maxAdaptiveBatchSize;
+    }
+
+    public void setMaxAdaptiveBatchSize(int maxAdaptiveBatchSize) {
+        this.maxAdaptiveBatchSize = maxAdaptiveBatchSize;
+    }
+
+    public Duration getTargetCommitLatency() {
+        return targetCommitLatency;
+    }
+
+    public void setTargetCommitLatency(Duration targetCommitLatency) {
+        this.targetCommitLatency = targetCommitLatency;
+    }
+
     public long getMaxSize() {
         return maxSize;
     }
@@ -96,6 +222,30 @@ public class WriterConfiguration {
         this.maxSize = maxSize;
     }
 
+    public Duration getTrimInterval() {
+        return trimInterval;
+    }
+
+    public void setTrimInterval(Duration trimInterval) {
+        this.trimInterval = trimInterval;
+    }
+
+    public int getTailBufferSize() {
+        return tailBufferSize;
+    }
+
+    public void setTailBufferSize(int tailBufferSize) {
+        this.tailBufferSize = tailBufferSize;
+    }
+
+    public int getSharedScanSize() {
+        return sharedScanSize;
+    }
+
+    public void setSharedScanSize(int sharedScanSize) {
+        this.sharedScanSize = sharedScanSize;
+    }
+
     public Duration getMaxRetention() {
         return maxRetention;
     }
@@ -0,0 +1,57 @@
+package org.queasy.core.managed;
+
+import org.queasy.db.MessageBatch;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Signals the consumer groups and topics reading a shard once its writer commits a batch, those whose queries can
+ * match a message of the batch alone. Called on the writer thread; every signal is added before the writer starts.
+ *
+ * Created on: 2026-10-18
+ */
+public final class CommitSignals implements Consumer<MessageBatch> {
+
+    // Signals of the queries that can match a queue, by queue name
+    private final Map<String, List<DispatchSignal>> byQueue = new HashMap<>();
+    // Signals of the queries that can match any queue
+    private final List<DispatchSignal> anyQueue = new ArrayList<>();
+
+
+    /**
+     * @param qNames the only queues the query can match, null if it may match any queue
+     */
+    public void add(final Set<String> qNames, final DispatchSignal signal) {
+        if (qNames == null) {
+            anyQueue.add(signal);
+        } else {
+            qNames.forEach(qName -> byQueue.computeIfAbsent(qName, k -> new ArrayList<>()).add(signal));
+        }
+    }
+
+    @Override
+    public void accept(final MessageBatch batch) {
+        anyQueue.forEach(DispatchSignal::signal);
+        if (byQueue.isEmpty()) {
+            return;
+        }
+        String lastQName = null;
+        for (int i = 0; i < batch.size(); i++) {
+            final String qName = batch.getQName(i);
+            // Runs of messages of the same queue are common, look the queue up once per run
+            if (!qName.equals(lastQName)) {
+                final List<DispatchSignal> signals = byQueue.get(qName);
+                if (signals != null) {
+                    signals.forEach(DispatchSignal::signal);
+                }
+                lastQName = qName;
+            }
+        }
+    }
+
+}
@@ -4,7 +4,8 @@ import com.google.common.annotations.VisibleForTesting;
 import io.dropwizard.lifecycle.Managed;
 import org.queasy.core.network.ConsumerConnection;
 import org.queasy.core.network.Status;
-import org.queasy.db.QDbReader;
+import org.queasy.db.Envelope;
+import org.queasy.db.MessageReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -12,6 +13,7 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
@@ -20,42 +22,74 @@ import java.util.stream.Collectors;
  */
 public class ConsumerGroup implements Managed, Runnable {
 
-    private final QDbReader qDbReader;
-    private final ArrayBlockingQueue<String> messages;
+    private final MessageReader reader;
+    private final ArrayBlockingQueue<Envelope> messages;
     private final LinkedBlockingQueue<ConsumerConnection> clients;
+    // Runs asked for, by the schedule or by a publish, and not made yet
+    private final AtomicInteger pendingRuns = new AtomicInteger();
+    // Told when a client starts waiting, for the group to be run right away
+    private volatile Runnable waitListener;
 
     private static final Logger logger = LoggerFactory.getLogger(ConsumerGroup.class);
 
 
-    public ConsumerGroup(final QDbReader qDbReader) {
-        this.qDbReader = qDbReader;
-        this.messages = new ArrayBlockingQueue<>(qDbReader.getFetchSize() + 1);
+    public ConsumerGroup(final MessageReader reader) {
+        this.reader = reader;
+        this.messages = new ArrayBlockingQueue<>(reader.getFetchSize() + 1);
         this.clients = new LinkedBlockingQueue<>();
     }
 
     @Override
     public void start() {
-        qDbReader.readLastCheckpoint();
+        reader.readLastCheckpoint();
     }
 
     @Override
     public void stop() {
-        qDbReader.saveCheckpoint();
+        reader.saveCheckpoint();
+    }
+
+    /**
+     * @param waitListener called, without blocking, every time a client is left waiting for a message
+     */
+    public void setWaitListener(final Runnable waitListener) {
+        this.waitListener = waitListener;
     }
 
     public boolean waitForMessage(final ConsumerConnection client)  {
-        final String message = messages.poll();
+        final Envelope message = messages.poll();
         if (message != null) {
             client.sendMessage(message);
             return true;
         } else {
             //add client to wait queue
             clients.offer(client);
+            final Runnable listener = waitListener;
+            if (listener != null) {
+                listener.run();
+            }
             return false;
         }
     }
 
+    /**
+     * Dispatches messages to waiting clients. Runs whenever new messages are committed or a client starts waiting,
+     * and on a slow schedule besides; one run at a time, a run asked for while one is going on is made by it once
+     * done
+     */
+    @Override
     public void run() {
+        if (pendingRuns.getAndIncrement() != 0) {
+            return;
+        }
+        int runs = 1;
+        do {
+            dispatch();
+            runs = pendingRuns.addAndGet(-runs);
+        } while (runs != 0);
+    }
+
+    private void dispatch() {
         while (true) {
             try {
                 final ConsumerConnection client = clients.poll();
@@ -63,13 +97,13 @@ public class ConsumerGroup implements Managed, Runnable {
                     break; //there are no clients waiting for messages, bail out
                 }
 
-                final String message = messages.poll();
+                final Envelope message = messages.poll();
                 if (message != null) {
                     client.sendMessage(message); // send the message to the client
                     continue; //next
                 }
 
-                if (client.isTimedOut(qDbReader.getTimeout())) {
+                if (client.isTimedOut(reader.getTimeout())) {
                     client.sendMessage(Status.TIMEOUT.toString());
                     continue;
                 }
@@ -77,8 +111,8 @@ public class ConsumerGroup implements Managed, Runnable {
                 // we have run out of fetched messages, add the client back to wait queue
                 clients.put(client);
 
-                //Try to load more messages from DB
-                if (!qDbReader.loadNextBatchOfMessages(messages)) {
+                //Try to load more messages
+                if (!reader.loadNextBatchOfMessages(messages)) {
                     //There are no more messages left, bail out
                     break;
                 }
@@ -97,14 +131,14 @@ public class ConsumerGroup implements Managed, Runnable {
     @VisibleForTesting
     ConsumerGroup(String... messages) {
         //Used exclusively for creating mocks in tests
-        this.qDbReader = null;
+        this.reader = null;
         this.messages = new ArrayBlockingQueue<>(messages.length+1);
-        this.messages.addAll(Arrays.asList(messages));
+        Arrays.stream(messages).map(Envelope::text).forEach(this.messages::add);
         this.clients = new LinkedBlockingQueue<>();
     }
 
     @VisibleForTesting
-    List<String> getMessages() {
+    List<Envelope> getMessages() {
         return messages.stream().collect(Collectors.toList());
     }
 
@@ -0,0 +1,47 @@
+package org.queasy.core.managed;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Has a dispatch pool run a consumer group or topic as soon as there is something for it to do: new messages, or a
+ * client waiting for one. No more than one run is queued up at a time, however many signals come in meanwhile; a
+ * signal that comes in while the run is going on queues up the next one.
+ *
+ * Created on: 2026-10-18
+ */
+public final class DispatchSignal {
+
+    private final Runnable dispatcher;
+    private final Executor dispatchPool;
+    private final AtomicBoolean queued = new AtomicBoolean();
+    private final Runnable dispatch;
+
+
+    public DispatchSignal(final Runnable dispatcher, final Executor dispatchPool) {
+        this.dispatcher = dispatcher;
+        this.dispatchPool = dispatchPool;
+        this.dispatch = this::dispatch;
+    }
+
+    /**
+     * Queues up a run of the dispatcher, unless one is queued up already. Never blocks
+     */
+    public void signal() {
+        if (queued.compareAndSet(false, true)) {
+            try {
+                dispatchPool.execute(dispatch);
+            } catch (RejectedExecutionException ex) {
+                // Shutting down, the dispatcher won't run again
+                queued.set(false);
+            }
+        }
+    }
+
+    private void dispatch() {
+        queued.set(false);
+        dispatcher.run();
+    }
+
+}
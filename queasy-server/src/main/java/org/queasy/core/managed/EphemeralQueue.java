@@ -0,0 +1,144 @@
+package org.queasy.core.managed;
+
+import org.queasy.core.util.RingBuffer;
+import org.queasy.core.util.Snowflake;
+import org.queasy.db.Envelope;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded ring of the last messages published to an ephemeral queue, kept in memory alone. Producers publish straight
+ * into it, bypassing the writer and the DB, and readers read from it directly. Messages are framed on publish, so that
+ * all the readers share the same instances.
+ * <p>
+ * Publishing takes a short lock; reading never does. A message overwritten by a newer one before a reader gets to it
+ * is missed by that reader, see {@link EphemeralReader}.
+ *
+ * Created on: 2026-10-18
+ */
+public final class EphemeralQueue {
+
+    private final String name;
+    private final Snowflake idGenerator;
+    private final AtomicReferenceArray<Entry> entries;
+    private final int mask;
+    // Called back once messages are published, to dispatch them right away
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+    // Sequence of the last message published, 0 if there is none
+    private volatile long published;
+
+
+    /**
+     * @param capacity    number of messages kept, rounded up to a power of two
+     * @param idGenerator issues the ids of the messages, may be shared with writers
+     */
+    public EphemeralQueue(final String name, final int capacity, final Snowflake idGenerator) {
+        this.name = name;
+        this.idGenerator = idGenerator;
+        this.entries = new AtomicReferenceArray<>(RingBuffer.capacityFor(capacity));
+        this.mask = entries.length() - 1;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getCapacity() {
+        return entries.length();
+    }
+
+    /**
+     * Registers a listener to be called back, on the publisher's thread, every time messages are published. It should
+     * not block
+     */
+    public void addListener(final Runnable listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Publishes a message, readers see it as soon as this returns
+     *
+     * @param message a String or a byte[]
+     */
+    public void publish(final Object message) {
+        append(message);
+        signal();
+    }
+
+    /**
+     * Publishes the messages of a unit of queue name and message pairs that belong to this queue
+     *
+     * @param message queue name and message pairs, {qName1, message1, qName2, message2...}
+     * @return number of messages published
+     */
+    public int publish(final Object[] message) {
+        int count = 0;
+        for (int i = 0; i < message.length; i += 2) {
+            if (name.equals(message[i])) {
+                append(message[i + 1]);
+                count++;
+            }
+        }
+        if (count > 0) {
+            signal();
+        }
+        return count;
+    }
+
+    private void append(final Object message) {
+        synchronized (this) {
+            final long seq = published + 1;
+            final long id = idGenerator.nextId();
+            entries.set((int) seq & mask, new Entry(seq, id, (message instanceof byte[]) ?
+                    Envelope.of(id, (byte[]) message) : Envelope.of(id, (String) message)));
+            published = seq;
+        }
+    }
+
+    private void signal() {
+        for (Runnable listener : listeners) {
+            listener.run();
+        }
+    }
+
+    /**
+     * @return sequence of the last message published, 0 if there is none. Sequences start at 1 and have no gaps
+     */
+    public long getPublished() {
+        return published;
+    }
+
+    /**
+     * @return id of the last message published, 0 if there is none
+     */
+    public long getLastId() {
+        final long seq = published;
+        final Entry entry = (seq > 0) ? entries.get((int) seq & mask) : null;
+        return (entry != null) ? entry.id : 0;
+    }
+
+    /**
+     * @return the message with the given sequence, null if it has been overwritten already
+     */
+    public Envelope get(final long seq) {
+        final Entry entry = entries.get((int) seq & mask);
+        return ((entry != null) && (entry.seq == seq)) ? entry.envelope : null;
+    }
+
+
+    private static final class Entry {
+        private final long seq;
+        private final long id;
+        private final Envelope envelope;
+
+        private Entry(final long seq, final long id, final Envelope envelope) {
+            this.seq = seq;
+            this.id = id;
+            this.envelope = envelope;
+        }
+    }
+
+}
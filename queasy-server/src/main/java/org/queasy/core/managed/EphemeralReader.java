@@ -0,0 +1,145 @@
+package org.queasy.core.managed;
+
+import com.google.common.base.Preconditions;
+import org.queasy.core.config.ConsumerGroupConfiguration;
+import org.queasy.db.Envelope;
+import org.queasy.db.MessageReader;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Reads the messages of a consumer group or topic straight from the rings of its ephemeral queues, in turn. The read
+ * position is kept in memory alone: a consumer group or topic starts from the newest messages every time, and never
+ * saves a checkpoint.
+ * <p>
+ * A reader that falls more than a ring's capacity behind skips the messages overwritten in the meantime, and counts
+ * them as dropped.
+ *
+ * Created on: 2026-10-18
+ */
+public class EphemeralReader implements MessageReader {
+
+    private final QueueCursor[] cursors;
+    private final int fetchSize;
+    private final long timeout;
+
+    private volatile long readBatchId;
+    private volatile long dropped;
+    private int nextCursor;
+
+
+    /**
+     * @param queues ephemeral queues matched by the consumer group query
+     */
+    public EphemeralReader(final List<EphemeralQueue> queues, final ConsumerGroupConfiguration cgConfig) {
+        Preconditions.checkArgument(!queues.isEmpty(), "No ephemeral queues to read from");
+        this.cursors = queues.stream().map(QueueCursor::new).toArray(QueueCursor[]::new);
+        this.fetchSize = cgConfig.getFetchBatchSize();
+        this.timeout = cgConfig.getTimeOut().toMilliseconds();
+    }
+
+    @Override
+    public long getTimeout() {
+        return timeout;
+    }
+
+    @Override
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    @Override
+    public long getReadBatchId() {
+        return readBatchId;
+    }
+
+    /**
+     * @return number of messages overwritten before they were read
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Skips every message published so far, there is no checkpoint to start from
+     *
+     * @return id of the newest message in the first queue, 0 if there is none
+     */
+    @Override
+    public long readLastCheckpoint() {
+        for (QueueCursor cursor : cursors) {
+            cursor.lastRead = cursor.queue.getPublished();
+        }
+        return cursors[0].queue.getLastId();
+    }
+
+    /**
+     * Nothing to save, the read position is lost on restart along with the messages
+     */
+    @Override
+    public void saveCheckpoint() {
+    }
+
+    @Override
+    public boolean hasMoreMessages() {
+        for (QueueCursor cursor : cursors) {
+            if (cursor.queue.getPublished() > cursor.lastRead) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean loadNextBatchOfMessages(final Collection<Envelope> messages) {
+        // Read queues in turn, till one of them has new messages for us
+        for (int i = 0; i < cursors.length; i++) {
+            final QueueCursor cursor = cursors[nextCursor];
+            nextCursor = (nextCursor + 1) % cursors.length;
+            if (loadNextBatchOfMessages(cursor, messages)) {
+                readBatchId++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean loadNextBatchOfMessages(final QueueCursor cursor, final Collection<Envelope> messages) {
+        final EphemeralQueue queue = cursor.queue;
+        final long published = queue.getPublished();
+        long seq = Math.max(cursor.lastRead + 1, published - queue.getCapacity() + 1);
+        long skipped = seq - cursor.lastRead - 1;
+        int read = 0;
+        for (; (seq <= published) && (read < fetchSize); seq++) {
+            final Envelope message = queue.get(seq);
+            if (message != null) {
+                messages.add(message);
+                read++;
+            } else {
+                // Overwritten by a publish since published was read
+                skipped++;
+            }
+        }
+        cursor.lastRead = seq - 1;
+        if (skipped > 0) {
+            dropped += skipped;
+        }
+        return (read > 0);
+    }
+
+
+    /**
+     * Read position in one queue
+     */
+    private static final class QueueCursor {
+        private final EphemeralQueue queue;
+        // Sequence of the last message read
+        private volatile long lastRead;
+
+        private QueueCursor(final EphemeralQueue queue) {
+            this.queue = queue;
+        }
+    }
+
+}
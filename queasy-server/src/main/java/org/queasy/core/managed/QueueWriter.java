@@ -3,23 +3,45 @@ package org.queasy.core.managed;
 import com.google.common.annotations.VisibleForTesting;
 import io.dropwizard.lifecycle.Managed;
 import org.queasy.core.config.WriterConfiguration;
+import org.queasy.core.util.RingBuffer;
+import org.queasy.db.CommitListener;
 import org.queasy.db.QDbWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 /**
+ * Funnels messages from all the producer connections into the single writer thread through a lock-free ring buffer.
+ * The writer thread drains every message published so far in one go and writes them to the DB in batches.
+ * <p>
+ * Free slots of the ring are handed out as credits. A producer connection reserves some of them up front, publishes
+ * against its reservation without ever blocking, and is called back once the writer frees up slots if it runs out.
+ * Publishing without a reservation takes whatever slots are free, and fails right away if there aren't enough.
+ *
  * @author saroskar
  * Created on: 2021-03-22
  */
 public final class QueueWriter implements Managed, Runnable {
 
     private final QDbWriter qDbWriter;
-    private final ArrayBlockingQueue<String[]> queue;
+    private final RingBuffer<MessageSlot> ring;
     private final long writeTimeout;
+    // Slots neither holding a message nor reserved by a producer
+    private final AtomicInteger freeSlots;
+    // Called back once slots are freed up, in the order they started waiting
+    private final Queue<Runnable> capacityWaiters = new ConcurrentLinkedQueue<>();
     private Thread writerThread;
+    // Next sequence to be written, accessed by the writer thread alone
+    private long next;
+    // True if the message written last wasn't the last of its unit, accessed by the writer thread alone
+    private boolean midUnit;
+    // True while the rest of a unit that could not be written is skipped, accessed by the writer thread alone
+    private boolean skippingUnit;
 
     private volatile boolean shutdownFlag;
 
@@ -28,8 +50,14 @@ public final class QueueWriter implements Managed, Runnable {
 
     public QueueWriter(final WriterConfiguration writerConfig, final QDbWriter qDbWriter) {
         this.qDbWriter = qDbWriter;
-        queue = new ArrayBlockingQueue<>(writerConfig.getRingBufferSize());
+        ring = new RingBuffer<>(writerConfig.getRingBufferSize(), writerConfig.getWaitStrategy(), MessageSlot::new);
         writeTimeout = writerConfig.getWriteTimeout().toMilliseconds();
+        freeSlots = new AtomicInteger(ring.getCapacity());
+        next = ring.getReleasedSequence() + 1;
+        if (qDbWriter != null) {
+            // Messages behind the one being written, whether published yet or not
+            qDbWriter.setQueueDepth(() -> ring.getCursor() - next);
+        }
     }
 
     @Override
@@ -45,29 +73,222 @@ public final class QueueWriter implements Managed, Runnable {
         writerThread.interrupt();
     }
 
-    public boolean publish(final String[] message) throws InterruptedException {
-        return queue.offer(message, writeTimeout, TimeUnit.MILLISECONDS);
+    /**
+     * @param message queue name and message pairs, {qName1, message1, qName2, message2...}. All the messages in it are
+     *                written to the DB as one unit, in one transaction. A message is a String or a byte[]
+     * @return false if timed out waiting for room in the ring buffer
+     * @throws IllegalArgumentException if there are more messages than the ring buffer can ever hold
+     */
+    public boolean publish(final Object[] message) throws InterruptedException {
+        return publish(message, null);
+    }
+
+    /**
+     * Publishes the messages, waiting up to writeTimeout for room in the ring buffer. Meant for embedded use only,
+     * producer connections publish with {@link #tryPublish(Object[], CommitListener, int)} instead.
+     *
+     * @param message  queue name and message pairs, {qName1, message1, qName2, message2...}. All the messages in it are
+     *                 written to the DB as one unit, in one transaction. A message is a String or a byte[]
+     * @param listener if not null, notified on the writer thread once the transaction holding the messages has ended.
+     *                 Not notified if this method returns false or throws
+     * @return false if timed out waiting for room in the ring buffer
+     * @throws IllegalArgumentException if there are more messages than the ring buffer can ever hold
+     */
+    public boolean publish(final Object[] message, final CommitListener listener) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(writeTimeout);
+        while (!tryPublish(message, listener, 0)) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (deadline - System.nanoTime() <= 0) {
+                return false;
+            }
+            LockSupport.parkNanos(PUBLISH_BACKOFF_NANOS);
+        }
+        return true;
+    }
+
+    /**
+     * Publishes the messages without blocking
+     *
+     * @param message  queue name and message pairs, {qName1, message1, qName2, message2...}. All the messages in it are
+     *                 written to the DB as one unit, in one transaction. A message is a String or a byte[]
+     * @param listener if not null, notified on the writer thread once the transaction holding the messages has ended.
+     *                 Not notified if this method returns false or throws
+     * @param reserved slots the caller has reserved for these messages, no more than there are messages. The rest are
+     *                 taken from the free slots. Reserved slots are used up either way, the unused ones are freed
+     * @return false if there weren't enough free slots in the ring buffer
+     * @throws IllegalArgumentException if there are more messages than the ring buffer can ever hold
+     */
+    public boolean tryPublish(final Object[] message, final CommitListener listener, final int reserved) {
+        final int count = message.length / 2;
+        if (count > ring.getCapacity()) {
+            unreserve(reserved);
+            throw new IllegalArgumentException("Can not publish " + count + " messages to a ring of size " +
+                    ring.getCapacity());
+        }
+        if ((reserved < count) && (reserveExactly(count - reserved) == 0)) {
+            unreserve(reserved);
+            return false;
+        }
+
+        // Every slot claimed by a producer is accounted for, so there is room for these in the ring
+        final long hi = ring.tryClaim(count);
+        if (hi < 0) {
+            throw new IllegalStateException("Ring buffer has fewer free slots than accounted for");
+        }
+        final long lo = hi - count + 1;
+        for (int i = 0; i < count; i++) {
+            final MessageSlot slot = ring.get(lo + i);
+            slot.qName = (String) message[2 * i];
+            slot.message = message[2 * i + 1];
+            slot.endOfUnit = (i == count - 1);
+            slot.listener = slot.endOfUnit ? listener : null;
+        }
+        ring.publish(lo, hi);
+        return true;
+    }
+
+    /**
+     * Publishes a single message without blocking. Same as {@link #tryPublish(Object[], CommitListener, int)}, minus
+     * the queue name and message pair array
+     *
+     * @param reserved slots the caller has reserved for the message, 0 or 1
+     */
+    public boolean tryPublish(final String qName, final Object message, final CommitListener listener,
+                              final int reserved) {
+        if ((reserved < 1) && (reserveExactly(1) == 0)) {
+            return false;
+        }
+
+        final long seq = ring.tryClaim(1);
+        if (seq < 0) {
+            throw new IllegalStateException("Ring buffer has fewer free slots than accounted for");
+        }
+        final MessageSlot slot = ring.get(seq);
+        slot.qName = qName;
+        slot.message = message;
+        slot.endOfUnit = true;
+        slot.listener = listener;
+        ring.publish(seq, seq);
+        return true;
+    }
+
+    /**
+     * Takes up to max free slots for the caller to publish against later
+     *
+     * @return number of slots reserved, 0 if there are no free slots
+     */
+    public int reserve(final int max) {
+        while (true) {
+            final int free = freeSlots.get();
+            final int taken = Math.min(free, max);
+            if ((taken <= 0) || freeSlots.compareAndSet(free, free - taken)) {
+                return Math.max(taken, 0);
+            }
+        }
+    }
+
+    /**
+     * Hands back reserved slots that are not going to be used
+     */
+    public void unreserve(final int slots) {
+        if (slots > 0) {
+            freeSlots.addAndGet(slots);
+            notifyCapacityWaiters();
+        }
+    }
+
+    /**
+     * Registers the waiter to be called back once, on the writer thread more often than not, as soon as slots are
+     * freed up. The waiter should not block and should not publish anything itself.
+     *
+     * @return false, with the waiter not registered, if there are free slots already
+     */
+    public boolean awaitCapacity(final Runnable waiter) {
+        capacityWaiters.add(waiter);
+        // Writer may have freed up slots before it could see the waiter
+        return (freeSlots.get() <= 0) || !capacityWaiters.remove(waiter);
+    }
+
+    /**
+     * @return number of messages the ring buffer can hold
+     */
+    public int getCapacity() {
+        return ring.getCapacity();
+    }
+
+    /**
+     * @return number of slots neither holding a message nor reserved
+     */
+    public int getFreeSlots() {
+        return freeSlots.get();
     }
 
     public void run() {
         while (!shutdownFlag) {
             try {
-                String[] message = queue.take();
-                while (message != null) {
-                    qDbWriter.batchWrite(message);
-                    message = queue.poll();
+                long available = ring.waitFor(next);
+                while (available >= next) {
+                    // Drain everything published so far as one batch
+                    try {
+                        for (; next <= available; next++) {
+                            final MessageSlot slot = ring.get(next);
+                            write(slot);
+                            midUnit = !slot.endOfUnit;
+                            slot.clear();
+                        }
+                    } finally {
+                        release(next - 1);
+                    }
+                    // Never commit in the middle of a unit, rest of it is being published as we speak
+                    available = midUnit ? ring.waitFor(next) : ring.getHighestPublished(next);
                 }
             }
             catch (Exception ex) {
                 logger.error("Exception in Queue writer: ", ex);
+                if (midUnit) {
+                    // Part of the unit written so far is not committed with the batch, the rest of it is skipped
+                    qDbWriter.discardUnit();
+                    skippingUnit = true;
+                }
             }
             finally {
                 qDbWriter.finish();
             }
         }
+        qDbWriter.close();
     }
 
 
+    /**
+     * Adds the message to the batch being written. If it can't be, the unit it belongs to is dropped, the part of it
+     * in the batch and the rest of it, and its listener is told it wasn't committed. The units around it are written
+     * as usual.
+     */
+    private void write(final MessageSlot slot) {
+        if (!skippingUnit) {
+            try {
+                qDbWriter.batchWrite(slot.qName, slot.message, slot.endOfUnit, slot.listener);
+                return;
+            } catch (Exception ex) {
+                logger.error("Error writing a message, dropping the unit it belongs to: ", ex);
+                qDbWriter.discardUnit();
+                skippingUnit = true;
+            }
+        }
+        if (slot.endOfUnit) {
+            skippingUnit = false;
+            if (slot.listener != null) {
+                try {
+                    slot.listener.onCommit(false);
+                } catch (RuntimeException ex) {
+                    logger.error("Error notifying commit listener", ex);
+                }
+            }
+        }
+    }
+
     @VisibleForTesting
     public void join() throws InterruptedException {
         writerThread.join();
@@ -75,7 +296,65 @@ public final class QueueWriter implements Managed, Runnable {
 
     @VisibleForTesting
     public void drainQueue() {
-        queue.clear();
+        release(ring.getHighestPublished(ring.getReleasedSequence() + 1));
+    }
+
+    private int reserveExactly(final int slots) {
+        while (true) {
+            final int free = freeSlots.get();
+            if (free < slots) {
+                return 0;
+            }
+            if (freeSlots.compareAndSet(free, free - slots)) {
+                return slots;
+            }
+        }
+    }
+
+    /**
+     * Hands the slots up to and including sequence back to producers
+     */
+    private void release(final long sequence) {
+        final long released = sequence - ring.getReleasedSequence();
+        if (released > 0) {
+            ring.release(sequence);
+            freeSlots.addAndGet((int) released);
+            notifyCapacityWaiters();
+        }
+    }
+
+    private void notifyCapacityWaiters() {
+        // Only the ones waiting already, a waiter that finds nothing left registers again
+        for (int i = capacityWaiters.size(); (i > 0) && (freeSlots.get() > 0); i--) {
+            final Runnable waiter = capacityWaiters.poll();
+            if (waiter == null) {
+                return;
+            }
+            try {
+                waiter.run();
+            } catch (RuntimeException ex) {
+                logger.error("Exception in ring buffer capacity waiter: ", ex);
+            }
+        }
+    }
+
+    private static final long PUBLISH_BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+
+    /**
+     * Preallocated ring buffer entry
+     */
+    private static final class MessageSlot {
+        private String qName;
+        private Object message;
+        private boolean endOfUnit;
+        private CommitListener listener;
+
+        private void clear() {
+            qName = null;
+            message = null;
+            listener = null;
+        }
     }
 
 }
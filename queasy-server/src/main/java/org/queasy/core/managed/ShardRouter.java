@@ -0,0 +1,266 @@
+package org.queasy.core.managed;
+
+import org.queasy.db.CommitListener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Routes messages to the write shard of their queue, picked by hash of the queue name, so that messages of a queue are
+ * always written in order by the same writer while different queues are written in parallel. Messages of ephemeral
+ * queues skip the writers, they are published straight to the {@link EphemeralQueue} and count as committed at once.
+ *
+ * Created on: 2026-10-18
+ */
+public final class ShardRouter {
+
+    private final QueueWriter[] writers;
+    // Null if there are no ephemeral queues, to keep the lookup off the publish path
+    private final Map<String, EphemeralQueue> ephemeralQueues;
+
+
+    public ShardRouter(final QueueWriter... writers) {
+        this(Collections.emptyMap(), writers);
+    }
+
+    /**
+     * @param ephemeralQueues ephemeral queues by name
+     */
+    public ShardRouter(final Map<String, EphemeralQueue> ephemeralQueues, final QueueWriter... writers) {
+        this.writers = writers;
+        this.ephemeralQueues = ephemeralQueues.isEmpty() ? null : ephemeralQueues;
+    }
+
+    public static int shardFor(final String qName, final int shardCount) {
+        return Math.floorMod(qName.hashCode(), shardCount);
+    }
+
+    public int getShardCount() {
+        return writers.length;
+    }
+
+    public QueueWriter writerFor(final String qName) {
+        return writers[shardFor(qName, writers.length)];
+    }
+
+    /**
+     * Publishes messages to their shards, without blocking. A unit spanning shards is split in a unit per shard; each
+     * of them is written in one transaction, but not all of them together. Room for every part is reserved before
+     * any of them is published, so either all the parts are published or none is.
+     *
+     * @param message  queue name and message pairs, {qName1, message1, qName2, message2...}
+     * @param listener if not null, notified once all the parts of the unit are committed, or as soon as one fails.
+     *                 Not notified if this method returns false or throws
+     * @return false, with nothing published, if there wasn't room in a shard's ring buffer
+     * @see QueueWriter#tryPublish(Object[], CommitListener, int)
+     */
+    public boolean publish(final Object[] message, final CommitListener listener) {
+        return publish(message, listener, null, 0);
+    }
+
+    /**
+     * Same as {@link #publish(Object[], CommitListener)}, with slots reserved from one of the writers up front
+     *
+     * @param home     writer the slots are reserved from, may be null if there are none
+     * @param reserved slots reserved from home, used up for the messages going to it. The ones left over are freed
+     */
+    public boolean publish(final Object[] message, final CommitListener listener, final QueueWriter home,
+                           final int reserved) {
+        if (ephemeralQueues != null) {
+            return publishEphemeral(message, listener, home, reserved);
+        }
+        return publishDurable(message, listener, home, reserved);
+    }
+
+    private boolean publishDurable(final Object[] message, final CommitListener listener, final QueueWriter home,
+                                   final int reserved) {
+        if (writers.length == 1) {
+            return publishPart(writers[0], message, listener, home, reserved);
+        }
+
+        final int firstShard = shardFor((String) message[0], writers.length);
+        boolean singleShard = true;
+        for (int i = 2; (i < message.length) && singleShard; i += 2) {
+            singleShard = (shardFor((String) message[i], writers.length) == firstShard);
+        }
+        if (singleShard) {
+            return publishPart(writers[firstShard], message, listener, home, reserved);
+        }
+
+        final List<List<Object>> parts = new ArrayList<>(writers.length);
+        for (int i = 0; i < writers.length; i++) {
+            parts.add(new ArrayList<>());
+        }
+        for (int i = 0; i < message.length; i += 2) {
+            final List<Object> part = parts.get(shardFor((String) message[i], writers.length));
+            part.add(message[i]);
+            part.add(message[i + 1]);
+        }
+
+        // Slots reserved for the part of each shard, so that no part is published unless there is room for all
+        final int[] partReserved = new int[writers.length];
+        int partCount = 0;
+        int unused = reserved;
+        try {
+            for (int i = 0; i < writers.length; i++) {
+                final int count = parts.get(i).size() / 2;
+                if (count == 0) {
+                    continue;
+                }
+                partCount++;
+                if (count > writers[i].getCapacity()) {
+                    throw new IllegalArgumentException("Can not publish " + count + " messages to a ring of size " +
+                            writers[i].getCapacity());
+                }
+                partReserved[i] = (writers[i] == home) ? Math.min(unused, count) : 0;
+                unused -= partReserved[i];
+                if (partReserved[i] < count) {
+                    partReserved[i] += writers[i].reserve(count - partReserved[i]);
+                    if (partReserved[i] < count) {
+                        return false;
+                    }
+                }
+            }
+
+            final SplitUnitListener partListener =
+                    (listener != null) ? new SplitUnitListener(partCount, listener) : null;
+            for (int i = 0; i < writers.length; i++) {
+                final List<Object> part = parts.get(i);
+                if (part.isEmpty()) {
+                    continue;
+                }
+                // Used up by the writer, whatever comes of it
+                final int slots = partReserved[i];
+                partReserved[i] = 0;
+                if (!writers[i].tryPublish(part.toArray(), partListener, slots)) {
+                    throw new IllegalStateException("Ring buffer has fewer free slots than reserved");
+                }
+            }
+        } finally {
+            for (int i = 0; i < writers.length; i++) {
+                writers[i].unreserve(partReserved[i]);
+            }
+            if (home != null) {
+                home.unreserve(unused);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Publishes a single message to its shard, without blocking
+     *
+     * @param home     writer the slots are reserved from, may be null if there are none
+     * @param reserved slots reserved from home, one of them used up for the message if it goes to home. The ones left
+     *                 over are freed
+     * @return false if there wasn't room in the shard's ring buffer
+     */
+    public boolean publish(final String qName, final Object message, final CommitListener listener,
+                           final QueueWriter home, final int reserved) {
+        final EphemeralQueue ephemeralQueue = (ephemeralQueues != null) ? ephemeralQueues.get(qName) : null;
+        if (ephemeralQueue != null) {
+            if (home != null) {
+                home.unreserve(reserved);
+            }
+            ephemeralQueue.publish(message);
+            if (listener != null) {
+                listener.onCommit(true);
+            }
+            return true;
+        }
+        final QueueWriter writer = writerFor(qName);
+        final int used = (writer == home) ? Math.min(reserved, 1) : 0;
+        if (home != null) {
+            home.unreserve(reserved - used);
+        }
+        return writer.tryPublish(qName, message, listener, used);
+    }
+
+    /**
+     * Publishes the messages of the unit bound for shards, then, if there was room for them, the messages of
+     * ephemeral queues right away
+     */
+    private boolean publishEphemeral(final Object[] message, final CommitListener listener, final QueueWriter home,
+                                     final int reserved) {
+        List<Object> durable = null;
+        for (int i = 0; i < message.length; i += 2) {
+            final EphemeralQueue ephemeralQueue = ephemeralQueues.get((String) message[i]);
+            if (ephemeralQueue == null) {
+                if (durable == null) {
+                    durable = new ArrayList<>(message.length - i);
+                }
+                durable.add(message[i]);
+                durable.add(message[i + 1]);
+            }
+        }
+        if ((durable != null) && (durable.size() == message.length)) {
+            return publishDurable(message, listener, home, reserved);
+        }
+
+        // The listener hears about the durable part alone, the ephemeral one can't fail
+        if ((durable != null) && !publishDurable(durable.toArray(), listener, home, reserved)) {
+            return false;
+        }
+        // Each ephemeral queue picks its own messages out of the unit, once
+        for (int i = 0; i < message.length; i += 2) {
+            final EphemeralQueue ephemeralQueue = ephemeralQueues.get((String) message[i]);
+            if ((ephemeralQueue != null) && (indexOfQueue(message, ephemeralQueue.getName()) == i)) {
+                ephemeralQueue.publish(message);
+            }
+        }
+        if (durable == null) {
+            if (home != null) {
+                home.unreserve(reserved);
+            }
+            if (listener != null) {
+                listener.onCommit(true);
+            }
+        }
+        return true;
+    }
+
+    private static int indexOfQueue(final Object[] message, final String qName) {
+        for (int i = 0; i < message.length; i += 2) {
+            if (qName.equals(message[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean publishPart(final QueueWriter writer, final Object[] message,
+                                       final CommitListener listener, final QueueWriter home, final int reserved) {
+        final int used = (writer == home) ? Math.min(reserved, message.length / 2) : 0;
+        if (home != null) {
+            home.unreserve(reserved - used);
+        }
+        return writer.tryPublish(message, listener, used);
+    }
+
+
+    /**
+     * Notifies the listener of a unit split across shards once, when all the parts are committed or one of them fails
+     */
+    private static final class SplitUnitListener implements CommitListener {
+        private final AtomicInteger pending;
+        private final AtomicBoolean notified = new AtomicBoolean();
+        private final CommitListener listener;
+
+        private SplitUnitListener(final int parts, final CommitListener listener) {
+            this.pending = new AtomicInteger(parts);
+            this.listener = listener;
+        }
+
+        @Override
+        public void onCommit(final boolean committed) {
+            if ((!committed || pending.decrementAndGet() == 0) && notified.compareAndSet(false, true)) {
+                listener.onCommit(committed);
+            }
+        }
+    }
+
+}
@@ -3,7 +3,8 @@ package org.queasy.core.managed;
 import io.dropwizard.lifecycle.Managed;
 import org.queasy.core.config.TopicConfiguration;
 import org.queasy.core.network.TopicSubscription;
-import org.queasy.db.QDbReader;
+import org.queasy.db.Envelope;
+import org.queasy.db.MessageReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -19,30 +20,34 @@ public class Topic implements Managed, Runnable {
 
     private final int fetchBatchSize;
     private final int quorumPercentage;
-    private final QDbReader qDbReader;
+    private final MessageReader reader;
     private final LinkedBlockingQueue<TopicSubscription> subscribers;
     private final AtomicInteger totalSubscribers;
-    private volatile ArrayList<String> messages;
+    // Runs asked for, by the schedule or by a publish, and not made yet
+    private final AtomicInteger pendingRuns = new AtomicInteger();
+    // Told when a subscriber starts waiting, for the topic to be run right away
+    private volatile Runnable waitListener;
+    private volatile ArrayList<Envelope> messages;
 
     private static final Logger logger = LoggerFactory.getLogger(Topic.class);
 
 
-    public Topic(final TopicConfiguration config, final QDbReader qDbReader) {
+    public Topic(final TopicConfiguration config, final MessageReader reader) {
         this.fetchBatchSize = config.getFetchBatchSize();
         this.quorumPercentage = config.getQuorumPercentage();
-        this.qDbReader = qDbReader;
+        this.reader = reader;
         this.subscribers = new LinkedBlockingQueue<>();
         this.totalSubscribers = new AtomicInteger();
     }
 
     @Override
     public void start() {
-        qDbReader.readLastCheckpoint();
+        reader.readLastCheckpoint();
     }
 
     @Override
     public void stop() {
-        qDbReader.saveCheckpoint();
+        reader.saveCheckpoint();
     }
 
     public void subscribe(final TopicSubscription sub) {
@@ -60,8 +65,27 @@ public class Topic implements Managed, Runnable {
      * must wait for new messages to become available.
      */
     public boolean waitForMessages(final TopicSubscription sub)  {
-        if ((sub.getMessageBatchId() < qDbReader.getReadBatchId()) && (messages != null) && (!messages.isEmpty())) {
-            sub.setNextMessageBatch(qDbReader.getReadBatchId(), messages);
+        final boolean waiting = offer(sub);
+        final Runnable listener = waitListener;
+        if (waiting && (listener != null)) {
+            listener.run();
+        }
+        return waiting;
+    }
+
+    /**
+     * @param waitListener called, without blocking, every time a subscriber is left waiting for messages
+     */
+    public void setWaitListener(final Runnable waitListener) {
+        this.waitListener = waitListener;
+    }
+
+    /**
+     * Same as {@link #waitForMessages(TopicSubscription)}, without telling the wait listener: the caller dispatches
+     */
+    private boolean offer(final TopicSubscription sub) {
+        if ((sub.getMessageBatchId() < reader.getReadBatchId()) && (messages != null) && (!messages.isEmpty())) {
+            sub.setNextMessageBatch(reader.getReadBatchId(), messages);
             return false;
         } else {
             // This subscriber is waiting for next message batch, add it back to wait queue
@@ -71,9 +95,9 @@ public class Topic implements Managed, Runnable {
     }
 
     private boolean loadNextMessageBatch() {
-        if (qDbReader.hasMoreMessages()) {
-            final ArrayList<String> messages = new ArrayList<>(fetchBatchSize);
-            if (qDbReader.loadNextBatchOfMessages(messages)) {
+        if (reader.hasMoreMessages()) {
+            final ArrayList<Envelope> messages = new ArrayList<>(fetchBatchSize);
+            if (reader.loadNextBatchOfMessages(messages)) {
                 this.messages = messages;
                 return true;
             }
@@ -81,8 +105,24 @@ public class Topic implements Managed, Runnable {
         return false;
     }
 
+    /**
+     * Dispatches messages to waiting subscribers. Runs whenever new messages are committed or a subscriber starts
+     * waiting, and on a slow schedule besides; one run at a time, a run asked for while one is going on is made by it
+     * once done
+     */
     @Override
     public void run() {
+        if (pendingRuns.getAndIncrement() != 0) {
+            return;
+        }
+        int runs = 1;
+        do {
+            dispatch();
+            runs = pendingRuns.addAndGet(-runs);
+        } while (runs != 0);
+    }
+
+    private void dispatch() {
         while(true) {
             try {
                 final int subscriberCount = subscribers.size();
@@ -102,7 +142,7 @@ public class Topic implements Managed, Runnable {
                 int waitingSubs = 0;
                 for (int i = 0; i < subscriberCount; i++) {
                     final TopicSubscription sub = subscribers.poll();
-                    if (sub != null && sub.isConnected() && waitForMessages(sub)) {
+                    if (sub != null && sub.isConnected() && offer(sub)) {
                         waitingSubs++;
                     }
                 }
@@ -0,0 +1,72 @@
+package org.queasy.core.managed;
+
+import org.jdbi.v3.core.Handle;
+import org.jdbi.v3.core.Jdbi;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Periodically copies the SQLite WAL back into the database file, so that committing connections don't have to do it
+ * inline. Uses passive checkpoints, which never wait on readers or the writer and simply checkpoint as much as they can.
+ * <p>
+ * Under constant reader traffic a passive checkpoint never gets the whole WAL back into the database, so the WAL is
+ * never reset and keeps growing. Once it is larger than its size limit, the checkpoint is run in TRUNCATE mode
+ * instead, which waits, for the busy timeout at most, for the writer and the readers to move off the WAL and then
+ * truncates it.
+ *
+ * Created on: 2026-10-18
+ */
+public class WalCheckpointer implements Runnable {
+
+    private final Jdbi jdbi;
+    private final long walSizeLimit;
+
+    private static final String CHECKPOINT_SQL = "PRAGMA wal_checkpoint(PASSIVE)";
+    private static final String TRUNCATE_SQL = "PRAGMA wal_checkpoint(TRUNCATE)";
+
+    private static final Logger logger = LoggerFactory.getLogger(WalCheckpointer.class);
+
+
+    /**
+     * @param walSizeLimit size of the WAL in bytes above which it is truncated
+     */
+    public WalCheckpointer(final Jdbi jdbi, final long walSizeLimit) {
+        this.jdbi = jdbi;
+        this.walSizeLimit = walSizeLimit;
+    }
+
+    @Override
+    public void run() {
+        try {
+            jdbi.useHandle(handle -> {
+                final int[] result = checkpoint(handle, CHECKPOINT_SQL);
+                logger.debug("WAL checkpoint: busy={}, log={}, checkpointed={}", result[0], result[1], result[2]);
+                final long walSize = (long) result[1] * handle.createQuery("PRAGMA page_size")
+                        .mapTo(Integer.class)
+                        .one();
+                if (walSize > walSizeLimit) {
+                    final int[] truncated = checkpoint(handle, TRUNCATE_SQL);
+                    if (truncated[0] != 0) {
+                        logger.warn("WAL of {} bytes is over its limit and readers kept it from being truncated",
+                                walSize);
+                    } else {
+                        logger.info("WAL of {} bytes was over its limit, truncated", walSize);
+                    }
+                }
+            });
+        }
+        catch (Exception ex) {
+            logger.error("Error checkpointing WAL", ex);
+        }
+    }
+
+    /**
+     * @return busy, WAL pages, pages checkpointed
+     */
+    private static int[] checkpoint(final Handle handle, final String sql) {
+        return handle.createQuery(sql)
+                .map((rs, ctx) -> new int[]{rs.getInt(1), rs.getInt(2), rs.getInt(3)})
+                .one();
+    }
+
+}
@@ -1,12 +1,17 @@
 package org.queasy.core.network;
 
 import com.google.common.annotations.VisibleForTesting;
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
 import org.eclipse.jetty.websocket.api.Session;
 import org.eclipse.jetty.websocket.api.WebSocketAdapter;
 import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.eclipse.jetty.websocket.common.WebSocketRemoteEndpoint;
+import org.eclipse.jetty.websocket.common.frames.TextFrame;
+import org.queasy.db.Envelope;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.ByteBuffer;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -43,6 +48,41 @@ public abstract class BaseWebSocketConnection extends WebSocketAdapter implement
         getRemote().sendString(message, this);
     }
 
+    public final void writeMessage(final byte[] message) {
+        getRemote().sendBytes(ByteBuffer.wrap(message), this);
+    }
+
+    /**
+     * Writes the message as a binary frame if it is binary, as a text frame otherwise. The text frame is written as it
+     * was encoded, without encoding it again for each connection, unless the remote endpoint isn't Jetty's own or the
+     * session is no longer open
+     */
+    public final void writeMessage(final Envelope message) {
+        if (message.isBinary()) {
+            writeMessage(message.getBinary());
+            return;
+        }
+        final RemoteEndpoint remote = getRemote();
+        if ((remote instanceof WebSocketRemoteEndpoint) && isConnected()) {
+            // Jetty 9.4 websocket-common internals: sendString encodes the string and hands the frame to
+            // uncheckedSendFrame, there is no public API to send an already encoded text frame. This skips the
+            // message type lock of sendString, which only guards against interleaving with partial and blocking
+            // sends, and the server makes neither of them. Revisit on upgrading Jetty.
+            ((WebSocketRemoteEndpoint) remote).uncheckedSendFrame(new TextFrame().setPayload(message.getTextFrame()),
+                    this);
+        } else {
+            remote.sendString(message.getText(), this);
+        }
+    }
+
+    /**
+     * @return true if text messages are written to the remote endpoint as they were encoded, false if they are
+     * written as strings
+     */
+    protected final boolean writesEncodedText() {
+        return getRemote() instanceof WebSocketRemoteEndpoint;
+    }
+
     protected final void sendStatus(final Status status) {
         writeMessage(status.toString());
     }
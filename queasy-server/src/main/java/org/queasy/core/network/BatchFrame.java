@@ -0,0 +1,109 @@
+package org.queasy.core.network;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.queasy.core.network.Command.BATCH;
+
+/**
+ * Multi-message publish frame. Carries N messages, for the producer's own queue or for other named queues, in a
+ * single WebSocket frame:
+ * <pre>
+ * #BATCH &lt;seq&gt; &lt;count&gt;
+ * &lt;length&gt;[ &lt;queue name&gt;]
+ * &lt;message&gt;&lt;length&gt;[ &lt;queue name&gt;]
+ * &lt;message&gt;...
+ * </pre>
+ * where length is the number of characters in the message that follows it. The whole batch is acknowledged with a
+ * single status tagged with seq.
+ *
+ * Created on: 2026-10-18
+ */
+public final class BatchFrame {
+
+    private final StringBuilder frame;
+    private int count;
+
+    public BatchFrame() {
+        frame = new StringBuilder();
+    }
+
+    /**
+     * Adds a message for the queue the producer is connected to
+     */
+    public BatchFrame add(final String message) {
+        return add(null, message);
+    }
+
+    /**
+     * Adds a message for the given queue
+     */
+    public BatchFrame add(final String qName, final String message) {
+        Preconditions.checkNotNull(message, "Message must be provided");
+        frame.append(message.length());
+        if (qName != null) {
+            Preconditions.checkArgument(!qName.isEmpty() && qName.indexOf(' ') < 0 && qName.indexOf('\n') < 0,
+                    "Invalid queue name: %s", qName);
+            frame.append(' ').append(qName);
+        }
+        frame.append('\n').append(message);
+        count++;
+        return this;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public String format(final long seq) {
+        return BATCH + " " + seq + " " + count + "\n" + frame;
+    }
+
+    /**
+     * @return sequence number of the given batch frame
+     */
+    public static long parseSeq(final String mesg) {
+        final int payloadStart = Command.payloadStart(mesg);
+        Preconditions.checkArgument(payloadStart > 0, "Missing batch header");
+        return BATCH.parseSeq(mesg, payloadStart - 1);
+    }
+
+    /**
+     * Parses the given batch frame into the queue name, message pairs layout QueueWriter accepts
+     *
+     * @param mesg batch frame
+     * @param defaultQName queue name used for the messages which do not name their queue
+     * @return queue name and message pairs, {qName1, message1, qName2, message2...}
+     * @throws IllegalArgumentException on malformed frame
+     */
+    public static String[] parse(final String mesg, final String defaultQName) {
+        final int payloadStart = Command.payloadStart(mesg);
+        Preconditions.checkArgument(payloadStart > 0, "Missing batch header");
+        final List<String> header = new ArrayList<>(3);
+        BATCH.parse(mesg.substring(0, payloadStart - 1)).forEachRemaining(header::add);
+        Preconditions.checkArgument(header.size() == 2, "Malformed batch header");
+        final int count = Integer.parseInt(header.get(1));
+        Preconditions.checkArgument(count > 0, "Empty batch");
+
+        final String[] messages = new String[count * 2];
+        int pos = payloadStart;
+        for (int i = 0; i < messages.length; i += 2) {
+            final int lineEnd = mesg.indexOf('\n', pos);
+            Preconditions.checkArgument(lineEnd > pos, "Truncated batch");
+            final int sep = mesg.indexOf(' ', pos);
+            final boolean named = (sep > pos) && (sep < lineEnd);
+            final int length = Integer.parseInt(mesg.substring(pos, named ? sep : lineEnd));
+            messages[i] = named ? mesg.substring(sep + 1, lineEnd) : defaultQName;
+            Preconditions.checkArgument(!messages[i].isEmpty(), "Empty queue name");
+            pos = lineEnd + 1;
+            Preconditions.checkArgument(length >= 0 && pos + length <= mesg.length(), "Truncated batch");
+            messages[i + 1] = mesg.substring(pos, pos + length);
+            pos += length;
+        }
+        Preconditions.checkArgument(pos == mesg.length(), "Batch message count mismatch");
+        return messages;
+    }
+
+}
@@ -12,11 +12,16 @@ import java.util.List;
  */
 public enum Command {
 
-    DEQUEUE;
+    DEQUEUE,
+    PUBLISH,
+    BATCH,
+    CREDIT;
 
     private final String cmd;
 
     private static final Splitter splitter = Splitter.on(" ").trimResults().omitEmptyStrings();
+    // Longest number sure to fit in a long
+    private static final int MAX_PLAIN_DIGITS = 18;
 
     Command() {
         cmd = "#" + name();
@@ -49,6 +54,52 @@ public enum Command {
         return parsedCmd.hasNext() ? parsedCmd.next() : null;
     }
 
+    /**
+     * Builds a sequence number tagged frame, e.g. "#PUBLISH 42\n&lt;message&gt;". Unlike other commands, the first line
+     * of such frame is the command with its arguments and the rest of the frame is the payload.
+     */
+    public String format(final long seq, final String payload) {
+        return cmd + " " + seq + "\n" + payload;
+    }
+
+    /**
+     * Parses the sequence number a frame is tagged with, e.g. 42 out of "#PUBLISH 42\n&lt;message&gt;". A plain
+     * number is parsed in place, anything else the way {@link #parse(String)} does.
+     *
+     * @param headerEnd index of the newline ending the first line of the frame
+     * @throws IllegalArgumentException if the frame is not tagged with a sequence number
+     */
+    public long parseSeq(final String frame, final int headerEnd) {
+        final int argStart = cmd.length();
+        if (frame.startsWith(cmd) && (argStart < headerEnd) && (frame.charAt(argStart) == ' ')) {
+            int i = argStart;
+            while ((i < headerEnd) && (frame.charAt(i) == ' ')) {
+                i++;
+            }
+            final int digitsStart = i;
+            long seq = 0;
+            for (char c; (i < headerEnd) && (i - digitsStart < MAX_PLAIN_DIGITS) &&
+                    ((c = frame.charAt(i)) >= '0') && (c <= '9'); i++) {
+                seq = 10 * seq + (c - '0');
+            }
+            // Any more arguments are ignored
+            if ((i > digitsStart) && ((i == headerEnd) || (frame.charAt(i) == ' '))) {
+                return seq;
+            }
+        }
+        final Long seq = nextArgAsLong(parse(frame.substring(0, headerEnd)));
+        Preconditions.checkArgument(seq != null, "Missing sequence number");
+        return seq;
+    }
+
+    /**
+     * @return index of the first payload character in the given tagged frame, or -1 if there is no payload
+     */
+    public static int payloadStart(final String mesg) {
+        final int idx = mesg.indexOf('\n');
+        return (idx < 0) ? -1 : idx + 1;
+    }
+
     @Override
     public String toString() {
         return cmd;
@@ -1,6 +1,7 @@
 package org.queasy.core.network;
 
 import org.queasy.core.managed.ConsumerGroup;
+import org.queasy.db.Envelope;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,6 +46,26 @@ public class ConsumerConnection extends BaseWebSocketConnection {
         writeMessage(message);
     }
 
+    public void sendMessage(final byte[] message) {
+        awaitingMessage.set(false);
+        writeMessage(message);
+    }
+
+    /**
+     * Sends a text message as it was encoded, falling back on {@link #sendMessage(String)} when the remote endpoint
+     * takes strings alone
+     */
+    public void sendMessage(final Envelope message) {
+        if (message.isBinary()) {
+            sendMessage(message.getBinary());
+        } else if (writesEncodedText()) {
+            awaitingMessage.set(false);
+            writeMessage(message);
+        } else {
+            sendMessage(message.getText());
+        }
+    }
+
     public boolean isTimedOut(final long timeout) {
         return (System.currentTimeMillis() - startTS) > timeout;
     }
@@ -2,28 +2,97 @@ package org.queasy.core.network;
 
 import com.google.common.annotations.VisibleForTesting;
 import org.queasy.core.managed.QueueWriter;
+import org.queasy.core.managed.ShardRouter;
+import org.queasy.db.CommitListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.queasy.core.network.Command.BATCH;
+import static org.queasy.core.network.Command.CREDIT;
+import static org.queasy.core.network.Command.PUBLISH;
 
 
 /**
+ * Producer side of the publish protocol. A client may tag every message with a sequence number
+ * ("#PUBLISH &lt;seq&gt;\n&lt;message&gt;") and keep up to windowSize such messages in flight. Every tagged message is
+ * acknowledged with a status tagged with the same sequence number (":OK &lt;seq&gt;"). A {@link BatchFrame} carries many
+ * messages under one sequence number, is written to the queue as one unit and acknowledged once. Untagged messages
+ * are still accepted for older clients, but only one at a time.
+ * <p>
+ * A binary message is sent in a binary frame, tagged with a sequence number in its first 8 bytes, and stored as is.
+ * <p>
+ * By default a message is acknowledged as soon as it is handed over to the writer. With durable acks it is acknowledged
+ * only after the transaction holding it is committed, together with every other message in the same batch, and it
+ * counts against the window till then. Jetty delivers the messages of a connection one at a time and a hand-off never
+ * waits, so without durable acks every message is acknowledged before the next one is read: only messages waiting on
+ * their commit fill the window.
+ * <p>
+ * Messages are never waited on: if there is no room for a message in the writer's ring buffer it is rejected with
+ * TIMEOUT right away. A client that sends "#CREDIT" is granted credits instead, ":CREDIT &lt;count&gt;", one per
+ * message it may publish, backed by slots reserved for it in the ring buffer of the writer of qName. Every message it
+ * publishes uses up a credit, and more are granted as the writer frees up slots. A client is expected to wait for
+ * credits rather than publish without them.
+ *
  * @author saroskar
  * Created on: 2021-03-22
  */
 public class ProducerConnection extends BaseWebSocketConnection {
 
-    private final QueueWriter queueWriter;
+    private final ShardRouter router;
     private final String qName;
-    private final AtomicBoolean writingMessage;
+    private final int windowSize;
+    private final boolean durableAcks;
+    private final AtomicInteger inFlight;
+    private final QueueWriter home;
+    private final int creditWindow;
+
+    // Credit state, guarded by creditLock. Credits held are always the slots reserved from home
+    private final Object creditLock = new Object();
+    private boolean creditMode;
+    private boolean awaitingCapacity;
+    private int credits;
+
+    public static final int DEFAULT_CREDIT_WINDOW = 256;
+    // Sequence number of an untagged message
+    private static final long UNTAGGED = Long.MIN_VALUE;
 
     private static final Logger logger = LoggerFactory.getLogger(ProducerConnection.class);
 
     public ProducerConnection(QueueWriter queueWriter, String qName) {
-        this.queueWriter = queueWriter;
+        this(queueWriter, qName, 1);
+    }
+
+    public ProducerConnection(QueueWriter queueWriter, String qName, int windowSize) {
+        this(queueWriter, qName, windowSize, false);
+    }
+
+    public ProducerConnection(QueueWriter queueWriter, String qName, int windowSize, boolean durableAcks) {
+        this(new ShardRouter(queueWriter), qName, windowSize, durableAcks);
+    }
+
+    /**
+     * @param router routes every message to the shard of its queue. Messages of a batch may belong to other queues,
+     *               and so other shards, than qName
+     */
+    public ProducerConnection(ShardRouter router, String qName, int windowSize, boolean durableAcks) {
+        this(router, qName, windowSize, durableAcks, DEFAULT_CREDIT_WINDOW);
+    }
+
+    /**
+     * @param creditWindow maximum number of credits the client holds at a time, if it asks for credits
+     */
+    public ProducerConnection(ShardRouter router, String qName, int windowSize, boolean durableAcks,
+                              int creditWindow) {
+        this.router = router;
         this.qName = qName;
-        this.writingMessage = new AtomicBoolean();
+        this.windowSize = windowSize;
+        this.durableAcks = durableAcks;
+        this.inFlight = new AtomicInteger();
+        this.home = (router != null) ? router.writerFor(qName) : null;
+        this.creditWindow = creditWindow;
     }
 
     @VisibleForTesting
@@ -33,25 +102,197 @@ public class ProducerConnection extends BaseWebSocketConnection {
 
     @Override
     public void onWebSocketText(final String message) {
-        if (writingMessage.compareAndSet(false, true)) {
+        if (PUBLISH.matches(message)) {
+            final int payloadStart = Command.payloadStart(message);
+            long seq;
+            try {
+                seq = PUBLISH.parseSeq(message, (payloadStart > 0) ? payloadStart - 1 : message.length());
+            } catch (IllegalArgumentException ex) {
+                seq = UNTAGGED;
+            }
+            if ((payloadStart < 0) || (seq == UNTAGGED)) {
+                logger.warn("Malformed publish frame received from client");
+                sendStatus(Status.ERROR);
+                return;
+            }
+            publish(seq, message.substring(payloadStart), null, windowSize);
+        } else if (BATCH.matches(message)) {
+            final long seq;
+            final String[] messages;
+            try {
+                seq = BatchFrame.parseSeq(message);
+            } catch (IllegalArgumentException ex) {
+                logger.warn("Malformed batch frame received from client");
+                sendStatus(Status.ERROR);
+                return;
+            }
             try {
-                if (queueWriter.publish(new String[]{qName, message})) {
-                    sendStatus(Status.OK);
+                messages = BatchFrame.parse(message, qName);
+            } catch (IllegalArgumentException ex) {
+                logger.warn("Malformed batch frame received from client: {}", ex.getMessage());
+                sendStatus(Status.ERROR, seq);
+                return;
+            }
+            publish(seq, null, messages, windowSize);
+        } else if (CREDIT.matches(message)) {
+            synchronized (creditLock) {
+                creditMode = (home != null);
+            }
+            grantCredits();
+        } else {
+            // Untagged message from an older client, it can only have one message in flight
+            publish(UNTAGGED, message, null, 1);
+        }
+    }
+
+    /**
+     * A binary frame carries one binary message: the 8 byte big endian sequence number followed by the payload
+     */
+    @Override
+    public void onWebSocketBinary(final byte[] payload, final int offset, final int len) {
+        if (len < Long.BYTES) {
+            logger.warn("Malformed binary frame received from client");
+            sendStatus(Status.ERROR);
+            return;
+        }
+        long seq = 0;
+        for (int i = offset; i < offset + Long.BYTES; i++) {
+            seq = (seq << 8) | (payload[i] & 0xff);
+        }
+        // Jetty reuses the frame buffer, the only copy of the payload is the one written to the DB
+        final byte[] message = Arrays.copyOfRange(payload, offset + Long.BYTES, offset + len);
+        publish(seq, message, null, windowSize);
+    }
+
+    /**
+     * Publishes either a single message of qName, or a unit of queue name and message pairs
+     */
+    private void publish(final long seq, final Object message, final Object[] messages, final int maxInFlight) {
+        if (!acquire(maxInFlight)) {
+            logger.warn("Received message from client beyond its window of unacknowledged messages.");
+            sendStatus(Status.BUSY, seq);
+            return;
+        }
+
+        final int reserved = takeCredits((messages != null) ? messages.length / 2 : 1);
+        boolean released = true;
+        try {
+            if (!durableAcks) {
+                if (route(message, messages, null, reserved)) {
+                    sendStatus(Status.OK, seq);
                 } else {
-                    sendStatus(Status.TIMEOUT);
-                    logger.warn("Timed out while trying to write to the queue");
+                    sendStatus(Status.TIMEOUT, seq);
+                    logger.warn("No room for the message in the queue");
                 }
+            } else if (route(message, messages, commitListener(seq), reserved)) {
+                // Acknowledged and released from the window once committed
+                released = false;
+            } else {
+                sendStatus(Status.TIMEOUT, seq);
+                logger.warn("No room for the message in the queue");
             }
-            catch (Exception ex) {
-                logger.warn("Error while writing message to the queue");
-                sendStatus(Status.ERROR);
+        }
+        catch (Exception ex) {
+            logger.warn("Error while writing message to the queue");
+            sendStatus(Status.ERROR, seq);
+        }
+        finally {
+            if (released) {
+                inFlight.decrementAndGet();
             }
-            finally {
-                writingMessage.set(false);
+            grantCredits();
+        }
+    }
+
+    private boolean route(final Object message, final Object[] messages, final CommitListener listener,
+                          final int reserved) {
+        return (messages != null) ? router.publish(messages, listener, home, reserved) :
+                router.publish(qName, message, listener, home, reserved);
+    }
+
+    /**
+     * Uses up the credits for the given number of messages, as many of them as the client holds
+     *
+     * @return number of slots reserved for the messages
+     */
+    private int takeCredits(final int count) {
+        synchronized (creditLock) {
+            final int taken = Math.min(credits, count);
+            credits -= taken;
+            return taken;
+        }
+    }
+
+    /**
+     * Tops up the client's credits once it has used up half of them. If there is no room in the ring buffer for
+     * any, waits for the writer to free up slots; never blocks the caller though.
+     */
+    private void grantCredits() {
+        synchronized (creditLock) {
+            while (creditMode && !awaitingCapacity && (credits <= creditWindow / 2)) {
+                final int granted = home.reserve(creditWindow - credits);
+                if (granted > 0) {
+                    credits += granted;
+                    writeMessage(Status.CREDIT.withSeq(granted));
+                    return;
+                }
+                if (credits > 0) {
+                    return;
+                }
+                awaitingCapacity = home.awaitCapacity(this::onCapacity);
             }
+        }
+    }
+
+    private void onCapacity() {
+        synchronized (creditLock) {
+            awaitingCapacity = false;
+        }
+        grantCredits();
+    }
+
+    @Override
+    protected void onDisconnect() {
+        final int unused;
+        synchronized (creditLock) {
+            creditMode = false;
+            unused = credits;
+            credits = 0;
+        }
+        if (unused > 0) {
+            home.unreserve(unused);
+        }
+    }
+
+    private CommitListener commitListener(final long seq) {
+        return committed -> {
+            inFlight.decrementAndGet();
+            if (committed) {
+                sendStatus(Status.OK, seq);
+            } else {
+                logger.warn("Error while committing message to the queue");
+                sendStatus(Status.ERROR, seq);
+            }
+        };
+    }
+
+    private boolean acquire(final int maxInFlight) {
+        while (true) {
+            final int current = inFlight.get();
+            if (current >= maxInFlight) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void sendStatus(final Status status, final long seq) {
+        if (seq != UNTAGGED) {
+            writeMessage(status.withSeq(seq));
         } else {
-            logger.warn("Received message from client before previous message was written.");
-            sendStatus(Status.BUSY);
+            sendStatus(status);
         }
     }
 
@@ -5,6 +5,7 @@ import io.dropwizard.util.Strings;
 import org.eclipse.jetty.websocket.servlet.ServletUpgradeRequest;
 import org.eclipse.jetty.websocket.servlet.ServletUpgradeResponse;
 import org.queasy.core.managed.QueueWriter;
+import org.queasy.core.managed.ShardRouter;
 
 import java.util.List;
 
@@ -16,13 +17,40 @@ import static org.queasy.core.bundles.QueasyServerBundle.PUBLISH_PATH;
  */
 public class ProducerWebSocketCreator extends BaseWebSocketCreator {
 
-    private final QueueWriter queueWriter;
+    private final ShardRouter router;
+    private final int producerWindowSize;
+    private final boolean durableAcks;
+    private final int producerCredits;
 
     public static final Splitter pathSplitter = Splitter.on('/').trimResults().omitEmptyStrings();
 
     public ProducerWebSocketCreator(final String origin, final int maxConnections, final QueueWriter queueWriter) {
+        this(origin, maxConnections, queueWriter, 1);
+    }
+
+    public ProducerWebSocketCreator(final String origin, final int maxConnections, final QueueWriter queueWriter,
+                                    final int producerWindowSize) {
+        this(origin, maxConnections, queueWriter, producerWindowSize, false);
+    }
+
+    public ProducerWebSocketCreator(final String origin, final int maxConnections, final QueueWriter queueWriter,
+                                    final int producerWindowSize, final boolean durableAcks) {
+        this(origin, maxConnections, new ShardRouter(queueWriter), producerWindowSize, durableAcks);
+    }
+
+    public ProducerWebSocketCreator(final String origin, final int maxConnections, final ShardRouter router,
+                                    final int producerWindowSize, final boolean durableAcks) {
+        this(origin, maxConnections, router, producerWindowSize, durableAcks, ProducerConnection.DEFAULT_CREDIT_WINDOW);
+    }
+
+    public ProducerWebSocketCreator(final String origin, final int maxConnections, final ShardRouter router,
+                                    final int producerWindowSize, final boolean durableAcks,
+                                    final int producerCredits) {
         super(origin, maxConnections);
-        this.queueWriter = queueWriter;
+        this.router = router;
+        this.producerWindowSize = producerWindowSize;
+        this.durableAcks = durableAcks;
+        this.producerCredits = producerCredits;
     }
 
     @Override
@@ -30,7 +58,7 @@ public class ProducerWebSocketCreator extends BaseWebSocketCreator {
         final String path = req.getRequestURI() != null ? req.getRequestURI().getPath() : "";
         final List<String> parts = pathSplitter.splitToList(path != null ? path : "");
         if ((parts.size() == 2) && (PUBLISH_PATH.equals(parts.get(0))) && (!Strings.isNullOrEmpty(parts.get(1)))) {
-            return new ProducerConnection(queueWriter, parts.get(1));
+            return new ProducerConnection(router, parts.get(1), producerWindowSize, durableAcks, producerCredits);
         } else {
             closeConnection(400, resp);
             return null;
@@ -0,0 +1,42 @@
+package org.queasy.core.network;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.queasy.db.store.QueryPlan;
+import org.queasy.db.store.QueryPlanAnalyzer;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Admin port servlet listing the query plan of every consumer group and topic reading a SQLite shard, along with the
+ * estimated messages scanned per fetch, analyzed afresh on every request
+ *
+ * Created on: 2026-10-18
+ */
+public class QueryPlanServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient List<QueryPlanAnalyzer> analyzers;
+    private final transient ObjectMapper mapper;
+
+
+    public QueryPlanServlet(final List<QueryPlanAnalyzer> analyzers, final ObjectMapper mapper) {
+        this.analyzers = analyzers;
+        this.mapper = mapper;
+    }
+
+    @Override
+    protected void doGet(final HttpServletRequest req, final HttpServletResponse resp) throws IOException {
+        final List<QueryPlan> plans = new ArrayList<>();
+        analyzers.forEach(analyzer -> plans.addAll(analyzer.analyze()));
+        resp.setContentType("application/json");
+        resp.setHeader("Cache-Control", "must-revalidate,no-cache,no-store");
+        mapper.writerWithDefaultPrettyPrinter().writeValue(resp.getOutputStream(), plans);
+    }
+
+}
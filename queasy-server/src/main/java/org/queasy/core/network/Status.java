@@ -11,7 +11,12 @@ public enum Status {
     TIMEOUT,
     MESG_DROP,
     CLOSE,
-    ERROR;
+    ERROR,
+    /**
+     * Grants a producer credits to publish more messages, ":CREDIT &lt;count&gt;". Carries the count in place of a
+     * sequence number
+     */
+    CREDIT;
 
     private final String status;
 
@@ -19,6 +24,30 @@ public enum Status {
         status = ":" + name();
     }
 
+    /**
+     * @param seq sequence number of the published message this status refers to
+     * @return status tagged with the message sequence number, e.g. ":OK 42"
+     */
+    public String withSeq(final long seq) {
+        return status + " " + seq;
+    }
+
+    /**
+     * @return true if given server response is this status, with or without a sequence number tag
+     */
+    public boolean matches(final String mesg) {
+        return (mesg != null) && mesg.startsWith(status) &&
+                ((mesg.length() == status.length()) || (mesg.charAt(status.length()) == ' '));
+    }
+
+    /**
+     * @return sequence number the given server response is tagged with, or null if it is not tagged
+     */
+    public static Long parseSeq(final String mesg) {
+        final int idx = (mesg != null) ? mesg.indexOf(' ') : -1;
+        return (idx > 0) ? Long.valueOf(mesg.substring(idx + 1).trim()) : null;
+    }
+
     @Override
     public String toString() {
         return status;
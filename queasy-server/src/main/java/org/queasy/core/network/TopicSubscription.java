@@ -1,6 +1,7 @@
 package org.queasy.core.network;
 
 import org.queasy.core.managed.Topic;
+import org.queasy.db.Envelope;
 
 import java.util.List;
 
@@ -12,7 +13,7 @@ public final class TopicSubscription extends BaseWebSocketConnection {
 
     private final Topic topic;
 
-    private volatile List<String> messages;
+    private volatile List<Envelope> messages;
     private volatile long messageBatchId;
     private volatile int currentMesgIndex;
 
@@ -34,7 +35,7 @@ public final class TopicSubscription extends BaseWebSocketConnection {
         topic.unsubscribe(this);
     }
 
-    public void setNextMessageBatch(final long nextBatchId, final List<String> nextMesgs) {
+    public void setNextMessageBatch(final long nextBatchId, final List<Envelope> nextMesgs) {
         if (nextBatchId > messageBatchId +1) {
             // Missed one or more message batches
             sendStatus(Status.MESG_DROP);
@@ -51,7 +52,7 @@ public final class TopicSubscription extends BaseWebSocketConnection {
 
     public void sendNextMessage() {
         if ((messages != null) && (currentMesgIndex < messages.size())) {
-            final String message = messages.get(currentMesgIndex);
+            final Envelope message = messages.get(currentMesgIndex);
             currentMesgIndex += 1;
             writeMessage(message);
         } else {
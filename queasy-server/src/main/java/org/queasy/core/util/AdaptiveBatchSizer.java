@@ -0,0 +1,49 @@
+package org.queasy.core.util;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Picks the size of the next insert batch from the latency of the last commit and the number of messages waiting
+ * behind it. The batch grows by a quarter while the backlog is deeper than the batch and commits finish well under the
+ * target latency, and is halved whenever a commit takes longer than the target. Not thread safe, meant to be used by
+ * the writer thread alone.
+ *
+ * Created on: 2026-10-18
+ */
+public final class AdaptiveBatchSizer {
+
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final long targetLatencyNanos;
+
+    private volatile int batchSize;
+
+
+    public AdaptiveBatchSizer(final int initialBatchSize, final int minBatchSize, final int maxBatchSize,
+                              final long targetLatencyNanos) {
+        Preconditions.checkArgument(minBatchSize > 0 && minBatchSize <= maxBatchSize, "Invalid batch size range");
+        Preconditions.checkArgument(targetLatencyNanos > 0, "Target latency must be positive");
+        this.minBatchSize = minBatchSize;
+        this.maxBatchSize = maxBatchSize;
+        this.targetLatencyNanos = targetLatencyNanos;
+        this.batchSize = Math.max(minBatchSize, Math.min(maxBatchSize, initialBatchSize));
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @param latencyNanos time taken to write and commit the last batch
+     * @param queueDepth   number of messages waiting to be written when the batch was committed
+     */
+    public void onCommit(final long latencyNanos, final long queueDepth) {
+        final int current = batchSize;
+        if (latencyNanos > targetLatencyNanos) {
+            batchSize = Math.max(minBatchSize, current / 2);
+        } else if (queueDepth > current && latencyNanos < targetLatencyNanos / 2) {
+            batchSize = Math.min(maxBatchSize, current + Math.max(1, current / 4));
+        }
+    }
+
+}
@@ -0,0 +1,237 @@
+package org.queasy.core.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Lock-free, multi-producer / single-consumer ring buffer of preallocated entries. Inspired by LMAX Disruptor's
+ * MultiProducerSequencer: https://github.com/LMAX-Exchange/disruptor
+ * <p>
+ * Producers claim a contiguous range of sequences with a single CAS, fill the entries in place and publish them.
+ * The consumer waits for published sequences, processes every published entry in one go and releases them back to
+ * producers. Capacity is always a power of two.
+ *
+ * Created on: 2026-10-18
+ */
+public final class RingBuffer<E> {
+
+    /**
+     * How the consumer waits for producers to publish new entries
+     */
+    public enum WaitStrategy {
+        /**
+         * Park consumer thread till a producer publishes. Lowest CPU usage, some wake up latency
+         */
+        BLOCKING,
+        /**
+         * Yield CPU to other threads between checks. Low latency, burns CPU only when other threads don't need it
+         */
+        YIELDING,
+        /**
+         * Spin continuously. Lowest latency, burns one CPU core all the time
+         */
+        BUSY_SPIN
+    }
+
+    private final Object[] entries;
+    private final int mask;
+    private final int indexShift;
+    private final WaitStrategy waitStrategy;
+
+    // Publication round of every slot, to tell published slots apart from claimed but not yet published ones
+    private final AtomicIntegerArray available;
+    // Last claimed sequence
+    private final AtomicLong cursor;
+    // Last sequence released by the consumer
+    private final AtomicLong gatingSequence;
+
+    private volatile Thread consumerThread;
+    private volatile boolean consumerParked;
+
+
+    public RingBuffer(final int size, final WaitStrategy waitStrategy, final Supplier<E> entryFactory) {
+        final int capacity = capacityFor(size);
+        this.entries = new Object[capacity];
+        for (int i = 0; i < capacity; i++) {
+            entries[i] = entryFactory.get();
+        }
+        this.mask = capacity - 1;
+        this.indexShift = Integer.numberOfTrailingZeros(capacity);
+        this.waitStrategy = waitStrategy;
+        this.available = new AtomicIntegerArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            available.set(i, -1);
+        }
+        this.cursor = new AtomicLong(-1L);
+        this.gatingSequence = new AtomicLong(-1L);
+    }
+
+    /**
+     * @return smallest power of two greater than or equal to size
+     */
+    public static int capacityFor(final int size) {
+        if (size < 1 || size > (1 << 30)) {
+            throw new IllegalArgumentException("Ring buffer size must be between 1 and 2^30: " + size);
+        }
+        return (size == 1) ? 1 : Integer.highestOneBit(size - 1) << 1;
+    }
+
+    public int getCapacity() {
+        return entries.length;
+    }
+
+    /**
+     * @return highest sequence claimed by producers so far, published or not
+     */
+    public long getCursor() {
+        return cursor.get();
+    }
+
+    /**
+     * @return number of entries that can be claimed right now
+     */
+    public long remainingCapacity() {
+        return entries.length - (cursor.get() - gatingSequence.get());
+    }
+
+    @SuppressWarnings("unchecked")
+    public E get(final long sequence) {
+        return (E) entries[(int) sequence & mask];
+    }
+
+    /* Producer side */
+
+    /**
+     * Claims n contiguous entries without blocking
+     *
+     * @return sequence of the last claimed entry, first one being return value - n + 1; or -1 if there isn't room
+     * for n entries in the ring right now
+     */
+    public long tryClaim(final int n) {
+        if (n < 1 || n > entries.length) {
+            throw new IllegalArgumentException("Can not claim " + n + " entries from a ring of size " + entries.length);
+        }
+        while (true) {
+            final long current = cursor.get();
+            final long next = current + n;
+            if (next - entries.length > gatingSequence.get()) {
+                return -1L; // would wrap over entries not yet released by the consumer
+            }
+            if (cursor.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * Claims n contiguous entries, waiting up to timeout for room to become available
+     *
+     * @return sequence of the last claimed entry, or -1 on timeout
+     */
+    public long claim(final int n, final long timeout, final TimeUnit unit) throws InterruptedException {
+        long hi = tryClaim(n);
+        if (hi >= 0) {
+            return hi;
+        }
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while ((hi = tryClaim(n)) < 0) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (deadline - System.nanoTime() <= 0) {
+                return -1L;
+            }
+            LockSupport.parkNanos(PRODUCER_BACKOFF_NANOS);
+        }
+        return hi;
+    }
+
+    /**
+     * Makes claimed entries lo..hi (inclusive) visible to the consumer
+     */
+    public void publish(final long lo, final long hi) {
+        for (long seq = lo; seq < hi; seq++) {
+            available.lazySet((int) seq & mask, (int) (seq >>> indexShift));
+        }
+        // Full fence on the last one, it orders the publication before the consumerParked read below
+        available.set((int) hi & mask, (int) (hi >>> indexShift));
+        if (consumerParked) {
+            LockSupport.unpark(consumerThread);
+        }
+    }
+
+    /* Consumer side */
+
+    /**
+     * @return highest sequence such that all sequences from next up to it are published, or next - 1 if next itself
+     * isn't published yet
+     */
+    public long getHighestPublished(final long next) {
+        final long claimed = cursor.get();
+        long seq = next;
+        while (seq <= claimed && isPublished(seq)) {
+            seq++;
+        }
+        return seq - 1;
+    }
+
+    /**
+     * Waits, as per the wait strategy, till sequence next is published or the consumer thread is interrupted
+     *
+     * @return same as {@link #getHighestPublished(long)}
+     */
+    public long waitFor(final long next) {
+        long highest;
+        int spins = 0;
+        while ((highest = getHighestPublished(next)) < next) {
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+            switch (waitStrategy) {
+                case BUSY_SPIN:
+                    break;
+                case YIELDING:
+                    Thread.yield();
+                    break;
+                default:
+                    if (++spins < CONSUMER_SPINS) {
+                        Thread.yield();
+                        break;
+                    }
+                    consumerThread = Thread.currentThread();
+                    consumerParked = true;
+                    if (getHighestPublished(next) < next) {
+                        LockSupport.parkNanos(this, CONSUMER_PARK_NANOS);
+                    }
+                    consumerParked = false;
+            }
+        }
+        return highest;
+    }
+
+    /**
+     * Hands entries up to and including sequence back to producers
+     */
+    public void release(final long sequence) {
+        gatingSequence.lazySet(sequence);
+    }
+
+    /**
+     * @return last sequence released by the consumer
+     */
+    public long getReleasedSequence() {
+        return gatingSequence.get();
+    }
+
+    private boolean isPublished(final long seq) {
+        return available.get((int) seq & mask) == (int) (seq >>> indexShift);
+    }
+
+    private static final long PRODUCER_BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long CONSUMER_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final int CONSUMER_SPINS = 100;
+
+}
@@ -1,7 +1,14 @@
 package org.queasy.core.util;
 
+import com.google.common.annotations.VisibleForTesting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import javax.inject.Singleton;
 import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Distributed Sequence Generator.
@@ -9,14 +16,24 @@ import java.time.Instant;
  * <p>
  * This class should be used as a Singleton.
  * Make sure that you create and reuse a Single instance of Snowflake per node in your distributed system cluster.
+ * <p>
+ * Lock-free: the last timestamp and sequence are kept in one word, advanced by compare-and-set. Once the sequence of a
+ * millisecond runs out, ids are taken from the next millisecond rather than waiting for the clock, up to
+ * MAX_DRIFT_MILLIS ahead of it. The same goes for a clock set back: ids carry on from the last timestamp, so they are
+ * always increasing. Once they are MAX_DRIFT_MILLIS ahead of a clock set back further than that, callers wait for the
+ * clock to catch up, for MAX_WAIT_MILLIS at most. As ids may be ahead of the clock, a generator issuing ids stored
+ * before a restart must be moved past the last of them, see {@link #advancePast(long)}.
+ * <p>
+ * Several id generators on one host, e.g. one per writer pipeline, must each have node bits of their own; see
+ * {@link #nodeId(long, int, int)}.
  */
 @Singleton
 public class Snowflake {
 
     private final long hostId;
 
-    private volatile long lastTimestamp = -1L;
-    private volatile long sequence = 0L;
+    // Timestamp of the last id issued << SEQUENCE_BITS | its sequence
+    private final AtomicLong state = new AtomicLong();
 
     private static final int UNUSED_BITS = 1; // Sign bit, Unused (always set to 0)
     private static final int EPOCH_BITS = 41;
@@ -26,9 +43,18 @@ public class Snowflake {
     private static final long MAX_SEQUENCE = (1L << SEQUENCE_BITS) - 1;
     private static final long MASK_NODE_ID = ((1L << NODE_ID_BITS) - 1) << SEQUENCE_BITS;
     private static final long MASK_SEQUENCE = (1L << SEQUENCE_BITS) - 1;
+    private static final long MAX_DRIFT_MILLIS = 1000;
+    private static final long MAX_WAIT_MILLIS = 1000;
     // Custom Epoch (April 1, 2021 Midnight UTC)
     private static final long DEFAULT_CUSTOM_EPOCH = Instant.parse("2021-04-01T00:00:00Z").toEpochMilli();
 
+    /**
+     * Maximum number of ids reserved by one call to {@link #nextIds(int)}, a millisecond's worth of sequence
+     */
+    public static final int MAX_RANGE = (int) MAX_SEQUENCE + 1;
+
+    private static final Logger logger = LoggerFactory.getLogger(Snowflake.class);
+
 
     public Snowflake(long hostId) {
         if (hostId < 0 || hostId > MAX_NODE_ID) {
@@ -37,42 +63,103 @@ public class Snowflake {
         this.hostId = hostId;
     }
 
-    public synchronized long nextId() {
-        long currentTimestamp = timestamp();
+    /**
+     * Splits the node bits between hosts and the id generators of a host: node id = hostId * generators + generator.
+     * With 8 generators per host, for example, host ids must stay under 128.
+     *
+     * @param generators number of id generators on every host, e.g. writer pipelines
+     * @param generator  0 based index of an id generator on this host
+     */
+    public static long nodeId(final long hostId, final int generators, final int generator) {
+        if (generators < 1 || generator < 0 || generator >= generators) {
+            throw new IllegalArgumentException(String.format("Generator must be between %d and %d", 0, generators - 1));
+        }
+        final long nodeId = hostId * generators + generator;
+        if (hostId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException(String.format("HostId must be between %d and %d with %d generators per host",
+                    0, (MAX_NODE_ID + 1) / generators - 1, generators));
+        }
+        return nodeId;
+    }
+
+    public long nextId() {
+        return nextIds(1);
+    }
 
-        while (currentTimestamp < lastTimestamp) {
-            //NTP reset the clock backwards?
-            Thread.yield();
-            currentTimestamp = timestamp();
+    /**
+     * Reserves count consecutive ids, all in the same millisecond
+     *
+     * @param count 1 to MAX_RANGE
+     * @return first id of the range, the last one is first + count - 1
+     * @throws IllegalStateException if the clock was set back and does not catch up within MAX_WAIT_MILLIS
+     */
+    public long nextIds(final int count) {
+        if (count < 1 || count > MAX_RANGE) {
+            throw new IllegalArgumentException(String.format("Count must be between %d and %d", 1, MAX_RANGE));
         }
 
-        if (currentTimestamp == lastTimestamp) {
-            sequence = (sequence + 1) & MAX_SEQUENCE;
-            if (sequence == 0) {
-                // Sequence Exhausted, wait till next millisecond.
-                while (currentTimestamp == lastTimestamp) {
-                    Thread.yield();
-                    currentTimestamp = timestamp();
+        long waitingSince = 0;
+        while (true) {
+            final long last = state.get();
+            final long lastTimestamp = last >>> SEQUENCE_BITS;
+            final long currentTimestamp = timestamp();
+
+            long timestamp = currentTimestamp;
+            long sequence = 0;
+            if (currentTimestamp <= lastTimestamp) {
+                // Same millisecond, or NTP reset the clock backwards
+                timestamp = lastTimestamp;
+                sequence = (last & MASK_SEQUENCE) + 1;
+                if (sequence + count - 1 > MAX_SEQUENCE) {
+                    // Sequence exhausted, move on to the next millisecond
+                    timestamp = lastTimestamp + 1;
+                    sequence = 0;
+                    if (timestamp - currentTimestamp > MAX_DRIFT_MILLIS) {
+                        // Too far ahead of the clock, let it catch up
+                        if (waitingSince == 0) {
+                            waitingSince = System.nanoTime();
+                            logger.warn("Clock is {} ms behind the last id issued, waiting for it to catch up",
+                                    lastTimestamp - currentTimestamp);
+                        } else if (System.nanoTime() - waitingSince > TimeUnit.MILLISECONDS.toNanos(MAX_WAIT_MILLIS)) {
+                            throw new IllegalStateException(String.format(
+                                    "Clock is %d ms behind the last id issued, refusing to issue ids",
+                                    lastTimestamp - currentTimestamp));
+                        }
+                        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                        continue;
+                    }
                 }
             }
-        } else {
-            // reset sequence to start with zero for the next millisecond
-            sequence = 0;
-        }
-
-        lastTimestamp = currentTimestamp;
 
-        long id = currentTimestamp << (NODE_ID_BITS + SEQUENCE_BITS)
-                | (hostId << SEQUENCE_BITS)
-                | sequence;
-
-        return id;
+            if (state.compareAndSet(last, (timestamp << SEQUENCE_BITS) | (sequence + count - 1))) {
+                return timestamp << (NODE_ID_BITS + SEQUENCE_BITS)
+                        | (hostId << SEQUENCE_BITS)
+                        | sequence;
+            }
+        }
     }
 
+    /**
+     * Makes every id issued from now on greater than the given one, e.g. the last one stored before a restart
+     */
+    public void advancePast(final long id) {
+        // Ids of the next millisecond are greater, whatever the node and sequence bits of the given one
+        final long floor = ((id >>> (NODE_ID_BITS + SEQUENCE_BITS)) << SEQUENCE_BITS) | MAX_SEQUENCE;
+        state.accumulateAndGet(floor, Math::max);
+    }
 
     // Get current timestamp in milliseconds, adjust for the custom epoch.
-    private long timestamp() {
-        return Instant.now().toEpochMilli() - DEFAULT_CUSTOM_EPOCH;
+    @VisibleForTesting
+    long timestamp() {
+        return System.currentTimeMillis() - DEFAULT_CUSTOM_EPOCH;
+    }
+
+    /**
+     * @param epochMillis time in milliseconds since the Unix epoch
+     * @return the lowest id that can be issued at that time or later, e.g. to delete the messages older than that by id
+     */
+    public static long minIdAt(final long epochMillis) {
+        return Math.max(epochMillis - DEFAULT_CUSTOM_EPOCH, 0) << (NODE_ID_BITS + SEQUENCE_BITS);
     }
 
     public long[] parse(long id) {
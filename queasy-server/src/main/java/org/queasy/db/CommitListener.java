@@ -0,0 +1,18 @@
+package org.queasy.db;
+
+/**
+ * Notified by {@link QDbWriter} once the transaction holding a unit of messages has ended
+ *
+ * Created on: 2026-10-18
+ */
+@FunctionalInterface
+public interface CommitListener {
+
+    /**
+     * Called on the writer thread, must not block
+     *
+     * @param committed true if the messages are durably stored in the DB, false if they were lost
+     */
+    void onCommit(boolean committed);
+
+}
@@ -0,0 +1,275 @@
+package org.queasy.db;
+
+import com.google.common.base.Preconditions;
+import org.queasy.core.config.ConsumerGroupConfiguration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A consumer group or topic query, ready to run: a SQL where clause fragment with its parameters, for the stores that
+ * run SQL, and a predicate on the metadata of a message, for those that hold messages in memory. A compiled
+ * {@link MessageFilter} has both, guaranteed to match the same messages. A raw SQL query only has a predicate if it is
+ * nothing but qname conditions, see {@link QueryAnalyzer#exactQueueNames(String)}.
+ * <p>
+ * Text compares as SQLite's binary collation does, by code point: qname prefixes are matched by substr on SQL's side.
+ * A NULL field, in SQL, matches no condition on it.
+ *
+ * Created on: 2026-10-18
+ */
+public final class CompiledQuery {
+
+    private final String text;
+    private final String sql;
+    private final Object[] params;
+    private final Set<String> queueNames;
+    private final boolean exact;
+    private final boolean evaluable;
+
+    // Predicate, null or bounds for any value
+    private final Set<String> qNameIn;
+    private final String qNamePrefix;
+    private final long[] tsIn;
+    private final long tsMin;
+    private final long tsMax;
+    private final int[] encIn;
+
+
+    private CompiledQuery(final String text, final String sql, final Object[] params, final Set<String> queueNames,
+                          final boolean exact, final boolean evaluable, final Set<String> qNameIn,
+                          final String qNamePrefix, final long[] tsIn, final long tsMin, final long tsMax,
+                          final int[] encIn) {
+        this.text = text;
+        this.sql = sql;
+        this.params = params;
+        this.queueNames = queueNames;
+        this.exact = exact;
+        this.evaluable = evaluable;
+        this.qNameIn = qNameIn;
+        this.qNamePrefix = qNamePrefix;
+        this.tsIn = tsIn;
+        this.tsMin = tsMin;
+        this.tsMax = tsMax;
+        this.encIn = encIn;
+    }
+
+    /**
+     * @return the query of the consumer group or topic, its filter compiled if it has one
+     */
+    public static CompiledQuery of(final ConsumerGroupConfiguration cgConfig) {
+        return (cgConfig.getFilter() != null) ? compile(cgConfig.getFilter()) : sql(cgConfig.getQuery());
+    }
+
+    /**
+     * @return a raw SQL query, run as it is
+     */
+    public static CompiledQuery sql(final String query) {
+        final Set<String> exactNames = QueryAnalyzer.exactQueueNames(query);
+        return new CompiledQuery(query, query, new Object[0], QueryAnalyzer.queueNames(query), exactNames != null,
+                exactNames != null, exactNames, null, null, Long.MIN_VALUE, Long.MAX_VALUE, null);
+    }
+
+    /**
+     * @throws IllegalArgumentException if a condition doesn't apply to its field, or a value isn't a number where one
+     *                                  is expected
+     */
+    public static CompiledQuery compile(final MessageFilter filter) {
+        final List<String> terms = new ArrayList<>();
+        final List<Object> params = new ArrayList<>();
+
+        final MessageFilter.Condition qname = filter.getQname();
+        Set<String> qNameIn = null;
+        String qNamePrefix = null;
+        if (qname != null) {
+            checkRanges("qname", qname);
+            final List<String> in = values("qname", qname);
+            if (in != null) {
+                qNameIn = Collections.unmodifiableSet(new LinkedHashSet<>(in));
+                terms.add(inSQL("qname", in.size()));
+                params.addAll(in);
+            }
+            if (qname.getPrefix() != null) {
+                qNamePrefix = qname.getPrefix();
+                terms.add("substr(qname, 1, ?) = ?");
+                params.add(qNamePrefix.codePointCount(0, qNamePrefix.length()));
+                params.add(qNamePrefix);
+            }
+        }
+
+        final MessageFilter.Condition ts = filter.getTs();
+        long[] tsIn = null;
+        long tsMin = Long.MIN_VALUE;
+        long tsMax = Long.MAX_VALUE;
+        if (ts != null) {
+            checkPrefix("ts", ts);
+            final List<String> in = values("ts", ts);
+            if (in != null) {
+                tsIn = in.stream().mapToLong(value -> number("ts", value)).sorted().distinct().toArray();
+                terms.add(inSQL("ts", tsIn.length));
+                Arrays.stream(tsIn).forEach(params::add);
+            }
+            // Bounds made inclusive, ts being an integer
+            if (ts.getGt() != null) {
+                tsMin = Math.max(tsMin, Math.addExact(number("ts", ts.getGt()), 1));
+            }
+            if (ts.getGte() != null) {
+                tsMin = Math.max(tsMin, number("ts", ts.getGte()));
+            }
+            if (ts.getLt() != null) {
+                tsMax = Math.min(tsMax, Math.subtractExact(number("ts", ts.getLt()), 1));
+            }
+            if (ts.getLte() != null) {
+                tsMax = Math.min(tsMax, number("ts", ts.getLte()));
+            }
+            if (tsMin != Long.MIN_VALUE) {
+                terms.add("ts >= ?");
+                params.add(tsMin);
+            }
+            if (tsMax != Long.MAX_VALUE) {
+                terms.add("ts <= ?");
+                params.add(tsMax);
+            }
+        }
+
+        final MessageFilter.Condition enc = filter.getEnc();
+        int[] encIn = null;
+        if (enc != null) {
+            checkPrefix("enc", enc);
+            checkRanges("enc", enc);
+            final List<String> in = values("enc", enc);
+            if (in != null) {
+                encIn = in.stream().mapToInt(value -> Math.toIntExact(number("enc", value))).distinct().toArray();
+                // Messages written before the enc column was added have none, they are text
+                terms.add(inSQL("coalesce(enc, 0)", encIn.length));
+                Arrays.stream(encIn).forEach(params::add);
+            }
+        }
+
+        final boolean exact = (qNameIn != null) && (qNamePrefix == null) && (tsIn == null) &&
+                (tsMin == Long.MIN_VALUE) && (tsMax == Long.MAX_VALUE) && (encIn == null);
+        final String sql = terms.isEmpty() ? "1 = 1" : String.join(" AND ", terms);
+        return new CompiledQuery(describe(sql, params), sql, params.toArray(), qNameIn, exact, true, qNameIn,
+                qNamePrefix, tsIn, tsMin, tsMax, encIn);
+    }
+
+    private static List<String> values(final String field, final MessageFilter.Condition condition) {
+        Preconditions.checkArgument((condition.getEq() == null) || (condition.getIn() == null),
+                "Filter on %s: eq or in, not both", field);
+        if (condition.getEq() != null) {
+            return Collections.singletonList(condition.getEq());
+        }
+        if (condition.getIn() != null) {
+            Preconditions.checkArgument(!condition.getIn().isEmpty(), "Filter on %s: in matches nothing", field);
+            Preconditions.checkArgument(!condition.getIn().contains(null), "Filter on %s: in null", field);
+        }
+        return condition.getIn();
+    }
+
+    private static void checkPrefix(final String field, final MessageFilter.Condition condition) {
+        Preconditions.checkArgument(condition.getPrefix() == null, "Filter on %s: prefix applies to qname alone",
+                field);
+    }
+
+    private static void checkRanges(final String field, final MessageFilter.Condition condition) {
+        Preconditions.checkArgument((condition.getGt() == null) && (condition.getGte() == null) &&
+                (condition.getLt() == null) && (condition.getLte() == null), "Filter on %s: ranges apply to ts alone",
+                field);
+    }
+
+    private static long number(final String field, final String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException(String.format("Filter on %s: not a number: %s", field, value), ex);
+        }
+    }
+
+    private static String inSQL(final String column, final int values) {
+        return (values == 1) ? column + " = ?" :
+                column + " IN (" + String.join(", ", Collections.nCopies(values, "?")) + ")";
+    }
+
+    private static String describe(final String sql, final List<Object> params) {
+        return params.isEmpty() ? sql : sql + " " + params;
+    }
+
+    /**
+     * @return the query as configured, for logging
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return SQL where clause fragment, without the keyword "where"
+     */
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * @return parameters of the SQL fragment, in order
+     */
+    public Object[] getParams() {
+        return params.clone();
+    }
+
+    /**
+     * @return names of the only queues the query can match, or null if it may match any queue
+     */
+    public Set<String> getQueueNames() {
+        return queueNames;
+    }
+
+    /**
+     * @return true if the query is nothing but qname conditions, so that {@link #getQueueNames()} are the queues it
+     * matches, every message of which it matches
+     */
+    public boolean isExact() {
+        return exact;
+    }
+
+    /**
+     * @return true if the query can be evaluated by {@link #matches}
+     */
+    public boolean isEvaluable() {
+        return evaluable;
+    }
+
+    /**
+     * Evaluates the query on the metadata of a message without allocating
+     *
+     * @throws IllegalStateException if the query isn't evaluable
+     */
+    public boolean matches(final String qName, final long ts, final int enc) {
+        Preconditions.checkState(evaluable, "SQL query can't be evaluated in memory: %s", text);
+        if ((qNameIn != null) && ((qName == null) || !qNameIn.contains(qName))) {
+            return false;
+        }
+        if ((qNamePrefix != null) && ((qName == null) || !qName.startsWith(qNamePrefix))) {
+            return false;
+        }
+        if ((ts < tsMin) || (ts > tsMax) || ((tsIn != null) && (Arrays.binarySearch(tsIn, ts) < 0))) {
+            return false;
+        }
+        if (encIn != null) {
+            for (int value : encIn) {
+                if (value == enc) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+
+}
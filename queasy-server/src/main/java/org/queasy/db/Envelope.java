@@ -0,0 +1,113 @@
+package org.queasy.db;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A message read from the DB, framed for delivery to consumers. A text message is framed as
+ * "{"id": &lt;id&gt;, "message": &lt;message&gt;}" and sent as a text frame; a binary message is framed as the 8 byte big
+ * endian id followed by the payload and sent as a binary frame. A text frame is kept UTF-8 encoded, as it is sent, so
+ * that it is encoded once however many consumers it is sent to.
+ *
+ * Created on: 2026-10-18
+ */
+public final class Envelope {
+
+    public static final int ID_BYTES = Long.BYTES;
+
+    private static final byte[] ID_PREFIX = "{\"id\": ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MESSAGE_PREFIX = ", \"message\": ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte MESSAGE_SUFFIX = '}';
+
+    private final ByteBuffer text;
+    private final byte[] binary;
+
+    private Envelope(final ByteBuffer text, final byte[] binary) {
+        this.text = text;
+        this.binary = binary;
+    }
+
+    public static Envelope text(final String frame) {
+        return text(ByteBuffer.wrap(frame.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * @param frame UTF-8 encoded text frame, from its position to its limit, not to be modified afterwards
+     */
+    public static Envelope text(final ByteBuffer frame) {
+        return new Envelope(frame.slice().asReadOnlyBuffer(), null);
+    }
+
+    public static Envelope binary(final byte[] frame) {
+        return new Envelope(null, frame);
+    }
+
+    public static Envelope of(final long id, final String message) {
+        return ofText(id, message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param message UTF-8 encoded text message
+     */
+    public static Envelope ofText(final long id, final byte[] message) {
+        final byte[] idDigits = Long.toString(id).getBytes(StandardCharsets.US_ASCII);
+        final ByteBuffer frame = ByteBuffer.allocate(ID_PREFIX.length + idDigits.length + MESSAGE_PREFIX.length +
+                message.length + 1);
+        frame.put(ID_PREFIX).put(idDigits).put(MESSAGE_PREFIX).put(message).put(MESSAGE_SUFFIX).flip();
+        return text(frame);
+    }
+
+    public static Envelope of(final long id, final byte[] payload) {
+        return binary(ByteBuffer.allocate(ID_BYTES + payload.length).putLong(id).put(payload).array());
+    }
+
+    public boolean isBinary() {
+        return binary != null;
+    }
+
+    /**
+     * @return text frame, decoded afresh on every call, null for a binary message
+     */
+    public String getText() {
+        return (text == null) ? null : StandardCharsets.UTF_8.decode(text.duplicate()).toString();
+    }
+
+    /**
+     * @return read-only view of the UTF-8 encoded text frame, of its own position and limit so that it can be sent to
+     * a consumer while it is sent to others, null for a binary message
+     */
+    public ByteBuffer getTextFrame() {
+        return (text == null) ? null : text.duplicate();
+    }
+
+    /**
+     * @return binary frame, id included, null for a text message
+     */
+    public byte[] getBinary() {
+        return binary;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Envelope)) {
+            return false;
+        }
+        final Envelope that = (Envelope) o;
+        return isBinary() ? Arrays.equals(binary, that.binary) : text.equals(that.text);
+    }
+
+    @Override
+    public int hashCode() {
+        return isBinary() ? Arrays.hashCode(binary) : text.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return isBinary() ? "binary[" + binary.length + "]" : getText();
+    }
+
+}
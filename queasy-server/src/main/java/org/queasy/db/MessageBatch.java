@@ -0,0 +1,97 @@
+package org.queasy.db;
+
+import java.util.Arrays;
+
+/**
+ * Messages a {@link QDbWriter} commits together, as they are to be stored: a String stored as text, or a byte[] with
+ * its "enc" bits telling what it is. Filled by the writer thread and reused for every batch.
+ *
+ * Created on: 2026-10-18
+ */
+public final class MessageBatch {
+
+    private long ts;
+    private int size;
+    private long[] ids = new long[64];
+    private String[] qNames = new String[64];
+    private Object[] messages = new Object[64];
+    private int[] encodings = new int[64];
+
+
+    public void add(final String qName, final Object message, final int enc) {
+        if (size == ids.length) {
+            final int capacity = 2 * size;
+            ids = Arrays.copyOf(ids, capacity);
+            qNames = Arrays.copyOf(qNames, capacity);
+            messages = Arrays.copyOf(messages, capacity);
+            encodings = Arrays.copyOf(encodings, capacity);
+        }
+        qNames[size] = qName;
+        messages[size] = message;
+        encodings[size] = enc;
+        size++;
+    }
+
+    public void setId(final int i, final long id) {
+        ids[i] = id;
+    }
+
+    public void setTs(final long ts) {
+        this.ts = ts;
+    }
+
+    public void clear() {
+        Arrays.fill(qNames, 0, size, null);
+        Arrays.fill(messages, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * Drops the messages from the given index on
+     */
+    public void truncate(final int size) {
+        if (size < this.size) {
+            Arrays.fill(qNames, size, this.size, null);
+            Arrays.fill(messages, size, this.size, null);
+            this.size = size;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return timestamp of every message in the batch
+     */
+    public long getTs() {
+        return ts;
+    }
+
+    public long getId(final int i) {
+        return ids[i];
+    }
+
+    public String getQName(final int i) {
+        return qNames[i];
+    }
+
+    /**
+     * @return a String, stored as text, or a byte[]
+     */
+    public Object getMessage(final int i) {
+        return messages[i];
+    }
+
+    /**
+     * @return "enc" bits of the message, 0 for a String
+     */
+    public int getEncoding(final int i) {
+        return encodings[i];
+    }
+
+    public long getLastId() {
+        return ids[size - 1];
+    }
+
+}
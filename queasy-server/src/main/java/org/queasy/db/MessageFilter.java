@@ -0,0 +1,134 @@
+package org.queasy.db;
+
+import java.util.List;
+
+/**
+ * Consumer group or topic filter on message metadata, the structured alternative to a raw SQL query. Conditions on
+ * different fields are ANDed, as are the conditions on the same field; a field without a condition matches anything.
+ * For instance:
+ * <pre>
+ * filter:
+ *   qname:
+ *     prefix: orders.
+ *   ts:
+ *     gte: 1700000000000
+ * </pre>
+ * Compiled by {@link CompiledQuery#compile(MessageFilter)} to a parameterized SQL fragment, and to a predicate for the
+ * stores and buffers that hold messages in memory.
+ *
+ * Created on: 2026-10-18
+ */
+public class MessageFilter {
+
+    /**
+     * Conditions on one field. eq and in compare for equality, prefix applies to qname alone, and the ranges to ts
+     * alone
+     */
+    public static class Condition {
+
+        private String eq;
+        private List<String> in;
+        private String prefix;
+        private String gt;
+        private String gte;
+        private String lt;
+        private String lte;
+
+        public String getEq() {
+            return eq;
+        }
+
+        public void setEq(String eq) {
+            this.eq = eq;
+        }
+
+        public List<String> getIn() {
+            return in;
+        }
+
+        public void setIn(List<String> in) {
+            this.in = in;
+        }
+
+        public String getPrefix() {
+            return prefix;
+        }
+
+        public void setPrefix(String prefix) {
+            this.prefix = prefix;
+        }
+
+        public String getGt() {
+            return gt;
+        }
+
+        public void setGt(String gt) {
+            this.gt = gt;
+        }
+
+        public String getGte() {
+            return gte;
+        }
+
+        public void setGte(String gte) {
+            this.gte = gte;
+        }
+
+        public String getLt() {
+            return lt;
+        }
+
+        public void setLt(String lt) {
+            this.lt = lt;
+        }
+
+        public String getLte() {
+            return lte;
+        }
+
+        public void setLte(String lte) {
+            this.lte = lte;
+        }
+    }
+
+    /**
+     * Queue name: eq, in or prefix
+     */
+    private Condition qname;
+
+    /**
+     * Time the message was written at, in epoch millis: eq, in or a range
+     */
+    private Condition ts;
+
+    /**
+     * Encoding bits of the message, 0 for text: eq or in
+     */
+    private Condition enc;
+
+
+    public Condition getQname() {
+        return qname;
+    }
+
+    public void setQname(Condition qname) {
+        this.qname = qname;
+    }
+
+    public Condition getTs() {
+        return ts;
+    }
+
+    public void setTs(Condition ts) {
+        this.ts = ts;
+    }
+
+    public Condition getEnc() {
+        return enc;
+    }
+
+    public void setEnc(Condition enc) {
+        this.enc = enc;
+    }
+
+}
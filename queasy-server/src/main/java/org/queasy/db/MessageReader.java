@@ -0,0 +1,52 @@
+package org.queasy.db;
+
+import java.util.Collection;
+
+/**
+ * Where a consumer group or topic reads its messages from, in batches, keeping track of what it has read so far
+ *
+ * Created on: 2026-10-18
+ */
+public interface MessageReader {
+
+    /**
+     * @return how long, in milliseconds, a consumer waits for a message before it times out
+     */
+    long getTimeout();
+
+    /**
+     * @return maximum number of messages read in one batch
+     */
+    int getFetchSize();
+
+    /**
+     * Tracks batches read, is monotonically increasing so that it can be used to sense missed message batches in case
+     * of a slow pub-sub or topic consumer
+     */
+    long getReadBatchId();
+
+    /**
+     * Sets the read position to the last checkpoint, or to the newest message if there is none
+     *
+     * @return id of the last message read
+     */
+    long readLastCheckpoint();
+
+    /**
+     * Saves the read position, if it has moved since the last checkpoint
+     */
+    void saveCheckpoint();
+
+    /**
+     * @return true if messages may have been written since the last batch read
+     */
+    boolean hasMoreMessages();
+
+    /**
+     * Reads the next batch of messages, no more than the fetch size
+     *
+     * @return false if there were no new messages
+     */
+    boolean loadNextBatchOfMessages(Collection<Envelope> messages);
+
+}
@@ -0,0 +1,90 @@
+package org.queasy.db;
+
+/**
+ * Storage engine of one shard: its messages and the checkpoints of the consumer groups and topics reading them. The
+ * writer side, {@link #append} and {@link #trim}, is called by the shard's writer thread alone. The rest may be called
+ * from any thread.
+ *
+ * Created on: 2026-10-18
+ */
+public interface MessageStore {
+
+    /**
+     * Called back for every message read
+     */
+    @FunctionalInterface
+    interface RecordVisitor {
+        /**
+         * @param message a String if enc is 0, a byte[] otherwise
+         * @param enc     "enc" bits of the message as stored
+         */
+        void visit(long id, Object message, int enc);
+    }
+
+    /**
+     * Reads the messages matched by a consumer group query
+     */
+    @FunctionalInterface
+    interface Reader {
+        /**
+         * Reads messages after the given id, oldest first, up to the fetch size of the query
+         *
+         * @return id of the last message looked at, read or not; afterId if there were none
+         */
+        long read(long afterId, RecordVisitor visitor);
+    }
+
+    /**
+     * @return id of the newest message stored, 0 if there is none
+     */
+    long getLastId();
+
+    /**
+     * @return id a consumer group without a checkpoint starts reading after, until the writer commits its first batch
+     */
+    default long getStartId() {
+        return getLastId();
+    }
+
+    /**
+     * Stores the batch, all of it or none of it. Its messages are visible to readers once this returns.
+     *
+     * @param codec its dictionaries trained since the last batch are saved along with the batch, may be null
+     */
+    void append(MessageBatch batch, PayloadCodec codec) throws Exception;
+
+    /**
+     * Deletes the oldest messages, those beyond the newest maxMessages and those with ids lower than minId. An engine
+     * may keep some of them, if it only deletes messages by the file
+     *
+     * @param maxMessages 0 for no limit
+     * @param minId       0 for no limit, see {@link org.queasy.core.util.Snowflake#minIdAt(long)} for an age limit
+     * @return number of messages deleted
+     */
+    long trim(long maxMessages, long minId) throws Exception;
+
+    /**
+     * @param query     consumer group query
+     * @param fetchSize maximum number of messages to read at a time
+     * @throws IllegalArgumentException if the engine can't run the query
+     */
+    Reader reader(CompiledQuery query, int fetchSize);
+
+    /**
+     * @param query raw SQL consumer group query
+     * @see #reader(CompiledQuery, int)
+     */
+    default Reader reader(final String query, final int fetchSize) {
+        return reader(CompiledQuery.sql(query), fetchSize);
+    }
+
+    /**
+     * @return checkpoint of the consumer group or topic, null if it has none yet
+     */
+    Long readCheckpoint(String name);
+
+    void saveCheckpoint(String name, long checkpoint);
+
+    void close();
+
+}
@@ -0,0 +1,268 @@
+package org.queasy.db;
+
+import org.jdbi.v3.core.Handle;
+import org.jdbi.v3.core.Jdbi;
+import org.queasy.core.config.CompressionConfiguration;
+import org.queasy.core.config.QueueConfiguration;
+import org.queasy.core.util.DictionaryTrainer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses the messages of the queues configured for compression as they are written, and decompresses them as they
+ * are read. There is one per shard, shared by the shard's writer and its readers. Compression is done on the writer
+ * thread alone; decompression may be done on any thread.
+ * <p>
+ * A compressed message is stored as a BLOB, text or not, with {@link #ENC_DEFLATE} set in its "enc" column. If it was
+ * compressed with a preset dictionary, the id of the dictionary, a row of queasy_dictionary, is in the bits above
+ * {@link #DICTIONARY_SHIFT}. A dictionary is saved in the same transaction as the first batch compressed with it, so it
+ * is never missing for a message that made it to the DB.
+ *
+ * Created on: 2026-10-18
+ */
+public final class PayloadCodec {
+
+    /**
+     * Bit of the "enc" column set for a message compressed with Deflate
+     */
+    public static final int ENC_DEFLATE = 2;
+    public static final int DICTIONARY_SHIFT = 8;
+
+    private static final String SELECT_DICTIONARY_SQL = "SELECT dict FROM queasy_dictionary WHERE id = ?";
+    private static final String SELECT_LATEST_DICTIONARY_SQL = "SELECT id, dict FROM queasy_dictionary " +
+            "WHERE qname = ? ORDER BY id DESC LIMIT 1";
+    private static final String SELECT_MAX_DICTIONARY_ID_SQL = "SELECT coalesce(max(id), 0) FROM queasy_dictionary";
+    private static final String INSERT_DICTIONARY_SQL = "INSERT INTO queasy_dictionary (id, qname, dict, ts) " +
+            "VALUES (?, ?, ?, ?)";
+
+    private final Map<String, QueueConfiguration> queues;
+    private final Jdbi jdbi;
+    private final Map<Integer, byte[]> dictionaries = new ConcurrentHashMap<>();
+    private final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(Inflater::new);
+
+    // Accessed by the writer thread alone
+    private final Map<String, QueueEncoder> encoders = new HashMap<>();
+    private final List<QueueEncoder> pendingDictionaries = new ArrayList<>();
+    private final Deflater deflater = new Deflater();
+    private byte[] buffer = new byte[4096];
+    private int encoding;
+
+
+    /**
+     * @param queues settings of the queues, by queue name, may be null
+     * @param jdbi   used to load dictionaries
+     */
+    public PayloadCodec(final Map<String, QueueConfiguration> queues, final Jdbi jdbi) {
+        this.queues = (queues != null) ? queues : Collections.emptyMap();
+        this.jdbi = jdbi;
+    }
+
+    /**
+     * @return true if messages of the queue are to be compressed
+     */
+    public boolean isCompressed(final String qName) {
+        return encoder(qName) != null;
+    }
+
+    /**
+     * Compresses the message, unless it is below the threshold of its queue or does not get any smaller
+     *
+     * @return the message compressed, null if it is to be stored as it is. {@link #getEncoding()} then tells how it
+     * was compressed
+     */
+    public byte[] compress(final String qName, final byte[] message) {
+        final QueueEncoder encoder = encoder(qName);
+        if ((encoder == null) || (message.length < encoder.threshold)) {
+            return null;
+        }
+        encoder.sample(message);
+
+        deflater.reset();
+        deflater.setLevel(encoder.config.getLevel());
+        if (encoder.dictionary != null) {
+            deflater.setDictionary(encoder.dictionary);
+        }
+        deflater.setInput(message);
+        deflater.finish();
+        int len = 0;
+        while (!deflater.finished()) {
+            if (len == buffer.length) {
+                if (len >= message.length) {
+                    return null;
+                }
+                buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+            }
+            len += deflater.deflate(buffer, len, buffer.length - len);
+        }
+        if (len >= message.length) {
+            return null;
+        }
+
+        encoding = ENC_DEFLATE | (encoder.dictionaryId << DICTIONARY_SHIFT);
+        return Arrays.copyOf(buffer, len);
+    }
+
+    /**
+     * @return "enc" bits of the message compressed last
+     */
+    public int getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * @return true if dictionaries were trained since the last batch, which are to be saved with the current one
+     */
+    public boolean hasPendingDictionaries() {
+        return !pendingDictionaries.isEmpty();
+    }
+
+    /**
+     * Saves the dictionaries trained since the last batch, in the transaction of the current batch. They are put to
+     * use once it is committed.
+     */
+    public void saveDictionaries(final Handle handle) {
+        if (pendingDictionaries.isEmpty()) {
+            return;
+        }
+        int id = handle.select(SELECT_MAX_DICTIONARY_ID_SQL).mapTo(Integer.class).one();
+        for (QueueEncoder encoder : pendingDictionaries) {
+            encoder.pendingId = ++id;
+            handle.execute(INSERT_DICTIONARY_SQL, encoder.pendingId, encoder.qName, encoder.pending,
+                    System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * @param committed if false, the dictionaries saved with the batch are discarded and trained afresh
+     */
+    public void onCommit(final boolean committed) {
+        for (QueueEncoder encoder : pendingDictionaries) {
+            if (committed && (encoder.pendingId > 0)) {
+                dictionaries.put(encoder.pendingId, encoder.pending);
+                encoder.dictionary = encoder.pending;
+                encoder.dictionaryId = encoder.pendingId;
+            }
+            encoder.pending = null;
+            encoder.pendingId = 0;
+        }
+        pendingDictionaries.clear();
+    }
+
+    /**
+     * @param message message as stored
+     * @param enc     "enc" column of the message
+     * @return the message decompressed
+     * @throws IllegalStateException if the message is corrupt
+     */
+    public byte[] decompress(final byte[] message, final int enc) {
+        if ((enc & ENC_DEFLATE) == 0) {
+            return message;
+        }
+
+        final Inflater inflater = inflaters.get();
+        inflater.reset();
+        inflater.setInput(message);
+        byte[] out = new byte[Math.max(64, 4 * message.length)];
+        int len = 0;
+        try {
+            while (!inflater.finished()) {
+                if (len == out.length) {
+                    out = Arrays.copyOf(out, 2 * out.length);
+                }
+                final int n = inflater.inflate(out, len, out.length - len);
+                if (n == 0) {
+                    if (inflater.needsDictionary()) {
+                        inflater.setDictionary(dictionary(enc >>> DICTIONARY_SHIFT));
+                    } else if (inflater.needsInput()) {
+                        throw new IllegalStateException("Compressed message is truncated");
+                    }
+                }
+                len += n;
+            }
+        } catch (DataFormatException ex) {
+            throw new IllegalStateException("Compressed message is corrupt", ex);
+        }
+        return (len == out.length) ? out : Arrays.copyOf(out, len);
+    }
+
+    private byte[] dictionary(final int id) {
+        return dictionaries.computeIfAbsent(id, key -> jdbi.withHandle(handle ->
+                handle.select(SELECT_DICTIONARY_SQL, key)
+                        .map((rs, ctx) -> rs.getBytes(1))
+                        .findOne()
+                        .orElseThrow(() -> new IllegalStateException("Missing compression dictionary " + key))));
+    }
+
+    private QueueEncoder encoder(final String qName) {
+        QueueEncoder encoder = encoders.get(qName);
+        if ((encoder == null) && !encoders.containsKey(qName)) {
+            final QueueConfiguration queueConfig = queues.get(qName);
+            final CompressionConfiguration config = (queueConfig != null) ? queueConfig.getCompression() : null;
+            if ((config != null) && (config.getCodec() == CompressionConfiguration.Codec.DEFLATE)) {
+                encoder = new QueueEncoder(qName, config);
+            }
+            encoders.put(qName, encoder);
+        }
+        return encoder;
+    }
+
+
+    /**
+     * Compression state of one queue
+     */
+    private final class QueueEncoder {
+        private final String qName;
+        private final CompressionConfiguration config;
+        private final long threshold;
+        private final List<byte[]> samples = new ArrayList<>();
+        private byte[] dictionary;
+        private int dictionaryId;
+        private byte[] pending;
+        private int pendingId;
+
+        private QueueEncoder(final String qName, final CompressionConfiguration config) {
+            this.qName = qName;
+            this.config = config;
+            this.threshold = config.getThreshold().toBytes();
+            if (config.isDictionary()) {
+                // Carry on with the dictionary trained before a restart, if any
+                jdbi.useHandle(handle -> handle.select(SELECT_LATEST_DICTIONARY_SQL, qName)
+                        .map((rs, ctx) -> {
+                            dictionaryId = rs.getInt(1);
+                            dictionary = rs.getBytes(2);
+                            return dictionaryId;
+                        })
+                        .findOne());
+                if (dictionary != null) {
+                    dictionaries.put(dictionaryId, dictionary);
+                }
+            }
+        }
+
+        private void sample(final byte[] message) {
+            if (!config.isDictionary() || (dictionary != null) || (pending != null)) {
+                return;
+            }
+            samples.add(message);
+            if (samples.size() >= config.getDictionarySamples()) {
+                final byte[] trained = DictionaryTrainer.train(samples,
+                        (int) config.getDictionarySize().toBytes());
+                samples.clear();
+                if (trained.length > 0) {
+                    pending = trained;
+                    pendingDictionaries.add(this);
+                }
+            }
+        }
+    }
+
+}
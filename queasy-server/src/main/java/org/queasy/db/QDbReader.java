@@ -1,59 +1,110 @@
 package org.queasy.db;
 
 import com.github.benmanes.caffeine.cache.Cache;
+import com.google.common.base.Preconditions;
 import org.jdbi.v3.core.Jdbi;
 import org.queasy.core.config.ConsumerGroupConfiguration;
 import org.queasy.core.config.WriterConfiguration;
+import org.queasy.db.cache.HeapMessageCache;
+import org.queasy.db.cache.MessageCache;
+import org.queasy.db.store.SqliteMessageStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Collection;
-import java.util.Optional;
+import java.util.Collections;
+import java.util.List;
 
 /**
+ * Reads the messages of a consumer group or topic from the shards holding its queues. Keeps a cursor and a checkpoint
+ * per shard, the checkpoint in the shard's own {@link MessageStore}, and reads the shards in turn.
+ *
  * @author saroskar
  * Created on: 2021-04-01
  */
-public class QDbReader {
+public class QDbReader implements MessageReader {
 
-    private final QDbWriter qDbWriter;
-    private final Jdbi jdbi;
+    private final ShardCursor[] cursors;
     private final String ckptName;
     private final int fetchSize;
     private final long timeout;
-    private final String selectSQL;
-    private final Cache<Long, String> messageCache;
+    private final CompiledQuery query;
+    private final MessageCache messageCache;
 
     private volatile long lastReadMessageId;
-    private volatile long lastCkptMessageId;
     private volatile long readBatchId;
+    private int nextCursor;
 
-
-    private static final String SELECT_CHECKPOINT_SQL = "SELECT checkpoint FROM queasy_checkpoint WHERE cg_name = ?";
-    private static final String INSERT_CHECKPOINT_SQL = "INSERT INTO queasy_checkpoint (cg_name, checkpoint, ts) " +
-            "VALUES (?, ?, ?)";
-    private static final String UPDATE_CHECKPOINT_SQL = "UPDATE queasy_checkpoint SET checkpoint = ?, ts = ?" +
-            " where cg_name = ? ";
+    // Reads of a shard that look at messages without finding any for us, before giving the dispatcher thread back
+    private static final int MAX_EMPTY_READS = 16;
 
     private static final Logger logger = LoggerFactory.getLogger(QDbReader.class);
 
 
     public QDbReader(final QDbWriter qDbWriter, final Jdbi jdbi, final WriterConfiguration writerConfig,
-                     final String cgName, final ConsumerGroupConfiguration cgConfig, final Cache<Long, String> cache) {
-        this.qDbWriter = qDbWriter;
-        this.jdbi = jdbi;
+                     final String cgName, final ConsumerGroupConfiguration cgConfig, final Cache<Long, Envelope> cache) {
+        this(qDbWriter, jdbi, jdbi, writerConfig, cgName, cgConfig, cache);
+    }
+
+    /**
+     * @param jdbi     used to read and write the checkpoint
+     * @param readJdbi used to fetch messages, may be a read-only connection pool
+     */
+    public QDbReader(final QDbWriter qDbWriter, final Jdbi jdbi, final Jdbi readJdbi, final WriterConfiguration writerConfig,
+                     final String cgName, final ConsumerGroupConfiguration cgConfig, final Cache<Long, Envelope> cache) {
+        this(Collections.singletonList(new Shard(0, qDbWriter,
+                        (qDbWriter.getStore() instanceof SqliteMessageStore) ?
+                                new SqliteMessageStore((SqliteMessageStore) qDbWriter.getStore(), jdbi, readJdbi) :
+                                new SqliteMessageStore(jdbi, jdbi, readJdbi, writerConfig.getTableName()),
+                        new PayloadCodec(null, readJdbi))),
+                writerConfig, cgName, cgConfig, (cache != null) ? new HeapMessageCache(cache) : null);
+    }
+
+    /**
+     * @param shards shards holding the queues matched by the consumer group query
+     * @param cache  shared by all consumer groups and topics, may be null
+     * @throws IllegalArgumentException if the storage engine of a shard can't run the query
+     */
+    public QDbReader(final List<Shard> shards, final WriterConfiguration writerConfig, final String cgName,
+                     final ConsumerGroupConfiguration cgConfig, final MessageCache cache) {
+        Preconditions.checkArgument(!shards.isEmpty(), "No shards to read from");
         this.ckptName = cgName;
         this.fetchSize = cgConfig.getFetchBatchSize();
         this.timeout = cgConfig.getTimeOut().toMilliseconds();
-        this.selectSQL = String.format("SELECT id, mesg FROM %s WHERE id > ? AND %s AND type is NULL LIMIT %s",
-                writerConfig.getTableName(), cgConfig.getQuery(), fetchSize);
+        this.query = CompiledQuery.of(cgConfig);
         this.messageCache = cache;
+        this.cursors = shards.stream()
+                .map(shard -> new ShardCursor(shard, reader(shard, query, fetchSize)))
+                .toArray(ShardCursor[]::new);
+        if (cache != null) {
+            for (ShardCursor cursor : cursors) {
+                cache.addCursor(() -> cursor.lastReadMessageId);
+            }
+        }
     }
 
+    /**
+     * @return reader of the shard's tail buffer, falling back to the shard's shared scan and then to its store, for
+     * those the shard has
+     */
+    private static MessageStore.Reader reader(final Shard shard, final CompiledQuery query, final int fetchSize) {
+        MessageStore.Reader storeReader = shard.getStore().reader(query, fetchSize);
+        final SharedScan sharedScan = shard.getSharedScan();
+        if (sharedScan != null) {
+            storeReader = sharedScan.reader(query, fetchSize, storeReader);
+        }
+        final TailBuffer tailBuffer = shard.getQDbWriter().getTailBuffer();
+        return (tailBuffer != null) ? tailBuffer.reader(query, fetchSize, storeReader) : storeReader;
+    }
+
+    @Override
     public long getTimeout() {
         return timeout;
     }
 
+    /**
+     * @return id of the last message read, from the shard read last
+     */
     public long getLastReadMessageId() {
         return lastReadMessageId;
     }
@@ -64,89 +115,149 @@ public class QDbReader {
      *
      * @return
      */
+    @Override
     public long getReadBatchId() {
         return readBatchId;
     }
 
+    @Override
     public int getFetchSize() {
         return fetchSize;
     }
 
 
+    /**
+     * @return last checkpoint of the first shard
+     */
+    @Override
     public long readLastCheckpoint() {
-        final Optional<Long> result = jdbi.withHandle(handle -> handle.select(SELECT_CHECKPOINT_SQL, ckptName)
-                .map((rs, col, ctx) -> rs.getLong(col))
-                .findOne());
-
-        if (result.isPresent()) {
-            lastReadMessageId = result.get();
-        } else {
-            //No checkpoint established. Use producer's currentId as default and checkpoint it to the DB
-            lastReadMessageId = qDbWriter.getLastWrittenMessageId();
-            jdbi.withHandle(handle ->
-                    handle.execute(INSERT_CHECKPOINT_SQL, ckptName, lastReadMessageId, System.currentTimeMillis()));
+        for (ShardCursor cursor : cursors) {
+            final Long checkpoint = cursor.shard.getStore().readCheckpoint(ckptName);
+            if (checkpoint != null) {
+                cursor.lastReadMessageId = checkpoint;
+            } else {
+                //No checkpoint established. Use producer's currentId as default and checkpoint it to the DB
+                cursor.lastReadMessageId = cursor.shard.getQDbWriter().getLastWrittenMessageId();
+                cursor.shard.getStore().saveCheckpoint(ckptName, cursor.lastReadMessageId);
+            }
         }
 
+        lastReadMessageId = cursors[0].lastReadMessageId;
         return lastReadMessageId;
     }
 
+    @Override
     public void saveCheckpoint() {
-        if (lastReadMessageId > lastCkptMessageId) {
-            jdbi.useHandle(handle -> handle.execute(UPDATE_CHECKPOINT_SQL,
-                    lastReadMessageId, System.currentTimeMillis(), ckptName));
-            lastCkptMessageId = lastReadMessageId;
+        for (ShardCursor cursor : cursors) {
+            if (cursor.lastReadMessageId > cursor.lastCkptMessageId) {
+                final long checkpoint = cursor.lastReadMessageId;
+                cursor.shard.getStore().saveCheckpoint(ckptName, checkpoint);
+                cursor.lastCkptMessageId = checkpoint;
+            }
         }
     }
 
+    @Override
     public boolean hasMoreMessages() {
-        return (qDbWriter.getLastWrittenMessageId() > lastReadMessageId);
+        for (ShardCursor cursor : cursors) {
+            if (cursor.hasMoreMessages()) {
+                return true;
+            }
+        }
+        return false;
     }
 
-    public boolean loadNextBatchOfMessages(final Collection<String> messages) {
+    @Override
+    public boolean loadNextBatchOfMessages(final Collection<Envelope> messages) {
         // Persist checkpoint only after all messages in the batch are dispatched to clients
         saveCheckpoint();
 
-        if (!hasMoreMessages()) {
-            return false; // Writer hasn't advanced
+        // Read shards in turn, till one of them has new messages for us
+        for (int i = 0; i < cursors.length; i++) {
+            final ShardCursor cursor = cursors[nextCursor];
+            nextCursor = (nextCursor + 1) % cursors.length;
+            if (cursor.hasMoreMessages() && loadNextBatchOfMessages(cursor, messages)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean loadNextBatchOfMessages(final ShardCursor cursor, final Collection<Envelope> messages) {
+        final long lastWrittenMessageId = cursor.shard.getQDbWriter().getLastWrittenMessageId();
+        final PayloadCodec codec = cursor.shard.getCodec();
+        final int size = messages.size();
+        final MessageStore.RecordVisitor visitor = (id, message, enc) -> {
+            // Decompressed only if not in the cache already
+            final Envelope envelope = (messageCache != null) ?
+                    messageCache.get(id, key -> buildEnvelope(key, message, enc, codec)) :
+                    buildEnvelope(id, message, enc, codec);
+            if (!messages.add(envelope)) {
+                // Can never really happen as long as ConsumerGroup sets messages size = fetchSize + 1
+                logger.error("ERROR! Could not add message read from DB to messages to deliver: " + query);
+            }
+        };
+
+        // A reader may look at a bounded number of messages at a time, e.g. one range of a shared scan, and move on
+        // without finding any for us
+        long afterId = cursor.lastReadMessageId;
+        long lastLookedAt = cursor.reader.read(afterId, visitor);
+        for (int reads = 1; (messages.size() == size) && (lastLookedAt > afterId) &&
+                (lastLookedAt < lastWrittenMessageId) && (reads < MAX_EMPTY_READS); reads++) {
+            afterId = lastLookedAt;
+            lastLookedAt = cursor.reader.read(afterId, visitor);
         }
 
-        final long lastWrittenMessageId = qDbWriter.getLastWrittenMessageId();
-        final long oldLastReadMessageId = lastReadMessageId;
-        jdbi.useHandle(handle ->
-                handle.select(selectSQL, lastReadMessageId)
-                        .setFetchSize(fetchSize)
-                        .setMaxRows(fetchSize)
-                        .map((rs, ctx) -> {
-                            lastReadMessageId = rs.getLong(1);
-                            final String message = rs.getString(2);
-                            return (messageCache != null) ?
-                                    messageCache.get(lastReadMessageId, id -> buildMessage(id, message)) :
-                                    buildMessage(lastReadMessageId ,message);
-                        })
-                        .forEach(s -> {
-                            if (!messages.add(s)) {
-                                // Can never really happen as long as ConsumerGroup sets messages size = fetchSize + 1
-                                logger.error("ERROR! Could not add message read from DB to messages to deliver: " + selectSQL);
-                            }
-                        })
-        );
-
-        if (lastReadMessageId > oldLastReadMessageId) {
+        if (messages.size() > size) {
             // New messages found
+            cursor.lastReadMessageId = lastLookedAt;
+            lastReadMessageId = lastLookedAt;
             readBatchId++;
             return true;
         } else {
             // This can happen if writer inserts new messages but none of them match the "query" for this consumer
             // group. In such cases we do want to advance lastReadMessageId - and the checkpoint - to
-            // lastWrittenMessageId because we want to poll messages from that point next time onwards
-            lastReadMessageId = lastWrittenMessageId;
+            // lastWrittenMessageId because we want to poll messages from that point next time onwards. Unless the
+            // reader stopped short of it, with messages left to look at
+            final boolean stoppedShort = (lastLookedAt > afterId) && (lastLookedAt < lastWrittenMessageId);
+            cursor.lastReadMessageId = stoppedShort ? lastLookedAt : Math.max(lastLookedAt, lastWrittenMessageId);
+            lastReadMessageId = cursor.lastReadMessageId;
             saveCheckpoint();
             return false;
         }
     }
 
+    private static Envelope buildEnvelope(final long id, final Object message, final int enc,
+                                          final PayloadCodec codec) {
+        if (enc == 0) {
+            return Envelope.of(id, (String) message);
+        }
+        final byte[] payload = codec.decompress((byte[]) message, enc);
+        return ((enc & QDbWriter.ENC_BINARY) != 0) ? Envelope.of(id, payload) : Envelope.ofText(id, payload);
+    }
+
     public static String buildMessage(final long id, final String message) {
-        return String.format("{\"id\": %s, \"message\": %s}", id, message);
+        return Envelope.of(id, message).getText();
+    }
+
+
+    /**
+     * Read position in one shard
+     */
+    private static final class ShardCursor {
+        private final Shard shard;
+        private final MessageStore.Reader reader;
+        private volatile long lastReadMessageId;
+        private volatile long lastCkptMessageId;
+
+        private ShardCursor(final Shard shard, final MessageStore.Reader reader) {
+            this.shard = shard;
+            this.reader = reader;
+        }
+
+        private boolean hasMoreMessages() {
+            return (shard.getQDbWriter().getLastWrittenMessageId() > lastReadMessageId);
+        }
     }
 
 }
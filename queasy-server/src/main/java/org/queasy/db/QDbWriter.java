@@ -1,109 +1,347 @@
 package org.queasy.db;
 
-import org.jdbi.v3.core.Handle;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Preconditions;
 import org.jdbi.v3.core.Jdbi;
-import org.jdbi.v3.core.statement.PreparedBatch;
 import org.queasy.core.config.WriterConfiguration;
+import org.queasy.core.util.AdaptiveBatchSizer;
 import org.queasy.core.util.Snowflake;
+import org.queasy.db.store.SqliteMessageStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.sql.Types;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
 
 /**
+ * Writes messages to a {@link MessageStore} in batches, assigning them their ids. Messages of the queues configured for
+ * compression are compressed on the way. Every trimInterval, messages past maxSize or maxRetention are deleted after a
+ * batch is committed, once its listeners have been notified. Committed messages are also kept in a {@link TailBuffer},
+ * for readers to read from.
+ *
  * @author saroskar
  * Created on: 2021-04-01
  */
 public class QDbWriter {
 
     private final Snowflake idGenerator;
-    private final Jdbi jdbi;
-    private final String insertSQL;
+    private final MessageStore store;
     private final int insertBatchSize;
+    private final AdaptiveBatchSizer batchSizer;
+    private final Histogram batchSizes;
+    private final Timer commitLatencies;
+    private final PayloadCodec codec;
+    private final TailBuffer tailBuffer;
+    private final long maxSize;
+    private final long maxRetention;
+    private final long trimInterval;
+    private LongSupplier queueDepth = () -> 0;
 
     private volatile long lastWrittenMessageId;
     private long currentId;
 
-    private Handle handle;
-    private PreparedBatch batch;
-    private long batchTS;
-    private int batchCount;
+    private final MessageBatch batch = new MessageBatch();
+    // Size of the batch before the unit being written
+    private int unitStart;
+    private final List<CommitListener> commitListeners = new ArrayList<>();
+    private final List<Consumer<MessageBatch>> batchListeners = new ArrayList<>();
+    private long nextTrim;
+
+    /**
+     * Bit of the "enc" column set for a binary message, stored as a BLOB. A text message is stored as TEXT with the bit
+     * cleared, NULL "enc" included, unless it is compressed
+     * @see PayloadCodec#ENC_DEFLATE
+     */
+    public static final int ENC_BINARY = 1;
 
     private static final Logger logger = LoggerFactory.getLogger(QDbWriter.class);
 
 
     public QDbWriter(final Snowflake idGenerator, final Jdbi jdbi, final WriterConfiguration writerConfig) {
+        this(idGenerator, jdbi, writerConfig, new MetricRegistry());
+    }
+
+    public QDbWriter(final Snowflake idGenerator, final Jdbi jdbi, final WriterConfiguration writerConfig,
+                     final MetricRegistry metrics) {
+        this(idGenerator, jdbi, writerConfig, metrics, null);
+    }
+
+    /**
+     * @param name included in the metric names to tell writers apart, may be null if there's only one
+     */
+    public QDbWriter(final Snowflake idGenerator, final Jdbi jdbi, final WriterConfiguration writerConfig,
+                     final MetricRegistry metrics, final String name) {
+        this(idGenerator, jdbi, writerConfig, metrics, name, null);
+    }
+
+    /**
+     * @param codec compresses the messages of the queues configured for compression, may be null if none is
+     */
+    public QDbWriter(final Snowflake idGenerator, final Jdbi jdbi, final WriterConfiguration writerConfig,
+                     final MetricRegistry metrics, final String name, final PayloadCodec codec) {
+        this(idGenerator, new SqliteMessageStore(jdbi, writerConfig.getTableName()), writerConfig, metrics, name,
+                codec);
+    }
+
+    /**
+     * @param store where messages are written to
+     */
+    public QDbWriter(final Snowflake idGenerator, final MessageStore store, final WriterConfiguration writerConfig,
+                     final MetricRegistry metrics, final String name, final PayloadCodec codec) {
+        this.codec = codec;
         this.idGenerator = idGenerator;
-        this.jdbi = jdbi;
-        this.insertSQL = String.format("INSERT INTO %s (id, qname, type, ts, mesg) VALUES (?, ?, ?, ?, ?)",
-                writerConfig.getTableName());
+        this.store = store;
         this.insertBatchSize = writerConfig.getInsertBatchSize();
+        this.batchSizer = writerConfig.isAdaptiveBatchSize() ?
+                new AdaptiveBatchSizer(insertBatchSize, 1, writerConfig.getMaxAdaptiveBatchSize(),
+                        writerConfig.getTargetCommitLatency().toNanoseconds()) : null;
+        this.maxSize = writerConfig.getMaxSize();
+        this.maxRetention = (writerConfig.getMaxRetention() != null) ?
+                writerConfig.getMaxRetention().toMilliseconds() : 0;
+        this.trimInterval = writerConfig.getTrimInterval().toMilliseconds();
+        this.lastWrittenMessageId = store.getStartId();
+        final long lastId = store.getLastId();
+        // The ids stored before a restart may be ahead of the clock
+        idGenerator.advancePast(lastId);
+        this.tailBuffer = (writerConfig.getTailBufferSize() > 0) ?
+                new TailBuffer(writerConfig.getTailBufferSize(), lastId) : null;
+        this.batchSizes = metrics.histogram(MetricRegistry.name(QDbWriter.class, name, "batch-size"));
+        this.commitLatencies = metrics.timer(MetricRegistry.name(QDbWriter.class, name, "commit-latency"));
+        metrics.gauge(MetricRegistry.name(QDbWriter.class, name, "target-batch-size"),
+                () -> (Gauge<Integer>) this::getTargetBatchSize);
+    }
+
+    public MessageStore getStore() {
+        return store;
+    }
+
+    public Snowflake getIdGenerator() {
+        return idGenerator;
+    }
+
+    /**
+     * Registers a listener to be called, on the writer thread, with every batch committed, once readers can read it.
+     * It must not block and must not keep the batch, which is reused. Listeners must all be added before writing starts
+     */
+    public void addBatchListener(final Consumer<MessageBatch> listener) {
+        batchListeners.add(listener);
+    }
+
+    /**
+     * @return the last messages committed, null if turned off
+     */
+    public TailBuffer getTailBuffer() {
+        return tailBuffer;
     }
 
     public long getLastWrittenMessageId() {
         return lastWrittenMessageId;
     }
 
-    private void startBatch() throws Exception {
-        if (handle == null) {
-            handle = jdbi.open();
-        }
-        handle.begin();
-        batch = handle.prepareBatch(insertSQL);
-        batchTS = System.currentTimeMillis();
+    /**
+     * @param queueDepth number of messages waiting to be written, used to size batches adaptively
+     */
+    public void setQueueDepth(final LongSupplier queueDepth) {
+        this.queueDepth = queueDepth;
+    }
+
+    /**
+     * @return number of messages after which a batch is committed, at the end of the unit being written
+     */
+    public int getTargetBatchSize() {
+        return (batchSizer != null) ? batchSizer.getBatchSize() : insertBatchSize;
     }
 
+    /**
+     * Adds messages to the current batch. A multi-message unit is never split across transactions, even if it makes
+     * the batch grow past insertBatchSize.
+     *
+     * @param message queue name and message pairs, {qName1, message1, qName2, message2...}
+     */
     public void batchWrite(final String[] message) throws Exception {
-        if (batchCount == 0) {
-            startBatch();
+        for (int i = 0; i < message.length; i += 2) {
+            batchWrite(message[i], message[i + 1], i + 2 >= message.length);
         }
+    }
+
+    /**
+     * Adds a message to the current batch
+     *
+     * @param endOfUnit true if this is the last (or the only) message of a unit which must be written in one
+     *                  transaction. Batch is committed only at the end of a unit.
+     */
+    public void batchWrite(final String qName, final String message, final boolean endOfUnit) throws Exception {
+        batchWrite(qName, message, endOfUnit, null);
+    }
 
-        currentId = idGenerator.nextId();
-        batch.bind(0, currentId) //id
-                .bind(1, message[0])   //qname
-                .bindNull(2, Types.VARCHAR) //type
-                .bind(3, batchTS) //timestamp
-                .bind(4, message[1]) //message
-                .add();
+    /**
+     * Adds a message to the current batch. The listener, if any, is notified after the transaction holding the message
+     * ends, along with the listeners of every other message in the same batch (group commit).
+     *
+     * @param message   a String, stored as text, or a byte[], stored as a BLOB
+     * @param endOfUnit true if this is the last (or the only) message of a unit which must be written in one
+     *                  transaction. Batch is committed only at the end of a unit.
+     */
+    public void batchWrite(final String qName, final Object message, final boolean endOfUnit,
+                           final CommitListener listener) throws Exception {
+        Preconditions.checkArgument((message instanceof String) || (message instanceof byte[]),
+                "Message must be a String or a byte[]");
+        if (batch.size() == 0) {
+            batch.setTs(System.currentTimeMillis());
+        }
 
-        batchCount++;
+        encode(qName, message);
+        if (listener != null) {
+            commitListeners.add(listener);
+        }
 
-        if (batchCount >= insertBatchSize) {
-            finishBatch();
+        if (endOfUnit) {
+            if (batch.size() >= getTargetBatchSize()) {
+                finishBatch();
+            }
+            unitStart = batch.size();
         }
     }
 
+    /**
+     * Drops the messages of the unit being written from the current batch, for a unit that can not be written in
+     * full. The units before it in the batch are committed along with the batch as usual. The listener of the unit
+     * dropped, if any, is not notified.
+     */
+    public void discardUnit() {
+        batch.truncate(unitStart);
+    }
+
+    /**
+     * Puts the message, compressed if its queue is configured for it, in the current batch
+     */
+    private void encode(final String qName, final Object message) {
+        final boolean binary = (message instanceof byte[]);
+        if ((codec != null) && codec.isCompressed(qName)) {
+            final byte[] compressed = codec.compress(qName,
+                    binary ? (byte[]) message : ((String) message).getBytes(StandardCharsets.UTF_8));
+            if (compressed != null) {
+                batch.add(qName, compressed, (binary ? ENC_BINARY : 0) | codec.getEncoding());
+                return;
+            }
+        }
+        batch.add(qName, message, binary ? ENC_BINARY : 0);
+    }
+
     private void finishBatch() {
+        boolean committed = false;
         try {
-            if (batchCount > 0) {
-                batch.execute();
-                handle.commit();
+            if (batch.size() > 0) {
+                final long start = System.nanoTime();
+                assignIds();
+                store.append(batch, codec);
+                committed = true;
+                if (tailBuffer != null) {
+                    // Ahead of lastWrittenMessageId, so that readers find every message up to it there
+                    tailBuffer.publish(batch);
+                }
+                final long latency = System.nanoTime() - start;
+                batchSizes.update(batch.size());
+                commitLatencies.update(latency, TimeUnit.NANOSECONDS);
+                if (batchSizer != null) {
+                    batchSizer.onCommit(latency, queueDepth.getAsLong());
+                }
                 lastWrittenMessageId = currentId;
-                batch.close();
+                notifyBatchListeners();
             }
         } catch (Exception ex) {
             logger.error("Error finishing batch", ex);
         } finally {
-            batch = null;
-            batchCount = 0;
+            batch.clear();
+            unitStart = 0;
+            if (codec != null) {
+                codec.onCommit(committed);
+            }
+            notifyCommitListeners(committed);
         }
+        if (committed) {
+            // Off the commit path, producers waiting for the batch have heard already
+            trim(batch.getTs());
+        }
+    }
+
+    /**
+     * Reserves the ids of the whole batch from the generator, a millisecond's worth of ids at a time
+     */
+    private void assignIds() {
+        final int size = batch.size();
+        for (int row = 0; row < size; ) {
+            final int count = Math.min(size - row, Snowflake.MAX_RANGE);
+            final long firstId = idGenerator.nextIds(count);
+            for (int i = 0; i < count; i++) {
+                batch.setId(row++, firstId + i);
+            }
+        }
+        currentId = batch.getLastId();
     }
 
-    private void closeHandle() {
+    /**
+     * Deletes messages past maxSize or maxRetention, once every trimInterval. Messages past maxRetention are told by
+     * the timestamp in their ids
+     *
+     * @param now timestamp of the batch committed last
+     */
+    private void trim(final long now) {
+        if (((maxSize <= 0) && (maxRetention <= 0)) || (now < nextTrim)) {
+            return;
+        }
+        nextTrim = now + trimInterval;
         try {
-            if (handle != null) {
-                handle.close();
+            final long deleted = store.trim(maxSize, (maxRetention > 0) ? Snowflake.minIdAt(now - maxRetention) : 0);
+            if (deleted > 0) {
+                logger.debug("Deleted {} messages past retention", deleted);
             }
         } catch (Exception ex) {
-            logger.error("Error closing handle", ex);
-        } finally {
-            handle = null;
+            logger.error("Error deleting messages past retention", ex);
+        }
+    }
+
+    private void notifyBatchListeners() {
+        for (Consumer<MessageBatch> listener : batchListeners) {
+            try {
+                listener.accept(batch);
+            } catch (Exception ex) {
+                logger.error("Error notifying batch listener", ex);
+            }
+        }
+    }
+
+    private void notifyCommitListeners(final boolean committed) {
+        for (CommitListener listener : commitListeners) {
+            try {
+                listener.onCommit(committed);
+            } catch (Exception ex) {
+                logger.error("Error notifying commit listener", ex);
+            }
         }
+        commitListeners.clear();
     }
 
+    /**
+     * Commits the current batch, if any
+     */
     public void finish() {
         finishBatch();
-        closeHandle();
+    }
+
+    /**
+     * Commits the current batch, if any, and closes the store
+     */
+    public void close() {
+        finishBatch();
+        store.close();
     }
 
 }
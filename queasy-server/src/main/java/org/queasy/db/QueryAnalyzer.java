@@ -0,0 +1,92 @@
+package org.queasy.db;
+
+import com.google.common.base.Splitter;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Works out from a consumer group query, a SQL where clause, which queues it can possibly match. Only understands
+ * queries restricting qname to a fixed set of names: "qname = 'x'" or "qname IN ('x', 'y')", alone or ANDed with other
+ * conditions. Anything else, OR and NOT included, may match any queue.
+ *
+ * Created on: 2026-10-18
+ */
+public final class QueryAnalyzer {
+
+    private static final Pattern QNAME_EQUALS = Pattern.compile("\\bqname\\s*=\\s*'([^']*)'", Pattern.CASE_INSENSITIVE);
+    private static final Pattern QNAME_IN = Pattern.compile("\\bqname\\s+IN\\s*\\(([^)]*)\\)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern OR_NOT = Pattern.compile("\\b(OR|NOT)\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern QUOTED = Pattern.compile("'[^']*'");
+    private static final Pattern MESG = Pattern.compile("\\bmesg\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern REST_OF_EXACT = Pattern.compile("[\\s()]*(AND[\\s()]*)*",
+            Pattern.CASE_INSENSITIVE);
+    private static final Splitter LIST_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+
+    private QueryAnalyzer() {
+    }
+
+    /**
+     * @return names of the only queues the query can match, or null if it may match any queue
+     */
+    public static Set<String> queueNames(final String query) {
+        if (query == null) {
+            return null;
+        }
+        // Keywords inside string literals don't count
+        if (OR_NOT.matcher(QUOTED.matcher(query).replaceAll("''")).find()) {
+            return null;
+        }
+
+        Set<String> names = null;
+        final Matcher eq = QNAME_EQUALS.matcher(query);
+        while (eq.find()) {
+            names = intersect(names, Collections.singleton(eq.group(1)));
+        }
+        final Matcher in = QNAME_IN.matcher(query);
+        while (in.find()) {
+            final Set<String> list = new LinkedHashSet<>();
+            for (String item : LIST_SPLITTER.split(in.group(1))) {
+                if (item.length() < 2 || !item.startsWith("'") || !item.endsWith("'")) {
+                    return null;
+                }
+                list.add(item.substring(1, item.length() - 1));
+            }
+            names = intersect(names, list);
+        }
+        return names;
+    }
+
+    /**
+     * @return names of the queues the query matches, or null unless the query is nothing but qname conditions ANDed
+     * together, which is all a store that does not understand SQL can filter messages on
+     */
+    public static Set<String> exactQueueNames(final String query) {
+        final Set<String> names = queueNames(query);
+        if (names == null) {
+            return null;
+        }
+        final String rest = QNAME_IN.matcher(QNAME_EQUALS.matcher(query).replaceAll(" ")).replaceAll(" ");
+        return REST_OF_EXACT.matcher(rest).matches() ? names : null;
+    }
+
+    /**
+     * @return true if the query looks into the message itself, the mesg column, as in "json_extract(mesg, ...)" or
+     * "mesg LIKE ...". Compressed messages are BLOBs such conditions can't see into
+     */
+    public static boolean readsMessage(final String query) {
+        return (query != null) && MESG.matcher(QUOTED.matcher(query).replaceAll("''")).find();
+    }
+
+    private static Set<String> intersect(final Set<String> names, final Set<String> more) {
+        if (names == null) {
+            return new LinkedHashSet<>(more);
+        }
+        names.retainAll(more);
+        return names;
+    }
+
+}
@@ -0,0 +1,31 @@
+package org.queasy.db;
+
+/**
+ * Storage engine that can read its messages along with their metadata, for a {@link SharedScan} to evaluate the
+ * consumer group queries of a shard on in memory
+ *
+ * Created on: 2026-10-18
+ */
+public interface ScanningMessageStore extends MessageStore {
+
+    /**
+     * Called back for every message scanned, with the metadata a {@link CompiledQuery} is evaluated on
+     */
+    @FunctionalInterface
+    interface ScanVisitor {
+        /**
+         * @param message a String if enc is 0, a byte[] otherwise
+         */
+        void visit(long id, String qName, long ts, Object message, int enc);
+    }
+
+    /**
+     * Reads every message after the given id, oldest first, for a {@link SharedScan} to route to the consumer groups
+     * reading the shard
+     *
+     * @param limit maximum number of messages read
+     * @return id of the last message read, afterId if there were none
+     */
+    long scan(long afterId, int limit, ScanVisitor visitor);
+
+}
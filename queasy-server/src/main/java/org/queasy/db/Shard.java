@@ -0,0 +1,61 @@
+package org.queasy.db;
+
+/**
+ * One write shard: a store of its own, written by its own writer. Every queue lives in exactly one shard.
+ *
+ * Created on: 2026-10-18
+ */
+public final class Shard {
+
+    private final int id;
+    private final QDbWriter qDbWriter;
+    private final MessageStore store;
+    private final PayloadCodec codec;
+    private final SharedScan sharedScan;
+
+
+    /**
+     * @param store holds the shard's messages and checkpoints
+     * @param codec decompresses messages, the same one the shard's writer compresses them with
+     */
+    public Shard(final int id, final QDbWriter qDbWriter, final MessageStore store, final PayloadCodec codec) {
+        this(id, qDbWriter, store, codec, null);
+    }
+
+    /**
+     * @param sharedScan reads the store for all the consumer groups and topics reading the shard, may be null for each
+     *                   to read on its own
+     */
+    public Shard(final int id, final QDbWriter qDbWriter, final MessageStore store, final PayloadCodec codec,
+                 final SharedScan sharedScan) {
+        this.id = id;
+        this.qDbWriter = qDbWriter;
+        this.store = store;
+        this.codec = codec;
+        this.sharedScan = sharedScan;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public QDbWriter getQDbWriter() {
+        return qDbWriter;
+    }
+
+    public MessageStore getStore() {
+        return store;
+    }
+
+    public PayloadCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * @return the scan shared by the readers of the shard, null if turned off
+     */
+    public SharedScan getSharedScan() {
+        return sharedScan;
+    }
+
+}
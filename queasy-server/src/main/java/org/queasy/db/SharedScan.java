@@ -0,0 +1,179 @@
+package org.queasy.db;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Arrays;
+
+/**
+ * Reads a shard's store once for all the consumer groups and topics reading it, and routes the messages read to every
+ * one whose query matches them. A reader at the end of the range of messages read last scans the next range, up to
+ * scanSize messages, on behalf of all; the others read it from memory. Up to scanSize messages of the previous range
+ * are kept along with the next one, so that readers a little behind the one scanning stay with the scan.
+ * <p>
+ * A reader behind the range held has fallen behind the others: it splits off and reads from the store on its own, with
+ * its own query, until it catches up with the range and rejoins the scan. A reader whose query can't be evaluated in
+ * memory always reads on its own, as does one whose query is nothing but queue names, which the store reads by queue.
+ * <p>
+ * A read looks at one range at most, however few of its messages match, so that it takes a bounded time on the
+ * dispatcher thread making it.
+ * <p>
+ * Scans are serialized; the range read last is read by any thread without locking.
+ *
+ * Created on: 2026-10-18
+ */
+public final class SharedScan {
+
+    private final ScanningMessageStore store;
+    private final int scanSize;
+    private final Object scanLock = new Object();
+
+    private volatile Range range;
+    private volatile long scanCount;
+
+
+    /**
+     * @param scanSize maximum number of messages read from the store at a time
+     */
+    public SharedScan(final ScanningMessageStore store, final int scanSize) {
+        Preconditions.checkArgument(scanSize > 0, "Scan size must be positive: %s", scanSize);
+        this.store = store;
+        this.scanSize = scanSize;
+    }
+
+    public int getScanSize() {
+        return scanSize;
+    }
+
+    /**
+     * @return number of times the store was scanned
+     */
+    public long getScanCount() {
+        return scanCount;
+    }
+
+    /**
+     * @return a reader of the query that reads from the shared scan while it keeps up with it, from its own store
+     * reader otherwise. The store reader itself if the query can't be evaluated in memory, or is nothing but queue
+     * names
+     */
+    public MessageStore.Reader reader(final CompiledQuery query, final int fetchSize,
+                                      final MessageStore.Reader storeReader) {
+        if (!query.isEvaluable() || query.isExact()) {
+            return storeReader;
+        }
+        return (afterId, visitor) -> read(afterId, query, fetchSize, visitor, storeReader);
+    }
+
+    /**
+     * Reads messages matched by the query after the given id, oldest first, from the range holding the messages after
+     * it, scanning the store for it as needed
+     *
+     * @return id of the last message looked at, read or not, which is the end of the range if none of its messages
+     * matched; afterId if there were none
+     */
+    long read(final long afterId, final CompiledQuery query, final int fetchSize,
+              final MessageStore.RecordVisitor visitor, final MessageStore.Reader storeReader) {
+        Range current = range;
+        if ((current == null) || (afterId >= current.lastId)) {
+            current = scan(afterId);
+            if (current == null) {
+                // Nothing after afterId in the store
+                return afterId;
+            }
+        }
+        if (afterId < current.afterId) {
+            // Fallen behind the scan, reads on its own from where it is
+            return storeReader.read(afterId, visitor);
+        }
+        long lastLookedAt = afterId;
+        int read = 0;
+        for (int i = current.indexAfter(afterId); (i < current.size) && (read < fetchSize); i++) {
+            lastLookedAt = current.ids[i];
+            if (query.matches(current.qNames[i], current.ts[i], current.encs[i])) {
+                visitor.visit(lastLookedAt, current.messages[i], current.encs[i]);
+                read++;
+            }
+        }
+        return lastLookedAt;
+    }
+
+    /**
+     * Scans the messages after the given id, unless another reader did meanwhile
+     *
+     * @return the range holding the messages after afterId, null if there are none in the store
+     */
+    private Range scan(final long afterId) {
+        synchronized (scanLock) {
+            final Range current = range;
+            if ((current != null) && (afterId < current.lastId)) {
+                return current;
+            }
+
+            // Readers at the end of the range carry on in the next, keep the end of it
+            final int kept = ((current != null) && (afterId == current.lastId)) ? Math.min(current.size, scanSize) : 0;
+            final Range next = new Range(kept + scanSize);
+            if (kept > 0) {
+                final int from = current.size - kept;
+                next.afterId = (from > 0) ? current.ids[from - 1] : current.afterId;
+                System.arraycopy(current.ids, from, next.ids, 0, kept);
+                System.arraycopy(current.qNames, from, next.qNames, 0, kept);
+                System.arraycopy(current.ts, from, next.ts, 0, kept);
+                System.arraycopy(current.messages, from, next.messages, 0, kept);
+                System.arraycopy(current.encs, from, next.encs, 0, kept);
+                next.size = kept;
+            } else {
+                next.afterId = afterId;
+            }
+
+            final long lastId = store.scan(afterId, scanSize, next::add);
+            scanCount++;
+            if (lastId == afterId) {
+                return null;
+            }
+            next.lastId = lastId;
+            range = next;
+            return next;
+        }
+    }
+
+
+    /**
+     * Messages with ids in (afterId, lastId], filled in by the scan before it is published
+     */
+    private static final class Range {
+        private final long[] ids;
+        private final String[] qNames;
+        private final long[] ts;
+        private final Object[] messages;
+        private final int[] encs;
+        private long afterId;
+        private long lastId;
+        private int size;
+
+        private Range(final int capacity) {
+            this.ids = new long[capacity];
+            this.qNames = new String[capacity];
+            this.ts = new long[capacity];
+            this.messages = new Object[capacity];
+            this.encs = new int[capacity];
+        }
+
+        private void add(final long id, final String qName, final long ts, final Object message, final int enc) {
+            ids[size] = id;
+            qNames[size] = qName;
+            this.ts[size] = ts;
+            messages[size] = message;
+            encs[size] = enc;
+            size++;
+        }
+
+        /**
+         * @return index of the first message after the given id
+         */
+        private int indexAfter(final long id) {
+            final int i = Arrays.binarySearch(ids, 0, size, id);
+            return (i >= 0) ? i + 1 : -(i + 1);
+        }
+    }
+
+}
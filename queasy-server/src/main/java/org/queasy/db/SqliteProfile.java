@@ -0,0 +1,175 @@
+package org.queasy.db;
+
+import io.dropwizard.db.DataSourceFactory;
+import org.jdbi.v3.core.Jdbi;
+import org.queasy.core.config.SqliteConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteOpenMode;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Applies a {@link SqliteConfiguration} to the database. Settings persistent in the database file, page size and WAL
+ * journal mode, are applied once at startup. The rest are applied to every new connection of the three kinds of users
+ * of the database: the single writer, the read-only pool serving consumer groups and topics, and the general pool used
+ * for everything else (checkpoints, WAL checkpoints). They are passed to the driver as connection properties, except
+ * wal_autocheckpoint which the driver doesn't know and is run as the initialization query.
+ *
+ * Created on: 2026-10-18
+ */
+public final class SqliteProfile {
+
+    private final SqliteConfiguration config;
+
+    private static final Logger logger = LoggerFactory.getLogger(SqliteProfile.class);
+
+    // sqlite-jdbc connection property names. Not taken from SQLiteConfig.Pragma, which fails to initialize if it is
+    // loaded before SQLiteConfig itself
+    private static final String OPEN_MODE = "open_mode";
+    private static final String PAGE_SIZE = "page_size";
+    private static final String JOURNAL_MODE = "journal_mode";
+    private static final String SYNCHRONOUS = "synchronous";
+    private static final String MMAP_SIZE = "mmap_size";
+    private static final String CACHE_SIZE = "cache_size";
+    private static final String BUSY_TIMEOUT = "busy_timeout";
+    private static final String JOURNAL_SIZE_LIMIT = "journal_size_limit";
+
+
+    public SqliteProfile(final SqliteConfiguration config) {
+        this.config = config;
+    }
+
+    /**
+     * Switches the database to WAL mode. Page size can't be changed once in WAL mode, so a database still in rollback
+     * journal mode is vacuumed to the configured page size first, if it differs. This happens once per database file.
+     */
+    public void initialize(final DataSourceFactory database) throws SQLException {
+        final Properties props = new Properties();
+        props.putAll(database.getProperties());
+        try (Connection conn = new SQLiteConfig(props).createConnection(database.getUrl());
+             Statement stmt = conn.createStatement()) {
+            if (!"wal".equalsIgnoreCase(queryPragma(stmt, JOURNAL_MODE))
+                    && !Integer.toString(config.getPageSize()).equals(queryPragma(stmt, PAGE_SIZE))) {
+                logger.info("Changing database page size to {}", config.getPageSize());
+                stmt.execute("PRAGMA page_size = " + config.getPageSize());
+                stmt.execute("VACUUM");
+            }
+            stmt.execute("PRAGMA journal_mode = WAL");
+        }
+    }
+
+    private static String queryPragma(final Statement stmt, final String pragma) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("PRAGMA " + pragma)) {
+            return rs.next() ? rs.getString(1) : null;
+        }
+    }
+
+    /**
+     * @param readOnly true to open the connection read-only
+     */
+    public Map<String, String> connectionProperties(final boolean readOnly) {
+        final Map<String, String> props = new HashMap<>();
+        if (readOnly) {
+            props.put(OPEN_MODE, Integer.toString(SQLiteOpenMode.READONLY.flag));
+        }
+        props.put(SYNCHRONOUS, config.getDurability().getSynchronous());
+        props.put(MMAP_SIZE, Long.toString(config.getMmapSize().toBytes()));
+        // Negative cache size is in KiB rather than pages
+        props.put(CACHE_SIZE, Long.toString(-config.getCacheSize().toKibibytes()));
+        props.put(BUSY_TIMEOUT, Long.toString(config.getBusyTimeout().toMilliseconds()));
+        // The WAL is truncated to this size whenever it is reset, rather than left as large as it ever grew
+        props.put(JOURNAL_SIZE_LIMIT, Long.toString(config.getWalSizeLimit().toBytes()));
+        return props;
+    }
+
+    public String initializationQuery() {
+        return "PRAGMA wal_autocheckpoint = " + config.getWalAutocheckpoint();
+    }
+
+    /**
+     * Applies the profile to the general connection pool
+     */
+    public void configure(final DataSourceFactory database) {
+        database.getProperties().putAll(connectionProperties(false));
+        database.setInitializationQuery(initializationQuery());
+    }
+
+    /**
+     * @return copy of the general pool configuration for the database file of a write shard. Shard 0 uses the
+     * configured file itself, shard n the file with "-n" appended to its name, before the extension if any
+     */
+    public DataSourceFactory shardDataSource(final DataSourceFactory database, final int shard) {
+        final DataSourceFactory copy = new DataSourceFactory();
+        copy.setDriverClass(database.getDriverClass());
+        copy.setUrl(shardUrl(database.getUrl(), shard));
+        copy.setUser(database.getUser());
+        copy.setPassword(database.getPassword());
+        copy.setProperties(new HashMap<>(database.getProperties()));
+        copy.setInitializationQuery(database.getInitializationQuery());
+        copy.setInitialSize(database.getInitialSize());
+        copy.setMinSize(database.getMinSize());
+        copy.setMaxSize(database.getMaxSize());
+        copy.setMaxWaitForConnection(database.getMaxWaitForConnection());
+        copy.setCheckConnectionWhileIdle(database.getCheckConnectionWhileIdle());
+        return copy;
+    }
+
+    public static String shardUrl(final String url, final int shard) {
+        if (shard == 0) {
+            return url;
+        }
+        final int ext = url.lastIndexOf('.');
+        return (ext > Math.max(url.lastIndexOf('/'), url.lastIndexOf(':'))) ?
+                url.substring(0, ext) + "-" + shard + url.substring(ext) :
+                url + "-" + shard;
+    }
+
+    /**
+     * @return bounded, read-only connection pool to the same database
+     */
+    public DataSourceFactory readerDataSource(final DataSourceFactory database) {
+        final DataSourceFactory reader = new DataSourceFactory();
+        reader.setDriverClass(database.getDriverClass());
+        reader.setUrl(database.getUrl());
+        reader.setUser(database.getUser());
+        reader.setPassword(database.getPassword());
+        final Map<String, String> props = new HashMap<>(database.getProperties());
+        props.putAll(connectionProperties(true));
+        reader.setProperties(props);
+        reader.setInitialSize(Math.min(database.getInitialSize(), config.getReaderPoolSize()));
+        reader.setMinSize(Math.min(database.getMinSize(), config.getReaderPoolSize()));
+        reader.setMaxSize(config.getReaderPoolSize());
+        reader.setMaxWaitForConnection(database.getMaxWaitForConnection());
+        reader.setCheckConnectionWhileIdle(false);
+        return reader;
+    }
+
+    /**
+     * @return Jdbi opening a new, unpooled connection on every open. The writer keeps its one connection open for as
+     * long as it runs, so it never waits on a pool or shares a connection
+     */
+    public Jdbi writerJdbi(final DataSourceFactory database) {
+        final Properties props = new Properties();
+        props.putAll(database.getProperties());
+        props.putAll(connectionProperties(false));
+        final SQLiteConfig sqliteConfig = new SQLiteConfig(props);
+        final String url = database.getUrl();
+        final String initializationQuery = initializationQuery();
+        return Jdbi.create(() -> {
+            final Connection conn = sqliteConfig.createConnection(url);
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute(initializationQuery);
+            }
+            return conn;
+        });
+    }
+
+}
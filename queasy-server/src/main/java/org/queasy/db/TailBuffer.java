@@ -0,0 +1,150 @@
+package org.queasy.db;
+
+import org.queasy.core.util.RingBuffer;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Ring of the messages a {@link QDbWriter} committed last, as stored, shared by every reader of its shard. A reader
+ * caught up with the writer reads new messages from here rather than from the store. One that has fallen further
+ * behind than the ring holds, or whose query can't be evaluated in memory, reads from the store as before.
+ * <p>
+ * Written by the writer thread alone, after every commit; read by any thread without locking. A message overwritten
+ * while a reader is at it is never handed out: the reader stops there and carries on from the store next time.
+ *
+ * Created on: 2026-10-18
+ */
+public final class TailBuffer {
+
+    private final AtomicReferenceArray<Entry> entries;
+    private final int mask;
+    // Id of the newest message in the store when the ring was created
+    private final long startId;
+
+    // Sequence of the last message published, 0 if there is none
+    private volatile long published;
+
+    /**
+     * Returned by {@link #read} if the ring doesn't hold all the messages after the given id
+     */
+    public static final long NOT_IN_TAIL = -1;
+
+
+    /**
+     * @param capacity number of messages kept, rounded up to a power of two
+     * @param startId  id of the newest message in the store, readers past it can read from the ring from the start
+     */
+    public TailBuffer(final int capacity, final long startId) {
+        this.entries = new AtomicReferenceArray<>(RingBuffer.capacityFor(capacity));
+        this.mask = entries.length() - 1;
+        this.startId = startId;
+    }
+
+    public int getCapacity() {
+        return entries.length();
+    }
+
+    /**
+     * Adds the messages of a committed batch, called by the writer thread alone
+     */
+    public void publish(final MessageBatch batch) {
+        long seq = published;
+        for (int i = 0; i < batch.size(); i++) {
+            seq++;
+            entries.set((int) seq & mask, new Entry(seq, batch.getId(i), batch.getQName(i), batch.getTs(),
+                    batch.getMessage(i), batch.getEncoding(i)));
+        }
+        published = seq;
+    }
+
+    /**
+     * Reads messages matched by the query after the given id, oldest first
+     *
+     * @param query     an evaluable query, see {@link CompiledQuery#isEvaluable()}
+     * @param fetchSize maximum number of messages read
+     * @return id of the last message looked at, read or not; afterId if there were none. {@link #NOT_IN_TAIL} if some
+     * of the messages after afterId are no longer in the ring, and none were read
+     */
+    public long read(final long afterId, final CompiledQuery query, final int fetchSize,
+                     final MessageStore.RecordVisitor visitor) {
+        final long last = published;
+        if (last == 0) {
+            return (afterId >= startId) ? afterId : NOT_IN_TAIL;
+        }
+        final long oldest = Math.max(1, last - entries.length() + 1);
+        final Entry oldestEntry = entries.get((int) oldest & mask);
+        if ((oldestEntry == null) || (oldestEntry.seq != oldest) ||
+                (afterId < ((oldest == 1) ? startId : oldestEntry.id))) {
+            return NOT_IN_TAIL;
+        }
+
+        // Ids increase with sequences, find the first message after afterId
+        long lo = oldest;
+        long hi = last + 1;
+        while (lo < hi) {
+            final long mid = (lo + hi) >>> 1;
+            final Entry entry = entries.get((int) mid & mask);
+            if ((entry == null) || (entry.seq != mid)) {
+                return NOT_IN_TAIL;
+            }
+            if (entry.id <= afterId) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+
+        long lastLookedAt = afterId;
+        int read = 0;
+        for (long seq = lo; (seq <= last) && (read < fetchSize); seq++) {
+            final Entry entry = entries.get((int) seq & mask);
+            if ((entry == null) || (entry.seq != seq)) {
+                // Overwritten, the rest is read from the store. Not a single message read means none looked at
+                // either, lest the caller take it that there were none to read up to the writer
+                return (read > 0) ? lastLookedAt : NOT_IN_TAIL;
+            }
+            lastLookedAt = entry.id;
+            if (query.matches(entry.qName, entry.ts, entry.enc)) {
+                visitor.visit(entry.id, entry.message, entry.enc);
+                read++;
+            }
+        }
+        return lastLookedAt;
+    }
+
+    /**
+     * @return a reader of the query that reads from the ring when it can, from the store reader otherwise. The store
+     * reader itself if the query can't be evaluated in memory
+     */
+    public MessageStore.Reader reader(final CompiledQuery query, final int fetchSize,
+                                      final MessageStore.Reader storeReader) {
+        if (!query.isEvaluable()) {
+            return storeReader;
+        }
+        return (afterId, visitor) -> {
+            final long lastLookedAt = read(afterId, query, fetchSize, visitor);
+            return (lastLookedAt != NOT_IN_TAIL) ? lastLookedAt : storeReader.read(afterId, visitor);
+        };
+    }
+
+
+    private static final class Entry {
+        private final long seq;
+        private final long id;
+        private final String qName;
+        private final long ts;
+        private final Object message;
+        private final int enc;
+
+        private Entry(final long seq, final long id, final String qName, final long ts, final Object message,
+                      final int enc) {
+            this.seq = seq;
+            this.id = id;
+            this.qName = qName;
+            this.ts = ts;
+            this.message = message;
+            this.enc = enc;
+        }
+    }
+
+}
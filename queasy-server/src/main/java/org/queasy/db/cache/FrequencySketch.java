@@ -0,0 +1,87 @@
+package org.queasy.db.cache;
+
+/**
+ * Count-min sketch of how often message ids were looked up lately, the TinyLFU admission filter. Four 4 bit counters
+ * per id, sixteen to a long; every sampleSize increments all counters are halved, so that ids popular long ago make
+ * way for ids popular now. Not thread safe.
+ *
+ * Created on: 2026-10-18
+ */
+final class FrequencySketch {
+
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int size;
+
+
+    /**
+     * @param expectedIds number of ids expected to be cached at a time
+     */
+    FrequencySketch(final int expectedIds) {
+        this.table = new long[Integer.highestOneBit(Math.max(expectedIds, 64) - 1) << 1];
+        this.tableMask = table.length - 1;
+        this.sampleSize = 10 * table.length;
+    }
+
+    /**
+     * @return estimated number of lookups of the id, at most 15
+     */
+    int frequency(final long id) {
+        final int hash = spread(id);
+        final int start = (hash & 3) << 2;
+        int frequency = 15;
+        for (int i = 0; i < 4; i++) {
+            final int index = indexOf(hash, i);
+            final int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    void increment(final long id) {
+        final int hash = spread(id);
+        final int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+        if (added && (++size == sampleSize)) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(final int index, final int counter) {
+        final int offset = counter << 2;
+        final long mask = 0xfL << offset;
+        if ((table[index] & mask) != mask) {
+            table[index] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size >>>= 1;
+    }
+
+    private int indexOf(final int hash, final int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += (h >>> 32);
+        return ((int) h) & tableMask;
+    }
+
+    private static int spread(final long id) {
+        long h = id * 0x9e3779b97f4a7c15L;
+        h ^= (h >>> 29);
+        return (int) (h ^ (h >>> 32));
+    }
+
+}
@@ -0,0 +1,48 @@
+package org.queasy.db.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import org.queasy.db.Envelope;
+
+import java.util.function.LongFunction;
+
+/**
+ * Envelopes on the heap in a Caffeine cache, bounded by entry count. Consumer groups reading the same message share the
+ * one envelope instance. Stats are those Caffeine records, all 0 unless the cache was built to record them.
+ *
+ * Created on: 2026-10-18
+ */
+public final class HeapMessageCache implements MessageCache {
+
+    private final Cache<Long, Envelope> cache;
+
+
+    public HeapMessageCache(final Cache<Long, Envelope> cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public Envelope get(final long id, final LongFunction<Envelope> loader) {
+        return cache.get(id, loader::apply);
+    }
+
+    @Override
+    public long getHitCount() {
+        return cache.stats().hitCount();
+    }
+
+    @Override
+    public long getMissCount() {
+        return cache.stats().missCount();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return cache.stats().evictionCount();
+    }
+
+    @Override
+    public long getBytesUsed() {
+        return 0;
+    }
+
+}
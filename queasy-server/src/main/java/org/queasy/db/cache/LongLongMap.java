@@ -0,0 +1,115 @@
+package org.queasy.db.cache;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map of long keys to long values, in two primitive arrays so that it costs the collector two
+ * objects however many entries it holds. Linear probing, deletion by shifting the entries that follow back. Not thread
+ * safe.
+ *
+ * Created on: 2026-10-18
+ */
+final class LongLongMap {
+
+    /**
+     * Key of a free slot, can't be used as a key
+     */
+    static final long FREE = Long.MIN_VALUE;
+
+    /**
+     * Returned by {@link #get} for a key not in the map
+     */
+    static final long NO_VALUE = -1;
+
+    private long[] keys;
+    private long[] values;
+    private int mask;
+    private int size;
+
+
+    LongLongMap(final int expectedSize) {
+        allocate(Integer.highestOneBit(Math.max(expectedSize, 8) * 2 - 1) << 1);
+    }
+
+    private void allocate(final int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, FREE);
+        values = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return value of the key, {@link #NO_VALUE} if it isn't in the map
+     */
+    long get(final long key) {
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+            if (keys[i] == FREE) {
+                return NO_VALUE;
+            }
+        }
+    }
+
+    void put(final long key, final long value) {
+        if (size * 2 >= keys.length) {
+            rehash();
+        }
+        int i = slot(key);
+        while ((keys[i] != FREE) && (keys[i] != key)) {
+            i = (i + 1) & mask;
+        }
+        if (keys[i] == FREE) {
+            size++;
+        }
+        keys[i] = key;
+        values[i] = value;
+    }
+
+    void remove(final long key) {
+        int i = slot(key);
+        while (keys[i] != key) {
+            if (keys[i] == FREE) {
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        size--;
+
+        // Shift back the entries that probed past the slot freed
+        int free = i;
+        for (int j = (i + 1) & mask; keys[j] != FREE; j = (j + 1) & mask) {
+            final int home = slot(keys[j]);
+            // The entry stays unless its home slot is cyclically outside (free, j]
+            if (((j - home) & mask) >= ((j - free) & mask)) {
+                keys[free] = keys[j];
+                values[free] = values[j];
+                free = j;
+            }
+        }
+        keys[free] = FREE;
+    }
+
+    private void rehash() {
+        final long[] oldKeys = keys;
+        final long[] oldValues = values;
+        allocate(oldKeys.length * 2);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private int slot(final long key) {
+        // Fibonacci hashing, spreads sequential ids well
+        return (int) ((key * 0x9e3779b97f4a7c15L) >>> 32) & mask;
+    }
+
+}
@@ -0,0 +1,78 @@
+package org.queasy.db.cache;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of longs in a primitive array, grown as needed. Not thread safe.
+ *
+ * Created on: 2026-10-18
+ */
+final class LongMinHeap {
+
+    private long[] values = new long[1024];
+    private int size;
+
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    void add(final long value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        int i = size++;
+        while (i > 0) {
+            final int parent = (i - 1) >>> 1;
+            if (values[parent] <= value) {
+                break;
+            }
+            values[i] = values[parent];
+            i = parent;
+        }
+        values[i] = value;
+    }
+
+    /**
+     * @return the smallest value, the heap must not be empty
+     */
+    long peek() {
+        return values[0];
+    }
+
+    /**
+     * Removes the smallest value, the heap must not be empty
+     *
+     * @return the value removed
+     */
+    long poll() {
+        final long min = values[0];
+        final long last = values[--size];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if ((child + 1 < size) && (values[child + 1] < values[child])) {
+                child++;
+            }
+            if (values[child] >= last) {
+                break;
+            }
+            values[i] = values[child];
+            i = child;
+        }
+        values[i] = last;
+        return min;
+    }
+
+}
@@ -0,0 +1,52 @@
+package org.queasy.db.cache;
+
+import org.queasy.db.Envelope;
+
+import java.util.function.LongFunction;
+import java.util.function.LongSupplier;
+
+/**
+ * JVM-wide cache of the envelopes of messages read, by message id, shared by every consumer group and topic so that a
+ * message read by many of them is decompressed and framed once. Safe for use by any thread.
+ *
+ * Created on: 2026-10-18
+ */
+public interface MessageCache {
+
+    /**
+     * @param loader builds the envelope of a message not in the cache, called outside of any lock
+     * @return envelope of the message, cached if it is admitted to the cache
+     */
+    Envelope get(long id, LongFunction<Envelope> loader);
+
+    /**
+     * Registers the read position of a consumer group or topic in a shard, the id of the last message it read, for the
+     * cache to tell which messages are still to be read and how soon. Ignored by caches that don't evict by it
+     */
+    default void addCursor(final LongSupplier cursor) {
+    }
+
+    long getHitCount();
+
+    long getMissCount();
+
+    /**
+     * @return number of envelopes evicted, or not admitted, to make room for others
+     */
+    long getEvictionCount();
+
+    /**
+     * @return bytes held by the envelopes cached, 0 if the cache doesn't weigh them
+     */
+    long getBytesUsed();
+
+    /**
+     * @return share of the lookups that were hits, 0 if there were none
+     */
+    default double getHitRate() {
+        final long hits = getHitCount();
+        final long lookups = hits + getMissCount();
+        return (lookups > 0) ? (double) hits / lookups : 0;
+    }
+
+}
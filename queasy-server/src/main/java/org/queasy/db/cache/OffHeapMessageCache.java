@@ -0,0 +1,383 @@
+package org.queasy.db.cache;
+
+import com.google.common.base.Preconditions;
+import org.queasy.core.util.RingBuffer;
+import org.queasy.db.Envelope;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.LongFunction;
+import java.util.function.LongSupplier;
+
+/**
+ * Envelopes encoded in off-heap slabs, bounded by the bytes they take rather than by their count, so that neither a few
+ * large messages push out thousands of small ones nor the cache adds to the work of the collector. The heap holds an
+ * index of primitive longs alone.
+ * <p>
+ * The cache is split into segments, by message id, each with a lock of its own. A segment admits every new envelope to
+ * a window taking a fifth of its bytes, oldest evicted first, so that an envelope read by one consumer group stays
+ * around for the others reading the same messages. An envelope evicted from the window moves to the main part of the
+ * segment, again evicted oldest first, only if it is to be read again sooner than every envelope it would push out of
+ * there. How soon is told by the read positions of the consumer groups and topics, see {@link #addCursor}: the fewer
+ * ids between an envelope and the nearest cursor behind it, the sooner. Envelopes every cursor has passed are dropped
+ * first, wherever they are in the main part, the envelopes in front of them moving to its newest end so that their room
+ * can be used, and envelopes just ahead of a lagging cursor are kept for it. Cursors are compared across shards, as ids
+ * of all shards are comparable, though a cursor only reads the messages of its own shard. With no cursors registered,
+ * an envelope moves to the main part if it was looked up more often lately than every envelope it would push out, as
+ * TinyLFU does. An envelope larger than a slab isn't cached.
+ *
+ * Created on: 2026-10-18
+ */
+public final class OffHeapMessageCache implements MessageCache {
+
+    /**
+     * Share of the slabs of a segment given to its window, in percent
+     */
+    static final int WINDOW_PERCENT = 20;
+
+    private static final byte TEXT = 0;
+    private static final byte BINARY = 1;
+    // Expected size of an envelope, the frequency sketch and the index are sized for
+    private static final int EXPECTED_ENVELOPE_SIZE = 1024;
+    private static final long[] NO_CURSORS = new long[0];
+
+    /**
+     * Returned by {@link #distance} for an envelope every cursor has passed
+     */
+    static final long PASSED = Long.MAX_VALUE;
+
+    private final Segment[] segments;
+    private final int segmentMask;
+    private final List<LongSupplier> cursors = new CopyOnWriteArrayList<>();
+
+
+    /**
+     * @param maxBytes     off-heap bytes taken by the cache, split between its segments
+     * @param slabSize     bytes allocated at a time, the largest envelope cached
+     * @param segmentCount rounded up to a power of two
+     * @throws IllegalArgumentException if a segment would have less than two slabs
+     */
+    public OffHeapMessageCache(final long maxBytes, final int slabSize, final int segmentCount) {
+        Preconditions.checkArgument(slabSize > 0, "Slab size must be positive: %s", slabSize);
+        this.segments = new Segment[RingBuffer.capacityFor(segmentCount)];
+        this.segmentMask = segments.length - 1;
+        final long segmentBytes = maxBytes / segments.length;
+        final long slabs = segmentBytes / slabSize;
+        Preconditions.checkArgument(slabs >= 2 && slabs <= Integer.MAX_VALUE,
+                "Cache of %s bytes must hold at least two slabs of %s bytes in each of its %s segments", maxBytes,
+                slabSize, segments.length);
+        final int windowSlabs = (int) Math.max(1, slabs * WINDOW_PERCENT / 100);
+        final int expectedEnvelopes = (int) Math.min(1 << 24, segmentBytes / EXPECTED_ENVELOPE_SIZE);
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment(new SlabLog(windowSlabs, slabSize),
+                    new SlabLog((int) slabs - windowSlabs, slabSize), expectedEnvelopes);
+        }
+    }
+
+    @Override
+    public Envelope get(final long id, final LongFunction<Envelope> loader) {
+        final Segment segment = segmentFor(id);
+        final byte[] data = segment.get(id);
+        if (data != null) {
+            return decode(data);
+        }
+        final Envelope envelope = loader.apply(id);
+        segment.put(id, encode(envelope), readCursors());
+        return envelope;
+    }
+
+    @Override
+    public void addCursor(final LongSupplier cursor) {
+        cursors.add(cursor);
+    }
+
+    /**
+     * @return positions of the cursors in ascending order, read afresh on every miss, which costs far more anyway
+     */
+    private long[] readCursors() {
+        if (cursors.isEmpty()) {
+            return NO_CURSORS;
+        }
+        final long[] positions = new long[cursors.size()];
+        int i = 0;
+        for (LongSupplier cursor : cursors) {
+            if (i == positions.length) {
+                break;
+            }
+            positions[i++] = cursor.getAsLong();
+        }
+        Arrays.sort(positions, 0, i);
+        return (i == positions.length) ? positions : Arrays.copyOf(positions, i);
+    }
+
+    /**
+     * @param cursors positions in ascending order
+     * @return number of ids between the message and the nearest cursor that is still to read it, {@link #PASSED} if
+     * there is none
+     */
+    static long distance(final long id, final long[] cursors) {
+        // Index of the first cursor at the id or past it
+        int lo = 0;
+        int hi = cursors.length;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (cursors[mid] < id) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return (lo > 0) ? id - cursors[lo - 1] : PASSED;
+    }
+
+    private Segment segmentFor(final long id) {
+        final long h = id * 0xc2b2ae3d27d4eb4fL;
+        return segments[(int) (h ^ (h >>> 40)) & segmentMask];
+    }
+
+    private static byte[] encode(final Envelope envelope) {
+        final ByteBuffer frame = envelope.isBinary() ? ByteBuffer.wrap(envelope.getBinary()) : envelope.getTextFrame();
+        final byte[] data = new byte[frame.remaining() + 1];
+        data[0] = envelope.isBinary() ? BINARY : TEXT;
+        frame.get(data, 1, data.length - 1);
+        return data;
+    }
+
+    private static Envelope decode(final byte[] data) {
+        return (data[0] == BINARY) ? Envelope.binary(Arrays.copyOfRange(data, 1, data.length)) :
+                Envelope.text(ByteBuffer.wrap(data, 1, data.length - 1));
+    }
+
+    @Override
+    public long getHitCount() {
+        long hits = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                hits += segment.hits;
+            }
+        }
+        return hits;
+    }
+
+    @Override
+    public long getMissCount() {
+        long misses = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                misses += segment.misses;
+            }
+        }
+        return misses;
+    }
+
+    @Override
+    public long getEvictionCount() {
+        long evictions = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                evictions += segment.evictions;
+            }
+        }
+        return evictions;
+    }
+
+    @Override
+    public long getBytesUsed() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                bytes += segment.window.getBytesUsed() + segment.main.getBytesUsed();
+            }
+        }
+        return bytes;
+    }
+
+
+    private static final class Segment {
+        // Set in the index entries of envelopes in the main log, along with their sequence number there
+        private static final long MAIN = 1L << 62;
+
+        private final SlabLog window;
+        private final SlabLog main;
+        private final LongLongMap index;
+        private final FrequencySketch sketch;
+        // Ids of the envelopes moved to the main log, to find those every cursor has passed wherever they are there
+        private final LongMinHeap mainIds = new LongMinHeap();
+        // Bytes of the envelopes dropped from the index for having been passed, still in the main log
+        private long passedBytes;
+        private long hits;
+        private long misses;
+        private long evictions;
+
+        private Segment(final SlabLog window, final SlabLog main, final int expectedEnvelopes) {
+            this.window = window;
+            this.main = main;
+            this.index = new LongLongMap(expectedEnvelopes);
+            this.sketch = new FrequencySketch(expectedEnvelopes);
+        }
+
+        /**
+         * @return the encoded envelope, null if it isn't cached
+         */
+        private synchronized byte[] get(final long id) {
+            sketch.increment(id);
+            final long entry = index.get(id);
+            if (entry == LongLongMap.NO_VALUE) {
+                misses++;
+                return null;
+            }
+            hits++;
+            return ((entry & MAIN) != 0) ? main.read(entry & ~MAIN) : window.read(entry);
+        }
+
+        /**
+         * @param cursors positions of the cursors in ascending order, none to fall back on lookup frequencies
+         */
+        private synchronized void put(final long id, final byte[] data, final long[] cursors) {
+            if ((data.length > window.getSlabSize()) || (index.get(id) != LongLongMap.NO_VALUE)) {
+                return;
+            }
+            while (!window.fits(data.length)) {
+                evictFromWindow(cursors);
+            }
+            index.put(id, window.append(id, data));
+        }
+
+        /**
+         * Moves the oldest envelope of the window to the main log, if it is still to be read and is admitted there,
+         * or drops it
+         */
+        private void evictFromWindow(final long[] cursors) {
+            final long seq = window.getHeadSeq();
+            final long candidate = window.getId(seq);
+            final boolean toRead = (cursors.length == 0) || (distance(candidate, cursors) != PASSED);
+            if (toRead && admit(candidate, window.getLength(seq), cursors)) {
+                index.put(candidate, main.append(window, seq) | MAIN);
+                trackMainId(candidate);
+            } else {
+                index.remove(candidate);
+                evictions++;
+            }
+            window.evict();
+        }
+
+        /**
+         * Makes room for the candidate in the main log, if it is to be read sooner than every envelope evicted to make
+         * room for it, once the envelopes passed by every cursor are dropped. Without cursors, if it was looked up more
+         * often
+         */
+        private boolean admit(final long candidate, final int length, final long[] cursors) {
+            if (main.fits(length)) {
+                return true;
+            }
+            if (cursors.length > 0) {
+                dropPassed(cursors[0]);
+                compact(length);
+            }
+            long victims = 0;
+            while (!main.fitsAfterEvicting(victims, length)) {
+                victims++;
+            }
+            if (victims == 0) {
+                return true;
+            }
+            final long head = main.getHeadSeq();
+            if (cursors.length > 0) {
+                final long distance = distance(candidate, cursors);
+                for (long seq = head; seq < head + victims; seq++) {
+                    if (distance(main.getId(seq), cursors) <= distance) {
+                        return false;
+                    }
+                }
+            } else {
+                final int frequency = sketch.frequency(candidate);
+                for (long seq = head; seq < head + victims; seq++) {
+                    if (sketch.frequency(main.getId(seq)) >= frequency) {
+                        return false;
+                    }
+                }
+            }
+            for (long i = 0; i < victims; i++) {
+                evictFromMain();
+            }
+            return true;
+        }
+
+        /**
+         * Drops from the index the envelopes of the main log at or below the lowest cursor, which every cursor has
+         * passed. Their bytes stay taken until {@link #compact} reaches them
+         */
+        private void dropPassed(final long lowestCursor) {
+            while (!mainIds.isEmpty() && (mainIds.peek() <= lowestCursor)) {
+                final long id = mainIds.poll();
+                final long entry = index.get(id);
+                // Ids evicted from the main log since are still in the heap
+                if ((entry != LongLongMap.NO_VALUE) && ((entry & MAIN) != 0)) {
+                    index.remove(id);
+                    passedBytes += main.getLength(entry & ~MAIN);
+                    evictions++;
+                }
+            }
+        }
+
+        /**
+         * Frees the bytes of dropped envelopes until an entry of the given length fits, moving the envelopes in front
+         * of them to the newest end of the main log
+         */
+        private void compact(final int length) {
+            while ((passedBytes > 0) && !main.fits(length)) {
+                final long seq = main.getHeadSeq();
+                final long id = main.getId(seq);
+                if (!isInMain(id, seq)) {
+                    passedBytes -= main.getLength(seq);
+                    main.evict();
+                    continue;
+                }
+                final byte[] data = main.read(seq);
+                main.evict();
+                if (main.fits(data.length)) {
+                    index.put(id, main.append(id, data) | MAIN);
+                } else {
+                    // The padding at the end of a slab left no room for it
+                    index.remove(id);
+                    evictions++;
+                }
+            }
+        }
+
+        private void evictFromMain() {
+            final long seq = main.getHeadSeq();
+            final long id = main.getId(seq);
+            if (isInMain(id, seq)) {
+                index.remove(id);
+                evictions++;
+            } else {
+                passedBytes -= main.getLength(seq);
+            }
+            main.evict();
+        }
+
+        /**
+         * @return true if the entry of the main log is the one the index points to, false if it was dropped
+         */
+        private boolean isInMain(final long id, final long seq) {
+            return index.get(id) == (seq | MAIN);
+        }
+
+        private void trackMainId(final long id) {
+            // Drop the ids of envelopes evicted since, should no cursor pass them for long
+            if (mainIds.size() > 2 * (main.getTailSeq() - main.getHeadSeq()) + 1024) {
+                mainIds.clear();
+                for (long seq = main.getHeadSeq(); seq < main.getTailSeq(); seq++) {
+                    if (isInMain(main.getId(seq), seq)) {
+                        mainIds.add(main.getId(seq));
+                    }
+                }
+            }
+            mainIds.add(id);
+        }
+    }
+
+}
@@ -0,0 +1,179 @@
+package org.queasy.db.cache;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Entries appended to a ring of off-heap slabs and evicted oldest first. An entry never straddles two slabs: one that
+ * doesn't fit in what is left of the slab being written goes at the start of the next. The ids, positions and lengths
+ * of the entries are kept on the heap in a ring of their own, by sequence number. Not thread safe.
+ *
+ * Created on: 2026-10-18
+ */
+final class SlabLog {
+
+    private final ByteBuffer[] slabs;
+    private final int slabSize;
+    private final long capacity;
+
+    // Log position, from 0 on, of the end of the newest entry
+    private long tailPos;
+
+    // Entries by sequence number, from headSeq to tailSeq excluded
+    private long[] ids = new long[1024];
+    private long[] positions = new long[ids.length];
+    private int[] lengths = new int[ids.length];
+    private long headSeq;
+    private long tailSeq;
+    private long bytesUsed;
+
+
+    SlabLog(final int slabCount, final int slabSize) {
+        this.slabs = new ByteBuffer[slabCount];
+        for (int i = 0; i < slabCount; i++) {
+            slabs[i] = ByteBuffer.allocateDirect(slabSize);
+        }
+        this.slabSize = slabSize;
+        this.capacity = (long) slabCount * slabSize;
+    }
+
+    int getSlabSize() {
+        return slabSize;
+    }
+
+    boolean isEmpty() {
+        return headSeq == tailSeq;
+    }
+
+    /**
+     * @return bytes held by the entries, padding at the end of slabs excluded
+     */
+    long getBytesUsed() {
+        return bytesUsed;
+    }
+
+    /**
+     * @return true if an entry of the given length can be appended without evicting any
+     */
+    boolean fits(final int length) {
+        return fitsAfterEvicting(0, length);
+    }
+
+    /**
+     * @return true if an entry of the given length can be appended once the given number of oldest entries are evicted
+     */
+    boolean fitsAfterEvicting(final long evicted, final int length) {
+        final long head = (headSeq + evicted < tailSeq) ? positions[slot(headSeq + evicted)] : tailPos;
+        return placement(length) + length - head <= capacity;
+    }
+
+    private long placement(final int length) {
+        final int offset = (int) (tailPos % slabSize);
+        return (offset + length > slabSize) ? tailPos + (slabSize - offset) : tailPos;
+    }
+
+    /**
+     * Appends an entry, which must fit
+     *
+     * @return sequence number of the entry
+     */
+    long append(final long id, final byte[] data) {
+        final ByteBuffer slab = reserve(id, data.length);
+        slab.put(data);
+        return tailSeq - 1;
+    }
+
+    /**
+     * Appends a copy of an entry of another log, which must fit
+     *
+     * @return sequence number of the entry
+     */
+    long append(final SlabLog from, final long seq) {
+        final int i = from.slot(seq);
+        final ByteBuffer slab = reserve(from.ids[i], from.lengths[i]);
+        slab.put(from.region(from.positions[i], from.lengths[i]));
+        return tailSeq - 1;
+    }
+
+    private ByteBuffer reserve(final long id, final int length) {
+        if (tailSeq - headSeq == ids.length) {
+            grow();
+        }
+        final long pos = placement(length);
+        final int i = slot(tailSeq++);
+        ids[i] = id;
+        positions[i] = pos;
+        lengths[i] = length;
+        tailPos = pos + length;
+        bytesUsed += length;
+        return region(pos, length);
+    }
+
+    private ByteBuffer region(final long pos, final int length) {
+        final long offset = pos % capacity;
+        final ByteBuffer slab = slabs[(int) (offset / slabSize)];
+        final int start = (int) (offset % slabSize);
+        slab.clear();
+        slab.position(start);
+        slab.limit(start + length);
+        return slab;
+    }
+
+    /**
+     * @return bytes of the entry
+     */
+    byte[] read(final long seq) {
+        final int i = slot(seq);
+        final byte[] data = new byte[lengths[i]];
+        region(positions[i], lengths[i]).get(data);
+        return data;
+    }
+
+    /**
+     * @return id of the entry, which must be in the log
+     */
+    long getId(final long seq) {
+        return ids[slot(seq)];
+    }
+
+    int getLength(final long seq) {
+        return lengths[slot(seq)];
+    }
+
+    long getHeadSeq() {
+        return headSeq;
+    }
+
+    long getTailSeq() {
+        return tailSeq;
+    }
+
+    /**
+     * Evicts the oldest entry
+     */
+    void evict() {
+        bytesUsed -= lengths[slot(headSeq)];
+        headSeq++;
+    }
+
+    private void grow() {
+        final int size = ids.length;
+        final long[] newIds = new long[size * 2];
+        final long[] newPositions = new long[size * 2];
+        final int[] newLengths = new int[size * 2];
+        for (long seq = headSeq; seq < tailSeq; seq++) {
+            final int from = slot(seq);
+            final int to = (int) (seq & (newIds.length - 1));
+            newIds[to] = ids[from];
+            newPositions[to] = positions[from];
+            newLengths[to] = lengths[from];
+        }
+        ids = newIds;
+        positions = newPositions;
+        lengths = newLengths;
+    }
+
+    private int slot(final long seq) {
+        return (int) (seq & (ids.length - 1));
+    }
+
+}
@@ -0,0 +1,285 @@
+package org.queasy.db.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * One preallocated, memory mapped segment file of a {@link SegmentedLog}. Records are laid out back to back from the
+ * start of the file:
+ * <pre>
+ *   int   length of the record after the CRC, 0 past the last record. Its sign bit is set on the last record of a
+ *         commit
+ *   int   CRC32 of the record after the CRC
+ *   long  message id
+ *   long  timestamp
+ *   int   "enc" bits, as in the SQLite table
+ *   short length of the queue name
+ *   queue name, UTF-8
+ *   message
+ * </pre>
+ * Appended by the writer thread alone. Readers see records up to the committed position, published with a volatile
+ * write once the batch holding them is committed. Every indexInterval bytes, the id and position of a record go in a
+ * sparse index, which is rebuilt from the records when the segment is opened again. The last record of every commit
+ * is marked as such, so that records of a batch that was never committed, whole as they may be, are told apart from
+ * committed ones when the segment is opened again.
+ *
+ * Created on: 2026-10-18
+ */
+final class Segment {
+
+    static final int HEADER_BYTES = 2 * Integer.BYTES;
+    static final int FIXED_BYTES = 2 * Long.BYTES + Integer.BYTES + Short.BYTES;
+    static final int ID_OFFSET = HEADER_BYTES;
+    static final int ENC_OFFSET = HEADER_BYTES + 2 * Long.BYTES;
+    static final int QNAME_OFFSET = HEADER_BYTES + FIXED_BYTES;
+    static final int COMMIT_FLAG = Integer.MIN_VALUE;
+
+    private final File file;
+    private final long baseId;
+    private final MappedByteBuffer map;
+    // Writer's own view, so that readers can duplicate the map without racing with its position
+    private final ByteBuffer writeBuffer;
+    private final int indexInterval;
+    private final long[] indexIds;
+    private final int[] indexPositions;
+
+    // Committed state, read by readers
+    private volatile int committed;
+    private volatile int indexCount;
+    private volatile long lastId;
+    private volatile int count;
+
+    // Pending state, accessed by the writer thread alone
+    private int position;
+    private int lastRecord;
+    private int pendingIndexCount;
+    private int nextIndexPosition;
+    private long pendingLastId;
+    private int pendingCount;
+
+
+    private Segment(final File file, final long baseId, final MappedByteBuffer map, final int indexInterval) {
+        this.file = file;
+        this.baseId = baseId;
+        this.map = map;
+        this.writeBuffer = map.duplicate();
+        this.indexInterval = indexInterval;
+        final int maxEntries = map.capacity() / indexInterval + 1;
+        this.indexIds = new long[maxEntries];
+        this.indexPositions = new int[maxEntries];
+    }
+
+    static String fileName(final long baseId) {
+        return String.format("%020d.log", baseId);
+    }
+
+    /**
+     * Creates a new segment file, preallocated to size
+     *
+     * @param baseId id of the first message in it
+     */
+    static Segment create(final File directory, final long baseId, final int size, final int indexInterval)
+            throws IOException {
+        final File file = new File(directory, fileName(baseId));
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(size);
+            return new Segment(file, baseId, raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size),
+                    indexInterval);
+        }
+    }
+
+    /**
+     * Opens an existing segment file, committing the records up to the last commit marker before the first one that is
+     * torn or corrupt. The records after it are left pending, see {@link #endRecovery(boolean)}
+     */
+    static Segment open(final File file, final long baseId, final int indexInterval) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            final Segment segment = new Segment(file, baseId,
+                    raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length()), indexInterval);
+            segment.recover();
+            return segment;
+        }
+    }
+
+    private void recover() {
+        final CRC32 crc = new CRC32();
+        final ByteBuffer view = map.duplicate();
+        while (position + HEADER_BYTES + FIXED_BYTES <= map.capacity()) {
+            final int length = length(map, position);
+            if ((length < FIXED_BYTES) || (length > map.capacity() - position - HEADER_BYTES)) {
+                break;
+            }
+            view.limit(position + HEADER_BYTES + length);
+            view.position(position + HEADER_BYTES);
+            crc.reset();
+            crc.update(view);
+            view.limit(view.capacity());
+            if ((int) crc.getValue() != map.getInt(position + Integer.BYTES)) {
+                break;
+            }
+            addToIndex(map.getLong(position + ID_OFFSET), position);
+            pendingLastId = map.getLong(position + ID_OFFSET);
+            pendingCount++;
+            lastRecord = position;
+            position += HEADER_BYTES + length;
+            if ((map.getInt(lastRecord) & COMMIT_FLAG) != 0) {
+                commit(false);
+            }
+        }
+    }
+
+    /**
+     * Ends the recovery of the segment
+     *
+     * @param keepPending whether to keep the whole records after the last commit marker: the start of a batch that
+     *                    was committed in a later segment, rather than one that never made it
+     */
+    void endRecovery(final boolean keepPending) {
+        if (keepPending) {
+            commit(false);
+        }
+        // Whatever follows is left over from a batch that never made it
+        rollback();
+    }
+
+    /**
+     * Appends a record, visible to readers once committed
+     *
+     * @param fixed scratch buffer of FIXED_BYTES for the fixed size fields
+     * @return false if there isn't room for it in this segment
+     */
+    boolean append(final long id, final long ts, final byte[] qName, final int enc, final byte[] message,
+                   final ByteBuffer fixed, final CRC32 crc) {
+        final int length = FIXED_BYTES + qName.length + message.length;
+        if (position + HEADER_BYTES + length > map.capacity()) {
+            return false;
+        }
+
+        fixed.clear();
+        fixed.putLong(id).putLong(ts).putInt(enc).putShort((short) qName.length);
+        crc.reset();
+        crc.update(fixed.array(), 0, FIXED_BYTES);
+        crc.update(qName);
+        crc.update(message);
+
+        writeBuffer.position(position);
+        writeBuffer.putInt(length).putInt((int) crc.getValue()).put(fixed.array(), 0, FIXED_BYTES)
+                .put(qName).put(message);
+        addToIndex(id, position);
+        lastRecord = position;
+        position += HEADER_BYTES + length;
+        pendingLastId = id;
+        pendingCount++;
+        return true;
+    }
+
+    private void addToIndex(final long id, final int recordPosition) {
+        if (recordPosition >= nextIndexPosition) {
+            indexIds[pendingIndexCount] = id;
+            indexPositions[pendingIndexCount] = recordPosition;
+            pendingIndexCount++;
+            nextIndexPosition = recordPosition + indexInterval;
+        }
+    }
+
+    /**
+     * Marks the last record appended as the end of a commit and makes the records appended since the last commit
+     * visible to readers
+     *
+     * @param force whether to force the segment to disk first
+     */
+    void commit(final boolean force) {
+        if (position > committed) {
+            map.putInt(lastRecord, map.getInt(lastRecord) | COMMIT_FLAG);
+        }
+        if (force) {
+            map.force();
+        }
+        indexCount = pendingIndexCount;
+        lastId = pendingLastId;
+        count = pendingCount;
+        committed = position;
+    }
+
+    /**
+     * Drops the records appended since the last commit
+     */
+    void rollback() {
+        position = committed;
+        if (position + Integer.BYTES <= map.capacity()) {
+            // So that they are not taken for records when the segment is opened again
+            map.putInt(position, 0);
+        }
+        pendingIndexCount = indexCount;
+        nextIndexPosition = (indexCount > 0) ? indexPositions[indexCount - 1] + indexInterval : 0;
+        pendingLastId = lastId;
+        pendingCount = count;
+    }
+
+    void force() {
+        map.force();
+    }
+
+    /**
+     * @return length of the record at the given position, after the CRC
+     */
+    static int length(final ByteBuffer view, final int position) {
+        return view.getInt(position) & ~COMMIT_FLAG;
+    }
+
+    /**
+     * @return position of a committed record at or before the first one with an id greater than afterId
+     */
+    int positionBefore(final long afterId) {
+        int lo = 0;
+        int hi = indexCount - 1;
+        int found = 0;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (indexIds[mid] <= afterId) {
+                found = indexPositions[mid];
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return a view of the segment of its own, for absolute reads of committed records
+     */
+    ByteBuffer view() {
+        return map.duplicate();
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    long getBaseId() {
+        return baseId;
+    }
+
+    int getCommitted() {
+        return committed;
+    }
+
+    boolean isEmpty() {
+        return position == 0;
+    }
+
+    long getLastId() {
+        return lastId;
+    }
+
+    int getCount() {
+        return count;
+    }
+
+}
@@ -0,0 +1,282 @@
+package org.queasy.db.log;
+
+import com.google.common.base.Preconditions;
+import org.queasy.core.config.LogConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only message store of one shard: a directory of preallocated, memory mapped segment files, each named after
+ * the id of the first message in it. The writer thread appends a batch of messages and commits it, which makes it
+ * visible to readers all at once; readers scan forward from the last message id they have read. Messages are
+ * retained by whole segments, the oldest segment is deleted once the ones after it hold enough messages, or once
+ * its newest message is too old, as told by its id.
+ *
+ * Created on: 2026-10-18
+ */
+public final class SegmentedLog {
+
+    /**
+     * Called back for every message read
+     */
+    @FunctionalInterface
+    public interface RecordVisitor {
+        void visit(long id, int enc, byte[] message);
+    }
+
+    private final File directory;
+    private final int segmentSize;
+    private final int indexInterval;
+    private final boolean forceOnCommit;
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+
+    // Accessed by the writer thread alone
+    private Segment active;
+    private final List<Segment> touched = new ArrayList<>(2);
+    private final Map<String, byte[]> qNames = new HashMap<>();
+    private final ByteBuffer fixed = ByteBuffer.allocate(Segment.FIXED_BYTES);
+    private final CRC32 crc = new CRC32();
+    private long messageCount;
+
+    private static final Logger logger = LoggerFactory.getLogger(SegmentedLog.class);
+
+
+    private SegmentedLog(final File directory, final LogConfiguration config) {
+        this.directory = directory;
+        this.segmentSize = (int) Math.min(config.getSegmentSize().toBytes(), Integer.MAX_VALUE);
+        this.indexInterval = (int) Math.max(1, config.getIndexInterval().toBytes());
+        this.forceOnCommit = config.isForceOnCommit();
+    }
+
+    /**
+     * Opens the log in the given directory, creating it if need be. Records past the first torn or corrupt one in a
+     * segment are dropped, as are the records of a batch that was not committed.
+     */
+    public static SegmentedLog open(final File directory, final LogConfiguration config) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create log directory " + directory);
+        }
+        final SegmentedLog log = new SegmentedLog(directory, config);
+        final File[] files = directory.listFiles((dir, name) -> name.matches("\\d{20}\\.log"));
+        Arrays.sort(files);
+        for (File file : files) {
+            final long baseId = Long.parseLong(file.getName().substring(0, 20));
+            log.segments.put(baseId, Segment.open(file, baseId, log.indexInterval));
+        }
+        // A batch rolled over to the next segment is marked committed there alone
+        boolean committedLater = false;
+        for (Segment segment : log.segments.descendingMap().values()) {
+            segment.endRecovery(committedLater);
+            committedLater |= (segment.getCount() > 0);
+            log.messageCount += segment.getCount();
+        }
+        log.active = log.segments.isEmpty() ? null : log.segments.lastEntry().getValue();
+        return log;
+    }
+
+    /**
+     * @return id of the last message committed, 0 if there is none
+     */
+    public long getLastId() {
+        for (Segment segment : segments.descendingMap().values()) {
+            if (segment.getCount() > 0) {
+                return segment.getLastId();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return number of messages committed, in all the segments
+     */
+    public long getMessageCount() {
+        return messageCount;
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    /* Writer side */
+
+    /**
+     * Appends a message to the current batch, rolling over to a new segment if there isn't room for it in the current
+     * one. Ids must be increasing.
+     *
+     * @throws IllegalArgumentException if the message is too big for a segment
+     */
+    public void append(final long id, final long ts, final String qName, final int enc, final byte[] message)
+            throws IOException {
+        final byte[] name = qNames.computeIfAbsent(qName, key -> key.getBytes(StandardCharsets.UTF_8));
+        if ((active == null) || !active.append(id, ts, name, enc, message, fixed, crc)) {
+            Preconditions.checkArgument(Segment.HEADER_BYTES + Segment.FIXED_BYTES + name.length + message.length
+                    <= segmentSize, "Message does not fit in a log segment");
+            if ((active == null) || !active.isEmpty()) {
+                roll(id);
+            }
+            if (!active.append(id, ts, name, enc, message, fixed, crc)) {
+                throw new IllegalStateException("Message does not fit in an empty log segment");
+            }
+        }
+        if (touched.isEmpty() || touched.get(touched.size() - 1) != active) {
+            touched.add(active);
+        }
+    }
+
+    private void roll(final long baseId) throws IOException {
+        active = Segment.create(directory, baseId, segmentSize, indexInterval);
+        segments.put(baseId, active);
+    }
+
+    /**
+     * Makes the messages appended since the last commit visible to readers, all at once
+     */
+    public void commit() {
+        for (Segment segment : touched) {
+            messageCount -= segment.getCount();
+            segment.commit(forceOnCommit);
+            messageCount += segment.getCount();
+        }
+        touched.clear();
+    }
+
+    /**
+     * Drops the messages appended since the last commit
+     */
+    public void rollback() {
+        for (Segment segment : touched) {
+            segment.rollback();
+        }
+        touched.clear();
+    }
+
+    /**
+     * Deletes the oldest segments, the active one excepted, as long as the segments after them still hold maxMessages
+     * or they hold no id as high as minId
+     *
+     * @param maxMessages 0 for no limit
+     * @param minId       0 for no limit
+     * @return number of messages deleted
+     */
+    public long trim(final long maxMessages, final long minId) {
+        long deleted = 0;
+        for (Map.Entry<Long, Segment> oldest = segments.firstEntry();
+             (oldest != null) && (oldest.getValue() != active); oldest = segments.firstEntry()) {
+            final Segment segment = oldest.getValue();
+            final boolean tooMany = (maxMessages > 0) && (messageCount - segment.getCount() >= maxMessages);
+            final boolean tooOld = (minId > 0) && (segment.getLastId() < minId);
+            if (!tooMany && !tooOld) {
+                break;
+            }
+            // Readers still reading it keep the mapping, the file is gone once they are done
+            segments.remove(oldest.getKey());
+            messageCount -= segment.getCount();
+            if (!segment.getFile().delete()) {
+                logger.warn("Could not delete log segment {}", segment.getFile());
+            }
+            deleted += segment.getCount();
+        }
+        return deleted;
+    }
+
+    /**
+     * Forces the log to disk
+     */
+    public void close() {
+        for (Segment segment : touched) {
+            segment.rollback();
+        }
+        touched.clear();
+        if (active != null) {
+            active.force();
+        }
+    }
+
+    /* Reader side */
+
+    /**
+     * Reads committed messages after the given id, oldest first, may be called from any thread
+     *
+     * @param afterId     messages with ids up to this one are skipped
+     * @param max         maximum number of messages to read
+     * @param queueFilter names of the queues to read messages of, UTF-8 encoded, null for all the queues
+     * @return id of the last message looked at, whether it was read or filtered out; afterId if there were none
+     */
+    public long read(final long afterId, final int max, final byte[][] queueFilter, final RecordVisitor visitor) {
+        long lastId = afterId;
+        int read = 0;
+        final Map.Entry<Long, Segment> first = segments.floorEntry(afterId + 1);
+        final Long from = (first != null) ? first.getKey() : segments.isEmpty() ? null : segments.firstKey();
+        if (from == null) {
+            return lastId;
+        }
+
+        for (Segment segment : segments.tailMap(from, true).values()) {
+            final int committed = segment.getCommitted();
+            final ByteBuffer view = segment.view();
+            int position = segment.positionBefore(afterId);
+            while ((position < committed) && (read < max)) {
+                final int length = Segment.length(view, position);
+                final long id = view.getLong(position + Segment.ID_OFFSET);
+                if (id > afterId) {
+                    lastId = id;
+                    if (matches(view, position, queueFilter)) {
+                        final int qNameLength = view.getShort(position + Segment.QNAME_OFFSET - Short.BYTES);
+                        final int start = position + Segment.QNAME_OFFSET + qNameLength;
+                        final byte[] message = new byte[position + Segment.HEADER_BYTES + length - start];
+                        view.position(start);
+                        view.get(message);
+                        visitor.visit(id, view.getInt(position + Segment.ENC_OFFSET), message);
+                        read++;
+                    }
+                }
+                position += Segment.HEADER_BYTES + length;
+            }
+            if (read >= max) {
+                break;
+            }
+        }
+        return lastId;
+    }
+
+    private static boolean matches(final ByteBuffer view, final int position, final byte[][] queueFilter) {
+        if (queueFilter == null) {
+            return true;
+        }
+        final int length = view.getShort(position + Segment.QNAME_OFFSET - Short.BYTES);
+        for (byte[] name : queueFilter) {
+            if (name.length == length) {
+                int i = 0;
+                while ((i < length) && (view.get(position + Segment.QNAME_OFFSET + i) == name[i])) {
+                    i++;
+                }
+                if (i == length) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the queue names UTF-8 encoded, as {@link #read(long, int, byte[][], RecordVisitor)} takes them
+     */
+    public static byte[][] queueFilter(final Set<String> qNames) {
+        return (qNames == null) ? null :
+                qNames.stream().map(qName -> qName.getBytes(StandardCharsets.UTF_8)).toArray(byte[][]::new);
+    }
+
+}
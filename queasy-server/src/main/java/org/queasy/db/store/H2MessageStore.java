@@ -0,0 +1,87 @@
+package org.queasy.db.store;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.jdbi.v3.core.Jdbi;
+import org.queasy.core.config.H2Configuration;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Messages in a table of an embedded H2 database, one per shard, along with the checkpoint and dictionary tables. The
+ * tables are created on open if they don't exist; ids are BIGINT and every message is stored as VARBINARY, text UTF-8
+ * encoded, since a column can't hold both.
+ *
+ * Created on: 2026-10-18
+ */
+public class H2MessageStore extends JdbcMessageStore {
+
+    private final JdbcConnectionPool pool;
+
+    private static final String[] SCHEMA_SQL = {
+            "CREATE TABLE IF NOT EXISTS queasy_checkpoint (cg_name VARCHAR(255) PRIMARY KEY, " +
+                    "checkpoint BIGINT NOT NULL, ts BIGINT)",
+            "CREATE TABLE IF NOT EXISTS queasy_dictionary (id INT PRIMARY KEY, qname VARCHAR(255), dict VARBINARY, " +
+                    "ts BIGINT)",
+            "CREATE TABLE IF NOT EXISTS %1$s (id BIGINT PRIMARY KEY, qname VARCHAR(255), type VARCHAR(16), " +
+                    "ts BIGINT, mesg VARBINARY, enc INT)",
+            "CREATE INDEX IF NOT EXISTS %1$s_qname_id_idx ON %1$s (qname, id)"
+    };
+
+
+    /**
+     * Creates the tables, if need be, in the database
+     */
+    public H2MessageStore(final Jdbi jdbi, final String tableName) {
+        this(jdbi, tableName, null);
+    }
+
+    private H2MessageStore(final Jdbi jdbi, final String tableName, final JdbcConnectionPool pool) {
+        super(jdbi, jdbi, jdbi, tableName);
+        this.pool = pool;
+        jdbi.useHandle(handle -> {
+            for (String sql : SCHEMA_SQL) {
+                handle.execute(String.format(sql, tableName));
+            }
+        });
+    }
+
+    /**
+     * Opens the database file of the shard, creating it if need be
+     */
+    public static H2MessageStore open(final H2Configuration config, final int shard, final String tableName) {
+        final String path = (shard == 0) ? config.getPath() : config.getPath() + "-" + shard;
+        final JdbcConnectionPool pool = JdbcConnectionPool.create(
+                "jdbc:h2:file:" + new File(path).getAbsolutePath(), "sa", "");
+        pool.setMaxConnections(config.getMaxConnections());
+        return new H2MessageStore(Jdbi.create(pool), tableName, pool);
+    }
+
+    @Override
+    protected void bindMessage(final PreparedStatement insert, final int param, final Object message)
+            throws SQLException {
+        insert.setBytes(param, (message instanceof byte[]) ?
+                (byte[]) message : ((String) message).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    protected Object readMessage(final ResultSet rs, final int col, final int enc) throws SQLException {
+        final byte[] message = rs.getBytes(col);
+        return (enc != 0) ? message : new String(message, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Closes the writer's connection, and the connection pool if the store opened it
+     */
+    @Override
+    public void close() {
+        super.close();
+        if (pool != null) {
+            pool.dispose();
+        }
+    }
+
+}
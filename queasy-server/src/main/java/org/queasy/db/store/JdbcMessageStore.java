@@ -0,0 +1,352 @@
+package org.queasy.db.store;
+
+import org.jdbi.v3.core.Handle;
+import org.jdbi.v3.core.Jdbi;
+import org.jdbi.v3.core.statement.Query;
+import org.queasy.db.CompiledQuery;
+import org.queasy.db.MessageBatch;
+import org.queasy.db.PayloadCodec;
+import org.queasy.db.ScanningMessageStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Messages in a table of a SQL database, checkpoints and compression dictionaries in tables of the same database. The
+ * writer appends on a connection kept open for as long as it runs. A batch is inserted with multi-row
+ * "INSERT ... VALUES (...), (...)" statements of a few fixed sizes, prepared once and reused for every batch; rows left
+ * over are inserted one statement execution per row. Consumer group queries are SQL where clauses run as they are.
+ *
+ * Created on: 2026-10-18
+ */
+public abstract class JdbcMessageStore implements ScanningMessageStore {
+
+    private final Jdbi writerJdbi;
+    private final Jdbi jdbi;
+    private final Jdbi readJdbi;
+    private final String tableName;
+
+    // Accessed by the writer thread alone
+    private Handle handle;
+    private final PreparedStatement[] chunkInserts = new PreparedStatement[CHUNK_SIZES.length];
+    private PreparedStatement rowInsert;
+    // Rows in the data table, counted once on the first trim, -1 till then
+    private long messageCount = -1;
+
+    // Rows per multi-row insert statement, largest first. Type is always NULL, so a row has 5 parameters and the
+    // largest statement stays well under SQLite's default limit of 999 parameters
+    private static final int[] CHUNK_SIZES = {128, 32, 8};
+    private static final int ROW_PARAMS = 5;
+
+    private static final Logger logger = LoggerFactory.getLogger(JdbcMessageStore.class);
+
+
+    /**
+     * @param writerJdbi used by the writer
+     * @param jdbi       used to read and write checkpoints
+     * @param readJdbi   used to fetch messages, may be a read-only connection pool
+     */
+    protected JdbcMessageStore(final Jdbi writerJdbi, final Jdbi jdbi, final Jdbi readJdbi, final String tableName) {
+        this.writerJdbi = writerJdbi;
+        this.jdbi = jdbi;
+        this.readJdbi = readJdbi;
+        this.tableName = tableName;
+    }
+
+    /**
+     * Binds a message, a String or a byte[], to an insert statement parameter
+     */
+    protected abstract void bindMessage(PreparedStatement insert, int param, Object message) throws SQLException;
+
+    /**
+     * @return the message in the column, a String if enc is 0, a byte[] otherwise
+     */
+    protected abstract Object readMessage(ResultSet rs, int col, int enc) throws SQLException;
+
+    public Jdbi getJdbi() {
+        return jdbi;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    protected Jdbi getReadJdbi() {
+        return readJdbi;
+    }
+
+    /**
+     * @return table the messages are inserted into and trimmed from, the configured table by default
+     */
+    protected String getDataTableName() {
+        return tableName;
+    }
+
+    /**
+     * @return column of the data table the queue of a message goes in, bound by {@link #bindQueue}
+     */
+    protected String getQueueColumn() {
+        return "qname";
+    }
+
+    /**
+     * Binds the queue of a message to an insert statement parameter, as is by default
+     */
+    protected void bindQueue(final PreparedStatement insert, final int param, final String qName)
+            throws SQLException {
+        insert.setString(param, qName);
+    }
+
+    /**
+     * Called within the transaction of a batch, before its messages are inserted
+     */
+    protected void beforeInsert(final Handle handle, final MessageBatch batch) throws SQLException {
+    }
+
+    /**
+     * Called once the transaction of a batch is over, committed or not
+     */
+    protected void afterAppend(final boolean committed) {
+    }
+
+    @Override
+    public long getLastId() {
+        return jdbi.withHandle(handle -> handle.select("SELECT coalesce(max(id), 0) FROM " + getDataTableName())
+                .mapTo(Long.class)
+                .one());
+    }
+
+    /**
+     * @return 0, a consumer group without a checkpoint reads the table from the start
+     */
+    @Override
+    public long getStartId() {
+        return 0;
+    }
+
+    /**
+     * @return the select statement of a consumer group query, its first parameter being the id to read after. Ordered
+     * explicitly, a database returns rows in the order of the index it picks, which need not start with id
+     */
+    protected String selectSQL(final String query, final int fetchSize) {
+        return String.format("SELECT id, mesg, enc FROM %s WHERE id > ? AND %s AND type is NULL ORDER BY id LIMIT %s",
+                tableName, query, fetchSize);
+    }
+
+    @Override
+    public void append(final MessageBatch batch, final PayloadCodec codec) throws Exception {
+        if (handle == null) {
+            handle = writerJdbi.open();
+        }
+        handle.begin();
+        try {
+            if (codec != null) {
+                codec.saveDictionaries(handle);
+            }
+            beforeInsert(handle, batch);
+            insertBatch(batch);
+            handle.commit();
+        } catch (Exception ex) {
+            rollback();
+            afterAppend(false);
+            throw ex;
+        }
+        if (messageCount >= 0) {
+            messageCount += batch.size();
+        }
+        afterAppend(true);
+    }
+
+    private void insertBatch(final MessageBatch batch) throws SQLException {
+        final Connection conn = handle.getConnection();
+        final int size = batch.size();
+        int row = 0;
+        for (int i = 0; i < CHUNK_SIZES.length; i++) {
+            final int chunkSize = CHUNK_SIZES[i];
+            while (size - row >= chunkSize) {
+                if (chunkInserts[i] == null) {
+                    chunkInserts[i] = conn.prepareStatement(insertSQL(chunkSize));
+                }
+                final PreparedStatement insert = chunkInserts[i];
+                for (int param = 1; param <= ROW_PARAMS * chunkSize; param += ROW_PARAMS) {
+                    bindRow(insert, param, batch, row++);
+                }
+                insert.executeUpdate();
+            }
+        }
+
+        if (row < size) {
+            if (rowInsert == null) {
+                rowInsert = conn.prepareStatement(insertSQL(1));
+            }
+            for (; row < size; row++) {
+                bindRow(rowInsert, 1, batch, row);
+                rowInsert.addBatch();
+            }
+            rowInsert.executeBatch();
+        }
+    }
+
+    private void bindRow(final PreparedStatement insert, final int param, final MessageBatch batch, final int row)
+            throws SQLException {
+        insert.setLong(param, batch.getId(row)); //id
+        bindQueue(insert, param + 1, batch.getQName(row)); //qname
+        insert.setLong(param + 2, batch.getTs()); //timestamp
+        bindMessage(insert, param + 3, batch.getMessage(row)); //message
+        insert.setInt(param + 4, batch.getEncoding(row)); //encoding
+    }
+
+    private String insertSQL(final int rows) {
+        final StringBuilder sql = new StringBuilder("INSERT INTO ").append(getDataTableName())
+                .append(" (id, ").append(getQueueColumn()).append(", type, ts, mesg, enc) VALUES ");
+        for (int i = 0; i < rows; i++) {
+            sql.append(i == 0 ? "" : ", ").append("(?, ?, NULL, ?, ?, ?)");
+        }
+        return sql.toString();
+    }
+
+    private void rollback() {
+        try {
+            handle.rollback();
+        } catch (Exception ex) {
+            logger.error("Error rolling back batch", ex);
+            // Start afresh with a new connection
+            closeHandle();
+        }
+    }
+
+    /**
+     * Deletes by id alone, a range of the id index from its start. The rows past maxMessages are told from a count of
+     * the rows kept up to date by the writer, rather than by walking the index of the rows kept
+     */
+    @Override
+    public long trim(final long maxMessages, final long minId) {
+        if ((maxMessages <= 0) && (minId <= 0)) {
+            return 0;
+        }
+        if (handle == null) {
+            handle = writerJdbi.open();
+        }
+        // Auto-commit, on the writer's own connection
+        final String tableName = getDataTableName();
+        if (messageCount < 0) {
+            messageCount = handle.select("SELECT count(*) FROM " + tableName).mapTo(Long.class).one();
+        }
+        long deleted = 0;
+        if (minId > 0) {
+            deleted += handle.execute(String.format("DELETE FROM %s WHERE id < ?", tableName), minId);
+        }
+        if ((maxMessages > 0) && (messageCount - deleted > maxMessages)) {
+            deleted += handle.execute(String.format("DELETE FROM %1$s WHERE id IN " +
+                    "(SELECT id FROM %1$s ORDER BY id LIMIT ?)", tableName), messageCount - deleted - maxMessages);
+        }
+        messageCount -= deleted;
+        return deleted;
+    }
+
+    @Override
+    public Reader reader(final CompiledQuery query, final int fetchSize) {
+        final String selectSQL = selectSQL(query.getSql(), fetchSize);
+        final Object[] params = query.getParams();
+        return (afterId, visitor) -> read(selectSQL, params, fetchSize, afterId, visitor);
+    }
+
+    /**
+     * Runs a select statement of {@link #selectSQL} form, visiting the messages it returns
+     *
+     * @param params parameters of the query, after the id to read after
+     * @return id of the last message read, afterId if there were none
+     */
+    protected long read(final String selectSQL, final Object[] params, final int fetchSize, final long afterId,
+                        final RecordVisitor visitor) {
+        return readJdbi.withHandle(handle ->
+                bind(handle.select(selectSQL, afterId), params)
+                        .setFetchSize(fetchSize)
+                        .setMaxRows(fetchSize)
+                        .map((rs, ctx) -> {
+                            final long id = rs.getLong(1);
+                            final int enc = rs.getInt(3);
+                            visitor.visit(id, readMessage(rs, 2, enc), enc);
+                            return id;
+                        })
+                        .reduce(afterId, (lastId, id) -> id));
+    }
+
+    @Override
+    public long scan(final long afterId, final int limit, final ScanVisitor visitor) {
+        final String scanSQL = String.format("SELECT id, qname, ts, mesg, enc FROM %s WHERE id > ? AND type is NULL " +
+                "ORDER BY id LIMIT %s", tableName, limit);
+        return readJdbi.withHandle(handle ->
+                handle.select(scanSQL, afterId)
+                        .setFetchSize(limit)
+                        .setMaxRows(limit)
+                        .map((rs, ctx) -> {
+                            final long id = rs.getLong(1);
+                            final int enc = rs.getInt(5);
+                            visitor.visit(id, rs.getString(2), rs.getLong(3), readMessage(rs, 4, enc), enc);
+                            return id;
+                        })
+                        .reduce(afterId, (lastId, id) -> id));
+    }
+
+    /**
+     * Binds the parameters of a consumer group query, after the id to read after
+     */
+    static Query bind(final Query select, final Object[] params) {
+        for (int i = 0; i < params.length; i++) {
+            select.bind(i + 1, params[i]);
+        }
+        return select;
+    }
+
+    @Override
+    public Long readCheckpoint(final String name) {
+        return JdbiCheckpoints.read(jdbi, name);
+    }
+
+    @Override
+    public void saveCheckpoint(final String name, final long checkpoint) {
+        JdbiCheckpoints.save(jdbi, name, checkpoint);
+    }
+
+    private void closeStatement(final PreparedStatement statement) {
+        try {
+            if (statement != null) {
+                statement.close();
+            }
+        } catch (Exception ex) {
+            logger.error("Error closing statement", ex);
+        }
+    }
+
+    private void closeHandle() {
+        for (int i = 0; i < chunkInserts.length; i++) {
+            closeStatement(chunkInserts[i]);
+            chunkInserts[i] = null;
+        }
+        closeStatement(rowInsert);
+        rowInsert = null;
+        try {
+            if (handle != null) {
+                handle.close();
+            }
+        } catch (Exception ex) {
+            logger.error("Error closing handle", ex);
+        } finally {
+            handle = null;
+        }
+    }
+
+    /**
+     * Closes the writer's connection
+     */
+    @Override
+    public void close() {
+        closeHandle();
+    }
+
+}
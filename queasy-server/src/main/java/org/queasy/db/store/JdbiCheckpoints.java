@@ -0,0 +1,37 @@
+package org.queasy.db.store;
+
+import org.jdbi.v3.core.Jdbi;
+
+/**
+ * Checkpoints kept in the queasy_checkpoint table
+ *
+ * Created on: 2026-10-18
+ */
+final class JdbiCheckpoints {
+
+    private static final String SELECT_CHECKPOINT_SQL = "SELECT checkpoint FROM queasy_checkpoint WHERE cg_name = ?";
+    private static final String INSERT_CHECKPOINT_SQL = "INSERT INTO queasy_checkpoint (cg_name, checkpoint, ts) " +
+            "VALUES (?, ?, ?)";
+    private static final String UPDATE_CHECKPOINT_SQL = "UPDATE queasy_checkpoint SET checkpoint = ?, ts = ?" +
+            " where cg_name = ? ";
+
+    private JdbiCheckpoints() {
+    }
+
+    static Long read(final Jdbi jdbi, final String name) {
+        return jdbi.withHandle(handle -> handle.select(SELECT_CHECKPOINT_SQL, name)
+                .map((rs, col, ctx) -> rs.getLong(col))
+                .findOne()
+                .orElse(null));
+    }
+
+    static void save(final Jdbi jdbi, final String name, final long checkpoint) {
+        final long ts = System.currentTimeMillis();
+        jdbi.useHandle(handle -> {
+            if (handle.execute(UPDATE_CHECKPOINT_SQL, checkpoint, ts, name) == 0) {
+                handle.execute(INSERT_CHECKPOINT_SQL, name, checkpoint, ts);
+            }
+        });
+    }
+
+}
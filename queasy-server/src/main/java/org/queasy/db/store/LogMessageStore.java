@@ -0,0 +1,89 @@
+package org.queasy.db.store;
+
+import com.google.common.base.Preconditions;
+import org.jdbi.v3.core.Jdbi;
+import org.queasy.db.CompiledQuery;
+import org.queasy.db.MessageBatch;
+import org.queasy.db.MessageStore;
+import org.queasy.db.PayloadCodec;
+import org.queasy.db.log.SegmentedLog;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Messages in a {@link SegmentedLog}, checkpoints and compression dictionaries in the shard's SQLite database. A text
+ * message is stored UTF-8 encoded.
+ * <p>
+ * Consumer group queries can only filter on qname, see {@link CompiledQuery#isExact()}.
+ *
+ * Created on: 2026-10-18
+ */
+public final class LogMessageStore implements MessageStore {
+
+    private final SegmentedLog log;
+    private final Jdbi jdbi;
+
+
+    /**
+     * @param jdbi used to read and write checkpoints and dictionaries
+     */
+    public LogMessageStore(final SegmentedLog log, final Jdbi jdbi) {
+        this.log = log;
+        this.jdbi = jdbi;
+    }
+
+    @Override
+    public long getLastId() {
+        return log.getLastId();
+    }
+
+    @Override
+    public void append(final MessageBatch batch, final PayloadCodec codec) throws Exception {
+        if ((codec != null) && codec.hasPendingDictionaries()) {
+            // Ahead of the batch, a dictionary left over from a batch that didn't make it does no harm
+            jdbi.useTransaction(codec::saveDictionaries);
+        }
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                final Object message = batch.getMessage(i);
+                log.append(batch.getId(i), batch.getTs(), batch.getQName(i), batch.getEncoding(i),
+                        (message instanceof byte[]) ?
+                                (byte[]) message : ((String) message).getBytes(StandardCharsets.UTF_8));
+            }
+            log.commit();
+        } catch (Exception ex) {
+            log.rollback();
+            throw ex;
+        }
+    }
+
+    @Override
+    public long trim(final long maxMessages, final long minId) {
+        return log.trim(maxMessages, minId);
+    }
+
+    @Override
+    public Reader reader(final CompiledQuery query, final int fetchSize) {
+        final byte[][] queueFilter = SegmentedLog.queueFilter(query.isExact() ? query.getQueueNames() : null);
+        Preconditions.checkArgument(queueFilter != null,
+                "Query must be nothing but qname conditions for the LOG storage engine: %s", query);
+        return (afterId, visitor) -> log.read(afterId, fetchSize, queueFilter, (id, enc, message) ->
+                visitor.visit(id, (enc != 0) ? message : new String(message, StandardCharsets.UTF_8), enc));
+    }
+
+    @Override
+    public Long readCheckpoint(final String name) {
+        return JdbiCheckpoints.read(jdbi, name);
+    }
+
+    @Override
+    public void saveCheckpoint(final String name, final long checkpoint) {
+        JdbiCheckpoints.save(jdbi, name, checkpoint);
+    }
+
+    @Override
+    public void close() {
+        log.close();
+    }
+
+}
@@ -0,0 +1,138 @@
+package org.queasy.db.store;
+
+import com.google.common.base.Preconditions;
+import org.queasy.db.CompiledQuery;
+import org.queasy.db.MessageBatch;
+import org.queasy.db.PayloadCodec;
+import org.queasy.db.ScanningMessageStore;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Messages and checkpoints on the heap, lost on restart. Meant for benchmarks and for messages not worth a write to
+ * disk. A batch is made visible to readers all at once by publishing the id of its last message. Messages are stored
+ * as they come, compression dictionaries are not saved; there is no compression with this engine.
+ * <p>
+ * Consumer group queries must be filters, or filter on qname alone, see {@link CompiledQuery#isEvaluable()}.
+ *
+ * Created on: 2026-10-18
+ */
+public final class MemoryMessageStore implements ScanningMessageStore {
+
+    private final ConcurrentSkipListMap<Long, Record> records = new ConcurrentSkipListMap<>();
+    private final Map<String, Long> checkpoints = new ConcurrentHashMap<>();
+    private volatile long lastId;
+    // Accessed by the writer thread alone
+    private long count;
+
+
+    @Override
+    public long getLastId() {
+        return lastId;
+    }
+
+    @Override
+    public void append(final MessageBatch batch, final PayloadCodec codec) {
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                records.put(batch.getId(i), new Record(batch.getQName(i), batch.getMessage(i), batch.getEncoding(i),
+                        batch.getTs()));
+            }
+        } catch (RuntimeException | Error ex) {
+            records.tailMap(lastId, false).clear();
+            throw ex;
+        }
+        count += batch.size();
+        lastId = batch.getLastId();
+    }
+
+    @Override
+    public long trim(final long maxMessages, final long minId) {
+        long deleted = 0;
+        for (Map.Entry<Long, Record> oldest = records.firstEntry(); oldest != null; oldest = records.firstEntry()) {
+            if (((maxMessages <= 0) || (count <= maxMessages)) && ((minId <= 0) || (oldest.getKey() >= minId))) {
+                break;
+            }
+            records.remove(oldest.getKey());
+            count--;
+            deleted++;
+        }
+        return deleted;
+    }
+
+    @Override
+    public Reader reader(final CompiledQuery query, final int fetchSize) {
+        Preconditions.checkArgument(query.isEvaluable(),
+                "Query must be a filter, or nothing but qname conditions, for the MEMORY storage engine: %s", query);
+        return (afterId, visitor) -> {
+            final long committed = lastId;
+            long lastRead = afterId;
+            if (afterId >= committed) {
+                return lastRead;
+            }
+            int read = 0;
+            for (Map.Entry<Long, Record> entry : records.subMap(afterId, false, committed, true).entrySet()) {
+                lastRead = entry.getKey();
+                final Record record = entry.getValue();
+                if (query.matches(record.qName, record.ts, record.enc)) {
+                    visitor.visit(lastRead, record.message, record.enc);
+                    if (++read >= fetchSize) {
+                        break;
+                    }
+                }
+            }
+            return lastRead;
+        };
+    }
+
+    @Override
+    public long scan(final long afterId, final int limit, final ScanVisitor visitor) {
+        final long committed = lastId;
+        long lastRead = afterId;
+        if (afterId >= committed) {
+            return lastRead;
+        }
+        int read = 0;
+        for (Map.Entry<Long, Record> entry : records.subMap(afterId, false, committed, true).entrySet()) {
+            lastRead = entry.getKey();
+            final Record record = entry.getValue();
+            visitor.visit(lastRead, record.qName, record.ts, record.message, record.enc);
+            if (++read >= limit) {
+                break;
+            }
+        }
+        return lastRead;
+    }
+
+    @Override
+    public Long readCheckpoint(final String name) {
+        return checkpoints.get(name);
+    }
+
+    @Override
+    public void saveCheckpoint(final String name, final long checkpoint) {
+        checkpoints.put(name, checkpoint);
+    }
+
+    @Override
+    public void close() {
+    }
+
+
+    private static final class Record {
+        private final String qName;
+        private final Object message;
+        private final int enc;
+        private final long ts;
+
+        private Record(final String qName, final Object message, final int enc, final long ts) {
+            this.qName = qName;
+            this.message = message;
+            this.enc = enc;
+            this.ts = ts;
+        }
+    }
+
+}
@@ -0,0 +1,80 @@
+package org.queasy.db.store;
+
+import java.util.List;
+
+/**
+ * How SQLite runs the select statement of a consumer group or topic on a shard, as reported by
+ * {@link QueryPlanAnalyzer}
+ *
+ * Created on: 2026-10-18
+ */
+public final class QueryPlan {
+
+    /**
+     * Estimated rows scanned per fetch when no message in the sample matches the query
+     */
+    public static final long UNKNOWN_ROWS = -1;
+
+    private final String name;
+    private final int shard;
+    private final String sql;
+    private final List<String> plan;
+    private final boolean scan;
+    private final long estimatedRowsPerFetch;
+
+
+    QueryPlan(final String name, final int shard, final String sql, final List<String> plan, final boolean scan,
+              final long estimatedRowsPerFetch) {
+        this.name = name;
+        this.shard = shard;
+        this.sql = sql;
+        this.plan = plan;
+        this.scan = scan;
+        this.estimatedRowsPerFetch = estimatedRowsPerFetch;
+    }
+
+    /**
+     * @return name of the consumer group or topic
+     */
+    public String getName() {
+        return name;
+    }
+
+    public int getShard() {
+        return shard;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * @return details of the EXPLAIN QUERY PLAN output, one per step
+     */
+    public List<String> getPlan() {
+        return plan;
+    }
+
+    /**
+     * @return true if no condition of the query narrows down the messages read, every message after the checkpoint
+     * is looked at until a fetch is full
+     */
+    public boolean isScan() {
+        return scan;
+    }
+
+    /**
+     * @return estimated messages looked at to fill a fetch, {@link #UNKNOWN_ROWS} if no message in the sample matches
+     * the query, in which case a fetch reads every message after the checkpoint
+     */
+    public long getEstimatedRowsPerFetch() {
+        return estimatedRowsPerFetch;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (shard %d): %s, ~%s rows per fetch, %s", name, shard, scan ? "SCAN" : "SEARCH",
+                (estimatedRowsPerFetch == UNKNOWN_ROWS) ? "all" : estimatedRowsPerFetch, String.join("; ", plan));
+    }
+
+}
@@ -0,0 +1,205 @@
+package org.queasy.db.store;
+
+import org.jdbi.v3.core.Handle;
+import org.queasy.db.CompiledQuery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs EXPLAIN QUERY PLAN on the select statement of every consumer group and topic reading a shard's SQLite store,
+ * and estimates the messages a fetch looks at from the share of the newest messages matching the query.
+ * <p>
+ * A query that is nothing but qname conditions is a range scan of the (qname_id, id) primary key. Any other query
+ * scans the id index from the checkpoint on unless one of its conditions can use an index. Given equality conditions
+ * on enc, ts or a json_extract of mesg, ANDed together, the analyzer can keep a partial index on them and id, of
+ * unread messages alone; indexes it created for queries no longer configured are dropped.
+ *
+ * Created on: 2026-10-18
+ */
+public final class QueryPlanAnalyzer {
+
+    private final SqliteMessageStore store;
+    private final int shard;
+    // Query and fetch size, by consumer group or topic name
+    private final Map<String, CompiledQuery> queries = new LinkedHashMap<>();
+    private final Map<String, Integer> fetchSizes = new LinkedHashMap<>();
+
+    /**
+     * Newest messages the share of messages a query matches is estimated from
+     */
+    static final int SAMPLE_SIZE = 10000;
+
+    private static final Pattern OR_NOT = Pattern.compile("\\b(OR|NOT)\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern QUOTED = Pattern.compile("'[^']*'");
+    private static final Pattern EQUALITY_TERM = Pattern.compile(
+            "(?<![\\w.])(enc|ts|json_extract\\(\\s*mesg\\s*,\\s*'[^']*'\\s*\\))\\s*(=|\\bIN\\b)",
+            Pattern.CASE_INSENSITIVE);
+    // Last parenthesized list of terms of a plan step, as in "SEARCH ... USING INDEX x (qname_id=? AND id>?)"
+    private static final Pattern STEP_TERMS = Pattern.compile("\\(([^()]*)\\)\\s*$");
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryPlanAnalyzer.class);
+
+
+    public QueryPlanAnalyzer(final SqliteMessageStore store, final int shard) {
+        this.store = store;
+        this.shard = shard;
+    }
+
+    /**
+     * Adds the query of a consumer group or topic reading the shard
+     */
+    public void add(final String name, final CompiledQuery query, final int fetchSize) {
+        queries.put(name, query);
+        fetchSizes.put(name, fetchSize);
+    }
+
+    /**
+     * @return plans of the queries added, in the order they were added
+     */
+    public List<QueryPlan> analyze() {
+        final List<QueryPlan> plans = new ArrayList<>(queries.size());
+        for (Map.Entry<String, CompiledQuery> entry : queries.entrySet()) {
+            plans.add(analyze(entry.getKey(), entry.getValue(), fetchSizes.get(entry.getKey())));
+        }
+        return plans;
+    }
+
+    /**
+     * Logs the plans of the queries added, warning of the ones that scan
+     */
+    public List<QueryPlan> report() {
+        final List<QueryPlan> plans = analyze();
+        for (QueryPlan plan : plans) {
+            if (plan.isScan()) {
+                logger.warn("Query of {} is a scan: {}", plan.getName(), plan);
+            } else {
+                logger.info("Query plan of {}", plan);
+            }
+        }
+        return plans;
+    }
+
+    QueryPlan analyze(final String name, final CompiledQuery query, final int fetchSize) {
+        final String sql = store.readerSQL(query, fetchSize);
+        final Object[] params = query.isExact() ? new Object[0] : query.getParams();
+        final List<String> steps = store.getJdbi().withHandle(handle ->
+                JdbcMessageStore.bind(handle.select("EXPLAIN QUERY PLAN " + sql, 0L), params)
+                        .map((rs, ctx) -> rs.getString("detail"))
+                        .list());
+        final boolean scan = isScan(steps);
+        long rowsPerFetch = fetchSize;
+        if (scan) {
+            final int matches = store.getJdbi().withHandle(handle -> JdbcMessageStore.bind(handle.select(
+                    String.format("SELECT count(*) FROM (SELECT * FROM %s ORDER BY id DESC LIMIT ?) " +
+                            "WHERE (%s) AND type is NULL", store.getTableName(), query.getSql()), SAMPLE_SIZE),
+                    query.getParams())
+                    .mapTo(Integer.class)
+                    .one());
+            final long sampled = store.getJdbi().withHandle(handle -> handle.select(
+                    "SELECT count(*) FROM (SELECT id FROM " + store.getDataTableName() + " ORDER BY id DESC LIMIT ?)",
+                    SAMPLE_SIZE)
+                    .mapTo(Long.class)
+                    .one());
+            rowsPerFetch = (matches > 0) ? (fetchSize * sampled + matches - 1) / matches : QueryPlan.UNKNOWN_ROWS;
+        }
+        return new QueryPlan(name, shard, sql, steps, scan, rowsPerFetch);
+    }
+
+    /**
+     * @return true unless a step reading messages narrows them down by a condition other than on id
+     */
+    static boolean isScan(final List<String> steps) {
+        for (String step : steps) {
+            // The lookup of the queue name through the view
+            if (step.matches("(SEARCH|SCAN)( TABLE)? (" + QueueNameDictionary.TABLE_NAME + "|n)\\b.*")) {
+                continue;
+            }
+            if (!step.startsWith("SEARCH")) {
+                continue;
+            }
+            final Matcher terms = STEP_TERMS.matcher(step);
+            if (terms.find()) {
+                for (String term : terms.group(1).split(" AND ")) {
+                    if (!term.trim().startsWith("id") || term.trim().startsWith("id_")) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return expressions of the equality conditions of the query an index can be kept on, null if there are none or
+     * the query can't use one
+     */
+    static List<String> indexTerms(final CompiledQuery query) {
+        final String sql = query.getSql();
+        if (OR_NOT.matcher(QUOTED.matcher(sql).replaceAll("''")).find() || (query.getQueueNames() != null)) {
+            return null;
+        }
+        final Set<String> terms = new LinkedHashSet<>();
+        final Matcher eq = EQUALITY_TERM.matcher(sql);
+        while (eq.find()) {
+            terms.add(eq.group(1).replaceAll("\\s*([(),])\\s*", "$1"));
+        }
+        return terms.isEmpty() ? null : new ArrayList<>(terms);
+    }
+
+    /**
+     * Creates a partial index for every query added with equality conditions to index, if there is no such index
+     * already, and drops the indexes created before that no query needs any longer
+     */
+    public void maintainIndexes() {
+        final String dataTableName = store.getDataTableName();
+        final String prefix = dataTableName + "_q_";
+        final Map<String, String> wanted = new LinkedHashMap<>();
+        for (Map.Entry<String, CompiledQuery> entry : queries.entrySet()) {
+            final List<String> terms = indexTerms(entry.getValue());
+            if (terms == null) {
+                continue;
+            }
+            final String columns = String.join(", ", terms) + ", id";
+            final String indexName = prefix + Integer.toHexString(columns.hashCode());
+            wanted.put(indexName, String.format("CREATE INDEX IF NOT EXISTS %s ON %s (%s) WHERE type IS NULL",
+                    indexName, dataTableName, columns));
+        }
+
+        store.getJdbi().useHandle(handle -> {
+            final List<String> existing = handle.select("SELECT name FROM sqlite_master WHERE type = 'index' " +
+                    "AND tbl_name = ? AND substr(name, 1, ?) = ?", dataTableName, prefix.length(), prefix)
+                    .mapTo(String.class)
+                    .list();
+            for (String indexName : existing) {
+                if (!wanted.containsKey(indexName)) {
+                    logger.info("Dropping index {}, no query needs it", indexName);
+                    handle.execute("DROP INDEX IF EXISTS " + indexName);
+                }
+            }
+            for (Map.Entry<String, String> index : wanted.entrySet()) {
+                if (!existing.contains(index.getKey())) {
+                    logger.info("Creating index for consumer group queries: {}", index.getValue());
+                    createIndex(handle, index.getValue());
+                }
+            }
+        });
+    }
+
+    private static void createIndex(final Handle handle, final String sql) {
+        try {
+            handle.execute(sql);
+        } catch (Exception ex) {
+            logger.error("Error creating index: {}", sql, ex);
+        }
+    }
+
+}
@@ -0,0 +1,110 @@
+package org.queasy.db.store;
+
+import org.jdbi.v3.core.Handle;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Integer ids of queue names, interned in the queasy_qname table of a shard's database and cached in memory. The
+ * writer interns the names new to a batch within the batch's transaction; they are cached once it commits. Readers
+ * look ids up in the cache, shared with the writer. A name they don't know is looked for in the table once at first,
+ * and again only after the writer has committed names new to it, as told by the generation.
+ *
+ * Created on: 2026-10-18
+ */
+final class QueueNameDictionary {
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    // Largest id cached, guarded by this
+    private int lastId;
+    // Bumped every time the writer caches names it has interned
+    private volatile int generation;
+
+    // Names interned by the writer in the transaction going on, accessed by the writer thread alone
+    private final Map<String, Integer> pending = new HashMap<>();
+    private boolean loaded;
+
+    static final String TABLE_NAME = "queasy_qname";
+
+
+    /**
+     * @return id of the queue name, null if it isn't cached
+     */
+    Integer get(final String qName) {
+        return ids.get(qName);
+    }
+
+    /**
+     * Caches the names interned since the last load
+     */
+    synchronized void load(final Handle handle) {
+        handle.select("SELECT qname_id, qname FROM " + TABLE_NAME + " WHERE qname_id > ? ORDER BY qname_id", lastId)
+                .map((rs, ctx) -> {
+                    ids.put(rs.getString(2), rs.getInt(1));
+                    return rs.getInt(1);
+                })
+                .forEach(id -> lastId = id);
+    }
+
+    /**
+     * Interns the queue name, if it's new, within the writer's transaction
+     *
+     * @return id of the queue name
+     */
+    int intern(final Handle handle, final String qName) {
+        if (!loaded) {
+            load(handle);
+            loaded = true;
+        }
+        Integer id = writerId(qName);
+        if (id == null) {
+            synchronized (this) {
+                id = lastId + pending.size() + 1;
+            }
+            handle.execute("INSERT INTO " + TABLE_NAME + " (qname_id, qname) VALUES (?, ?)", id, qName);
+            pending.put(qName, id);
+        }
+        return id;
+    }
+
+    /**
+     * @return id of the queue name as the writer sees it, cached or interned by the transaction going on; null if
+     * it's neither
+     */
+    Integer writerId(final String qName) {
+        final Integer id = ids.get(qName);
+        return (id != null) ? id : pending.get(qName);
+    }
+
+    /**
+     * @return a number changed every time the writer has committed names new to it
+     */
+    int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Caches the names interned by the transaction just committed
+     */
+    synchronized void commit() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<String, Integer> entry : pending.entrySet()) {
+            ids.put(entry.getKey(), entry.getValue());
+            lastId = Math.max(lastId, entry.getValue());
+        }
+        pending.clear();
+        generation++;
+    }
+
+    /**
+     * Forgets the names interned by the transaction just rolled back
+     */
+    void rollback() {
+        pending.clear();
+    }
+
+}
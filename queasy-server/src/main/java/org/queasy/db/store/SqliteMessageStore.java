@@ -0,0 +1,204 @@
+package org.queasy.db.store;
+
+import com.google.common.base.Preconditions;
+import org.jdbi.v3.core.Handle;
+import org.jdbi.v3.core.Jdbi;
+import org.queasy.db.CompiledQuery;
+import org.queasy.db.MessageBatch;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Messages in a table of the shard's SQLite database, schema managed by the Liquibase migrations. A text message is
+ * stored as TEXT, so that queries can look into it, anything else as a BLOB.
+ * <p>
+ * Queue names are interned as integer ids in the queasy_qname table, and messages kept in the queasy_q_data table,
+ * clustered by (qname_id, id); the queasy_q table is a view joining the two. The migrations name the tables, so the
+ * configured table name must be {@link #TABLE_NAME}. A consumer group query that is nothing but qname conditions reads
+ * the data table by queue id, a range scan per queue. Any other query runs on the view. A store reading the messages
+ * another one writes, e.g. over a read-only connection pool, must be created from the writer's, to learn the ids it
+ * interns.
+ *
+ * Created on: 2026-10-18
+ */
+public class SqliteMessageStore extends JdbcMessageStore {
+
+    /**
+     * Table, a view in fact, the migrations create
+     */
+    public static final String TABLE_NAME = "queasy_q";
+
+    private final String dataTableName;
+    private final QueueNameDictionary qNameIds;
+
+    private static final Object[] NO_PARAMS = new Object[0];
+
+    public SqliteMessageStore(final Jdbi jdbi, final String tableName) {
+        this(jdbi, jdbi, jdbi, tableName);
+    }
+
+    /**
+     * @param writerJdbi used by the writer
+     * @param jdbi       used to read and write checkpoints
+     * @param readJdbi   used to fetch messages, may be a read-only connection pool
+     */
+    public SqliteMessageStore(final Jdbi writerJdbi, final Jdbi jdbi, final Jdbi readJdbi, final String tableName) {
+        this(writerJdbi, jdbi, readJdbi, tableName, new QueueNameDictionary());
+    }
+
+    /**
+     * @param writerStore store the messages read are written by, sharing the queue ids it interns
+     * @param jdbi        used to read and write checkpoints
+     * @param readJdbi    used to fetch messages, may be a read-only connection pool
+     */
+    public SqliteMessageStore(final SqliteMessageStore writerStore, final Jdbi jdbi, final Jdbi readJdbi) {
+        this(jdbi, jdbi, readJdbi, writerStore.getTableName(), writerStore.qNameIds);
+    }
+
+    private SqliteMessageStore(final Jdbi writerJdbi, final Jdbi jdbi, final Jdbi readJdbi, final String tableName,
+                               final QueueNameDictionary qNameIds) {
+        super(writerJdbi, jdbi, readJdbi, tableName);
+        Preconditions.checkArgument(TABLE_NAME.equals(tableName),
+                "The SQLite schema holds messages in table %s, writerConfiguration.tableName can't be %s", TABLE_NAME,
+                tableName);
+        this.dataTableName = tableName + "_data";
+        this.qNameIds = qNameIds;
+    }
+
+    @Override
+    protected String getDataTableName() {
+        return dataTableName;
+    }
+
+    @Override
+    protected String getQueueColumn() {
+        return "qname_id";
+    }
+
+    @Override
+    protected void beforeInsert(final Handle handle, final MessageBatch batch) {
+        String lastQName = null;
+        for (int i = 0; i < batch.size(); i++) {
+            final String qName = batch.getQName(i);
+            if (!qName.equals(lastQName)) {
+                qNameIds.intern(handle, qName);
+                lastQName = qName;
+            }
+        }
+    }
+
+    @Override
+    protected void bindQueue(final PreparedStatement insert, final int param, final String qName)
+            throws SQLException {
+        // Interned by beforeInsert, in the cache or pending the commit
+        insert.setInt(param, qNameIds.writerId(qName));
+    }
+
+    @Override
+    protected void afterAppend(final boolean committed) {
+        if (committed) {
+            qNameIds.commit();
+        } else {
+            qNameIds.rollback();
+        }
+    }
+
+    @Override
+    public Reader reader(final CompiledQuery query, final int fetchSize) {
+        if (!query.isExact()) {
+            return super.reader(query, fetchSize);
+        }
+        return new QueueIdReader(query.getQueueNames(), fetchSize);
+    }
+
+    /**
+     * @return the select statement a reader of the query runs, its first parameter being the id to read after, the
+     * parameters of the query, if it isn't read by queue id, following
+     */
+    String readerSQL(final CompiledQuery query, final int fetchSize) {
+        if (!query.isExact()) {
+            return selectSQL(query.getSql(), fetchSize);
+        }
+        getReadJdbi().useHandle(qNameIds::load);
+        return queueSelectSQL(queueIds(query.getQueueNames()), fetchSize);
+    }
+
+    private Set<Integer> queueIds(final Set<String> qNames) {
+        final Set<Integer> ids = new TreeSet<>();
+        for (String qName : qNames) {
+            final Integer id = qNameIds.get(qName);
+            if (id != null) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    private String queueSelectSQL(final Set<Integer> ids, final int fetchSize) {
+        return String.format("SELECT id, mesg, enc FROM %s WHERE qname_id IN (%s) AND id > ? AND type is NULL " +
+                        "ORDER BY id LIMIT %s", dataTableName,
+                ids.stream().map(String::valueOf).collect(Collectors.joining(", ")), fetchSize);
+    }
+
+    @Override
+    protected void bindMessage(final PreparedStatement insert, final int param, final Object message)
+            throws SQLException {
+        if (message instanceof byte[]) {
+            insert.setBytes(param, (byte[]) message);
+        } else {
+            insert.setString(param, (String) message);
+        }
+    }
+
+    @Override
+    protected Object readMessage(final ResultSet rs, final int col, final int enc) throws SQLException {
+        return (enc != 0) ? rs.getBytes(col) : rs.getString(col);
+    }
+
+
+    /**
+     * Reads the queues of a consumer group by their ids. A queue without an id has no messages yet; the dictionary is
+     * reloaded for it only after the writer has interned new names
+     */
+    private final class QueueIdReader implements Reader {
+
+        private final Set<String> qNames;
+        private final int fetchSize;
+        // Ids the select statement was built for, and the statement itself
+        private Set<Integer> selectIds;
+        private String selectSQL;
+        // Generation of the dictionary when it was last reloaded, none to begin with
+        private int loadedGeneration;
+        private boolean loaded;
+
+        private QueueIdReader(final Set<String> qNames, final int fetchSize) {
+            this.qNames = qNames;
+            this.fetchSize = fetchSize;
+        }
+
+        @Override
+        public synchronized long read(final long afterId, final RecordVisitor visitor) {
+            Set<Integer> ids = queueIds(qNames);
+            if ((ids.size() < qNames.size()) && (!loaded || (loadedGeneration != qNameIds.getGeneration()))) {
+                loadedGeneration = qNameIds.getGeneration();
+                loaded = true;
+                getReadJdbi().useHandle(qNameIds::load);
+                ids = queueIds(qNames);
+            }
+            if (ids.isEmpty()) {
+                return afterId;
+            }
+            if (!ids.equals(selectIds)) {
+                selectIds = ids;
+                selectSQL = queueSelectSQL(ids, fetchSize);
+            }
+            return SqliteMessageStore.this.read(selectSQL, NO_PARAMS, fetchSize, afterId, visitor);
+        }
+    }
+
+}
@@ -2,8 +2,13 @@ package org.queasy.core.managed;
 
 import com.google.common.collect.ImmutableList;
 import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.eclipse.jetty.websocket.common.OpCode;
+import org.eclipse.jetty.websocket.common.WebSocketFrame;
+import org.eclipse.jetty.websocket.common.WebSocketRemoteEndpoint;
 import static org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.queasy.core.network.Command;
 import org.queasy.core.network.ConsumerConnection;
@@ -78,6 +83,38 @@ public class ConsumerConnectionTest {
         assertEquals(Collections.emptyList(), cg.getClients());
     }
 
+    @Test
+    public void testGETWritesTheEncodedFrame() {
+        final ConsumerGroup cg = new ConsumerGroup("test_1");
+        final ConsumerConnection conn = Mockito.spy(new ConsumerConnection(cg));
+        final WebSocketRemoteEndpoint remote = Mockito.mock(WebSocketRemoteEndpoint.class);
+        Mockito.doReturn(remote).when(conn).getRemote();
+        Mockito.doReturn(true).when(conn).isConnected();
+        conn.onWebSocketText(Command.DEQUEUE.toString());
+
+        final ArgumentCaptor<WebSocketFrame> frame = ArgumentCaptor.forClass(WebSocketFrame.class);
+        Mockito.verify(remote).uncheckedSendFrame(frame.capture(), Mockito.eq(conn));
+        assertEquals(OpCode.TEXT, frame.getValue().getOpCode());
+        assertTrue(frame.getValue().isFin());
+        assertEquals("test_1", frame.getValue().getPayloadAsUTF8());
+        Mockito.verify(remote, Mockito.never()).sendString(Mockito.anyString(), Mockito.any(WriteCallback.class));
+        Mockito.verify(conn, Mockito.never()).sendMessage(Mockito.anyString());
+    }
+
+    @Test
+    public void testGETWritesAStringOnceTheSessionIsClosed() {
+        final ConsumerGroup cg = new ConsumerGroup("test_1");
+        final ConsumerConnection conn = Mockito.spy(new ConsumerConnection(cg));
+        final WebSocketRemoteEndpoint remote = Mockito.mock(WebSocketRemoteEndpoint.class);
+        Mockito.doReturn(remote).when(conn).getRemote();
+        Mockito.doReturn(false).when(conn).isConnected();
+        conn.onWebSocketText(Command.DEQUEUE.toString());
+
+        Mockito.verify(remote, Mockito.never()).uncheckedSendFrame(Mockito.any(WebSocketFrame.class),
+                Mockito.any(WriteCallback.class));
+        Mockito.verify(remote).sendString(Mockito.eq("test_1"), Mockito.eq(conn));
+    }
+
     @Test
     public void testGETSWithTwoMessages() {
         final ConsumerGroup cg = new ConsumerGroup("test_1", "test_2");
@@ -23,6 +23,7 @@ import org.queasy.core.config.WriterConfiguration;
 import org.queasy.core.network.Command;
 import org.queasy.core.network.ConsumerConnection;
 import org.queasy.core.util.Snowflake;
+import org.queasy.db.Envelope;
 import org.queasy.db.QDbReader;
 import org.queasy.db.QDbWriter;
 
@@ -48,7 +49,7 @@ public class ConsumerGroupTests {
     private QDbWriter qDbWriter;
     private QDbReader qDbReader;
     private QueueWriter queueWriter;
-    private Cache<Long, String> messageCache;
+    private Cache<Long, Envelope> messageCache;
     private ConsumerGroup cg;
 
     private static Snowflake idGenerator;
@@ -171,7 +172,7 @@ public class ConsumerGroupTests {
         Mockito.verify(conn).sendMessage(QDbReader.buildMessage(id1 ,"test_1"));
         assertEquals(qDbWriter.getLastWrittenMessageId(), qDbReader.getLastReadMessageId());
         assertEquals(Collections.emptyList(), cg.getClients());
-        assertEquals(ImmutableList.of(QDbReader.buildMessage(id2 ,"test_2")), cg.getMessages());
+        assertEquals(ImmutableList.of(Envelope.of(id2, "test_2")), cg.getMessages());
         assertEquals(1L, qDbReader.getReadBatchId());
         queueWriter.stop();
     }
@@ -360,7 +361,7 @@ public class ConsumerGroupTests {
         conn.onWebSocketText(Command.DEQUEUE.toString());
         cg.run();
         assertEquals(1L, qDbReader.getReadBatchId());
-        assertEquals(ImmutableList.of(QDbReader.buildMessage(qDbWriter.getLastWrittenMessageId(), "test_2"))
+        assertEquals(ImmutableList.of(Envelope.of(qDbWriter.getLastWrittenMessageId(), "test_2"))
                 , cg.getMessages());
 
         conn.onWebSocketText(Command.DEQUEUE.toString());
@@ -394,7 +395,7 @@ public class ConsumerGroupTests {
 
         cg.run();
         Mockito.verify(conn).sendMessage(QDbReader.buildMessage(id1,"test_1"));
-        assertEquals(ImmutableList.of(QDbReader.buildMessage(id2,"test_2")), cg.getMessages());
+        assertEquals(ImmutableList.of(Envelope.of(id2, "test_2")), cg.getMessages());
         assertEquals(1L, qDbReader.getReadBatchId());
         assertEquals(qDbWriter.getLastWrittenMessageId(), qDbReader.getLastReadMessageId());
 
@@ -424,7 +425,7 @@ public class ConsumerGroupTests {
         long id = qDbWriter.getLastWrittenMessageId();
 
         cg.run();
-        assertEquals(ImmutableList.of(QDbReader.buildMessage(id ,"test_2")), cg.getMessages());
+        assertEquals(ImmutableList.of(Envelope.of(id, "test_2")), cg.getMessages());
         assertEquals(1L, qDbReader.getReadBatchId());
         assertEquals(qDbWriter.getLastWrittenMessageId(), qDbReader.getLastReadMessageId());
 
@@ -0,0 +1,81 @@
+package org.queasy.core.managed;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableSet;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.queasy.core.config.WriterConfiguration;
+import org.queasy.core.network.Command;
+import org.queasy.core.network.ConsumerConnection;
+import org.queasy.core.util.Snowflake;
+import org.queasy.db.MessageReader;
+import org.queasy.db.QDbWriter;
+import org.queasy.db.store.MemoryMessageStore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Created on: 2026-10-18
+ */
+public class DispatchSignalTest {
+
+    @Test
+    public void testSignalsCoalesceTillTheRunStarts() {
+        final List<Runnable> queued = new ArrayList<>();
+        final AtomicInteger runs = new AtomicInteger();
+        final DispatchSignal signal = new DispatchSignal(runs::incrementAndGet, queued::add);
+
+        signal.signal();
+        signal.signal();
+        assertEquals(1, queued.size());
+        queued.get(0).run();
+        assertEquals(1, runs.get());
+
+        signal.signal();
+        assertEquals(2, queued.size());
+    }
+
+    @Test
+    public void testCommitsSignalReadersOfTheirQueues() throws Exception {
+        final List<String> signalled = new ArrayList<>();
+        final CommitSignals commitSignals = new CommitSignals();
+        commitSignals.add(ImmutableSet.of("q1"), new DispatchSignal(() -> { }, task -> signalled.add("q1")));
+        commitSignals.add(ImmutableSet.of("q2", "q3"), new DispatchSignal(() -> { }, task -> signalled.add("q2|q3")));
+        commitSignals.add(null, new DispatchSignal(() -> { }, task -> signalled.add("any")));
+
+        final QDbWriter qDbWriter = new QDbWriter(new Snowflake(0), new MemoryMessageStore(),
+                new WriterConfiguration(), new MetricRegistry(), null, null);
+        qDbWriter.addBatchListener(commitSignals);
+        qDbWriter.batchWrite("q2", "m1", false, null);
+        qDbWriter.batchWrite("q3", "m2", false, null);
+        qDbWriter.batchWrite("q4", "m3", true, null);
+        qDbWriter.finish();
+
+        assertEquals(ImmutableSet.of("q2|q3", "any"), ImmutableSet.copyOf(signalled));
+        assertEquals(2, signalled.size());
+    }
+
+    @Test
+    public void testWaitingClientSignalsConsumerGroup() {
+        final MessageReader reader = Mockito.mock(MessageReader.class);
+        Mockito.when(reader.getFetchSize()).thenReturn(2);
+        Mockito.when(reader.getTimeout()).thenReturn(60000L);
+        final ConsumerGroup cg = new ConsumerGroup(reader);
+        final AtomicInteger signals = new AtomicInteger();
+        cg.setWaitListener(signals::incrementAndGet);
+
+        final ConsumerConnection conn = new ConsumerConnection(cg);
+        conn.onWebSocketText(Command.DEQUEUE.toString());
+        assertEquals(1, signals.get());
+
+        // Clients put back to wait by the group itself don't signal it again
+        cg.run();
+        assertEquals(1, signals.get());
+        Mockito.verify(reader).loadNextBatchOfMessages(Mockito.any());
+    }
+
+}
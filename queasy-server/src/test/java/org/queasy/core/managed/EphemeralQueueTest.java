@@ -0,0 +1,136 @@
+package org.queasy.core.managed;
+
+import com.google.common.collect.ImmutableMap;
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.queasy.core.config.ConsumerGroupConfiguration;
+import org.queasy.core.config.WriterConfiguration;
+import org.queasy.core.network.Command;
+import org.queasy.core.network.ConsumerConnection;
+import org.queasy.core.util.Snowflake;
+import org.queasy.db.CommitListener;
+import org.queasy.db.Envelope;
+import org.queasy.db.QDbWriter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Created on: 2026-10-18
+ */
+public class EphemeralQueueTest {
+
+    private final Snowflake idGenerator = new Snowflake(0);
+
+    private static ConsumerGroupConfiguration cgConfig(final int fetchBatchSize) {
+        final ConsumerGroupConfiguration cgConfig = new ConsumerGroupConfiguration();
+        cgConfig.setFetchBatchSize(fetchBatchSize);
+        return cgConfig;
+    }
+
+    private static List<String> texts(final List<Envelope> messages) {
+        return messages.stream()
+                .map(message -> message.getText().replaceAll("\\{\"id\": \\d+, \"message\": (.*)}", "$1"))
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void testReaderReadsQueuesInTurnFromTheNewest() {
+        final EphemeralQueue q1 = new EphemeralQueue("q1", 16, idGenerator);
+        final EphemeralQueue q2 = new EphemeralQueue("q2", 16, idGenerator);
+        q1.publish("old");
+        final EphemeralReader reader = new EphemeralReader(Arrays.asList(q1, q2), cgConfig(2));
+        assertEquals(q1.getLastId(), reader.readLastCheckpoint());
+        assertFalse(reader.hasMoreMessages());
+
+        q1.publish(new Object[]{"q1", "a1", "q2", "b1", "q1", "a2", "q1", "a3"});
+        q2.publish("b2");
+        assertTrue(reader.hasMoreMessages());
+
+        final List<Envelope> messages = new ArrayList<>();
+        assertTrue(reader.loadNextBatchOfMessages(messages));
+        assertEquals(Arrays.asList("a1", "a2"), texts(messages));
+        assertEquals(1, reader.getReadBatchId());
+
+        messages.clear();
+        assertTrue(reader.loadNextBatchOfMessages(messages));
+        assertEquals(Arrays.asList("b2"), texts(messages));
+
+        messages.clear();
+        assertTrue(reader.loadNextBatchOfMessages(messages));
+        assertEquals(Arrays.asList("a3"), texts(messages));
+        assertFalse(reader.hasMoreMessages());
+        assertFalse(reader.loadNextBatchOfMessages(messages));
+        assertEquals(3, reader.getReadBatchId());
+        assertEquals(0, reader.getDropped());
+    }
+
+    @Test
+    public void testSlowReaderSkipsOverwrittenMessages() {
+        final EphemeralQueue queue = new EphemeralQueue("q1", 4, idGenerator);
+        final EphemeralReader reader = new EphemeralReader(Arrays.asList(queue), cgConfig(10));
+        reader.readLastCheckpoint();
+        for (int i = 0; i < 10; i++) {
+            queue.publish("m" + i);
+        }
+        queue.publish(new byte[]{1, 2});
+
+        final List<Envelope> messages = new ArrayList<>();
+        assertTrue(reader.loadNextBatchOfMessages(messages));
+        assertEquals(4, messages.size());
+        assertEquals(Arrays.asList("m7", "m8", "m9"), texts(messages.subList(0, 3)));
+        assertTrue(messages.get(3).isBinary());
+        assertEquals(Envelope.of(queue.getLastId(), new byte[]{1, 2}), messages.get(3));
+        assertEquals(7, reader.getDropped());
+    }
+
+    @Test
+    public void testRouterBypassesWritersForEphemeralQueues() throws Exception {
+        final QDbWriter qDbWriter = Mockito.mock(QDbWriter.class);
+        final QueueWriter queueWriter = new QueueWriter(new WriterConfiguration(), qDbWriter);
+        queueWriter.start();
+        final EphemeralQueue queue = new EphemeralQueue("telemetry", 16, idGenerator);
+        final List<Long> signals = new ArrayList<>();
+        queue.addListener(() -> signals.add(queue.getPublished()));
+        final ShardRouter router = new ShardRouter(ImmutableMap.of("telemetry", queue), queueWriter);
+
+        final List<Boolean> outcome = new ArrayList<>();
+        assertTrue(router.publish("telemetry", "t1", outcome::add, null, 0));
+        assertEquals(Arrays.asList(true), outcome);
+        assertTrue(router.publish(new Object[]{"telemetry", "t2", "durable", "d1", "telemetry", "t3"}, null));
+        Thread.sleep(100);
+        queueWriter.stop();
+        queueWriter.join();
+
+        assertEquals(Arrays.asList(1L, 3L), signals);
+        Mockito.verify(qDbWriter).batchWrite(Mockito.eq("durable"), Mockito.eq("d1"), Mockito.eq(true),
+                (CommitListener) Mockito.isNull());
+        Mockito.verify(qDbWriter, Mockito.never()).batchWrite(Mockito.eq("telemetry"), Mockito.any(),
+                Mockito.anyBoolean(), Mockito.any(CommitListener.class));
+    }
+
+    @Test
+    public void testWaitingClientIsServedOnPublish() {
+        final EphemeralQueue queue = new EphemeralQueue("q1", 16, idGenerator);
+        final ConsumerGroup cg = new ConsumerGroup(new EphemeralReader(Arrays.asList(queue), cgConfig(4)));
+        queue.addListener(cg);
+        cg.start();
+
+        final ConsumerConnection conn = Mockito.spy(new ConsumerConnection(cg));
+        Mockito.doReturn(Mockito.mock(RemoteEndpoint.class)).when(conn).getRemote();
+        conn.onWebSocketText(Command.DEQUEUE.toString());
+        Mockito.verify(conn, Mockito.never()).sendMessage(Mockito.anyString());
+
+        queue.publish("\"hello\"");
+        Mockito.verify(conn).sendMessage(Envelope.of(queue.getLastId(), "\"hello\"").getText());
+        cg.stop();
+    }
+
+}
@@ -1,6 +1,7 @@
 package org.queasy.core.managed;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import io.dropwizard.testing.ResourceHelpers;
 import io.dropwizard.testing.junit5.DropwizardAppExtension;
 import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
@@ -12,13 +13,20 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.queasy.ServerConfiguration;
 import org.queasy.core.NoRunTestApplication;
+import org.queasy.core.config.ConsumerGroupConfiguration;
 import org.queasy.core.config.WriterConfiguration;
 import org.queasy.core.util.Snowflake;
+import org.queasy.db.CommitListener;
+import org.queasy.db.Envelope;
+import org.queasy.db.QDbReader;
 import org.queasy.db.QDbWriter;
 
 import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -117,6 +125,128 @@ public class QueueWriterTest {
         assertEquals(ImmutableList.of("m1","m2","m3","m4","m5","m6"), makeMesgsList(results));
     }
 
+    @Test
+    public void testBatchIsWrittenInOneTransaction() throws Exception {
+        qw.start();
+        qw.publish(new String[]{"q1", "m1", "q2", "m2", "q1", "m3", "q1", "m4", "q2", "m5", "q2", "m6"});
+        Thread.sleep(1000);
+        qw.stop();
+        qw.join();
+
+        List<Map<String, Object>> results = jdbi.withHandle(handle -> handle
+                .createQuery("select id, qname, mesg, ts from queasy_q order by id")
+                .mapToMap()
+                .list());
+
+        assertEquals(ImmutableList.of("m1","m2","m3","m4","m5","m6"), makeMesgsList(results));
+        // insertBatchSize is 4, but the whole batch shares a single transaction (and batch timestamp)
+        assertEquals(1, results.stream().map(row -> row.get("ts")).distinct().count());
+    }
+
+    @Test
+    public void testMultiRowInsertsWithRemainder() throws Exception {
+        final WriterConfiguration writerConfig = new WriterConfiguration();
+        writerConfig.setInsertBatchSize(4);
+        writerConfig.setTableName("queasy_q");
+        writerConfig.setRingBufferSize(256);
+        qw = new QueueWriter(writerConfig, new QDbWriter(idGenerator, jdbi, writerConfig));
+
+        // 128 + 32 + 8 rows in multi-row inserts, last 7 one by one
+        final List<String> expected = new ArrayList<>();
+        final String[] batch = new String[2 * 175];
+        for (int i = 0; i < 175; i++) {
+            batch[2 * i] = (i % 2 == 0) ? "q1" : "q2";
+            batch[2 * i + 1] = "m" + i;
+            expected.add(batch[2 * i + 1]);
+        }
+        qw.start();
+        qw.publish(batch);
+        qw.publish(new String[]{"q1", "last"});
+        expected.add("last");
+        Thread.sleep(1000);
+        qw.stop();
+        qw.join();
+
+        List<Map<String, Object>> results = jdbi.withHandle(handle -> handle
+                .createQuery("select id, qname, mesg from queasy_q order by id")
+                .mapToMap()
+                .list());
+
+        assertEquals(expected, makeMesgsList(results));
+        assertEquals("q2", results.get(173).get("qname"));
+    }
+
+    @Test
+    public void testBinaryMessagesAreStoredAsBlobs() throws Exception {
+        jdbi.useHandle(handle -> handle.execute("delete from queasy_checkpoint where cg_name = ?", "binaryCG"));
+        final ConsumerGroupConfiguration cgConfig = new ConsumerGroupConfiguration();
+        cgConfig.setQuery("qname = 'q1'");
+        cgConfig.setFetchBatchSize(10);
+        final WriterConfiguration writerConfig = new WriterConfiguration();
+        writerConfig.setTableName("queasy_q");
+        final QDbReader qDbReader = new QDbReader(qDbWriter, jdbi, writerConfig, "binaryCG", cgConfig, null);
+        qDbReader.readLastCheckpoint();
+
+        final byte[] payload = {0, 'b', 'i', 'n', (byte) 0xff};
+        qw.start();
+        qw.publish(new Object[]{"q1", "\"text\"", "q1", payload});
+        Thread.sleep(1000);
+        qw.stop();
+        qw.join();
+
+        List<Map<String, Object>> results = jdbi.withHandle(handle -> handle
+                .createQuery("select typeof(mesg) as type, enc from queasy_q order by id")
+                .mapToMap()
+                .list());
+        assertEquals("text", results.get(0).get("type"));
+        assertEquals("blob", results.get(1).get("type"));
+        assertEquals(QDbWriter.ENC_BINARY, results.get(1).get("enc"));
+
+        final List<Envelope> messages = new ArrayList<>();
+        qDbReader.loadNextBatchOfMessages(messages);
+        final long id = qDbWriter.getLastWrittenMessageId();
+        assertEquals(ImmutableList.of(Envelope.of(id - 1, "\"text\""), Envelope.of(id, payload)), messages);
+        final ByteBuffer frame = ByteBuffer.wrap(messages.get(1).getBinary());
+        assertEquals(id, frame.getLong());
+        assertEquals(ByteBuffer.wrap(payload), frame);
+    }
+
+    @Test
+    public void testUnitThatFailsIsDroppedAlone() throws Exception {
+        final WriterConfiguration writerConfig = new WriterConfiguration();
+        writerConfig.setInsertBatchSize(16);
+        writerConfig.setTableName("queasy_q");
+        writerConfig.setRingBufferSize(16);
+        qw = new QueueWriter(writerConfig, new QDbWriter(idGenerator, jdbi, writerConfig) {
+            @Override
+            public void batchWrite(final String qName, final Object message, final boolean endOfUnit,
+                                   final CommitListener listener) throws Exception {
+                if ("bad".equals(message)) {
+                    throw new IllegalStateException("Can not encode " + message);
+                }
+                super.batchWrite(qName, message, endOfUnit, listener);
+            }
+        });
+
+        final List<String> outcomes = new CopyOnWriteArrayList<>();
+        qw.start();
+        qw.publish(new String[]{"q1", "m1"}, committed -> outcomes.add("m1:" + committed));
+        qw.publish(new String[]{"q1", "m2", "q1", "bad", "q1", "m3"}, committed -> outcomes.add("m2-m3:" + committed));
+        qw.publish(new String[]{"q1", "m4"}, committed -> outcomes.add("m4:" + committed));
+        Thread.sleep(1000);
+        qw.stop();
+        qw.join();
+
+        List<Map<String, Object>> results = jdbi.withHandle(handle -> handle
+                .createQuery("select id, qname, mesg from queasy_q order by id")
+                .mapToMap()
+                .list());
+        assertEquals(ImmutableList.of("m1", "m4"), makeMesgsList(results));
+        // m1 is committed before or after m2-m3 fails, depending on whether the writer drained it alone
+        assertEquals(3, outcomes.size());
+        assertEquals(ImmutableSet.of("m1:true", "m2-m3:false", "m4:true"), ImmutableSet.copyOf(outcomes));
+    }
+
     @AfterAll
     public static void destroy() {
         File file = new File(app.getConfiguration().getDatabase().getUrl().split(":")[2]);
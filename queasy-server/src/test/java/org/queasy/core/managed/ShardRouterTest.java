@@ -0,0 +1,125 @@
+package org.queasy.core.managed;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.queasy.core.config.WriterConfiguration;
+import org.queasy.db.CommitListener;
+import org.queasy.db.QDbWriter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Created on: 2026-10-18
+ */
+public class ShardRouterTest {
+
+    @Test
+    public void testQueuesAreSpreadAcrossShards() {
+        final int[] counts = new int[4];
+        for (int i = 0; i < 1000; i++) {
+            final int shard = ShardRouter.shardFor("queue-" + i, counts.length);
+            assertEquals(shard, ShardRouter.shardFor("queue-" + i, counts.length));
+            counts[shard]++;
+        }
+        for (int count : counts) {
+            assertTrue(count > 150);
+        }
+    }
+
+    @Test
+    public void testUnitSpanningShardsIsSplit() throws Exception {
+        final List<CommitListener> listeners = new ArrayList<>();
+        final QDbWriter[] qDbWriters = new QDbWriter[2];
+        final QueueWriter[] queueWriters = new QueueWriter[2];
+        for (int i = 0; i < 2; i++) {
+            qDbWriters[i] = Mockito.mock(QDbWriter.class);
+            Mockito.doAnswer(invocation -> {
+                final CommitListener listener = (CommitListener) invocation.getArguments()[3];
+                if (listener != null) {
+                    synchronized (listeners) {
+                        listeners.add(listener);
+                    }
+                }
+                return null;
+            }).when(qDbWriters[i]).batchWrite(Mockito.anyString(), Mockito.anyString(), Mockito.anyBoolean(),
+                    Mockito.any(CommitListener.class));
+            queueWriters[i] = new QueueWriter(new WriterConfiguration(), qDbWriters[i]);
+            queueWriters[i].start();
+        }
+
+        String q0 = null;
+        String q1 = null;
+        for (int i = 0; q0 == null || q1 == null; i++) {
+            if (ShardRouter.shardFor("q" + i, 2) == 0) {
+                q0 = (q0 == null) ? "q" + i : q0;
+            } else {
+                q1 = (q1 == null) ? "q" + i : q1;
+            }
+        }
+        assertNotEquals(ShardRouter.shardFor(q0, 2), ShardRouter.shardFor(q1, 2));
+
+        final ShardRouter router = new ShardRouter(queueWriters);
+        final List<Boolean> outcome = new ArrayList<>();
+        assertTrue(router.publish(new String[]{q0, "m1", q1, "m2", q0, "m3"}, outcome::add));
+        Thread.sleep(100);
+
+        for (QueueWriter queueWriter : queueWriters) {
+            queueWriter.stop();
+            queueWriter.join();
+        }
+        Mockito.verify(qDbWriters[0]).batchWrite(Mockito.eq(q0), Mockito.eq("m1"), Mockito.eq(false),
+                (CommitListener) Mockito.isNull());
+        Mockito.verify(qDbWriters[0]).batchWrite(Mockito.eq(q0), Mockito.eq("m3"), Mockito.eq(true),
+                Mockito.any(CommitListener.class));
+        Mockito.verify(qDbWriters[1]).batchWrite(Mockito.eq(q1), Mockito.eq("m2"), Mockito.eq(true),
+                Mockito.any(CommitListener.class));
+
+        // Listener hears once, after both parts are committed
+        assertEquals(2, listeners.size());
+        listeners.get(0).onCommit(true);
+        assertTrue(outcome.isEmpty());
+        listeners.get(1).onCommit(true);
+        assertEquals(1, outcome.size());
+        assertTrue(outcome.get(0));
+    }
+
+    @Test
+    public void testUnitSpanningShardsIsPublishedWholeOrNotAtAll() {
+        final QueueWriter[] queueWriters = new QueueWriter[2];
+        for (int i = 0; i < 2; i++) {
+            queueWriters[i] = new QueueWriter(new WriterConfiguration(), Mockito.mock(QDbWriter.class));
+        }
+        final String q0 = queueOnShard(0, 2);
+        final String q1 = queueOnShard(1, 2);
+        final int capacity = queueWriters[0].getFreeSlots();
+        final ShardRouter router = new ShardRouter(queueWriters);
+
+        // No room left in the second shard, the first one is left as it was
+        final int taken = queueWriters[1].reserve(Integer.MAX_VALUE);
+        assertEquals(2, queueWriters[0].reserve(2));
+        assertFalse(router.publish(new String[]{q0, "m1", q1, "m2", q0, "m3"}, null, queueWriters[0], 2));
+        assertEquals(capacity, queueWriters[0].getFreeSlots());
+        assertEquals(0, queueWriters[1].getFreeSlots());
+
+        queueWriters[1].unreserve(taken);
+        assertEquals(2, queueWriters[0].reserve(2));
+        assertTrue(router.publish(new String[]{q0, "m1", q1, "m2", q0, "m3"}, null, queueWriters[0], 2));
+        assertEquals(capacity - 2, queueWriters[0].getFreeSlots());
+        assertEquals(capacity - 1, queueWriters[1].getFreeSlots());
+    }
+
+    private static String queueOnShard(final int shard, final int shardCount) {
+        for (int i = 0; ; i++) {
+            if (ShardRouter.shardFor("q" + i, shardCount) == shard) {
+                return "q" + i;
+            }
+        }
+    }
+
+}
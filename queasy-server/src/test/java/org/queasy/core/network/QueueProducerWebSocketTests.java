@@ -8,16 +8,24 @@ import org.eclipse.jetty.websocket.servlet.ServletUpgradeRequest;
 import org.eclipse.jetty.websocket.servlet.ServletUpgradeResponse;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
 import org.mockito.Mockito;
 import org.queasy.core.config.WriterConfiguration;
 import org.queasy.core.managed.QueueWriter;
+import org.queasy.core.managed.ShardRouter;
+import org.queasy.db.CommitListener;
+import org.queasy.db.QDbWriter;
 
 import java.io.IOException;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.queasy.core.bundles.QueasyServerBundle.PUBLISH_PATH;
 import static org.queasy.core.bundles.QueasyServerBundle.DEQUEUE_PATH;
 
@@ -285,14 +293,14 @@ public class QueueProducerWebSocketTests {
     }
 
     @Test
-    public void testBusy() throws Exception {
+    public void testFullRingIsRejectedWithoutBlocking() throws Exception {
         final Session session = Mockito.mock(Session.class);
         final RemoteEndpoint remote = Mockito.mock(RemoteEndpoint.class);
         Mockito.doReturn(remote).when(session).getRemote();
 
         final WriterConfiguration wc = new WriterConfiguration();
         wc.setRingBufferSize(1);
-        wc.setWriteTimeout(Duration.seconds(1));
+        wc.setWriteTimeout(Duration.seconds(10));
         final QueueWriter qw = new QueueWriter(wc, null);
         final ProducerConnection conn = new ProducerConnection(qw, "test");
         conn.onWebSocketConnect(session);
@@ -300,27 +308,264 @@ public class QueueProducerWebSocketTests {
         conn.onWebSocketText("test1");
         Mockito.verify(remote).sendString(":OK", conn);
 
-        final Thread t = new Thread(() -> {
-            try {
-                conn.onWebSocketText("test2");
-                Mockito.verify(remote).sendString(":TIMEOUT", conn);
-            } catch (Exception ex) {
-                throw new RuntimeException(ex);
-            }
-        });
-        t.start();
-        Thread.sleep(100);
-
-        conn.onWebSocketText("test3");
-        Mockito.verify(remote).sendString(":BUSY", conn);
+        final long start = System.currentTimeMillis();
+        conn.onWebSocketText("test2");
+        Mockito.verify(remote).sendString(":TIMEOUT", conn);
+        assertTrue(System.currentTimeMillis() - start < 1000);
 
-        t.join();
         qw.drainQueue();
-        conn.onWebSocketText("test4");
+        conn.onWebSocketText("test3");
         Mockito.verify(remote, Mockito.times(2)).sendString(":OK", conn);
 
-        conn.onWebSocketText("test5");
+        conn.onWebSocketText("test4");
         Mockito.verify(remote, Mockito.times(2)).sendString(":TIMEOUT", conn);
     }
 
+    @Test
+    public void testTaggedMessagesAreAckedBySeq() throws IOException {
+        final Session session = Mockito.mock(Session.class);
+        final RemoteEndpoint remote = Mockito.mock(RemoteEndpoint.class);
+        Mockito.doReturn(remote).when(session).getRemote();
+
+        final WriterConfiguration wc = new WriterConfiguration();
+        wc.setRingBufferSize(4);
+        wc.setWriteTimeout(Duration.milliseconds(10));
+        final QueueWriter qw = new QueueWriter(wc, null);
+        final ProducerConnection conn = new ProducerConnection(qw, "test", 4);
+        conn.onWebSocketConnect(session);
+
+        conn.onWebSocketText(Command.PUBLISH.format(7, "test1"));
+        Mockito.verify(remote).sendString(":OK 7", conn);
+        conn.onWebSocketText(Command.PUBLISH.format(8, "test2\nsecond line"));
+        Mockito.verify(remote).sendString(":OK 8", conn);
+        conn.onWebSocketText("#PUBLISH x\ntest3");
+        Mockito.verify(remote).sendString(":ERROR", conn);
+    }
+
+    @Test
+    public void testTaggedMessageOnFullRingIsRejectedWithoutBlocking() throws Exception {
+        final Session session = Mockito.mock(Session.class);
+        final RemoteEndpoint remote = Mockito.mock(RemoteEndpoint.class);
+        Mockito.doReturn(remote).when(session).getRemote();
+
+        final WriterConfiguration wc = new WriterConfiguration();
+        wc.setRingBufferSize(1);
+        wc.setWriteTimeout(Duration.seconds(10));
+        final QueueWriter qw = new QueueWriter(wc, null);
+        final ProducerConnection conn = new ProducerConnection(qw, "test", 2);
+        conn.onWebSocketConnect(session);
+
+        conn.onWebSocketText(Command.PUBLISH.format(1, "test1"));
+        Mockito.verify(remote).sendString(":OK 1", conn);
+
+        final long start = System.currentTimeMillis();
+        conn.onWebSocketText(Command.PUBLISH.format(2, "test2"));
+        conn.onWebSocketText(Command.PUBLISH.format(3, "test3"));
+        Mockito.verify(remote).sendString(":TIMEOUT 2", conn);
+        Mockito.verify(remote).sendString(":TIMEOUT 3", conn);
+        assertTrue(System.currentTimeMillis() - start < 1000);
+
+        // Rejected messages do not count against the window
+        qw.drainQueue();
+        conn.onWebSocketText(Command.PUBLISH.format(4, "test4"));
+        Mockito.verify(remote).sendString(":OK 4", conn);
+    }
+
+    @Test
+    public void testSeqIsParsedOutOfAnyWellFormedHeader() throws IOException {
+        final Session session = Mockito.mock(Session.class);
+        final RemoteEndpoint remote = Mockito.mock(RemoteEndpoint.class);
+        Mockito.doReturn(remote).when(session).getRemote();
+
+        final QueueWriter qw = new QueueWriter(new WriterConfiguration(), null);
+        final ProducerConnection conn = new ProducerConnection(qw, "test", 8);
+        conn.onWebSocketConnect(session);
+
+        conn.onWebSocketText("#PUBLISH  12 \ntest1");
+        Mockito.verify(remote).sendString(":OK 12", conn);
+        conn.onWebSocketText("#PUBLISH 13 ignored\ntest2");
+        Mockito.verify(remote).sendString(":OK 13", conn);
+        conn.onWebSocketText("#PUBLISH +14\ntest3");
+        Mockito.verify(remote).sendString(":OK 14", conn);
+        conn.onWebSocketText("#PUBLISH 1234567890123456789\ntest4");
+        Mockito.verify(remote).sendString(":OK 1234567890123456789", conn);
+
+        conn.onWebSocketText("#PUBLISH 15x\ntest5");
+        conn.onWebSocketText("#PUBLISHED 16\ntest6");
+        conn.onWebSocketText("#PUBLISH 17");
+        Mockito.verify(remote, Mockito.times(3)).sendString(":ERROR", conn);
+    }
+
+    @Test
+    public void testCreditsAreGrantedFromFreeSlots() throws Exception {
+        final Session session = Mockito.mock(Session.class);
+        final RemoteEndpoint remote = Mockito.mock(RemoteEndpoint.class);
+        Mockito.doReturn(remote).when(session).getRemote();
+
+        final WriterConfiguration wc = new WriterConfiguration();
+        wc.setRingBufferSize(8);
+        final QueueWriter qw = new QueueWriter(wc, null);
+        final ProducerConnection conn = new ProducerConnection(new ShardRouter(qw), "test", 8, false, 4);
+        conn.onWebSocketConnect(session);
+
+        conn.onWebSocketText(Command.CREDIT.toString());
+        Mockito.verify(remote).sendString(":CREDIT 4", conn);
+        assertEquals(4, qw.getFreeSlots());
+
+        // Topped up once half the credits are used up
+        conn.onWebSocketText(Command.PUBLISH.format(1, "test1"));
+        Mockito.verify(remote, Mockito.never()).sendString(":CREDIT 2", conn);
+        conn.onWebSocketText(new BatchFrame().add("test2").add("test3").format(2));
+        Mockito.verify(remote).sendString(":OK 1", conn);
+        Mockito.verify(remote).sendString(":OK 2", conn);
+        Mockito.verify(remote).sendString(":CREDIT 3", conn);
+        assertEquals(1, qw.getFreeSlots());
+
+        // Only as many credits as there are free slots
+        conn.onWebSocketText(new BatchFrame().add("test4").add("test5").add("test6").add("test7").format(3));
+        Mockito.verify(remote).sendString(":OK 3", conn);
+        Mockito.verify(remote).sendString(":CREDIT 1", conn);
+        assertEquals(0, qw.getFreeSlots());
+
+        conn.onWebSocketClose(200, "");
+        assertEquals(1, qw.getFreeSlots());
+    }
+
+    @Test
+    public void testCreditsAreGrantedOnceTheWriterFreesUpSlots() throws Exception {
+        final Session session = Mockito.mock(Session.class);
+        final RemoteEndpoint remote = Mockito.mock(RemoteEndpoint.class);
+        Mockito.doReturn(remote).when(session).getRemote();
+
+        final WriterConfiguration wc = new WriterConfiguration();
+        wc.setRingBufferSize(2);
+        final QueueWriter qw = new QueueWriter(wc, null);
+        final ProducerConnection conn = new ProducerConnection(new ShardRouter(qw), "test", 4, false, 4);
+        conn.onWebSocketConnect(session);
+        final ProducerConnection other = new ProducerConnection(qw, "test");
+        other.onWebSocketConnect(session);
+
+        conn.onWebSocketText(Command.CREDIT.toString());
+        Mockito.verify(remote).sendString(":CREDIT 2", conn);
+
+        // Slots reserved for one producer are not there for the others
+        other.onWebSocketText("other1");
+        Mockito.verify(remote).sendString(":TIMEOUT", other);
+
+        conn.onWebSocketText(Command.PUBLISH.format(1, "test1"));
+        conn.onWebSocketText(Command.PUBLISH.format(2, "test2"));
+        Mockito.verify(remote).sendString(":OK 2", conn);
+        Mockito.verify(remote, Mockito.times(1)).sendString(Mockito.startsWith(":CREDIT"), Mockito.eq(conn));
+
+        qw.drainQueue();
+        Mockito.verify(remote, Mockito.times(2)).sendString(":CREDIT 2", conn);
+
+        conn.onWebSocketClose(200, "");
+        other.onWebSocketText("other2");
+        Mockito.verify(remote).sendString(":OK", other);
+    }
+
+    @Test
+    public void testBatchIsPublishedAsOneUnit() throws Exception {
+        final Session session = Mockito.mock(Session.class);
+        final RemoteEndpoint remote = Mockito.mock(RemoteEndpoint.class);
+        Mockito.doReturn(remote).when(session).getRemote();
+
+        final QDbWriter qDbWriter = Mockito.mock(QDbWriter.class);
+        final QueueWriter qw = new QueueWriter(new WriterConfiguration(), qDbWriter);
+        final ProducerConnection conn = new ProducerConnection(qw, "test", 4);
+        conn.onWebSocketConnect(session);
+        qw.start();
+
+        final BatchFrame batch = new BatchFrame().add("m1").add("other", "m 2\n").add("");
+        conn.onWebSocketText(batch.format(5));
+        Mockito.verify(remote).sendString(":OK 5", conn);
+
+        conn.onWebSocketText("#BATCH 6 2\n2\nm1");
+        Mockito.verify(remote).sendString(":ERROR 6", conn);
+
+        Thread.sleep(100);
+        qw.stop();
+        qw.join();
+        final InOrder inOrder = Mockito.inOrder(qDbWriter);
+        inOrder.verify(qDbWriter).batchWrite(Mockito.eq("test"), Mockito.eq("m1"), Mockito.eq(false), (CommitListener) Mockito.isNull());
+        inOrder.verify(qDbWriter).batchWrite(Mockito.eq("other"), Mockito.eq("m 2\n"), Mockito.eq(false), (CommitListener) Mockito.isNull());
+        inOrder.verify(qDbWriter).batchWrite(Mockito.eq("test"), Mockito.eq(""), Mockito.eq(true), (CommitListener) Mockito.isNull());
+        Mockito.verify(qDbWriter, Mockito.times(3)).batchWrite(Mockito.anyString(), Mockito.anyString(), Mockito.anyBoolean(), Mockito.any(CommitListener.class));
+    }
+
+    @Test
+    public void testBinaryMessageIsPublishedAsBytes() throws Exception {
+        final Session session = Mockito.mock(Session.class);
+        final RemoteEndpoint remote = Mockito.mock(RemoteEndpoint.class);
+        Mockito.doReturn(remote).when(session).getRemote();
+
+        final QDbWriter qDbWriter = Mockito.mock(QDbWriter.class);
+        final QueueWriter qw = new QueueWriter(new WriterConfiguration(), qDbWriter);
+        final ProducerConnection conn = new ProducerConnection(qw, "test", 4);
+        conn.onWebSocketConnect(session);
+        qw.start();
+
+        final byte[] payload = {0, 1, 2, (byte) 0xff};
+        final byte[] frame = ByteBuffer.allocate(Long.BYTES + payload.length + 2).put((byte) 9)
+                .putLong(9).put(payload).array();
+        conn.onWebSocketBinary(frame, 1, Long.BYTES + payload.length);
+        Mockito.verify(remote).sendString(":OK 9", conn);
+
+        conn.onWebSocketBinary(new byte[]{1, 2, 3}, 0, 3);
+        Mockito.verify(remote).sendString(":ERROR", conn);
+
+        Thread.sleep(100);
+        qw.stop();
+        qw.join();
+        Mockito.verify(qDbWriter).batchWrite(Mockito.eq("test"), Mockito.eq(payload), Mockito.eq(true), (CommitListener) Mockito.isNull());
+    }
+
+    @Test
+    public void testDurableAcksAreSentOnCommit() throws Exception {
+        final Session session = Mockito.mock(Session.class);
+        final RemoteEndpoint remote = Mockito.mock(RemoteEndpoint.class);
+        Mockito.doReturn(remote).when(session).getRemote();
+
+        final List<CommitListener> pending = new ArrayList<>();
+        final QDbWriter qDbWriter = Mockito.mock(QDbWriter.class);
+        Mockito.doAnswer(invocation -> {
+            final CommitListener listener = (CommitListener) invocation.getArguments()[3];
+            if (listener != null) {
+                synchronized (pending) {
+                    pending.add(listener);
+                }
+            }
+            return null;
+        }).when(qDbWriter).batchWrite(Mockito.anyString(), Mockito.anyString(), Mockito.anyBoolean(), Mockito.any(CommitListener.class));
+
+        final QueueWriter qw = new QueueWriter(new WriterConfiguration(), qDbWriter);
+        final ProducerConnection conn = new ProducerConnection(qw, "test", 2, true);
+        conn.onWebSocketConnect(session);
+        qw.start();
+
+        conn.onWebSocketText(Command.PUBLISH.format(1, "test1"));
+        conn.onWebSocketText(new BatchFrame().add("test2").add("test3").format(2));
+        // Not acknowledged till committed, so the window is full
+        conn.onWebSocketText(Command.PUBLISH.format(3, "test4"));
+        Mockito.verify(remote).sendString(":BUSY 3", conn);
+        Thread.sleep(100);
+        Mockito.verify(remote, Mockito.never()).sendString(":OK 1", conn);
+
+        synchronized (pending) {
+            // One listener for the single message and one for the whole batch
+            assertEquals(2, pending.size());
+            pending.get(0).onCommit(true);
+            pending.get(1).onCommit(false);
+        }
+        Mockito.verify(remote).sendString(":OK 1", conn);
+        Mockito.verify(remote).sendString(":ERROR 2", conn);
+
+        conn.onWebSocketText(Command.PUBLISH.format(4, "test4"));
+        Mockito.verify(remote, Mockito.never()).sendString(":BUSY 4", conn);
+
+        qw.stop();
+        qw.join();
+    }
+
 }
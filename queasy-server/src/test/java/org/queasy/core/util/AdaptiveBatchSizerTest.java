@@ -0,0 +1,56 @@
+package org.queasy.core.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Created on: 2026-10-18
+ */
+public class AdaptiveBatchSizerTest {
+
+    private static final long TARGET = TimeUnit.MILLISECONDS.toNanos(10);
+
+    @Test
+    public void testGrowsWithBacklogWhileCommitsAreFast() {
+        final AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(32, 1, 100, TARGET);
+        sizer.onCommit(TimeUnit.MILLISECONDS.toNanos(1), 1000);
+        assertEquals(40, sizer.getBatchSize());
+        for (int i = 0; i < 10; i++) {
+            sizer.onCommit(TimeUnit.MILLISECONDS.toNanos(1), 1000);
+        }
+        assertEquals(100, sizer.getBatchSize());
+    }
+
+    @Test
+    public void testHoldsWithoutBacklogOrWhenCloseToTarget() {
+        final AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(32, 1, 100, TARGET);
+        sizer.onCommit(TimeUnit.MILLISECONDS.toNanos(1), 10);
+        assertEquals(32, sizer.getBatchSize());
+        sizer.onCommit(TimeUnit.MILLISECONDS.toNanos(8), 1000);
+        assertEquals(32, sizer.getBatchSize());
+    }
+
+    @Test
+    public void testShrinksWhenCommitsAreSlow() {
+        final AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(32, 4, 100, TARGET);
+        sizer.onCommit(TimeUnit.MILLISECONDS.toNanos(20), 1000);
+        assertEquals(16, sizer.getBatchSize());
+        for (int i = 0; i < 10; i++) {
+            sizer.onCommit(TimeUnit.MILLISECONDS.toNanos(20), 0);
+        }
+        assertEquals(4, sizer.getBatchSize());
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveBatchSizer(32, 0, 100, TARGET));
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveBatchSizer(32, 10, 5, TARGET));
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveBatchSizer(32, 1, 100, 0));
+        assertEquals(100, new AdaptiveBatchSizer(500, 1, 100, TARGET).getBatchSize());
+    }
+
+}
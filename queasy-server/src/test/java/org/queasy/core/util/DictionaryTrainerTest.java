@@ -0,0 +1,46 @@
+package org.queasy.core.util;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Created on: 2026-10-18
+ */
+public class DictionaryTrainerTest {
+
+    private static byte[] bytes(final String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testSharedContentIsKeptOnceWithinSize() {
+        final List<byte[]> samples = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            samples.add(bytes("{\"type\": \"order\", \"status\": \"CREATED\", \"id\": " + i + "}"));
+        }
+        samples.add(bytes("qwertyuiopasdfghjkl")); // Shares nothing with the other samples
+
+        final String dictionary = new String(DictionaryTrainer.train(samples, 1024), StandardCharsets.UTF_8);
+        assertTrue(dictionary.contains("\"status\": \"CREATED\""));
+        assertFalse(dictionary.contains("qwerty"));
+        // Near duplicates are left out
+        assertTrue(dictionary.length() < 2 * samples.get(0).length, dictionary);
+
+        assertEquals(16, DictionaryTrainer.train(samples, 16).length);
+    }
+
+    @Test
+    public void testNothingToLearn() {
+        assertEquals(0, DictionaryTrainer.train(ImmutableList.of(bytes("abcdefghijkl"), bytes("mnopqrstuvwx")), 1024).length);
+        assertEquals(0, DictionaryTrainer.train(ImmutableList.of(), 1024).length);
+    }
+
+}
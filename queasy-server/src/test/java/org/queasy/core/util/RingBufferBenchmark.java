@@ -0,0 +1,143 @@
+package org.queasy.core.util;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares QueueWriter's ingest hand-off: the ArrayBlockingQueue it used to use versus the lock-free RingBuffer.
+ * Eight producer threads publish into a 1024 entry buffer drained by a single consumer, which is what the writer
+ * thread does. A producer finding the buffer full gives up on that invocation rather than spinning, which would keep
+ * it from ever returning once the consumer stops at the end of an iteration, so the score to read is handOffs, the
+ * messages handed off per microsecond. The primary score counts attempts, rejected ones included.
+ * <p>
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.queasy.core.util.RingBufferBenchmark
+ *
+ * Created on: 2026-10-18
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RingBufferBenchmark {
+
+    private static final int SIZE = 1024;
+    private static final String[] MESSAGE = {"testQ", "{\"body\": \"test\"}"};
+
+    private static final class Slot {
+        String qName;
+        String message;
+    }
+
+    /**
+     * Hand-offs of a producer thread, reported per unit of time next to the primary score
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class HandOffs {
+        public long handOffs;
+
+        @Setup(Level.Iteration)
+        public void setup() {
+            handOffs = 0;
+        }
+    }
+
+    @State(Scope.Group)
+    public static class QueueState {
+        ArrayBlockingQueue<String[]> queue;
+
+        @Setup(Level.Iteration)
+        public void setup() {
+            queue = new ArrayBlockingQueue<>(SIZE);
+        }
+    }
+
+    @State(Scope.Group)
+    public static class RingState {
+        RingBuffer<Slot> ring;
+        long next;
+
+        @Setup(Level.Iteration)
+        public void setup() {
+            ring = new RingBuffer<>(SIZE, RingBuffer.WaitStrategy.BUSY_SPIN, Slot::new);
+            next = 0;
+        }
+    }
+
+    @Benchmark
+    @Group("arrayBlockingQueue")
+    @GroupThreads(8)
+    public void queueProduce(final QueueState state, final HandOffs counter) {
+        if (state.queue.offer(new String[]{MESSAGE[0], MESSAGE[1]})) {
+            counter.handOffs++;
+        }
+    }
+
+    @Benchmark
+    @Group("arrayBlockingQueue")
+    @GroupThreads(1)
+    public void queueConsume(final QueueState state, final Blackhole bh) {
+        String[] message;
+        while ((message = state.queue.poll()) != null) {
+            bh.consume(message);
+        }
+    }
+
+    @Benchmark
+    @Group("ringBuffer")
+    @GroupThreads(8)
+    public void ringProduce(final RingState state, final HandOffs counter) {
+        final RingBuffer<Slot> ring = state.ring;
+        final long seq = ring.tryClaim(1);
+        if (seq < 0) {
+            return;
+        }
+        final Slot slot = ring.get(seq);
+        slot.qName = MESSAGE[0];
+        slot.message = MESSAGE[1];
+        ring.publish(seq, seq);
+        counter.handOffs++;
+    }
+
+    @Benchmark
+    @Group("ringBuffer")
+    @GroupThreads(1)
+    public void ringConsume(final RingState state, final Blackhole bh) {
+        final RingBuffer<Slot> ring = state.ring;
+        final long available = ring.getHighestPublished(state.next);
+        for (long seq = state.next; seq <= available; seq++) {
+            final Slot slot = ring.get(seq);
+            bh.consume(slot.message);
+            slot.qName = null;
+            slot.message = null;
+        }
+        if (available >= state.next) {
+            ring.release(available);
+            state.next = available + 1;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(RingBufferBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
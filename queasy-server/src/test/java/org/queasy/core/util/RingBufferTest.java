@@ -0,0 +1,98 @@
+package org.queasy.core.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Created on: 2026-10-18
+ */
+public class RingBufferTest {
+
+    private static final class Entry {
+        long value;
+    }
+
+    @Test
+    public void testCapacityIsRoundedUpToPowerOfTwo() {
+        assertEquals(1, RingBuffer.capacityFor(1));
+        assertEquals(2, RingBuffer.capacityFor(2));
+        assertEquals(64, RingBuffer.capacityFor(33));
+        assertEquals(1024, RingBuffer.capacityFor(1024));
+        assertThrows(IllegalArgumentException.class, () -> RingBuffer.capacityFor(0));
+    }
+
+    @Test
+    public void testClaimFailsWhenFullTillReleased() throws Exception {
+        final RingBuffer<Entry> ring = new RingBuffer<>(4, RingBuffer.WaitStrategy.BLOCKING, Entry::new);
+        assertEquals(2, ring.tryClaim(3));
+        ring.publish(0, 2);
+        assertEquals(-1, ring.tryClaim(2));
+        assertEquals(-1, ring.claim(2, 10, TimeUnit.MILLISECONDS));
+        assertEquals(3, ring.tryClaim(1));
+        assertEquals(-1, ring.tryClaim(1));
+
+        // Claimed but unpublished entries are not visible to the consumer
+        assertEquals(2, ring.getHighestPublished(0));
+        ring.release(1);
+        assertEquals(5, ring.tryClaim(2));
+        ring.publish(4, 5);
+        assertEquals(2, ring.getHighestPublished(2));
+        ring.publish(3, 3);
+        assertEquals(5, ring.getHighestPublished(2));
+        assertThrows(IllegalArgumentException.class, () -> ring.tryClaim(5));
+    }
+
+    @Test
+    public void testConcurrentProducersSingleConsumer() throws Exception {
+        for (RingBuffer.WaitStrategy waitStrategy : RingBuffer.WaitStrategy.values()) {
+            final int producers = 8;
+            final int perProducer = 100000;
+            final RingBuffer<Entry> ring = new RingBuffer<>(64, waitStrategy, Entry::new);
+            final long[] lastSeen = new long[producers];
+
+            final Thread[] threads = new Thread[producers];
+            for (int p = 0; p < producers; p++) {
+                final int producerId = p;
+                threads[p] = new Thread(() -> {
+                    try {
+                        for (int i = 1; i <= perProducer; i++) {
+                            final long seq = ring.claim(1, 1, TimeUnit.MINUTES);
+                            ring.get(seq).value = ((long) producerId << 32) | i;
+                            ring.publish(seq, seq);
+                        }
+                    } catch (InterruptedException ex) {
+                        throw new RuntimeException(ex);
+                    }
+                });
+                threads[p].start();
+            }
+
+            long next = 0;
+            while (next < (long) producers * perProducer) {
+                final long available = ring.waitFor(next);
+                for (; next <= available; next++) {
+                    final long value = ring.get(next).value;
+                    final int producerId = (int) (value >>> 32);
+                    // Messages from every producer arrive in the order they were published
+                    assertEquals(lastSeen[producerId] + 1, value & 0xFFFFFFFFL);
+                    lastSeen[producerId] = value & 0xFFFFFFFFL;
+                }
+                ring.release(next - 1);
+            }
+
+            for (Thread t : threads) {
+                t.join();
+            }
+            for (long count : lastSeen) {
+                assertEquals(perProducer, count);
+            }
+            assertTrue(ring.remainingCapacity() == ring.getCapacity());
+        }
+    }
+
+}
@@ -75,4 +75,116 @@ public class SnowflakeTest {
             }
         }
     }
+
+    @Test
+    public void nextIds_shouldReserveConsecutiveIdsInOneMillisecond() {
+        Snowflake snowflake = new Snowflake(5);
+
+        long id = snowflake.nextId();
+        long first = snowflake.nextIds(100);
+        assertTrue(first > id);
+        long[] attrs = snowflake.parse(first);
+        assertEquals(attrs[0], snowflake.parse(first + 99)[0]);
+        assertEquals(5, snowflake.parse(first + 99)[1]);
+        assertTrue(snowflake.nextId() > first + 99);
+
+        // A whole millisecond's worth of ids never splits across milliseconds
+        long range = snowflake.nextIds(Snowflake.MAX_RANGE);
+        assertEquals(0, snowflake.parse(range)[2]);
+        assertEquals(Snowflake.MAX_RANGE - 1, snowflake.parse(range + Snowflake.MAX_RANGE - 1)[2]);
+        long next = snowflake.nextIds(Snowflake.MAX_RANGE);
+        assertTrue(snowflake.parse(next)[0] > snowflake.parse(range)[0]);
+
+        assertThrows(IllegalArgumentException.class, () -> snowflake.nextIds(0));
+        assertThrows(IllegalArgumentException.class, () -> snowflake.nextIds(Snowflake.MAX_RANGE + 1));
+    }
+
+    @Test
+    public void nextIds_shouldNotWaitForTheClockWhenSequenceRunsOut() {
+        Snowflake snowflake = new Snowflake(5);
+        long last = -1;
+        // 50 milliseconds' worth of ids, far quicker than 50 milliseconds
+        for (int i = 0; i < 50; i++) {
+            long first = snowflake.nextIds(Snowflake.MAX_RANGE);
+            assertTrue(first > last);
+            last = first + Snowflake.MAX_RANGE - 1;
+        }
+        assertTrue(snowflake.parse(last)[0] <= Instant.now().toEpochMilli() + 1000);
+    }
+
+    @Test
+    public void nextIds_shouldWaitForAClockSetBackForAWhileAtMost() {
+        long[] clock = {10_000};
+        Snowflake snowflake = new Snowflake(5) {
+            @Override
+            long timestamp() {
+                return clock[0];
+            }
+        };
+        long first = snowflake.nextId();
+
+        // Set back further than ids may run ahead of it, ids carry on from the last timestamp while they can
+        clock[0] = 5_000;
+        long next = snowflake.nextIds(100);
+        assertTrue(next > first);
+        assertEquals(snowflake.parse(first)[0], snowflake.parse(next)[0]);
+
+        long start = System.nanoTime();
+        assertThrows(IllegalStateException.class, () -> snowflake.nextIds(Snowflake.MAX_RANGE));
+        assertTrue(System.nanoTime() - start < 5_000_000_000L);
+
+        // Back in step
+        clock[0] = 10_001;
+        assertTrue(snowflake.nextIds(Snowflake.MAX_RANGE) > next);
+    }
+
+    @Test
+    public void advancePast_shouldIssueIdsAboveTheLastOneStoredAheadOfTheClock() {
+        long[] clock = {10_000};
+        Snowflake snowflake = new Snowflake(5) {
+            @Override
+            long timestamp() {
+                return clock[0];
+            }
+        };
+        // Issued before a restart by a node with higher node bits, half a second ahead of the clock
+        Snowflake before = new Snowflake(9) {
+            @Override
+            long timestamp() {
+                return 10_500;
+            }
+        };
+        long stored = before.nextIds(10) + 9;
+
+        snowflake.advancePast(stored);
+        long next = snowflake.nextId();
+        assertTrue(next > stored);
+        assertEquals(snowflake.parse(stored)[0] + 1, snowflake.parse(next)[0]);
+
+        // Never moves back
+        snowflake.advancePast(0);
+        assertTrue(snowflake.nextId() > next);
+        clock[0] = 20_000;
+        assertTrue(snowflake.nextId() > next);
+    }
+
+    @Test
+    public void minIdAt_shouldBeNoHigherThanIdsIssuedSince() {
+        Snowflake snowflake = new Snowflake(1023);
+        long now = Instant.now().toEpochMilli();
+        long minId = Snowflake.minIdAt(now);
+        assertEquals(now, snowflake.parse(minId)[0]);
+        assertEquals(0, snowflake.parse(minId)[1]);
+        assertTrue(snowflake.nextId() >= minId);
+        assertEquals(0, Snowflake.minIdAt(0));
+    }
+
+    @Test
+    public void nodeId_shouldSplitNodeBitsBetweenHostsAndGenerators() {
+        assertEquals(0, Snowflake.nodeId(0, 4, 0));
+        assertEquals(11, Snowflake.nodeId(2, 4, 3));
+        assertEquals(1023, Snowflake.nodeId(127, 8, 7));
+        assertThrows(IllegalArgumentException.class, () -> Snowflake.nodeId(128, 8, 0));
+        assertThrows(IllegalArgumentException.class, () -> Snowflake.nodeId(1, 8, 8));
+    }
 }
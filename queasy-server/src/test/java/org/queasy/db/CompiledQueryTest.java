@@ -0,0 +1,112 @@
+package org.queasy.db;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Created on: 2026-10-18
+ */
+public class CompiledQueryTest {
+
+    private static MessageFilter.Condition eq(final String value) {
+        final MessageFilter.Condition condition = new MessageFilter.Condition();
+        condition.setEq(value);
+        return condition;
+    }
+
+    @Test
+    public void testFiltersCompileToParameterizedSql() {
+        final MessageFilter filter = new MessageFilter();
+        final MessageFilter.Condition qname = new MessageFilter.Condition();
+        qname.setIn(Arrays.asList("q1", "q2"));
+        filter.setQname(qname);
+        CompiledQuery query = CompiledQuery.compile(filter);
+        assertEquals("qname IN (?, ?)", query.getSql());
+        assertArrayEquals(new Object[]{"q1", "q2"}, query.getParams());
+        assertEquals(new HashSet<>(Arrays.asList("q1", "q2")), query.getQueueNames());
+        assertTrue(query.isExact());
+
+        final MessageFilter.Condition ts = new MessageFilter.Condition();
+        ts.setGt("100");
+        ts.setLt("200");
+        filter.setTs(ts);
+        filter.setEnc(eq("0"));
+        query = CompiledQuery.compile(filter);
+        assertEquals("qname IN (?, ?) AND ts >= ? AND ts <= ? AND coalesce(enc, 0) = ?", query.getSql());
+        assertArrayEquals(new Object[]{"q1", "q2", 101L, 199L, 0}, query.getParams());
+        assertFalse(query.isExact());
+        assertTrue(query.matches("q1", 101, 0));
+        assertFalse(query.matches("q1", 200, 0));
+        assertFalse(query.matches("q3", 150, 0));
+        assertFalse(query.matches("q2", 150, 1));
+
+        final MessageFilter prefix = new MessageFilter();
+        final MessageFilter.Condition qnamePrefix = new MessageFilter.Condition();
+        qnamePrefix.setPrefix("été.");
+        prefix.setQname(qnamePrefix);
+        query = CompiledQuery.compile(prefix);
+        assertEquals("substr(qname, 1, ?) = ?", query.getSql());
+        assertArrayEquals(new Object[]{4, "été."}, query.getParams());
+        assertNull(query.getQueueNames());
+        assertTrue(query.matches("été.q", 0, 0));
+        assertFalse(query.matches(null, 0, 0));
+
+        assertEquals("1 = 1", CompiledQuery.compile(new MessageFilter()).getSql());
+    }
+
+    @Test
+    public void testRawSqlIsEvaluableWhenExactAlone() {
+        final CompiledQuery exact = CompiledQuery.sql("qname = 'q1'");
+        assertTrue(exact.isEvaluable());
+        assertTrue(exact.matches("q1", 0, 1));
+        assertFalse(exact.matches("q2", 0, 1));
+
+        final CompiledQuery raw = CompiledQuery.sql("qname = 'q1' AND ts > 5");
+        assertFalse(raw.isEvaluable());
+        assertEquals(Collections.singleton("q1"), raw.getQueueNames());
+        assertEquals(0, raw.getParams().length);
+        assertThrows(IllegalStateException.class, () -> raw.matches("q1", 6, 0));
+    }
+
+    @Test
+    public void testInvalidFiltersAreRejected() {
+        final MessageFilter eqAndIn = new MessageFilter();
+        final MessageFilter.Condition both = eq("q1");
+        both.setIn(Collections.singletonList("q2"));
+        eqAndIn.setQname(both);
+        assertThrows(IllegalArgumentException.class, () -> CompiledQuery.compile(eqAndIn));
+
+        final MessageFilter emptyIn = new MessageFilter();
+        final MessageFilter.Condition none = new MessageFilter.Condition();
+        none.setIn(Collections.emptyList());
+        emptyIn.setQname(none);
+        assertThrows(IllegalArgumentException.class, () -> CompiledQuery.compile(emptyIn));
+
+        final MessageFilter tsPrefix = new MessageFilter();
+        final MessageFilter.Condition prefix = new MessageFilter.Condition();
+        prefix.setPrefix("1");
+        tsPrefix.setTs(prefix);
+        assertThrows(IllegalArgumentException.class, () -> CompiledQuery.compile(tsPrefix));
+
+        final MessageFilter qnameRange = new MessageFilter();
+        final MessageFilter.Condition range = new MessageFilter.Condition();
+        range.setGt("q");
+        qnameRange.setQname(range);
+        assertThrows(IllegalArgumentException.class, () -> CompiledQuery.compile(qnameRange));
+
+        final MessageFilter notNumber = new MessageFilter();
+        notNumber.setEnc(eq("binary"));
+        assertThrows(IllegalArgumentException.class, () -> CompiledQuery.compile(notNumber));
+    }
+
+}
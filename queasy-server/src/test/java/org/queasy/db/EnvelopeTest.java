@@ -0,0 +1,46 @@
+package org.queasy.db;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Created on: 2026-10-18
+ */
+public class EnvelopeTest {
+
+    @Test
+    public void testTextIsFramedAsBefore() {
+        final String message = "{\"greeting\": \"héllo wörld ✓\"}";
+        final Envelope envelope = Envelope.of(-42, message);
+        assertEquals(String.format("{\"id\": %s, \"message\": %s}", -42, message), envelope.getText());
+        assertEquals(envelope, Envelope.ofText(-42, message.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(envelope, Envelope.text(envelope.getText()));
+        assertEquals(envelope.hashCode(), Envelope.text(envelope.getText()).hashCode());
+        assertNotEquals(envelope, Envelope.of(-42, message.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testTextFrameIsSharedReadOnly() {
+        final Envelope envelope = Envelope.of(7, "\"text\"");
+        final ByteBuffer first = envelope.getTextFrame();
+        final ByteBuffer second = envelope.getTextFrame();
+        assertTrue(first.isReadOnly());
+        assertThrows(java.nio.ReadOnlyBufferException.class, () -> first.put(0, (byte) 0));
+
+        // Reading one view leaves the others, and the envelope, as they were
+        final byte[] bytes = new byte[first.remaining()];
+        first.get(bytes);
+        assertEquals(0, first.remaining());
+        assertEquals(bytes.length, second.remaining());
+        assertEquals("{\"id\": 7, \"message\": \"text\"}", new String(bytes, StandardCharsets.UTF_8));
+        assertEquals("{\"id\": 7, \"message\": \"text\"}", envelope.getText());
+    }
+
+}
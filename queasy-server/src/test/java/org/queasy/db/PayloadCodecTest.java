@@ -0,0 +1,124 @@
+package org.queasy.db;
+
+import com.google.common.collect.ImmutableMap;
+import io.dropwizard.util.DataSize;
+import org.jdbi.v3.core.Handle;
+import org.jdbi.v3.core.Jdbi;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.queasy.core.bundles.QueasyMigrationBundle;
+import org.queasy.core.config.CompressionConfiguration;
+import org.queasy.core.config.QueueConfiguration;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Created on: 2026-10-18
+ */
+public class PayloadCodecTest {
+
+    private File dbFile;
+    private Jdbi jdbi;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        dbFile = File.createTempFile("queasy-codec", ".db");
+        jdbi = Jdbi.create("jdbc:sqlite:" + dbFile.getAbsolutePath());
+        jdbi.useHandle(handle -> QueasyMigrationBundle.migrate(handle.getConnection()));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        dbFile.delete();
+    }
+
+    private static Map<String, QueueConfiguration> queues(final boolean dictionary) {
+        final CompressionConfiguration compression = new CompressionConfiguration();
+        compression.setThreshold(DataSize.bytes(64));
+        compression.setDictionary(dictionary);
+        compression.setDictionarySamples(20);
+        final QueueConfiguration queueConfig = new QueueConfiguration();
+        queueConfig.setCompression(compression);
+        return ImmutableMap.of("q1", queueConfig);
+    }
+
+    private static byte[] message(final int i) {
+        return String.format("{\"orderId\": %d, \"customer\": {\"name\": \"customer-%d\", \"tier\": \"gold\"}, " +
+                "\"items\": [{\"sku\": \"sku-%d\", \"quantity\": %d}], \"status\": \"CREATED\"}", i, i % 7, i % 13, i)
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testCompressOnlyConfiguredQueuesAboveThreshold() {
+        final PayloadCodec codec = new PayloadCodec(queues(false), jdbi);
+        assertFalse(codec.isCompressed("q2"));
+        assertNull(codec.compress("q2", message(1)));
+        assertTrue(codec.isCompressed("q1"));
+        assertNull(codec.compress("q1", "too short".getBytes(StandardCharsets.UTF_8)));
+
+        final byte[] repetitive = new String(new char[1000]).replace('\0', 'x').getBytes(StandardCharsets.UTF_8);
+        final byte[] compressed = codec.compress("q1", repetitive);
+        assertNotNull(compressed);
+        assertTrue(compressed.length < 50);
+        assertEquals(PayloadCodec.ENC_DEFLATE, codec.getEncoding());
+        assertArrayEquals(repetitive, codec.decompress(compressed, codec.getEncoding()));
+        assertArrayEquals(repetitive, codec.decompress(repetitive, QDbWriter.ENC_BINARY));
+    }
+
+    @Test
+    public void testDictionaryIsTrainedAndUsedOnceCommitted() {
+        final PayloadCodec codec = new PayloadCodec(queues(true), jdbi);
+        int plainSize = 0;
+        for (int i = 0; i < 20; i++) {
+            plainSize += codec.compress("q1", message(i)).length;
+            assertEquals(PayloadCodec.ENC_DEFLATE, codec.getEncoding());
+        }
+
+        // A rolled back dictionary is never used
+        try (Handle handle = jdbi.open()) {
+            handle.begin();
+            codec.saveDictionaries(handle);
+            handle.rollback();
+        }
+        codec.onCommit(false);
+        codec.compress("q1", message(20));
+        assertEquals(PayloadCodec.ENC_DEFLATE, codec.getEncoding());
+
+        for (int i = 21; i < 40; i++) {
+            codec.compress("q1", message(i));
+        }
+        try (Handle handle = jdbi.open()) {
+            handle.begin();
+            codec.saveDictionaries(handle);
+            handle.commit();
+        }
+        codec.onCommit(true);
+
+        int dictionarySize = 0;
+        final PayloadCodec reader = new PayloadCodec(null, jdbi);
+        for (int i = 0; i < 20; i++) {
+            final byte[] compressed = codec.compress("q1", message(i));
+            final int enc = codec.getEncoding();
+            assertEquals(PayloadCodec.ENC_DEFLATE | (1 << PayloadCodec.DICTIONARY_SHIFT), enc);
+            assertArrayEquals(message(i), reader.decompress(compressed, enc));
+            dictionarySize += compressed.length;
+        }
+        assertTrue(dictionarySize * 2 < plainSize, dictionarySize + " vs " + plainSize);
+
+        // Picked up again after a restart
+        final PayloadCodec restarted = new PayloadCodec(queues(true), jdbi);
+        restarted.compress("q1", message(1));
+        assertEquals(PayloadCodec.ENC_DEFLATE | (1 << PayloadCodec.DICTIONARY_SHIFT), restarted.getEncoding());
+    }
+
+}
@@ -0,0 +1,110 @@
+package org.queasy.db;
+
+import org.jdbi.v3.core.Handle;
+import org.jdbi.v3.core.Jdbi;
+import org.jdbi.v3.core.statement.PreparedBatch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.queasy.core.bundles.QueasyMigrationBundle;
+import org.queasy.core.config.WriterConfiguration;
+import org.queasy.core.util.Snowflake;
+
+import java.io.File;
+import java.sql.Types;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the multi-row insert path of {@link QDbWriter} with the JDBI PreparedBatch it replaced, writing the same
+ * batches to the same SQLite file. Score is batches committed per second, multiply by batchSize for rows/s.
+ * <p>
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.queasy.db.QDbWriterBenchmark
+ *
+ * Created on: 2026-10-18
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QDbWriterBenchmark {
+
+    private static final String TABLE_NAME = "queasy_q";
+    private static final String INSERT_SQL =
+            "INSERT INTO queasy_q_data (id, qname_id, type, ts, mesg) VALUES (?, ?, ?, ?, ?)";
+    private static final String MESSAGE = "{\"body\": \"Lorem ipsum dolor sit amet, consectetur adipiscing elit\"}";
+
+    @Param({"32", "256", "1000"})
+    public int batchSize;
+
+    private File dbFile;
+    private Jdbi jdbi;
+    private Snowflake idGenerator;
+    private QDbWriter qDbWriter;
+    private Handle handle;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        dbFile = File.createTempFile("queasy-bench", ".db");
+        jdbi = Jdbi.create("jdbc:sqlite:" + dbFile.getAbsolutePath());
+        jdbi.useHandle(h -> QueasyMigrationBundle.migrate(h.getConnection()));
+        idGenerator = new Snowflake(0);
+
+        final WriterConfiguration writerConfig = new WriterConfiguration();
+        writerConfig.setTableName(TABLE_NAME);
+        writerConfig.setInsertBatchSize(batchSize);
+        qDbWriter = new QDbWriter(idGenerator, jdbi, writerConfig);
+        handle = jdbi.open();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        qDbWriter.close();
+        handle.close();
+        dbFile.delete();
+    }
+
+    @Benchmark
+    public void preparedBatch() {
+        handle.begin();
+        final PreparedBatch batch = handle.prepareBatch(INSERT_SQL);
+        final long ts = System.currentTimeMillis();
+        for (int i = 0; i < batchSize; i++) {
+            batch.bind(0, idGenerator.nextId())
+                    .bind(1, 1) // testQ, the first queue the writer interns
+                    .bindNull(2, Types.VARCHAR)
+                    .bind(3, ts)
+                    .bind(4, MESSAGE)
+                    .add();
+        }
+        batch.execute();
+        handle.commit();
+        batch.close();
+    }
+
+    @Benchmark
+    public void multiRowInsert() throws Exception {
+        for (int i = 1; i <= batchSize; i++) {
+            qDbWriter.batchWrite("testQ", MESSAGE, i == batchSize);
+        }
+        qDbWriter.finish();
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(QDbWriterBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
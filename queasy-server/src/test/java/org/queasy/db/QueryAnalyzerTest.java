@@ -0,0 +1,54 @@
+package org.queasy.db;
+
+import com.google.common.collect.ImmutableSet;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Created on: 2026-10-18
+ */
+public class QueryAnalyzerTest {
+
+    @Test
+    public void testQueueNamesAreExtracted() {
+        assertEquals(ImmutableSet.of("testQ"), QueryAnalyzer.queueNames("qname = 'testQ'"));
+        assertEquals(ImmutableSet.of("a", "b"), QueryAnalyzer.queueNames("QNAME in ('a', 'b')"));
+        assertEquals(ImmutableSet.of("a"), QueryAnalyzer.queueNames("qname='a' AND ts > 1000"));
+        assertEquals(ImmutableSet.of("b"), QueryAnalyzer.queueNames("qname IN ('a','b') AND qname = 'b'"));
+        // Keywords inside literals don't matter
+        assertEquals(ImmutableSet.of("or not"), QueryAnalyzer.queueNames("qname = 'or not'"));
+    }
+
+    @Test
+    public void testAnyQueueMayMatch() {
+        assertNull(QueryAnalyzer.queueNames("ts > 1000"));
+        assertNull(QueryAnalyzer.queueNames("qname = 'a' OR qname = 'b'"));
+        assertNull(QueryAnalyzer.queueNames("NOT qname = 'a'"));
+        assertNull(QueryAnalyzer.queueNames("qname LIKE 'a%'"));
+        assertNull(QueryAnalyzer.queueNames("qname IN (SELECT qname FROM other)"));
+        assertNull(QueryAnalyzer.queueNames(null));
+    }
+
+    @Test
+    public void testExactQueueNamesOnlyForQueueNameConditions() {
+        assertEquals(ImmutableSet.of("a"), QueryAnalyzer.exactQueueNames("qname = 'a'"));
+        assertEquals(ImmutableSet.of("b"), QueryAnalyzer.exactQueueNames("(qname IN ('a', 'b')) AND qname = 'b'"));
+        assertNull(QueryAnalyzer.exactQueueNames("qname = 'a' AND ts > 1000"));
+        assertNull(QueryAnalyzer.exactQueueNames("qname = 'a' OR qname = 'b'"));
+        assertNull(QueryAnalyzer.exactQueueNames("1 = 1"));
+    }
+
+    @Test
+    public void testQueriesOnTheMessageAreTold() {
+        assertTrue(QueryAnalyzer.readsMessage("qname = 'a' AND json_extract(mesg, '$.type') = 'order'"));
+        assertTrue(QueryAnalyzer.readsMessage("MESG LIKE '%urgent%'"));
+        assertFalse(QueryAnalyzer.readsMessage("qname = 'mesg' AND ts > 1000"));
+        assertFalse(QueryAnalyzer.readsMessage("qname = 'messages'"));
+        assertFalse(QueryAnalyzer.readsMessage(null));
+    }
+
+}
@@ -0,0 +1,132 @@
+package org.queasy.db;
+
+import org.jdbi.v3.core.Handle;
+import org.jdbi.v3.core.Jdbi;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.queasy.core.bundles.QueasyMigrationBundle;
+import org.queasy.db.store.SqliteMessageStore;
+
+import java.io.File;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares a consumer group read of one queue, a fetch of 100 messages after a random checkpoint, on the table layout
+ * keyed by id with an (id, qname) index against the (qname_id, id) clustered layout read by
+ * {@link SqliteMessageStore}. Both SQLite files hold the same messages, spread round-robin over the queues. Score is
+ * microseconds per fetch.
+ * <p>
+ * Filling the tables takes a while, rows defaults to a size that runs in minutes; the 50M-row comparison is
+ * -p rows=50000000, which needs some 10GB of disk.
+ * <p>
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.queasy.db.QueueLayoutBenchmark
+ *
+ * Created on: 2026-10-18
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueueLayoutBenchmark {
+
+    private static final String TABLE_NAME = "queasy_q";
+    private static final int FETCH_SIZE = 100;
+    private static final String MESSAGE = "{\"body\": \"Lorem ipsum dolor sit amet, consectetur adipiscing elit\"}";
+    // Consumer group query of the legacy layout, as it ran before the ORDER BY was added
+    private static final String LEGACY_SELECT_SQL = "SELECT id, mesg, enc FROM queasy_q WHERE id > ? AND " +
+            "qname = ? AND type is NULL LIMIT " + FETCH_SIZE;
+    private static final String SEQUENCE = "WITH RECURSIVE seq(i) AS (SELECT 1 UNION ALL SELECT i + 1 FROM seq " +
+            "WHERE i < ?) ";
+
+    @Param({"2000000"})
+    public int rows;
+
+    @Param({"200"})
+    public int queues;
+
+    private File legacyFile;
+    private File clusteredFile;
+    private Handle legacyHandle;
+    private MessageStore.Reader[] clusteredReaders;
+    private SqliteMessageStore clusteredStore;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        legacyFile = File.createTempFile("queasy-legacy", ".db");
+        final Jdbi legacy = Jdbi.create("jdbc:sqlite:" + legacyFile.getAbsolutePath());
+        legacy.useHandle(h -> {
+            h.execute("CREATE TABLE queasy_q (id int PRIMARY KEY NOT NULL, qname varchar(255), type varchar(16), " +
+                    "ts int, mesg text, enc int)");
+            h.execute("CREATE INDEX id_qname_idx ON queasy_q (id, qname)");
+            h.execute(SEQUENCE + "INSERT INTO queasy_q (id, qname, type, ts, mesg, enc) " +
+                    "SELECT i, 'q-' || (i % ?), NULL, i, ?, 0 FROM seq", rows, queues, MESSAGE);
+        });
+        legacyHandle = legacy.open();
+
+        clusteredFile = File.createTempFile("queasy-clustered", ".db");
+        final Jdbi clustered = Jdbi.create("jdbc:sqlite:" + clusteredFile.getAbsolutePath());
+        clustered.useHandle(h -> {
+            QueasyMigrationBundle.migrate(h.getConnection());
+            h.execute(SEQUENCE + "INSERT INTO queasy_qname (qname_id, qname) SELECT i, 'q-' || (i - 1) FROM seq",
+                    queues);
+            h.execute(SEQUENCE + "INSERT INTO queasy_q_data (qname_id, id, type, ts, mesg, enc) " +
+                    "SELECT (i % ?) + 1, i, NULL, i, ?, 0 FROM seq", rows, queues, MESSAGE);
+        });
+        clusteredStore = new SqliteMessageStore(clustered, TABLE_NAME);
+        clusteredReaders = new MessageStore.Reader[queues];
+        for (int q = 0; q < queues; q++) {
+            clusteredReaders[q] = clusteredStore.reader("qname = 'q-" + q + "'", FETCH_SIZE);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        legacyHandle.close();
+        clusteredStore.close();
+        legacyFile.delete();
+        clusteredFile.delete();
+    }
+
+    private long checkpoint() {
+        return ThreadLocalRandom.current().nextLong(Math.max(1, rows - (long) FETCH_SIZE * queues));
+    }
+
+    @Benchmark
+    public long legacyLayout(final Blackhole bh) {
+        final int q = ThreadLocalRandom.current().nextInt(queues);
+        return legacyHandle.select(LEGACY_SELECT_SQL, checkpoint(), "q-" + q)
+                .map((rs, ctx) -> {
+                    bh.consume(rs.getString(2));
+                    return rs.getLong(1);
+                })
+                .reduce(0L, (lastId, id) -> id);
+    }
+
+    @Benchmark
+    public long clusteredLayout(final Blackhole bh) {
+        final int q = ThreadLocalRandom.current().nextInt(queues);
+        return clusteredReaders[q].read(checkpoint(), (id, message, enc) -> bh.consume(message));
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(QueueLayoutBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
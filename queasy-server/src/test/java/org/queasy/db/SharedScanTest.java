@@ -0,0 +1,199 @@
+package org.queasy.db;
+
+import org.jdbi.v3.core.Jdbi;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.queasy.core.bundles.QueasyMigrationBundle;
+import org.queasy.core.config.ConsumerGroupConfiguration;
+import org.queasy.core.config.WriterConfiguration;
+import org.queasy.db.store.SqliteMessageStore;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Created on: 2026-10-18
+ */
+public class SharedScanTest {
+
+    private File dbFile;
+    private SqliteMessageStore store;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        dbFile = File.createTempFile("queasy-scan", ".db");
+        final Jdbi jdbi = Jdbi.create("jdbc:sqlite:" + dbFile.getAbsolutePath());
+        jdbi.useHandle(handle -> QueasyMigrationBundle.migrate(handle.getConnection()));
+        store = new SqliteMessageStore(jdbi, "queasy_q");
+
+        // 100 messages over three queues, a batch of 10 at a time, 10 ms apart
+        for (int b = 0; b < 10; b++) {
+            final MessageBatch batch = new MessageBatch();
+            batch.setTs(1000 + 10 * b);
+            for (int i = 0; i < 10; i++) {
+                final long id = 10 * b + i + 1;
+                batch.add("q" + (id % 3), "message-" + id, 0);
+                batch.setId(i, id);
+            }
+            store.append(batch, null);
+        }
+    }
+
+    @AfterEach
+    public void tearDown() {
+        store.close();
+        dbFile.delete();
+    }
+
+    /**
+     * @return a query on the queues, with a condition on ts that all the messages meet, so that it isn't read by queue
+     */
+    private static CompiledQuery query(final String... qNames) {
+        final MessageFilter.Condition qname = new MessageFilter.Condition();
+        qname.setIn(Arrays.asList(qNames));
+        final MessageFilter.Condition ts = new MessageFilter.Condition();
+        ts.setGte("1000");
+        final MessageFilter filter = new MessageFilter();
+        filter.setQname(qname);
+        filter.setTs(ts);
+        return CompiledQuery.compile(filter);
+    }
+
+    private static List<Long> readAll(final MessageStore.Reader reader, final long afterId) {
+        final List<Long> ids = new ArrayList<>();
+        long lastLookedAt = afterId;
+        long next;
+        while ((next = reader.read(lastLookedAt, (id, message, enc) -> {
+            assertEquals("message-" + id, message);
+            ids.add(id);
+        })) > lastLookedAt) {
+            lastLookedAt = next;
+        }
+        return ids;
+    }
+
+    @Test
+    public void testRangesAreScannedOnceForAllReaders() {
+        final SharedScan scan = new SharedScan(store, 50);
+        final List<CompiledQuery> queries = new ArrayList<>();
+        queries.add(query("q1"));
+        queries.add(query("q0", "q2"));
+        queries.add(query("q5"));
+        for (CompiledQuery compiled : queries) {
+            final String query = compiled.toString();
+            final MessageStore.Reader ownReader = store.reader(compiled, 7);
+            final List<Long> expected = readAll(ownReader, 0);
+            final AtomicInteger ownReads = new AtomicInteger();
+            assertEquals(expected, readAll(scan.reader(compiled, 7, (afterId, visitor) -> {
+                ownReads.incrementAndGet();
+                return ownReader.read(afterId, visitor);
+            }), 0), query);
+            assertEquals(0, ownReads.get(), query);
+        }
+        // Two ranges, then once per reader to find there's nothing new, as readAll reads till then
+        assertEquals(2 + queries.size(), scan.getScanCount());
+    }
+
+    @Test
+    public void testReadersFallenBehindReadOnTheirOwnTillTheyCatchUp() {
+        final SharedScan scan = new SharedScan(store, 10);
+        final CompiledQuery all = query("q0", "q1", "q2");
+        final List<Long> lead = readAll(scan.reader(all, 1000, store.reader(all, 1000)), 0);
+        assertEquals(100, lead.size());
+
+        // The scan holds the last 20 messages
+        final CompiledQuery q1 = query("q1");
+        final MessageStore.Reader ownReader = store.reader(q1, 5);
+        final AtomicInteger ownReads = new AtomicInteger();
+        final MessageStore.Reader reader = scan.reader(q1, 5, (afterId, visitor) -> {
+            ownReads.incrementAndGet();
+            return ownReader.read(afterId, visitor);
+        });
+        final List<Long> ids = new ArrayList<>();
+        long lastLookedAt = 0;
+        while (lastLookedAt < 80) {
+            lastLookedAt = reader.read(lastLookedAt, (id, message, enc) -> ids.add(id));
+        }
+        final int behind = ownReads.get();
+        assertTrue(behind > 0);
+        assertEquals(readAll(ownReader, 0).subList(0, ids.size()), ids);
+
+        // Back with the scan
+        ids.addAll(readAll(reader, lastLookedAt));
+        assertEquals(readAll(ownReader, 0), ids);
+        assertEquals(behind, ownReads.get());
+    }
+
+    @Test
+    public void testQueriesNotEvaluableInMemoryReadOnTheirOwn() {
+        final SharedScan scan = new SharedScan(store, 10);
+        final MessageStore.Reader ownReader = store.reader("ts > 1050", 10);
+        assertEquals(ownReader, scan.reader(CompiledQuery.sql("ts > 1050"), 10, ownReader));
+        assertEquals(0, scan.getScanCount());
+    }
+
+    @Test
+    public void testQueriesOnQueueNamesAloneReadByQueue() {
+        final SharedScan scan = new SharedScan(store, 10);
+        final MessageStore.Reader ownReader = store.reader("qname = 'q1'", 10);
+        assertEquals(ownReader, scan.reader(CompiledQuery.sql("qname = 'q1'"), 10, ownReader));
+        assertEquals(0, scan.getScanCount());
+    }
+
+    @Test
+    public void testReadLooksAtOneRangeAtMost() {
+        final SharedScan scan = new SharedScan(store, 10);
+        final MessageStore.Reader reader = scan.reader(query("q5"), 10, store.reader(query("q5"), 10));
+        final List<Long> ids = new ArrayList<>();
+        assertEquals(10, reader.read(0, (id, message, enc) -> ids.add(id)));
+        assertEquals(1, scan.getScanCount());
+        assertEquals(20, reader.read(10, (id, message, enc) -> ids.add(id)));
+        assertEquals(2, scan.getScanCount());
+        assertTrue(ids.isEmpty());
+    }
+
+    @Test
+    public void testConsumerGroupReadsOnPastRangesWithoutMatches() {
+        final QDbWriter qDbWriter = Mockito.mock(QDbWriter.class);
+        Mockito.when(qDbWriter.getLastWrittenMessageId()).thenReturn(100L);
+        final MessageFilter.Condition qname = new MessageFilter.Condition();
+        qname.setEq("q1");
+        final MessageFilter.Condition ts = new MessageFilter.Condition();
+        ts.setGte("1090");
+        final MessageFilter filter = new MessageFilter();
+        filter.setQname(qname);
+        filter.setTs(ts);
+        final ConsumerGroupConfiguration cgConfig = new ConsumerGroupConfiguration();
+        cgConfig.setFilter(filter);
+        cgConfig.setFetchBatchSize(10);
+        final SharedScan scan = new SharedScan(store, 5);
+        final QDbReader reader = new QDbReader(
+                Collections.singletonList(new Shard(0, qDbWriter, store, null, scan)),
+                new WriterConfiguration(), "cg", cgConfig, null);
+
+        // Matches in the last batch alone, more ranges ahead of it than a fetch looks at
+        final List<Envelope> messages = new ArrayList<>();
+        assertFalse(reader.loadNextBatchOfMessages(messages));
+        assertTrue(reader.getLastReadMessageId() < 90);
+        assertTrue(reader.hasMoreMessages());
+        // A range at a time
+        assertTrue(reader.loadNextBatchOfMessages(messages));
+        assertEquals(2, messages.size());
+        assertTrue(reader.loadNextBatchOfMessages(messages));
+        assertEquals(Stream.of(91L, 94L, 97L, 100L).map(id -> Envelope.of(id, "message-" + id))
+                .collect(Collectors.toList()), messages);
+    }
+
+}
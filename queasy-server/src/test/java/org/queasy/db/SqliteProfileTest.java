@@ -0,0 +1,122 @@
+package org.queasy.db;
+
+import io.dropwizard.db.DataSourceFactory;
+import io.dropwizard.util.DataSize;
+import org.jdbi.v3.core.Handle;
+import org.jdbi.v3.core.Jdbi;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.queasy.core.config.SqliteConfiguration;
+import org.queasy.core.managed.WalCheckpointer;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Created on: 2026-10-18
+ */
+public class SqliteProfileTest {
+
+    private File dbFile;
+    private DataSourceFactory database;
+    private SqliteProfile profile;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        dbFile = File.createTempFile("queasy-profile", ".db");
+        dbFile.delete();
+        database = new DataSourceFactory();
+        database.setDriverClass("org.sqlite.JDBC");
+        database.setUrl("jdbc:sqlite:" + dbFile.getAbsolutePath());
+
+        final SqliteConfiguration sqliteConfig = new SqliteConfiguration();
+        sqliteConfig.setDurability(SqliteConfiguration.Durability.CHECKPOINT);
+        sqliteConfig.setCacheSize(DataSize.mebibytes(4));
+        sqliteConfig.setPageSize(8192);
+        sqliteConfig.setWalSizeLimit(DataSize.kibibytes(256));
+        profile = new SqliteProfile(sqliteConfig);
+        profile.initialize(database);
+        profile.configure(database);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        for (String suffix : new String[]{"", "-wal", "-shm"}) {
+            new File(dbFile.getAbsolutePath() + suffix).delete();
+        }
+    }
+
+    @Test
+    public void testWriterConnectionIsConfigured() {
+        final Jdbi writer = profile.writerJdbi(database);
+        try (Handle handle = writer.open()) {
+            assertEquals("wal", pragma(handle, "journal_mode"));
+            // NORMAL
+            assertEquals("1", pragma(handle, "synchronous"));
+            assertEquals("-4096", pragma(handle, "cache_size"));
+            assertEquals("8192", pragma(handle, "page_size"));
+            assertEquals("0", pragma(handle, "wal_autocheckpoint"));
+            assertEquals("262144", pragma(handle, "journal_size_limit"));
+        }
+    }
+
+    @Test
+    public void testReaderPoolIsReadOnly() {
+        final DataSourceFactory reader = profile.readerDataSource(database);
+        final Map<String, String> props = reader.getProperties();
+        assertEquals("1", props.get("open_mode"));
+        assertFalse(props.containsKey("journal_mode"));
+        assertEquals(32, reader.getMaxSize());
+
+        profile.writerJdbi(database).useHandle(handle -> handle.execute("CREATE TABLE t (id int)"));
+        final Jdbi readJdbi = Jdbi.create(reader.getUrl(), toProperties(props));
+        readJdbi.useHandle(handle -> assertEquals("wal", pragma(handle, "journal_mode")));
+        assertThrows(Exception.class, () -> readJdbi.useHandle(handle -> handle.execute("INSERT INTO t VALUES (1)")));
+    }
+
+    @Test
+    public void testWalIsTruncatedOnceOverItsLimit() {
+        final File wal = new File(dbFile.getAbsolutePath() + "-wal");
+        final Jdbi writer = profile.writerJdbi(database);
+        final Jdbi jdbi = Jdbi.create(database.getUrl(), toProperties(database.getProperties()));
+        final WalCheckpointer checkpointer = new WalCheckpointer(jdbi, DataSize.kibibytes(256).toBytes());
+        try (Handle handle = writer.open()) {
+            handle.execute("CREATE TABLE t (id int, data text)");
+            final char[] data = new char[1000];
+            Arrays.fill(data, 'x');
+            for (int i = 0; i < 10; i++) {
+                handle.execute("INSERT INTO t VALUES (?, ?)", i, new String(data));
+            }
+            // Under the limit, checkpointed in place
+            checkpointer.run();
+            assertTrue(wal.length() > 0);
+            assertTrue(wal.length() <= 256 * 1024, String.valueOf(wal.length()));
+
+            for (int i = 0; i < 2000; i++) {
+                handle.execute("INSERT INTO t VALUES (?, ?)", i, new String(data));
+            }
+            assertTrue(wal.length() > 1024 * 1024, String.valueOf(wal.length()));
+            checkpointer.run();
+            assertEquals(0, wal.length());
+            assertEquals(2010, (int) handle.createQuery("SELECT count(*) FROM t").mapTo(Integer.class).one());
+        }
+    }
+
+    private static String pragma(final Handle handle, final String name) {
+        return handle.createQuery("PRAGMA " + name).mapTo(String.class).one();
+    }
+
+    private static java.util.Properties toProperties(final Map<String, String> map) {
+        final java.util.Properties props = new java.util.Properties();
+        props.putAll(map);
+        return props;
+    }
+
+}
@@ -0,0 +1,117 @@
+package org.queasy.db;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.jupiter.api.Test;
+import org.queasy.core.config.WriterConfiguration;
+import org.queasy.core.util.Snowflake;
+import org.queasy.db.store.MemoryMessageStore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Created on: 2026-10-18
+ */
+public class TailBufferTest {
+
+    private static final CompiledQuery Q1 = CompiledQuery.sql("qname = 'q1'");
+
+    /**
+     * Publishes a batch of messages with ids from firstId on, alternately of q1 and q2
+     */
+    private static void publish(final TailBuffer tail, final long firstId, final int count) {
+        final MessageBatch batch = new MessageBatch();
+        for (int i = 0; i < count; i++) {
+            final long id = firstId + i;
+            batch.add((id % 2 == 0) ? "q2" : "q1", "message-" + id, 0);
+            batch.setId(i, id);
+        }
+        tail.publish(batch);
+    }
+
+    private static List<Long> read(final TailBuffer tail, final long afterId, final int fetchSize,
+                                   final long[] lastLookedAt) {
+        final List<Long> ids = new ArrayList<>();
+        lastLookedAt[0] = tail.read(afterId, Q1, fetchSize, (id, message, enc) -> {
+            assertEquals("message-" + id, message);
+            ids.add(id);
+        });
+        return ids;
+    }
+
+    @Test
+    public void testCaughtUpReadersReadFromTail() {
+        final TailBuffer tail = new TailBuffer(16, 10);
+        final long[] lastLookedAt = new long[1];
+        assertEquals(Arrays.asList(), read(tail, 10, 10, lastLookedAt));
+        assertEquals(10, lastLookedAt[0]);
+
+        publish(tail, 11, 6);
+        assertEquals(Arrays.asList(11L, 13L, 15L), read(tail, 10, 10, lastLookedAt));
+        assertEquals(16, lastLookedAt[0]);
+        assertEquals(Arrays.asList(13L), read(tail, 11, 1, lastLookedAt));
+        assertEquals(13, lastLookedAt[0]);
+        // An id in between messages, as a checkpoint moved past filtered out messages is
+        assertEquals(Arrays.asList(15L), read(tail, 14, 10, lastLookedAt));
+        assertEquals(Arrays.asList(), read(tail, 16, 10, lastLookedAt));
+        assertEquals(16, lastLookedAt[0]);
+    }
+
+    @Test
+    public void testLaggingReadersReadFromStore() {
+        final TailBuffer tail = new TailBuffer(4, 10);
+        final long[] lastLookedAt = new long[1];
+        read(tail, 9, 10, lastLookedAt);
+        assertEquals(TailBuffer.NOT_IN_TAIL, lastLookedAt[0]);
+
+        publish(tail, 11, 6);
+        // 11 and 12 are gone
+        read(tail, 10, 10, lastLookedAt);
+        assertEquals(TailBuffer.NOT_IN_TAIL, lastLookedAt[0]);
+        read(tail, 12, 10, lastLookedAt);
+        assertEquals(TailBuffer.NOT_IN_TAIL, lastLookedAt[0]);
+        assertEquals(Arrays.asList(15L), read(tail, 13, 10, lastLookedAt));
+        assertEquals(16, lastLookedAt[0]);
+    }
+
+    @Test
+    public void testReaderFallsBackToStore() {
+        final TailBuffer tail = new TailBuffer(4, 0);
+        publish(tail, 11, 6);
+        final List<Long> fromStore = new ArrayList<>();
+        final MessageStore.Reader storeReader = (afterId, visitor) -> {
+            fromStore.add(afterId);
+            return afterId;
+        };
+        assertSame(storeReader, tail.reader(CompiledQuery.sql("qname LIKE 'q%'"), 10, storeReader));
+
+        final MessageStore.Reader reader = tail.reader(Q1, 10, storeReader);
+        assertEquals(16, reader.read(13, (id, message, enc) -> {
+        }));
+        assertEquals(5, reader.read(5, (id, message, enc) -> {
+        }));
+        assertEquals(Arrays.asList(5L), fromStore);
+    }
+
+    @Test
+    public void testWriterPublishesCommittedBatches() throws Exception {
+        final MemoryMessageStore store = new MemoryMessageStore();
+        final QDbWriter qDbWriter = new QDbWriter(new Snowflake(0), store, new WriterConfiguration(),
+                new MetricRegistry(), null, null);
+        qDbWriter.batchWrite("q1", "message-a", true, null);
+        qDbWriter.batchWrite("q2", new byte[]{1}, true, null);
+        qDbWriter.finish();
+
+        final List<Object> messages = new ArrayList<>();
+        assertEquals(qDbWriter.getLastWrittenMessageId(), qDbWriter.getTailBuffer().read(0, Q1, 10,
+                (id, message, enc) -> messages.add(message)));
+        assertEquals(Arrays.asList("message-a"), messages);
+        assertTrue(qDbWriter.getTailBuffer().getCapacity() >= new WriterConfiguration().getTailBufferSize());
+    }
+
+}
@@ -0,0 +1,38 @@
+package org.queasy.db.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Created on: 2026-10-18
+ */
+public class LongLongMapTest {
+
+    @Test
+    public void testMapMatchesHashMap() {
+        final LongLongMap map = new LongLongMap(8);
+        final Map<Long, Long> expected = new HashMap<>();
+        final Random random = new Random(7);
+        for (int i = 0; i < 200000; i++) {
+            // Clustered keys, as message ids are, probing past one another
+            final long key = 1000 + random.nextInt(5000);
+            if (random.nextInt(3) == 0) {
+                map.remove(key);
+                expected.remove(key);
+            } else {
+                map.put(key, i);
+                expected.put(key, (long) i);
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (long key = 0; key < 7000; key++) {
+            assertEquals(expected.getOrDefault(key, LongLongMap.NO_VALUE), map.get(key), String.valueOf(key));
+        }
+    }
+
+}
@@ -0,0 +1,37 @@
+package org.queasy.db.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Created on: 2026-10-18
+ */
+public class LongMinHeapTest {
+
+    @Test
+    public void testValuesArePolledInAscendingOrder() {
+        final LongMinHeap heap = new LongMinHeap();
+        final Random random = new Random(1);
+        for (int i = 0; i < 5000; i++) {
+            heap.add(random.nextInt(1000));
+        }
+        assertEquals(5000, heap.size());
+
+        long last = Long.MIN_VALUE;
+        while (!heap.isEmpty()) {
+            final long min = heap.peek();
+            assertEquals(min, heap.poll());
+            assertTrue(min >= last);
+            last = min;
+        }
+
+        heap.add(7);
+        heap.clear();
+        assertTrue(heap.isEmpty());
+    }
+
+}
@@ -0,0 +1,224 @@
+package org.queasy.db.cache;
+
+import org.junit.jupiter.api.Test;
+import org.queasy.db.Envelope;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Created on: 2026-10-18
+ */
+public class OffHeapMessageCacheTest {
+
+    private static final int SLAB_SIZE = 64 * 1024;
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private Envelope load(final long id, final int size) {
+        loads.incrementAndGet();
+        final StringBuilder message = new StringBuilder("\"");
+        while (message.length() < size) {
+            message.append((char) ('a' + (id + message.length()) % 26));
+        }
+        return Envelope.of(id, message.append('"').toString());
+    }
+
+    @Test
+    public void testEnvelopesAreCachedEncoded() {
+        final MessageCache cache = new OffHeapMessageCache(1024 * 1024, SLAB_SIZE, 1);
+        final Envelope text = Envelope.of(1, "\"héllo\"");
+        final Envelope binary = Envelope.of(2, new byte[]{0, 1, (byte) 0xff});
+        assertEquals(text, cache.get(1, id -> text));
+        assertEquals(binary, cache.get(2, id -> binary));
+        assertEquals(text, cache.get(1, id -> null));
+        assertEquals(binary, cache.get(2, id -> null));
+        assertTrue(cache.get(2, id -> null).isBinary());
+
+        assertEquals(3, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(0.6, cache.getHitRate());
+        assertEquals(text.getText().getBytes(StandardCharsets.UTF_8).length + 1 +
+                binary.getBinary().length + 1, cache.getBytesUsed());
+    }
+
+    @Test
+    public void testCacheIsBoundedByBytes() {
+        final MessageCache cache = new OffHeapMessageCache(1024 * 1024, SLAB_SIZE, 2);
+        for (long id = 1; id <= 10000; id++) {
+            final long key = id;
+            cache.get(id, k -> load(key, 1000));
+        }
+        assertTrue(cache.getBytesUsed() <= 1024 * 1024, String.valueOf(cache.getBytesUsed()));
+        assertTrue(cache.getBytesUsed() > 512 * 1024, String.valueOf(cache.getBytesUsed()));
+        assertTrue(cache.getEvictionCount() > 8000, String.valueOf(cache.getEvictionCount()));
+
+        // The newest are still there
+        loads.set(0);
+        for (long id = 9900; id <= 10000; id++) {
+            final long key = id;
+            assertEquals(load(key, 1000), cache.get(id, k -> load(key, 1000)));
+        }
+        assertEquals(101, loads.get());
+    }
+
+    @Test
+    public void testLargeRareMessagesDoNotEvictPopularSmallOnes() {
+        final MessageCache cache = new OffHeapMessageCache(1024 * 1024, SLAB_SIZE, 1);
+        // Read by three consumer groups each
+        for (long id = 1; id <= 2000; id++) {
+            final long key = id;
+            for (int i = 0; i < 3; i++) {
+                cache.get(id, k -> load(key, 100));
+            }
+        }
+        // Read once, all the cache could hold
+        for (long id = 10001; id <= 10050; id++) {
+            final long key = id;
+            cache.get(id, k -> load(key, 60 * 1024));
+        }
+
+        loads.set(0);
+        for (long id = 1; id <= 2000; id++) {
+            final long key = id;
+            cache.get(id, k -> load(key, 100));
+        }
+        assertEquals(0, loads.get());
+        assertTrue(cache.getEvictionCount() > 0);
+    }
+
+    /**
+     * Three consumer groups read the first 1200 messages, more than the cache holds, then one of them reads on while the other two lag behind
+     *
+     * @return hits of the lagging groups
+     */
+    private long readWithLaggingGroups(final boolean cursorAware) {
+        final MessageCache cache = new OffHeapMessageCache(1024 * 1024, SLAB_SIZE, 1);
+        final long[] positions = new long[3];
+        if (cursorAware) {
+            for (int i = 0; i < positions.length; i++) {
+                final int group = i;
+                cache.addCursor(() -> positions[group]);
+            }
+        }
+        for (long id = 1; id <= 1200; id++) {
+            for (int group = 0; group < positions.length; group++) {
+                final long key = id;
+                cache.get(id, k -> load(key, 1000));
+                positions[group] = id;
+            }
+        }
+        for (long id = 1201; id <= 3000; id++) {
+            final long key = id;
+            cache.get(id, k -> load(key, 1000));
+            positions[0] = id;
+        }
+
+        final long hits = cache.getHitCount();
+        for (long id = 1201; id <= 1400; id++) {
+            for (int group = 1; group < positions.length; group++) {
+                final long key = id;
+                assertEquals(load(key, 1000), cache.get(id, k -> load(key, 1000)));
+                positions[group] = id;
+            }
+        }
+        return cache.getHitCount() - hits;
+    }
+
+    @Test
+    public void testMessagesAheadOfLaggingCursorsAreKept() {
+        // Messages all groups read are popular by lookup frequency alone, though no group reads them again, so the
+        // second lagging group hits only what the first one loaded again
+        assertTrue(readWithLaggingGroups(false) < 250);
+        assertEquals(400, readWithLaggingGroups(true));
+    }
+
+    @Test
+    public void testPassedEnvelopesAreDroppedWhereverTheyAreInTheMainLog() {
+        // Two envelopes to a slab, 13 slabs to the main log and 3 to the window
+        final MessageCache cache = new OffHeapMessageCache(1024 * 1024, SLAB_SIZE, 1);
+        final long[] positions = {0, 200};
+        cache.addCursor(() -> positions[0]);
+        cache.addCursor(() -> positions[1]);
+        final long[] ids = new long[32];
+        for (int i = 0; i < ids.length; i++) {
+            // 5 ends up in the middle of the main log, after 101 to 113
+            ids[i] = (i < 13) ? 101 + i : (i == 13) ? 5 : 100 + i;
+            final long key = ids[i];
+            cache.get(key, k -> load(key, 30 * 1024));
+        }
+        assertEquals(0, cache.getEvictionCount());
+
+        // The lagging cursor passes 5 alone, then 126 leaves the window: the oldest envelopes of the main log are to be
+        // read sooner than 126, yet the room 5 takes is enough for it
+        positions[0] = 5;
+        cache.get(132, k -> load(k, 30 * 1024));
+        assertEquals(1, cache.getEvictionCount());
+
+        loads.set(0);
+        for (long id = 101; id <= 132; id++) {
+            cache.get(id, k -> load(k, 30 * 1024));
+        }
+        assertEquals(0, loads.get());
+        cache.get(5, k -> load(k, 30 * 1024));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testDistanceIsToTheNearestCursorBehind() {
+        final long[] cursors = {10, 20, 20, 50};
+        assertEquals(OffHeapMessageCache.PASSED, OffHeapMessageCache.distance(5, cursors));
+        assertEquals(OffHeapMessageCache.PASSED, OffHeapMessageCache.distance(10, cursors));
+        assertEquals(1, OffHeapMessageCache.distance(11, cursors));
+        assertEquals(10, OffHeapMessageCache.distance(20, cursors));
+        assertEquals(1, OffHeapMessageCache.distance(21, cursors));
+        assertEquals(50, OffHeapMessageCache.distance(100, cursors));
+    }
+
+    @Test
+    public void testEnvelopesLargerThanASlabAreNotCached() {
+        final MessageCache cache = new OffHeapMessageCache(1024 * 1024, SLAB_SIZE, 1);
+        cache.get(1, id -> load(id, SLAB_SIZE));
+        cache.get(1, id -> load(id, SLAB_SIZE));
+        assertEquals(2, loads.get());
+        assertEquals(0, cache.getBytesUsed());
+
+        assertThrows(IllegalArgumentException.class, () -> new OffHeapMessageCache(1024 * 1024, SLAB_SIZE, 16));
+    }
+
+    @Test
+    public void testConcurrentReadersGetTheirMessages() throws Exception {
+        final MessageCache cache = new OffHeapMessageCache(512 * 1024, SLAB_SIZE / 4, 4);
+        final ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<?>> results = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                final Random random = new Random(t);
+                results.add(pool.submit(() -> {
+                    for (int i = 0; i < 20000; i++) {
+                        final long id = 1 + random.nextInt(2000);
+                        final int size = (int) (id % 7) * 300;
+                        assertEquals(load(id, size), cache.get(id, k -> load(k, size)));
+                    }
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(80000, cache.getHitCount() + cache.getMissCount());
+    }
+
+}
@@ -0,0 +1,304 @@
+package org.queasy.db.log;
+
+import com.codahale.metrics.MetricRegistry;
+import io.dropwizard.util.DataSize;
+import org.jdbi.v3.core.Jdbi;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.queasy.core.bundles.QueasyMigrationBundle;
+import org.queasy.core.config.ConsumerGroupConfiguration;
+import org.queasy.core.config.LogConfiguration;
+import org.queasy.core.config.WriterConfiguration;
+import org.queasy.core.util.Snowflake;
+import org.queasy.db.Envelope;
+import org.queasy.db.PayloadCodec;
+import org.queasy.db.QDbReader;
+import org.queasy.db.QDbWriter;
+import org.queasy.db.Shard;
+import org.queasy.db.store.LogMessageStore;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Created on: 2026-10-18
+ */
+public class SegmentedLogTest {
+
+    private File directory;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        directory = Files.createTempDirectory("queasy-log").toFile();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static LogConfiguration config(final long segmentSize) {
+        final LogConfiguration config = new LogConfiguration();
+        config.setSegmentSize(DataSize.bytes(segmentSize));
+        config.setIndexInterval(DataSize.bytes(256));
+        return config;
+    }
+
+    private static byte[] message(final long id) {
+        return ("message-" + id).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<Long> readIds(final SegmentedLog log, final long afterId, final int max,
+                                      final byte[][] queueFilter) {
+        final List<Long> ids = new ArrayList<>();
+        log.read(afterId, max, queueFilter, (id, enc, message) -> {
+            assertArrayEquals(message(id), message);
+            ids.add(id);
+        });
+        return ids;
+    }
+
+    private static List<Long> range(final long from, final long to) {
+        final List<Long> ids = new ArrayList<>();
+        for (long id = from; id <= to; id++) {
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    @Test
+    public void testMessagesAreVisibleOnceCommitted() throws Exception {
+        final SegmentedLog log = SegmentedLog.open(directory, config(64 * 1024));
+        for (long id = 1; id <= 3; id++) {
+            log.append(id, 100, "q1", 0, message(id));
+        }
+        assertEquals(Collections.emptyList(), readIds(log, 0, 10, null));
+        assertEquals(0, log.getLastId());
+
+        log.commit();
+        assertEquals(range(1, 3), readIds(log, 0, 10, null));
+        assertEquals(range(3, 3), readIds(log, 2, 10, null));
+        assertEquals(range(1, 2), readIds(log, 0, 2, null));
+        assertEquals(3, log.getLastId());
+        assertEquals(3, log.getMessageCount());
+
+        log.append(4, 100, "q1", 0, message(4));
+        log.rollback();
+        log.append(5, 100, "q1", 0, message(5));
+        log.commit();
+        assertEquals(Collections.singletonList(5L), readIds(log, 3, 10, null));
+    }
+
+    @Test
+    public void testMessagesAreFilteredByQueueName() throws Exception {
+        final SegmentedLog log = SegmentedLog.open(directory, config(64 * 1024));
+        for (long id = 1; id <= 6; id++) {
+            log.append(id, 100, (id % 2 == 0) ? "even" : "odd", (int) id, message(id));
+        }
+        log.commit();
+
+        final List<Long> ids = new ArrayList<>();
+        final List<Integer> encodings = new ArrayList<>();
+        final long lastId = log.read(0, 10, SegmentedLog.queueFilter(Collections.singleton("even")),
+                (id, enc, message) -> {
+                    ids.add(id);
+                    encodings.add(enc);
+                });
+        assertEquals(6, lastId);
+        assertEquals(Arrays.asList(2L, 4L, 6L), ids);
+        assertEquals(Arrays.asList(2, 4, 6), encodings);
+        assertEquals(Collections.emptyList(),
+                readIds(log, 0, 10, SegmentedLog.queueFilter(Collections.singleton("none"))));
+    }
+
+    @Test
+    public void testLogRollsOverToNewSegments() throws Exception {
+        final SegmentedLog log = SegmentedLog.open(directory, config(1024));
+        for (long id = 1; id <= 100; id++) {
+            log.append(id, 100, "q1", 0, message(id));
+            if (id % 10 == 0) {
+                log.commit();
+            }
+        }
+        assertTrue(log.getSegmentCount() > 3);
+        assertEquals(range(1, 100), readIds(log, 0, 1000, null));
+        // Start half way through a segment, and right at the start of one
+        for (long afterId = 0; afterId < 100; afterId += 7) {
+            assertEquals(range(afterId + 1, Math.min(afterId + 5, 100)), readIds(log, afterId, 5, null));
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> log.append(101, 100, "q1", 0, new byte[1024]));
+    }
+
+    @Test
+    public void testOldestSegmentsAreDeletedPastRetention() throws Exception {
+        final SegmentedLog log = SegmentedLog.open(directory, config(1024));
+        for (long id = 1; id <= 100; id++) {
+            log.append(id, id, "q1", 0, message(id));
+            log.commit();
+        }
+        final int segments = log.getSegmentCount();
+        assertEquals(0, log.trim(0, 0));
+        assertEquals(0, log.trim(100, 0));
+
+        assertTrue(log.trim(50, 0) > 0);
+        assertTrue(log.getMessageCount() >= 50);
+        final List<Long> kept = readIds(log, 0, 1000, null);
+        assertEquals(log.getMessageCount(), kept.size());
+        assertEquals(range(101 - kept.size(), 100), kept);
+
+        // Nothing in the segments but the last one is newer than that
+        log.trim(0, 101);
+        assertEquals(1, log.getSegmentCount());
+        assertTrue(segments > log.getSegmentCount());
+        assertEquals(1, directory.listFiles().length);
+        assertEquals(100, log.getLastId());
+    }
+
+    @Test
+    public void testCommittedMessagesSurviveReopeningAndTornTailIsDropped() throws Exception {
+        final SegmentedLog log = SegmentedLog.open(directory, config(1024));
+        for (long id = 1; id <= 30; id++) {
+            log.append(id, 100, "q1", 0, message(id));
+            log.commit();
+        }
+        log.append(31, 100, "q1", 0, message(31));
+        log.close();
+
+        final SegmentedLog reopened = SegmentedLog.open(directory, config(1024));
+        assertEquals(30, reopened.getLastId());
+        assertEquals(30, reopened.getMessageCount());
+        assertEquals(range(1, 30), readIds(reopened, 0, 1000, null));
+
+        // Corrupt the last record of the newest segment
+        final File[] files = directory.listFiles();
+        Arrays.sort(files);
+        final File newest = files[files.length - 1];
+        final int lastRecordCount = readIds(reopened, 0, 1000, null).size();
+        try (RandomAccessFile raf = new RandomAccessFile(newest, "rw")) {
+            final long position = lastRecordPosition(raf);
+            raf.seek(position + 20);
+            raf.writeLong(-1);
+        }
+        final SegmentedLog recovered = SegmentedLog.open(directory, config(1024));
+        assertEquals(29, recovered.getLastId());
+        assertEquals(range(1, 29), readIds(recovered, 0, 1000, null));
+        assertEquals(lastRecordCount - 1, recovered.getMessageCount());
+
+        // Appends carry on where the good records end
+        recovered.append(30, 100, "q1", 0, message(30));
+        recovered.commit();
+        assertEquals(range(1, 30), readIds(SegmentedLog.open(directory, config(1024)), 0, 1000, null));
+    }
+
+    @Test
+    public void testBatchThatWasNotCommittedIsDroppedWhole() throws Exception {
+        final SegmentedLog log = SegmentedLog.open(directory, config(1024));
+        // Every batch rolls over to a new segment part way
+        for (long id = 1; id <= 60; id++) {
+            log.append(id, 100, "q1", 0, message(id));
+            if (id % 15 == 0) {
+                log.commit();
+            }
+        }
+        // The writer dies with the records of its batch written out whole, in two segments, but not committed
+        for (long id = 61; id <= 75; id++) {
+            log.append(id, 100, "q1", 0, message(id));
+        }
+        final int segments = log.getSegmentCount();
+
+        final SegmentedLog recovered = SegmentedLog.open(directory, config(1024));
+        assertEquals(segments, recovered.getSegmentCount());
+        assertEquals(60, recovered.getLastId());
+        assertEquals(60, recovered.getMessageCount());
+        assertEquals(range(1, 60), readIds(recovered, 0, 1000, null));
+
+        recovered.append(61, 100, "q1", 0, message(61));
+        recovered.commit();
+        final SegmentedLog reopened = SegmentedLog.open(directory, config(1024));
+        assertEquals(range(1, 61), readIds(reopened, 0, 1000, null));
+        assertEquals(61, reopened.getMessageCount());
+    }
+
+    private static long lastRecordPosition(final RandomAccessFile raf) throws Exception {
+        long position = 0;
+        long last = 0;
+        while (true) {
+            raf.seek(position);
+            final int length = raf.readInt() & ~Segment.COMMIT_FLAG;
+            if (length == 0) {
+                return last;
+            }
+            last = position;
+            position += 2 * Integer.BYTES + length;
+        }
+    }
+
+    @Test
+    public void testWriterAndReaderRoundTripThroughLog() throws Exception {
+        final File dbFile = File.createTempFile("queasy-log", ".db");
+        try {
+            final Jdbi jdbi = Jdbi.create("jdbc:sqlite:" + dbFile.getAbsolutePath());
+            jdbi.useHandle(handle -> QueasyMigrationBundle.migrate(handle.getConnection()));
+            final WriterConfiguration writerConfig = new WriterConfiguration();
+            writerConfig.setTableName("q_easy");
+            writerConfig.setInsertBatchSize(4);
+            final SegmentedLog log = SegmentedLog.open(directory, config(64 * 1024));
+            final PayloadCodec codec = new PayloadCodec(null, jdbi);
+            final LogMessageStore store = new LogMessageStore(log, jdbi);
+            final QDbWriter writer = new QDbWriter(new Snowflake(1), store, writerConfig, new MetricRegistry(), null,
+                    codec);
+
+            final ConsumerGroupConfiguration cgConfig = new ConsumerGroupConfiguration();
+            cgConfig.setQuery("qname = 'q1'");
+            cgConfig.setFetchBatchSize(3);
+            final QDbReader reader = new QDbReader(
+                    Collections.singletonList(new Shard(0, writer, store, codec)), writerConfig, "cg", cgConfig, null);
+            reader.readLastCheckpoint();
+
+            writer.batchWrite("q1", "text", false, null);
+            writer.batchWrite("q2", "other queue", false, null);
+            writer.batchWrite("q1", new byte[]{1, 2, 3}, true, null);
+            writer.finish();
+            assertTrue(reader.hasMoreMessages());
+
+            final List<Envelope> messages = new ArrayList<>();
+            assertTrue(reader.loadNextBatchOfMessages(messages));
+            assertEquals(2, messages.size());
+            assertTrue(messages.get(0).getText().endsWith("\"message\": text}"));
+            final byte[] binary = messages.get(1).getBinary();
+            assertArrayEquals(new byte[]{1, 2, 3}, Arrays.copyOfRange(binary, Envelope.ID_BYTES, binary.length));
+            assertEquals(writer.getLastWrittenMessageId(), reader.getLastReadMessageId());
+            assertFalse(reader.hasMoreMessages());
+            assertFalse(reader.loadNextBatchOfMessages(messages));
+
+            final ConsumerGroupConfiguration anyQuery = new ConsumerGroupConfiguration();
+            anyQuery.setQuery("qname LIKE 'q%'");
+            assertThrows(IllegalArgumentException.class, () -> new QDbReader(
+                    Collections.singletonList(new Shard(0, writer, store, codec)), writerConfig, "cg", anyQuery, null));
+            writer.close();
+        } finally {
+            dbFile.delete();
+        }
+    }
+
+}
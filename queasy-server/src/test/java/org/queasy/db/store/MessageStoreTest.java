@@ -0,0 +1,311 @@
+package org.queasy.db.store;
+
+import com.codahale.metrics.MetricRegistry;
+import io.dropwizard.util.DataSize;
+import org.jdbi.v3.core.Jdbi;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.queasy.core.bundles.QueasyMigrationBundle;
+import org.queasy.core.config.LogConfiguration;
+import org.queasy.core.config.WriterConfiguration;
+import org.queasy.core.util.Snowflake;
+import org.queasy.db.CompiledQuery;
+import org.queasy.db.MessageBatch;
+import org.queasy.db.MessageFilter;
+import org.queasy.db.MessageStore;
+import org.queasy.db.PayloadCodec;
+import org.queasy.db.QDbWriter;
+import org.queasy.db.ScanningMessageStore;
+import org.queasy.db.log.SegmentedLog;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Same behaviour expected of every storage engine
+ *
+ * Created on: 2026-10-18
+ */
+public class MessageStoreTest {
+
+    private static final String TABLE_NAME = "queasy_q";
+
+    private File dbFile;
+    private File logDbFile;
+    private File logDirectory;
+    private final Map<String, MessageStore> stores = new LinkedHashMap<>();
+
+    @BeforeEach
+    public void setup() throws Exception {
+        dbFile = File.createTempFile("queasy-store", ".db");
+        final Jdbi sqlite = Jdbi.create("jdbc:sqlite:" + dbFile.getAbsolutePath());
+        sqlite.useHandle(handle -> QueasyMigrationBundle.migrate(handle.getConnection()));
+        stores.put("SQLITE", new SqliteMessageStore(sqlite, TABLE_NAME));
+
+        stores.put("H2", new H2MessageStore(Jdbi.create("jdbc:h2:mem:" + System.nanoTime() + ";DB_CLOSE_DELAY=-1"),
+                TABLE_NAME));
+
+        stores.put("MEMORY", new MemoryMessageStore());
+
+        logDirectory = Files.createTempDirectory("queasy-store").toFile();
+        final LogConfiguration logConfig = new LogConfiguration();
+        logConfig.setSegmentSize(DataSize.kibibytes(64));
+        logDbFile = File.createTempFile("queasy-store", ".db");
+        final Jdbi logSqlite = Jdbi.create("jdbc:sqlite:" + logDbFile.getAbsolutePath());
+        logSqlite.useHandle(handle -> QueasyMigrationBundle.migrate(handle.getConnection()));
+        stores.put("LOG", new LogMessageStore(SegmentedLog.open(logDirectory, logConfig), logSqlite));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        stores.values().forEach(MessageStore::close);
+        for (File file : logDirectory.listFiles()) {
+            file.delete();
+        }
+        logDirectory.delete();
+        dbFile.delete();
+        logDbFile.delete();
+    }
+
+    /**
+     * Appends a batch of messages with ids from firstId on, alternately of q1 and q2, every third one binary
+     */
+    private static void append(final MessageStore store, final long firstId, final int count, final long ts)
+            throws Exception {
+        final MessageBatch batch = new MessageBatch();
+        batch.setTs(ts);
+        for (int i = 0; i < count; i++) {
+            final long id = firstId + i;
+            final String qName = (id % 2 == 0) ? "q2" : "q1";
+            if (id % 3 == 0) {
+                batch.add(qName, new byte[]{(byte) id, 0, (byte) 0xff}, QDbWriter.ENC_BINARY);
+            } else {
+                batch.add(qName, "message-" + id, 0);
+            }
+            batch.setId(i, id);
+        }
+        store.append(batch, null);
+    }
+
+    private static List<Long> read(final MessageStore store, final String query, final int fetchSize,
+                                   final long afterId) {
+        final List<Long> ids = new ArrayList<>();
+        store.reader(query, fetchSize).read(afterId, (id, message, enc) -> {
+            if (id % 3 == 0) {
+                assertEquals(QDbWriter.ENC_BINARY, enc);
+                assertArrayEquals(new byte[]{(byte) id, 0, (byte) 0xff}, (byte[]) message);
+            } else {
+                assertEquals(0, enc);
+                assertEquals("message-" + id, message);
+            }
+            ids.add(id);
+        });
+        return ids;
+    }
+
+    @Test
+    public void testMessagesAreReadAfterIdByQueue() throws Exception {
+        for (Map.Entry<String, MessageStore> entry : stores.entrySet()) {
+            final String engine = entry.getKey();
+            final MessageStore store = entry.getValue();
+            assertEquals(0, store.getLastId(), engine);
+            append(store, 1, 10, 100);
+            assertEquals(10, store.getLastId(), engine);
+
+            assertEquals(Arrays.asList(1L, 3L, 5L, 7L, 9L), read(store, "qname = 'q1'", 10, 0), engine);
+            assertEquals(Arrays.asList(5L, 7L), read(store, "qname = 'q1'", 2, 4), engine);
+            assertEquals(Arrays.asList(1L, 2L, 3L, 4L), read(store, "qname IN ('q1', 'q2')", 4, 0), engine);
+            assertEquals(Arrays.asList(), read(store, "qname = 'q3'", 10, 0), engine);
+
+            // Filtered out messages are looked at too
+            assertEquals(3, store.reader("qname = 'q1'", 2).read(0, (id, message, enc) -> {
+            }), engine);
+            assertEquals(10, store.reader("qname = 'q2'", 10).read(8, (id, message, enc) -> {
+            }), engine);
+        }
+    }
+
+    @Test
+    public void testCheckpointsAreSavedByName() {
+        for (Map.Entry<String, MessageStore> entry : stores.entrySet()) {
+            final MessageStore store = entry.getValue();
+            assertNull(store.readCheckpoint("cg1"), entry.getKey());
+            store.saveCheckpoint("cg1", 5);
+            store.saveCheckpoint("cg2", 6);
+            store.saveCheckpoint("cg1", 7);
+            assertEquals(7L, store.readCheckpoint("cg1"), entry.getKey());
+            assertEquals(6L, store.readCheckpoint("cg2"), entry.getKey());
+        }
+    }
+
+    @Test
+    public void testOldestMessagesAreTrimmed() throws Exception {
+        for (Map.Entry<String, MessageStore> entry : stores.entrySet()) {
+            final String engine = entry.getKey();
+            final MessageStore store = entry.getValue();
+            append(store, 1, 10, 100);
+            append(store, 11, 10, 200);
+            assertEquals(0, store.trim(0, 0), engine);
+
+            final long deleted = store.trim(15, 11);
+            final List<Long> kept = read(store, "qname IN ('q1', 'q2')", 100, 0);
+            assertEquals(20 - deleted, kept.size(), engine);
+            assertEquals(20L, (long) kept.get(kept.size() - 1), engine);
+            if (!engine.equals("LOG")) {
+                // The log deletes whole segments alone, and keeps the one being written to
+                assertEquals(Arrays.asList(11L, 12L, 13L, 14L, 15L, 16L, 17L, 18L, 19L, 20L), kept, engine);
+                assertEquals(10, deleted, engine);
+                assertEquals(5, store.trim(5, 0), engine);
+                // Messages appended since are counted in
+                append(store, 21, 3, 300);
+                assertEquals(3, store.trim(5, 0), engine);
+                assertEquals(Arrays.asList(19L, 20L, 21L, 22L, 23L), read(store, "qname IN ('q1', 'q2')", 100, 0),
+                        engine);
+            }
+        }
+    }
+
+    private static MessageFilter.Condition condition(final String eq, final List<String> in, final String prefix) {
+        final MessageFilter.Condition condition = new MessageFilter.Condition();
+        condition.setEq(eq);
+        condition.setIn(in);
+        condition.setPrefix(prefix);
+        return condition;
+    }
+
+    private static MessageFilter.Condition range(final String gt, final String lte) {
+        final MessageFilter.Condition condition = new MessageFilter.Condition();
+        condition.setGt(gt);
+        condition.setLte(lte);
+        return condition;
+    }
+
+    private static MessageFilter filter(final MessageFilter.Condition qname, final MessageFilter.Condition ts,
+                                        final MessageFilter.Condition enc) {
+        final MessageFilter filter = new MessageFilter();
+        filter.setQname(qname);
+        filter.setTs(ts);
+        filter.setEnc(enc);
+        return filter;
+    }
+
+    @Test
+    public void testFiltersMatchTheSameMessagesInEveryEngine() throws Exception {
+        final String[] qNames = {"orders.eu", "orders.us", "orders", "refunds.eu", "\u00e9t\u00e9.q", "\u00e9t\u00e9"};
+        final int deflated = QDbWriter.ENC_BINARY | PayloadCodec.ENC_DEFLATE;
+        final int[] encs = {0, QDbWriter.ENC_BINARY, deflated};
+        final Random random = new Random(42);
+        final List<String> written = new ArrayList<>();
+        final List<Long> writtenTs = new ArrayList<>();
+        final List<Integer> writtenEnc = new ArrayList<>();
+        long id = 1;
+        for (int b = 0; b < 20; b++) {
+            final MessageBatch batch = new MessageBatch();
+            batch.setTs(1000 + 10 * b);
+            for (int i = 0; i < 10; i++, id++) {
+                final String qName = qNames[random.nextInt(qNames.length)];
+                final int enc = encs[random.nextInt(encs.length)];
+                batch.add(qName, (enc == 0) ? "message-" + id : new byte[]{(byte) id}, enc);
+                batch.setId(i, id);
+                written.add(qName);
+                writtenTs.add(batch.getTs());
+                writtenEnc.add(enc);
+            }
+            for (MessageStore store : stores.values()) {
+                store.append(batch, null);
+            }
+        }
+
+        final List<MessageFilter> filters = Arrays.asList(
+                filter(null, null, null),
+                filter(condition("orders", null, null), null, null),
+                filter(condition(null, Arrays.asList("orders.eu", "refunds.eu"), null), null, null),
+                filter(condition(null, null, "orders."), null, null),
+                filter(condition(null, null, "\u00e9t\u00e9."), null, null),
+                filter(condition(null, Arrays.asList("orders.eu", "orders"), "orders."), range("1050", "1120"), null),
+                filter(null, condition(null, Arrays.asList("1000", "1190", "5000"), null), null),
+                filter(null, range("1089", null), condition(null, Arrays.asList("0", "1"), null)),
+                filter(condition(null, null, "refunds"), null, condition(String.valueOf(deflated), null, null)));
+        for (MessageFilter filter : filters) {
+            final CompiledQuery query = CompiledQuery.compile(filter);
+            final List<Long> expected = new ArrayList<>();
+            for (int i = 0; i < written.size(); i++) {
+                if (query.matches(written.get(i), writtenTs.get(i), writtenEnc.get(i))) {
+                    expected.add(i + 1L);
+                }
+            }
+            for (Map.Entry<String, MessageStore> entry : stores.entrySet()) {
+                if (entry.getKey().equals("LOG") && !query.isExact()) {
+                    continue;
+                }
+                final List<Long> ids = new ArrayList<>();
+                // Fetches of 7 to check the last id looked at as well
+                long afterId = 0;
+                long lastRead;
+                while ((lastRead = entry.getValue().reader(query, 7).read(afterId, (mesgId, message, enc) -> {
+                    assertEquals((int) writtenEnc.get((int) mesgId - 1), enc);
+                    ids.add(mesgId);
+                })) > afterId) {
+                    afterId = lastRead;
+                }
+                assertEquals(expected, ids, entry.getKey() + ": " + query);
+            }
+        }
+    }
+
+    @Test
+    public void testWriterIssuesIdsAboveTheLastOneStored() throws Exception {
+        // Stored before a restart, by a generator running ahead of the clock
+        final long stored = Snowflake.minIdAt(System.currentTimeMillis() + 500);
+        for (Map.Entry<String, MessageStore> entry : stores.entrySet()) {
+            final MessageStore store = entry.getValue();
+            append(store, stored, 3, 100);
+
+            final QDbWriter writer = new QDbWriter(new Snowflake(1), store, new WriterConfiguration(),
+                    new MetricRegistry(), entry.getKey(), new PayloadCodec(null, null));
+            writer.batchWrite("q1", "message", true, null);
+            writer.finish();
+            assertTrue(writer.getLastWrittenMessageId() > stored + 2, entry.getKey());
+            assertEquals(writer.getLastWrittenMessageId(), store.getLastId(), entry.getKey());
+        }
+    }
+
+    @Test
+    public void testScanningEnginesScanEveryMessageWithItsMetadata() throws Exception {
+        for (Map.Entry<String, MessageStore> entry : stores.entrySet()) {
+            if (!(entry.getValue() instanceof ScanningMessageStore)) {
+                continue;
+            }
+            final ScanningMessageStore store = (ScanningMessageStore) entry.getValue();
+            append(store, 1, 10, 100);
+            final List<String> scanned = new ArrayList<>();
+            assertEquals(7, store.scan(2, 5, (id, qName, ts, message, enc) -> scanned.add(id + qName + ts)),
+                    entry.getKey());
+            assertEquals(Arrays.asList("3q1100", "4q2100", "5q1100", "6q2100", "7q1100"), scanned, entry.getKey());
+            assertEquals(10, store.scan(7, 5, (id, qName, ts, message, enc) -> { }), entry.getKey());
+            assertEquals(10, store.scan(10, 5, (id, qName, ts, message, enc) -> { }), entry.getKey());
+        }
+        assertFalse(stores.get("LOG") instanceof ScanningMessageStore);
+    }
+
+    @Test
+    public void testQueriesBeyondQueueNamesNeedSql() {
+        assertThrows(IllegalArgumentException.class, () -> stores.get("MEMORY").reader("ts > 0", 10));
+        assertThrows(IllegalArgumentException.class, () -> stores.get("LOG").reader("qname LIKE 'q%'", 10));
+    }
+
+}
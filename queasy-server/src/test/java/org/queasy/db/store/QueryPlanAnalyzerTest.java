@@ -0,0 +1,116 @@
+package org.queasy.db.store;
+
+import org.jdbi.v3.core.Jdbi;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.queasy.core.bundles.QueasyMigrationBundle;
+import org.queasy.db.CompiledQuery;
+import org.queasy.db.MessageBatch;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Created on: 2026-10-18
+ */
+public class QueryPlanAnalyzerTest {
+
+    private File dbFile;
+    private Jdbi jdbi;
+    private SqliteMessageStore store;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        dbFile = File.createTempFile("queasy-plans", ".db");
+        jdbi = Jdbi.create("jdbc:sqlite:" + dbFile.getAbsolutePath());
+        jdbi.useHandle(handle -> QueasyMigrationBundle.migrate(handle.getConnection()));
+        store = new SqliteMessageStore(jdbi, "queasy_q");
+
+        // 100 messages over two queues, the last 25 at a later time
+        append(1, 75, 100);
+        append(76, 25, 200);
+    }
+
+    private void append(final long firstId, final int count, final long ts) throws Exception {
+        final MessageBatch batch = new MessageBatch();
+        batch.setTs(ts);
+        for (int i = 0; i < count; i++) {
+            final long id = firstId + i;
+            batch.add("q" + (id % 2), "{\"kind\": \"k" + (id % 5) + "\"}", 0);
+            batch.setId(i, id);
+        }
+        store.append(batch, null);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        store.close();
+        dbFile.delete();
+    }
+
+    private List<String> derivedIndexes() {
+        return jdbi.withHandle(handle -> handle.select("SELECT name FROM sqlite_master WHERE type = 'index' " +
+                "AND name LIKE 'queasy_q_data_q_%' ORDER BY name").mapTo(String.class).list());
+    }
+
+    @Test
+    public void testQueueReadsAreSearches() {
+        final QueryPlanAnalyzer analyzer = new QueryPlanAnalyzer(store, 0);
+        final QueryPlan plan = analyzer.analyze("cg", CompiledQuery.sql("qname IN ('q0', 'q1')"), 10);
+        assertFalse(plan.isScan(), plan.toString());
+        assertEquals(10, plan.getEstimatedRowsPerFetch());
+        assertTrue(plan.getSql().contains("qname_id IN (1, 2)"), plan.getSql());
+        // Through the view, the queue name is looked up for every message after the checkpoint
+        assertTrue(analyzer.analyze("cg", CompiledQuery.sql("qname LIKE 'q%'"), 10).isScan());
+    }
+
+    @Test
+    public void testScansAreReportedWithRowsPerFetch() {
+        final QueryPlanAnalyzer analyzer = new QueryPlanAnalyzer(store, 0);
+        final QueryPlan plan = analyzer.analyze("cg", CompiledQuery.sql("ts = 200"), 10);
+        assertTrue(plan.isScan(), plan.toString());
+        // One message in four matches
+        assertEquals(40, plan.getEstimatedRowsPerFetch());
+        assertEquals(QueryPlan.UNKNOWN_ROWS,
+                analyzer.analyze("cg", CompiledQuery.sql("ts = 300"), 10).getEstimatedRowsPerFetch());
+    }
+
+    @Test
+    public void testIndexesAreKeptForScanningQueries() {
+        final QueryPlanAnalyzer analyzer = new QueryPlanAnalyzer(store, 0);
+        analyzer.add("later", CompiledQuery.sql("ts = 200"), 10);
+        analyzer.add("kind", CompiledQuery.sql("json_extract(mesg, '$.kind') = 'k2' AND enc = 0"), 10);
+        analyzer.add("queues", CompiledQuery.sql("qname = 'q1'"), 10);
+        analyzer.maintainIndexes();
+        assertEquals(2, derivedIndexes().size());
+        for (QueryPlan plan : analyzer.analyze()) {
+            assertFalse(plan.isScan(), plan.toString());
+        }
+
+        // Indexes of queries no longer configured are dropped
+        final QueryPlanAnalyzer changed = new QueryPlanAnalyzer(store, 0);
+        changed.add("later", CompiledQuery.sql("ts = 200"), 10);
+        changed.maintainIndexes();
+        assertEquals(1, derivedIndexes().size());
+        assertFalse(changed.analyze().get(0).isScan());
+    }
+
+    @Test
+    public void testIndexTermsAreEqualityConditionsAlone() {
+        assertEquals(Arrays.asList("json_extract(mesg,'$.a b')", "enc"),
+                QueryPlanAnalyzer.indexTerms(
+                        CompiledQuery.sql("json_extract( mesg , '$.a b') = 'x' AND enc IN (0, 1) AND ts > 5")));
+        assertNull(QueryPlanAnalyzer.indexTerms(CompiledQuery.sql("enc = 1 OR enc = 2")));
+        assertNull(QueryPlanAnalyzer.indexTerms(CompiledQuery.sql("ts > 5")));
+        // Read by the primary key already
+        assertNull(QueryPlanAnalyzer.indexTerms(CompiledQuery.sql("qname = 'q1' AND enc = 1")));
+    }
+
+}
@@ -0,0 +1,147 @@
+package org.queasy.db.store;
+
+import org.jdbi.v3.core.Jdbi;
+import org.jdbi.v3.core.statement.SqlLogger;
+import org.jdbi.v3.core.statement.StatementContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.queasy.core.bundles.QueasyMigrationBundle;
+import org.queasy.db.MessageBatch;
+import org.queasy.db.MessageStore;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Created on: 2026-10-18
+ */
+public class SqliteMessageStoreTest {
+
+    private static final String TABLE_NAME = SqliteMessageStore.TABLE_NAME;
+
+    private File dbFile;
+    private Jdbi jdbi;
+    private SqliteMessageStore store;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        dbFile = File.createTempFile("queasy-sqlite", ".db");
+        jdbi = Jdbi.create("jdbc:sqlite:" + dbFile.getAbsolutePath());
+        jdbi.useHandle(handle -> QueasyMigrationBundle.migrate(handle.getConnection()));
+        store = new SqliteMessageStore(jdbi, TABLE_NAME);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        store.close();
+        dbFile.delete();
+    }
+
+    private static void append(final SqliteMessageStore store, final long firstId, final String... qNames)
+            throws Exception {
+        final MessageBatch batch = new MessageBatch();
+        for (int i = 0; i < qNames.length; i++) {
+            batch.add(qNames[i], "message-" + (firstId + i), 0);
+            batch.setId(i, firstId + i);
+        }
+        store.append(batch, null);
+    }
+
+    private static List<Long> read(final SqliteMessageStore store, final String query) {
+        final List<Long> ids = new ArrayList<>();
+        store.reader(query, 100).read(0, (id, message, enc) -> ids.add(id));
+        return ids;
+    }
+
+    @Test
+    public void testQueueNamesAreInternedOnce() throws Exception {
+        append(store, 1, "q1", "q2", "q1");
+        append(store, 4, "q2", "q3");
+        assertEquals(Arrays.asList("q1", "q2", "q3"), jdbi.withHandle(handle ->
+                handle.select("SELECT qname FROM queasy_qname ORDER BY qname_id").mapTo(String.class).list()));
+
+        // Through the view, as ad-hoc queries see the messages
+        assertEquals(Arrays.asList("q1", "q2", "q1", "q2", "q3"), jdbi.withHandle(handle ->
+                handle.select("SELECT qname FROM queasy_q ORDER BY id").mapTo(String.class).list()));
+        assertEquals(Arrays.asList(2L, 4L, 5L), read(store, "qname LIKE 'q%' AND qname <> 'q1'"));
+    }
+
+    @Test
+    public void testTableNameMustBeTheOneTheMigrationsCreate() {
+        final IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> new SqliteMessageStore(jdbi, "q_easy"));
+        assertTrue(e.getMessage().contains("q_easy"), e.getMessage());
+    }
+
+    @Test
+    public void testReadersLearnQueueIdsInternedByTheWriter() throws Exception {
+        // Interned before the writer's instance was created
+        append(new SqliteMessageStore(jdbi, TABLE_NAME), 1, "q0");
+        final SqliteMessageStore reader = new SqliteMessageStore(store, jdbi, jdbi);
+        assertEquals(Arrays.asList(1L), read(reader, "qname IN ('q0', 'q1', 'q2')"));
+        append(store, 2, "q1", "q2", "q1");
+        assertEquals(Arrays.asList(2L, 4L), read(reader, "qname = 'q1'"));
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L), read(reader, "qname IN ('q0', 'q1', 'q2')"));
+    }
+
+    @Test
+    public void testQueueIdsAreReloadedOnlyAfterTheWriterInternsNew() throws Exception {
+        final Jdbi readJdbi = Jdbi.create("jdbc:sqlite:" + dbFile.getAbsolutePath());
+        final AtomicInteger loads = new AtomicInteger();
+        readJdbi.setSqlLogger(new SqlLogger() {
+            @Override
+            public void logBeforeExecution(final StatementContext context) {
+                if (context.getRenderedSql().contains("queasy_qname")) {
+                    loads.incrementAndGet();
+                }
+            }
+        });
+        final MessageStore.Reader reader = new SqliteMessageStore(store, jdbi, readJdbi).reader("qname = 'q2'", 100);
+        final List<Long> ids = new ArrayList<>();
+
+        append(store, 1, "q1");
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, reader.read(0, (id, message, enc) -> ids.add(id)));
+        }
+        append(store, 2, "q1");
+        assertEquals(0, reader.read(0, (id, message, enc) -> ids.add(id)));
+        assertEquals(1, loads.get());
+
+        // Cached by the writer, along with its id
+        append(store, 3, "q2");
+        assertEquals(3, reader.read(0, (id, message, enc) -> ids.add(id)));
+        assertEquals(Arrays.asList(3L), ids);
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testQueueIdsOfRolledBackBatchesAreNotKept() throws Exception {
+        append(store, 1, "q1");
+        // Duplicate id, the batch is rolled back along with q2's id
+        assertThrows(Exception.class, () -> append(store, 1, "q2"));
+        append(store, 2, "q3", "q2");
+        assertEquals(Arrays.asList(3L), read(store, "qname = 'q2'"));
+        assertEquals(Arrays.asList(2L), read(store, "qname = 'q3'"));
+    }
+
+    @Test
+    public void testQueueReadsAreRangeScansOfTheClusteredTable() {
+        final List<String> details = jdbi.withHandle(handle -> handle.select(
+                "EXPLAIN QUERY PLAN SELECT id, mesg, enc FROM queasy_q_data WHERE qname_id IN (1) AND id > ? " +
+                        "AND type is NULL ORDER BY id LIMIT 10", 0)
+                .map((rs, ctx) -> rs.getString("detail"))
+                .list());
+        final String plan = String.join("\n", details);
+        assertTrue(plan.contains("USING PRIMARY KEY (qname_id=? AND id>?)"), plan);
+        assertTrue(!plan.contains("TEMP B-TREE"), plan);
+    }
+
+}
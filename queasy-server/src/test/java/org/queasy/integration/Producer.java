@@ -2,6 +2,7 @@ package org.queasy.integration;
 
 import org.queasy.client.QueasyClient;
 import org.queasy.client.QueueProducer;
+import org.queasy.core.network.BatchFrame;
 
 import java.util.HashSet;
 import java.util.Random;
@@ -48,6 +49,19 @@ class Producer implements Runnable {
         try {
             for (int i = 0; i < numOfMesgs; i++) {
 //                Thread.sleep(random.nextInt(50));
+                if (random.nextInt(4) == 0) {
+                    // Publish next few messages as a single batch
+                    final BatchFrame batch = new BatchFrame();
+                    final int batchSize = Math.min(random.nextInt(8) + 1, numOfMesgs - i);
+                    for (int j = 0; j < batchSize; j++) {
+                        final String text = "TEXT:" + random.nextInt();
+                        batch.add(makeMessage(text));
+                        messages.add(text);
+                    }
+                    producer.writeBatch(batch);
+                    i += batchSize - 1;
+                    continue;
+                }
                 final Integer rnd = random.nextInt();
                 final String text = "TEXT:" + rnd;
                 final String mesg = makeMessage(text);